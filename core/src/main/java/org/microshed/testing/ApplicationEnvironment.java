@@ -22,8 +22,10 @@ import java.util.HashSet;
 import java.util.Optional;
 import java.util.ServiceLoader;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.microshed.testing.internal.InternalLogger;
+import org.microshed.testing.internal.Timeline;
 
 /**
  * Defines an approach for configuring and starting the test enviornment. Examples of a test environment might be:
@@ -37,7 +39,7 @@ import org.microshed.testing.internal.InternalLogger;
 public interface ApplicationEnvironment {
 
     public static class Resolver {
-        private static ApplicationEnvironment loaded = null;
+        private static final AtomicReference<ApplicationEnvironment> loaded = new AtomicReference<>();
 
         private Resolver() {
             // static singleton
@@ -53,9 +55,19 @@ public interface ApplicationEnvironment {
          *         </ol>
          */
         public static ApplicationEnvironment load() {
-            if (loaded != null)
-                return loaded;
+            ApplicationEnvironment env = loaded.get();
+            if (env != null)
+                return env;
+
+            // Resolution has no side effects, so if multiple threads race here the first result to be
+            // published wins and the other instances are discarded
+            try (Timeline.Span s = Timeline.begin("environment", "resolve ApplicationEnvironment")) {
+                env = resolve();
+            }
+            return loaded.compareAndSet(null, env) ? env : loaded.get();
+        }
 
+        private static ApplicationEnvironment resolve() {
             // First check explicilty configured environment via system property or env var
             String strategy = System.getProperty(ENV_CLASS);
             if (strategy == null || strategy.isEmpty())
@@ -72,8 +84,7 @@ public interface ApplicationEnvironment {
                                                     " was found, but it does not implement the required interface " + ApplicationEnvironment.class);
                 } else {
                     try {
-                        loaded = (ApplicationEnvironment) found.newInstance();
-                        return loaded;
+                        return (ApplicationEnvironment) found.newInstance();
                     } catch (InstantiationException | IllegalAccessException e) {
                         throw new IllegalStateException("Unable to initialize " + found, e);
                     }
@@ -94,8 +105,7 @@ public interface ApplicationEnvironment {
                             .sorted((c1, c2) -> c1.getClass().getCanonicalName().compareTo(c2.getClass().getCanonicalName()))
                             .sorted((c1, c2) -> Integer.compare(c2.getPriority(), c1.getPriority()))
                             .findFirst();
-            loaded = selectedEnv.orElseThrow(() -> new IllegalStateException("No available " + ApplicationEnvironment.class.getSimpleName() + " was discovered."));
-            return loaded;
+            return selectedEnv.orElseThrow(() -> new IllegalStateException("No available " + ApplicationEnvironment.class.getSimpleName() + " was discovered."));
         }
 
         /**
@@ -158,6 +168,31 @@ public interface ApplicationEnvironment {
      */
     public void start();
 
+    /**
+     * This method is typically called by the test framework.
+     * Implementations that start a different environment for each test class should override this method,
+     * since test classes may be configured and started concurrently.
+     * By default, {@link #start()} is called.
+     *
+     * @param testClass The test class to start the environment for
+     */
+    public default void start(Class<?> testClass) {
+        start();
+    }
+
+    /**
+     * This method is typically called by the test framework, on a background thread, when the test
+     * plan is discovered and before the specified class runs. Implementations may use this method to
+     * start the environment for the specified class ahead of time, so that a later call to {@link #start()}
+     * returns quickly. Unlike {@link #preConfigure(Class)} and {@link #start()}, implementations of this
+     * method must be safe to call concurrently with other lifecycle methods.
+     * By default, nothing is started ahead of time.
+     *
+     * @param testClass The test class to start the environment for
+     */
+    public default void prestart(Class<?> testClass) {
+    }
+
     /**
      * This method is typically called by the test framework.
      * Implementations should use this method to apply the environment configuration to the
@@ -174,6 +209,33 @@ public interface ApplicationEnvironment {
      */
     public String getApplicationURL();
 
+    /**
+     * @param testClass The test class to get the application URL for
+     * @return The URL that the application under test of the specified test class is available at.
+     *         By default, {@link #getApplicationURL()} is returned.
+     */
+    public default String getApplicationURL(Class<?> testClass) {
+        return getApplicationURL();
+    }
+
+    /**
+     * @return The Kafka bootstrap servers discovered in the environment of the test class that is
+     *         currently running on this thread, if any
+     */
+    public default Optional<String> getKafkaBootstrapServers() {
+        return Optional.empty();
+    }
+
+    /**
+     * @param testClass The test class to get the Kafka bootstrap servers for
+     * @return The Kafka bootstrap servers discovered in the environment of the specified test class, if any.
+     *         This value is used to configure injected Kafka clients when no bootstrap servers are explicitly defined.
+     *         By default, {@link #getKafkaBootstrapServers()} is returned.
+     */
+    public default Optional<String> getKafkaBootstrapServers(Class<?> testClass) {
+        return getKafkaBootstrapServers();
+    }
+
     public default boolean configureRestAssured() {
         return true;
     }
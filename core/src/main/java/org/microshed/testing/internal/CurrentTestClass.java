@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.internal;
+
+/**
+ * Tracks the test class whose code is currently running on a thread, so that APIs without a test class
+ * parameter, such as {@link org.microshed.testing.jaxrs.RestClientBuilder} used directly from a test method,
+ * can resolve the environment of the right test class when test classes run in parallel.
+ * <p>
+ * The test class is set while a test, lifecycle method, test constructor, or load test user runs, and the previous
+ * value is always restored afterwards. Other threads, such as the threads of an executor used by a test,
+ * fall back to the test class that started most recently.
+ */
+public final class CurrentTestClass {
+
+    private static final ThreadLocal<Class<?>> current = new ThreadLocal<>();
+
+    private static volatile Class<?> lastStarted;
+
+    private CurrentTestClass() {
+        // static utility
+    }
+
+    /**
+     * @return The test class whose code is running on this thread. If no test code is running on this thread,
+     *         the test class that started most recently, or null if no test class has started yet.
+     */
+    public static Class<?> get() {
+        Class<?> testClass = current.get();
+        return testClass != null ? testClass : lastStarted;
+    }
+
+    /**
+     * @param testClass The test class whose environment was just set up
+     */
+    public static void started(Class<?> testClass) {
+        lastStarted = testClass;
+    }
+
+    /**
+     * @param testClass The test class whose code is about to run on this thread
+     * @return A scope that restores the previous test class of this thread when closed
+     */
+    public static Scope enter(Class<?> testClass) {
+        Class<?> previous = current.get();
+        current.set(testClass);
+        return new Scope(previous);
+    }
+
+    public static final class Scope implements AutoCloseable {
+
+        private final Class<?> previous;
+
+        private Scope(Class<?> previous) {
+            this.previous = previous;
+        }
+
+        @Override
+        public void close() {
+            if (previous == null)
+                current.remove();
+            else
+                current.set(previous);
+        }
+    }
+}
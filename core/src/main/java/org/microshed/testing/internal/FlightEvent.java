@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.internal;
+
+/**
+ * A Java Flight Recorder event that is in progress. The event is committed when it is closed.
+ *
+ * @see FlightEvents
+ */
+public interface FlightEvent extends AutoCloseable {
+
+    /**
+     * An event that is never recorded, used when Java Flight Recorder is unavailable or the event type is disabled
+     */
+    static final FlightEvent NOOP = new FlightEvent() {
+    };
+
+    /**
+     * @param status The HTTP status of a REST client call
+     * @return The same event
+     */
+    default FlightEvent withStatus(int status) {
+        return this;
+    }
+
+    @Override
+    default void close() {
+    }
+
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.internal;
+
+import java.util.Collection;
+
+/**
+ * Emits Java Flight Recorder events for MicroShed Testing phases and client calls. Java Flight Recorder
+ * is not available on the Java 8 baseline, so this version of the class records nothing. On Java 11 and
+ * newer a different version of this class, packaged under <code>META-INF/versions/11</code>, records
+ * the following event types:
+ * <ul>
+ * <li><code>microshed.EnvironmentStart</code>: Configuring and starting the environment for a test class</li>
+ * <li><code>microshed.ContainerReady</code>: Starting a container until it is ready</li>
+ * <li><code>microshed.RestClientCall</code>: A request made by a REST client built by MicroShed Testing</li>
+ * <li><code>microshed.KafkaPoll</code>: Records returned by a poll of an injected Kafka consumer</li>
+ * </ul>
+ */
+public final class FlightEvents {
+
+    private FlightEvents() {
+        // static utility
+    }
+
+    /**
+     * @return True if Java Flight Recorder events can be recorded in this JVM
+     */
+    public static boolean isAvailable() {
+        return false;
+    }
+
+    public static FlightEvent environmentStart(String testClass, String environment) {
+        return FlightEvent.NOOP;
+    }
+
+    public static FlightEvent containerReady(String container) {
+        return FlightEvent.NOOP;
+    }
+
+    public static FlightEvent restClientCall(String method, String uri) {
+        return FlightEvent.NOOP;
+    }
+
+    public static void kafkaPoll(Collection<String> topics, int records) {
+    }
+
+}
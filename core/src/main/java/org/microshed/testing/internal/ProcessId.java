@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.internal;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * The process id of this JVM, which keeps the output files of test JVMs that run in parallel apart
+ */
+public final class ProcessId {
+
+    private static final String pid = currentPid();
+
+    private ProcessId() {
+        // static utility
+    }
+
+    /**
+     * @return The process id of this JVM, or <code>0</code> if it is not known
+     */
+    public static String get() {
+        return pid;
+    }
+
+    private static String currentPid() {
+        // The runtime name is of the form pid@hostname
+        String name = ManagementFactory.getRuntimeMXBean().getName();
+        int at = name.indexOf('@');
+        String pid = at > 0 ? name.substring(0, at) : name;
+        return pid.chars().allMatch(Character::isDigit) && !pid.isEmpty() ? pid : "0";
+    }
+
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.internal;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+/**
+ * A bounded, least-recently-used cache of REST client proxies. Proxies are keyed on the
+ * (class, base path, headers, token supplier, providers, transport) tuple they were built for. Since the base path includes
+ * the application URL, proxies for different environments never collide.
+ * <p>
+ * A proxy that was handed out by the cache remains owned by the cache even after it has been evicted,
+ * because other tests may still be using it. Such proxies are never closed, and are left to the garbage collector.
+ * <p>
+ * The maximum number of cached proxies can be set using the <code>MICROSHED_TEST_REST_CLIENT_CACHE_SIZE</code>
+ * system property or environment variable. A value of 0 disables caching.
+ */
+public final class RestClientCache {
+
+    private static final InternalLogger LOG = InternalLogger.get(RestClientCache.class);
+
+    public static final String CACHE_SIZE_PROP = "MICROSHED_TEST_REST_CLIENT_CACHE_SIZE";
+
+    private static final int DEFAULT_CACHE_SIZE = 32;
+
+    private static final RestClientCache INSTANCE = new RestClientCache(getCacheSize());
+
+    private final int maxSize;
+    private final Map<Key, Object> proxies;
+    private final Set<ProxyRef> cachedProxies = new HashSet<>();
+    private final ReferenceQueue<Object> collectedProxies = new ReferenceQueue<>();
+
+    RestClientCache(int maxSize) {
+        this.maxSize = maxSize;
+        this.proxies = new LinkedHashMap<Key, Object>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Object> eldest) {
+                // Evicted proxies are not closed, since a running test may still be using them
+                return size() > RestClientCache.this.maxSize;
+            }
+        };
+    }
+
+    public static RestClientCache instance() {
+        return INSTANCE;
+    }
+
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    /**
+     * Returns the cached proxy for the supplied key, or builds and caches a new one.
+     * The supplier is invoked outside of any lock, so that unrelated proxies can be built concurrently.
+     */
+    public <T> T get(Class<T> clazz, String basePath, Map<String, String> headers, Supplier<String> jwtSupplier,
+                     List<Class<?>> providers, String transport, Supplier<T> builder) {
+        if (!isEnabled())
+            return builder.get();
+
+        Key key = new Key(clazz, basePath, headers, jwtSupplier, providers, transport);
+        synchronized (this) {
+            Object cached = proxies.get(key);
+            if (cached != null) {
+                LOG.debug("Reusing cached rest client for " + clazz + " with base path: " + basePath);
+                return clazz.cast(cached);
+            }
+        }
+        T proxy = builder.get();
+        synchronized (this) {
+            // Another thread may have built the same proxy in the meantime
+            Object existing = proxies.putIfAbsent(key, proxy);
+            if (existing != null)
+                return clazz.cast(existing);
+            expungeCollectedProxies();
+            cachedProxies.add(new ProxyRef(proxy, collectedProxies));
+            return proxy;
+        }
+    }
+
+    /**
+     * @return True if the supplied proxy was ever handed out by this cache, and therefore must not be closed
+     *         by any individual test
+     */
+    public synchronized boolean isCached(Object proxy) {
+        expungeCollectedProxies();
+        return cachedProxies.contains(new ProxyRef(proxy, null));
+    }
+
+    synchronized int size() {
+        return proxies.size();
+    }
+
+    private void expungeCollectedProxies() {
+        for (Object ref; (ref = collectedProxies.poll()) != null;)
+            cachedProxies.remove(ref);
+    }
+
+    private static int getCacheSize() {
+        String value = System.getProperty(CACHE_SIZE_PROP, System.getenv(CACHE_SIZE_PROP));
+        if (value == null || value.isEmpty())
+            return DEFAULT_CACHE_SIZE;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            LOG.warn("Ignoring invalid value for " + CACHE_SIZE_PROP + ": " + value);
+            return DEFAULT_CACHE_SIZE;
+        }
+    }
+
+    /**
+     * Remembers a proxy by identity without keeping it reachable, since proxies may not implement equals()
+     */
+    private static class ProxyRef extends WeakReference<Object> {
+        private final int hash;
+
+        ProxyRef(Object proxy, ReferenceQueue<Object> queue) {
+            super(proxy, queue);
+            this.hash = System.identityHashCode(proxy);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof ProxyRef))
+                return false;
+            Object proxy = get();
+            return proxy != null && proxy == ((ProxyRef) obj).get();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static class Key {
+        private final Class<?> clazz;
+        private final String basePath;
+        private final Map<String, String> headers;
+        private final Supplier<String> jwtSupplier;
+        private final List<Class<?>> providers;
+        private final String transport;
+        private final int hash;
+
+        Key(Class<?> clazz, String basePath, Map<String, String> headers, Supplier<String> jwtSupplier, List<Class<?>> providers,
+            String transport) {
+            this.clazz = clazz;
+            this.basePath = basePath;
+            this.headers = new TreeMap<>(headers);
+            this.jwtSupplier = jwtSupplier;
+            this.providers = new ArrayList<>(providers);
+            this.transport = transport;
+            this.hash = Objects.hash(clazz, basePath, this.headers, jwtSupplier, this.providers, transport);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof Key))
+                return false;
+            Key other = (Key) obj;
+            return clazz == other.clazz &&
+                   basePath.equals(other.basePath) &&
+                   headers.equals(other.headers) &&
+                   Objects.equals(jwtSupplier, other.jwtSupplier) &&
+                   providers.equals(other.providers) &&
+                   transport.equals(other.transport);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
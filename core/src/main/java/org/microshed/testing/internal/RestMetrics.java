@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.internal;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the latency and payload sizes of calls made by REST clients, per resource method and test class.
+ * When a test class completes, a summary is logged and a JSON report is written to
+ * <code>build/microshed-testing/rest-metrics/&lt;test class&gt;.json</code> (or under <code>target/</code>).
+ * <p>
+ * Metrics are only collected if the <code>MICROSHED_TEST_REST_METRICS</code> system property or environment
+ * variable is set to <code>true</code>. Calls are attributed to the {@link CurrentTestClass current test class}.
+ */
+public final class RestMetrics {
+
+    private static final InternalLogger LOG = InternalLogger.get(RestMetrics.class);
+
+    public static final String METRICS_PROP = "MICROSHED_TEST_REST_METRICS";
+
+    private static final boolean enabled = Boolean.parseBoolean(System.getProperty(METRICS_PROP, System.getenv(METRICS_PROP)));
+
+    private static final Map<Class<?>, Map<String, Endpoint>> metrics = new ConcurrentHashMap<>();
+
+    private RestMetrics() {
+        // static utility
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Logs and writes a report of the calls made for the specified test class, if any
+     */
+    public static void endClass(Class<?> testClass) {
+        if (!enabled)
+            return;
+        Map<String, Endpoint> endpoints = metrics.remove(testClass);
+        if (endpoints == null || endpoints.isEmpty())
+            return;
+        Map<String, Endpoint> sorted = new TreeMap<>(endpoints);
+        log(testClass, sorted);
+        write(testClass, sorted);
+    }
+
+    /**
+     * @param endpoint The resource method that was called
+     * @param latencyNanos The time from sending the request until the response was received
+     * @param requestBytes The size of the request body
+     * @param responseBytes The size of the response body
+     */
+    public static void record(String endpoint, long latencyNanos, long requestBytes, long responseBytes) {
+        Class<?> testClass = CurrentTestClass.get();
+        if (testClass == null)
+            return;
+        Endpoint e = metrics.computeIfAbsent(testClass, c -> new ConcurrentHashMap<>())
+                        .computeIfAbsent(endpoint, k -> new Endpoint());
+        e.latencyMicros.record(TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+        e.requestBytes.record(requestBytes);
+        e.responseBytes.record(responseBytes);
+    }
+
+    private static void log(Class<?> testClass, Map<String, Endpoint> endpoints) {
+        int width = Math.max(8, endpoints.keySet().stream().mapToInt(String::length).max().orElse(0));
+        LOG.info("REST client latency for " + testClass.getName() + ":");
+        LOG.info(String.format("  %-" + width + "s %7s %9s %9s %9s %9s %11s %11s", "Endpoint", "Calls", "p50(ms)", "p90(ms)",
+                               "p99(ms)", "max(ms)", "avg req(B)", "avg resp(B)"));
+        for (Map.Entry<String, Endpoint> entry : endpoints.entrySet()) {
+            Histogram latency = entry.getValue().latencyMicros;
+            LOG.info(String.format("  %-" + width + "s %7d %9.2f %9.2f %9.2f %9.2f %11.0f %11.0f", entry.getKey(), latency.getCount(),
+                                   latency.getValueAtPercentile(50) / 1000.0, latency.getValueAtPercentile(90) / 1000.0,
+                                   latency.getValueAtPercentile(99) / 1000.0, latency.getMax() / 1000.0,
+                                   entry.getValue().requestBytes.getMean(), entry.getValue().responseBytes.getMean()));
+        }
+    }
+
+    private static void write(Class<?> testClass, Map<String, Endpoint> endpoints) {
+        Path dir = getReportDir();
+        if (dir == null)
+            return;
+        Path report = dir.resolve(testClass.getName() + ".json");
+        try {
+            Files.createDirectories(dir);
+            try (Writer w = Files.newBufferedWriter(report, StandardCharsets.UTF_8)) {
+                w.write("{\"testClass\":\"" + testClass.getName() + "\",\"endpoints\":[");
+                boolean first = true;
+                for (Map.Entry<String, Endpoint> entry : endpoints.entrySet()) {
+                    w.write(first ? "\n" : ",\n");
+                    first = false;
+                    Endpoint e = entry.getValue();
+                    w.write("  {\"endpoint\":\"" + escape(entry.getKey()) + "\",\"calls\":" + e.latencyMicros.getCount() +
+                            ",\"latencyMicros\":" + toJson(e.latencyMicros) +
+                            ",\"requestBytes\":" + toJson(e.requestBytes) +
+                            ",\"responseBytes\":" + toJson(e.responseBytes) + "}");
+                }
+                w.write("\n]}\n");
+            }
+            LOG.debug("Wrote REST client metrics to " + report.toAbsolutePath());
+        } catch (IOException e) {
+            LOG.debug("Unable to write REST client metrics to " + report, e);
+        }
+    }
+
+    private static String toJson(Histogram h) {
+        return "{\"p50\":" + h.getValueAtPercentile(50) + ",\"p90\":" + h.getValueAtPercentile(90) +
+               ",\"p99\":" + h.getValueAtPercentile(99) + ",\"max\":" + h.getMax() +
+               ",\"mean\":" + String.format(Locale.ROOT, "%.1f", h.getMean()) + "}";
+    }
+
+    private static String escape(String s) {
+        return s.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    private static Path getReportDir() {
+        if (Files.isDirectory(Paths.get("build")))
+            return Paths.get("build", "microshed-testing", "rest-metrics");
+        if (Files.isDirectory(Paths.get("target")))
+            return Paths.get("target", "microshed-testing", "rest-metrics");
+        return null;
+    }
+
+    private static class Endpoint {
+        final Histogram latencyMicros = new Histogram();
+        final Histogram requestBytes = new Histogram();
+        final Histogram responseBytes = new Histogram();
+    }
+
+}
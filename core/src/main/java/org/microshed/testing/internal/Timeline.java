@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.internal;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Records the duration of each phase of the test environment lifecycle, and writes them as a
+ * <a href="https://docs.google.com/document/d/1CvAClvFfyA5R-PhYUmn5OOQtYMH4h6I0nSsKchNAySU">Chrome trace-event</a>
+ * JSON file that can be opened with <code>chrome://tracing</code> or <a href="https://ui.perfetto.dev">Perfetto</a>.
+ * <p>
+ * By default the timeline is written to <code>build/microshed-testing/timeline-&lt;pid&gt;.json</code>
+ * or <code>target/microshed-testing/timeline-&lt;pid&gt;.json</code> when the test plan finishes and when the JVM exits.
+ * The <code>MICROSHED_TEST_TIMELINE</code> system property or environment variable may be set to a file or directory
+ * to write the timeline to instead, or to <code>false</code> to disable recording.
+ */
+public final class Timeline {
+
+    private static final InternalLogger LOG = InternalLogger.get(Timeline.class);
+
+    public static final String TIMELINE_PROP = "MICROSHED_TEST_TIMELINE";
+
+    // Bounds memory use in very long test runs, where phases are recorded for each test instance
+    private static final int MAX_EVENTS = 100_000;
+
+    private static final Span NOOP = new Span(null, null, 0);
+
+    private static final long originNanos = System.nanoTime();
+    private static final long originMicros = System.currentTimeMillis() * 1000;
+    private static final String pid = ProcessId.get();
+    private static final Recorder recorder = new Recorder(resolveOutput(System.getProperty(TIMELINE_PROP, System.getenv(TIMELINE_PROP))),
+                                                          MAX_EVENTS);
+
+    static {
+        if (recorder.isEnabled())
+            Runtime.getRuntime().addShutdownHook(new Thread(Timeline::write, "microshed-timeline-writer"));
+    }
+
+    private Timeline() {
+        // static utility
+    }
+
+    public static boolean isEnabled() {
+        return recorder.isEnabled();
+    }
+
+    /**
+     * Begins a phase on the current thread. The phase ends when the returned span is closed, which
+     * is typically done with a try-with-resources block.
+     *
+     * @param category The category of the phase, such as <code>container</code> or <code>injection</code>
+     * @param name The name of the phase
+     */
+    public static Span begin(String category, String name) {
+        if (!recorder.isEnabled())
+            return NOOP;
+        return new Span(category, name, System.nanoTime());
+    }
+
+    /**
+     * @return A timestamp for use with {@link #record(String, String, long, long)}
+     */
+    public static long now() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Records a phase that ended on the current thread
+     *
+     * @param startNanos The start of the phase, as returned by {@link #now()}
+     * @param endNanos The end of the phase, as returned by {@link #now()}
+     */
+    public static void record(String category, String name, long startNanos, long endNanos) {
+        recorder.record(category, name, startNanos, endNanos);
+    }
+
+    /**
+     * Writes all phases that have been recorded so far
+     */
+    public static void write() {
+        recorder.write();
+    }
+
+    private static long toMicros(long nanos) {
+        return originMicros + (nanos - originNanos) / 1000;
+    }
+
+    private static void quote(StringBuilder sb, String value) {
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\')
+                sb.append('\\').append(c);
+            else if (c < 0x20)
+                sb.append(String.format("\\u%04x", (int) c));
+            else
+                sb.append(c);
+        }
+        sb.append('"');
+    }
+
+    /**
+     * @param value The value of the <code>MICROSHED_TEST_TIMELINE</code> property, if set
+     * @return The file to write the timeline to, or <code>null</code> if the timeline should not be recorded
+     */
+    static Path resolveOutput(String value) {
+        String fileName = "timeline-" + pid + ".json";
+        if ("false".equalsIgnoreCase(value))
+            return null;
+        if (value != null && !value.isEmpty() && !"true".equalsIgnoreCase(value)) {
+            Path path = Paths.get(value);
+            return Files.isDirectory(path) ? path.resolve(fileName) : path;
+        }
+        if (Files.isDirectory(Paths.get("build")))
+            return Paths.get("build", "microshed-testing", fileName);
+        if (Files.isDirectory(Paths.get("target")))
+            return Paths.get("target", "microshed-testing", fileName);
+        return null;
+    }
+
+    /**
+     * Collects the recorded phases until they are written to the output file
+     */
+    static final class Recorder {
+
+        private final Path output;
+        private final int maxEvents;
+        private final Queue<String> events = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger eventCount = new AtomicInteger();
+        private final Map<Long, String> threadNames = new ConcurrentHashMap<>();
+
+        /**
+         * @param output The file to write the timeline to, or <code>null</code> to not record anything
+         * @param maxEvents The number of phases after which further phases are not recorded
+         */
+        Recorder(Path output, int maxEvents) {
+            this.output = output;
+            this.maxEvents = maxEvents;
+        }
+
+        boolean isEnabled() {
+            return output != null;
+        }
+
+        void record(String category, String name, long startNanos, long endNanos) {
+            if (output == null)
+                return;
+            if (eventCount.incrementAndGet() > maxEvents) {
+                if (eventCount.get() == maxEvents + 1)
+                    LOG.debug("Timeline reached " + maxEvents + " events. Further events will not be recorded.");
+                return;
+            }
+            Thread thread = Thread.currentThread();
+            threadNames.putIfAbsent(thread.getId(), thread.getName());
+            StringBuilder sb = new StringBuilder(128);
+            sb.append("{\"name\":");
+            quote(sb, name);
+            sb.append(",\"cat\":");
+            quote(sb, category);
+            sb.append(",\"ph\":\"X\",\"ts\":").append(toMicros(startNanos))
+                            .append(",\"dur\":").append(Math.max(0, (endNanos - startNanos) / 1000))
+                            .append(",\"pid\":").append(pid)
+                            .append(",\"tid\":").append(thread.getId())
+                            .append('}');
+            events.add(sb.toString());
+        }
+
+        synchronized void write() {
+            if (output == null || events.isEmpty())
+                return;
+            List<String> all = new ArrayList<>(events);
+            all.add("{\"name\":\"process_name\",\"ph\":\"M\",\"pid\":" + pid + ",\"args\":{\"name\":\"MicroShed Testing (pid " + pid + ")\"}}");
+            for (Map.Entry<Long, String> thread : threadNames.entrySet()) {
+                StringBuilder sb = new StringBuilder("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":").append(pid)
+                                .append(",\"tid\":").append(thread.getKey())
+                                .append(",\"args\":{\"name\":");
+                quote(sb, thread.getValue());
+                all.add(sb.append("}}").toString());
+            }
+            try {
+                Files.createDirectories(output.toAbsolutePath().getParent());
+                Path tmp = Files.createTempFile(output.toAbsolutePath().getParent(), output.getFileName().toString(), ".tmp");
+                try (Writer w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                    w.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[\n");
+                    for (int i = 0; i < all.size(); i++) {
+                        w.write(all.get(i));
+                        w.write(i < all.size() - 1 ? ",\n" : "\n");
+                    }
+                    w.write("]}\n");
+                }
+                Files.move(tmp, output, StandardCopyOption.REPLACE_EXISTING);
+                LOG.debug("Wrote " + all.size() + " timeline events to " + output.toAbsolutePath());
+            } catch (IOException e) {
+                LOG.debug("Unable to write timeline to " + output, e);
+            }
+        }
+    }
+
+    /**
+     * A phase that is in progress on the thread that began it
+     */
+    public static final class Span implements AutoCloseable {
+
+        private final String category;
+        private final String name;
+        private final long startNanos;
+
+        private Span(String category, String name, long startNanos) {
+            this.category = category;
+            this.name = name;
+            this.startNanos = startNanos;
+        }
+
+        @Override
+        public void close() {
+            if (this != NOOP)
+                record(category, name, startNanos, System.nanoTime());
+        }
+    }
+
+}
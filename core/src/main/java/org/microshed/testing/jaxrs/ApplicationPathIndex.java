@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.jaxrs;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.ws.rs.ApplicationPath;
+import javax.ws.rs.core.Application;
+
+import org.junit.platform.commons.support.AnnotationSupport;
+import org.junit.platform.commons.support.ReflectionSupport;
+import org.microshed.testing.internal.InternalLogger;
+
+/**
+ * Locates classes annotated with {@link ApplicationPath}, preferring the index written by
+ * {@link ApplicationPathProcessor} and falling back to classpath scanning. Scan results are
+ * kept for the life of the JVM, so that each package is scanned at most once.
+ */
+class ApplicationPathIndex {
+
+    private static final InternalLogger LOG = InternalLogger.get(ApplicationPathIndex.class);
+
+    private static volatile Map<String, String> index;
+
+    private static final Map<String, Map<String, String>> scannedPackages = new ConcurrentHashMap<>();
+
+    private ApplicationPathIndex() {
+    }
+
+    /**
+     * @return A sorted map of class name to application path for every class in the specified package,
+     *         or any of its sub-packages, that extends {@link Application} and is annotated with
+     *         {@link ApplicationPath}
+     */
+    static Map<String, String> findApplicationPaths(String pkg) {
+        Map<String, String> found = new TreeMap<>();
+        for (Map.Entry<String, String> entry : getIndex().entrySet()) {
+            if (entry.getKey().startsWith(pkg + '.'))
+                found.put(entry.getKey(), entry.getValue());
+        }
+        if (!found.isEmpty())
+            return found;
+        return scannedPackages.computeIfAbsent(pkg, ApplicationPathIndex::scan);
+    }
+
+    private static Map<String, String> scan(String pkg) {
+        long start = System.currentTimeMillis();
+        Map<String, String> found = new TreeMap<>();
+        ReflectionSupport.findAllClassesInPackage(pkg,
+                                                  c -> Application.class.isAssignableFrom(c) &&
+                                                       AnnotationSupport.isAnnotated(c, ApplicationPath.class),
+                                                  n -> true)
+                        .forEach(c -> found.put(c.getName(), AnnotationSupport.findAnnotation(c, ApplicationPath.class).get().value()));
+        LOG.debug("Scanned pkg " + pkg + " for ApplicationPath classes in " + (System.currentTimeMillis() - start) + "ms");
+        return Collections.unmodifiableMap(found);
+    }
+
+    private static Map<String, String> getIndex() {
+        Map<String, String> result = index;
+        if (result == null) {
+            synchronized (ApplicationPathIndex.class) {
+                result = index;
+                if (result == null)
+                    index = result = loadIndex();
+            }
+        }
+        return result;
+    }
+
+    private static Map<String, String> loadIndex() {
+        Map<String, String> result = new TreeMap<>();
+        ClassLoader cl = Thread.currentThread().getContextClassLoader();
+        if (cl == null)
+            cl = ApplicationPathIndex.class.getClassLoader();
+        try {
+            Enumeration<URL> indexes = cl.getResources(ApplicationPathProcessor.INDEX_LOCATION);
+            while (indexes.hasMoreElements()) {
+                URL url = indexes.nextElement();
+                try (BufferedReader r = new BufferedReader(new InputStreamReader(url.openStream(), StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = r.readLine()) != null) {
+                        int split = line.indexOf('=');
+                        if (split > 0)
+                            result.put(line.substring(0, split).trim(), line.substring(split + 1).trim());
+                    }
+                }
+                LOG.debug("Loaded ApplicationPath index from " + url);
+            }
+        } catch (IOException e) {
+            LOG.warn("Unable to read " + ApplicationPathProcessor.INDEX_LOCATION + " from the classpath", e);
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.jaxrs;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * An annotation processor that records every subclass of <code>javax.ws.rs.core.Application</code> that is annotated
+ * with <code>javax.ws.rs.ApplicationPath</code> in a <code>META-INF/microshed/application-paths</code> index at compile
+ * time. When the index is present on the test classpath, {@link RestClientBuilder} uses it to locate the JAX-RS
+ * application path of a REST client instead of scanning the classpath.
+ * <p>
+ * The processor is not registered as a service, so it never runs implicitly. To generate the index, add
+ * <code>microshed-testing-core</code> to the annotation processor path of the project that contains the JAX-RS
+ * application, and name the processor explicitly. For example, in Gradle:
+ *
+ * <pre>
+ * <code>
+ * annotationProcessor 'org.microshed:microshed-testing-core:VERSION'
+ * compileJava.options.compilerArgs += ['-processor', 'org.microshed.testing.jaxrs.ApplicationPathProcessor']
+ * </code>
+ * </pre>
+ */
+@SupportedAnnotationTypes(ApplicationPathProcessor.APPLICATION_PATH)
+public class ApplicationPathProcessor extends AbstractProcessor {
+
+    static final String APPLICATION_PATH = "javax.ws.rs.ApplicationPath";
+
+    static final String APPLICATION = "javax.ws.rs.core.Application";
+
+    static final String INDEX_LOCATION = "META-INF/microshed/application-paths";
+
+    private final Map<String, String> applicationPaths = new TreeMap<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        TypeElement application = processingEnv.getElementUtils().getTypeElement(APPLICATION);
+        for (TypeElement annotation : annotations) {
+            for (Element e : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (!(e instanceof TypeElement))
+                    continue;
+                if (application == null || !isSubtype(e.asType(), application.asType())) {
+                    // The JAX-RS runtime ignores the annotation on other classes, so the REST client must as well
+                    processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                                                             "Ignoring @ApplicationPath on a class that does not extend " + APPLICATION, e);
+                    continue;
+                }
+                String className = processingEnv.getElementUtils().getBinaryName((TypeElement) e).toString();
+                String path = getApplicationPath(e);
+                if (path != null)
+                    applicationPaths.put(className, path);
+            }
+        }
+        if (roundEnv.processingOver() && !applicationPaths.isEmpty())
+            writeIndex();
+        // Other processors may also be interested in @ApplicationPath
+        return false;
+    }
+
+    private boolean isSubtype(TypeMirror type, TypeMirror supertype) {
+        return processingEnv.getTypeUtils().isSubtype(processingEnv.getTypeUtils().erasure(type),
+                                                      processingEnv.getTypeUtils().erasure(supertype));
+    }
+
+    private static String getApplicationPath(Element e) {
+        for (AnnotationMirror mirror : e.getAnnotationMirrors()) {
+            if (!APPLICATION_PATH.equals(mirror.getAnnotationType().toString()))
+                continue;
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> value : mirror.getElementValues().entrySet()) {
+                if (value.getKey().getSimpleName().contentEquals("value"))
+                    return String.valueOf(value.getValue().getValue());
+            }
+        }
+        return null;
+    }
+
+    private void writeIndex() {
+        try {
+            FileObject index = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", INDEX_LOCATION);
+            try (Writer w = new OutputStreamWriter(index.openOutputStream(), StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, String> entry : applicationPaths.entrySet())
+                    w.write(entry.getKey() + '=' + entry.getValue() + '\n');
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                                                     "Unable to write " + INDEX_LOCATION + ": " + e.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.jaxrs;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import javax.ws.rs.client.InvocationCallback;
+
+import org.apache.cxf.jaxrs.client.WebClient;
+
+/**
+ * A REST client whose requests complete asynchronously. Requests are sent using the same JAX-RS interface
+ * or class that a regular {@link RESTClient} is built for, and the call returns as soon as the request was
+ * handed to the HTTP transport, so that a single thread can have many requests in flight at once.
+ * For example:
+ *
+ * <pre>
+ * <code>
+ * AsyncRestClient&lt;PersonService&gt; client = new RestClientBuilder().buildAsync(PersonService.class);
+ * List&lt;CompletableFuture&lt;Person&gt;&gt; people = new ArrayList&lt;&gt;();
+ * for (long id : ids)
+ *   people.add(client.call(svc -&gt; svc.getPerson(id)).toCompletableFuture());
+ * CompletableFuture.allOf(people.toArray(new CompletableFuture[0])).join();
+ * </code>
+ * </pre>
+ *
+ * When the <code>cxf-rt-transports-http-hc</code> transport is on the classpath, which is the case by default,
+ * responses are received using non-blocking I/O. Otherwise responses are received on a bounded pool of
+ * transport threads. Methods of the underlying interface with a primitive return type can not be called
+ * asynchronously, since the result is not known when the method returns.
+ *
+ * @param <T> The JAX-RS interface or class that requests are sent with
+ */
+public class AsyncRestClient<T> implements AutoCloseable {
+
+    private final T proxy;
+    private final Class<T> clazz;
+
+    AsyncRestClient(T proxy, Class<T> clazz) {
+        this.proxy = proxy;
+        this.clazz = clazz;
+    }
+
+    /**
+     * Sends the request made by the supplied invocation asynchronously. The value returned by the invocation
+     * itself is meaningless and is ignored.
+     *
+     * @param invocation Calls a single method of the supplied REST client, for example <code>svc -&gt; svc.getPerson(id)</code>
+     * @return A stage that is completed with the response entity, or completed exceptionally with the same exception
+     *         that a synchronous call would have thrown
+     */
+    public <R> CompletionStage<R> call(Function<T, R> invocation) {
+        Objects.requireNonNull(invocation, "Supplied 'invocation' must not be null");
+        CompletableFuture<R> result = new CompletableFuture<>();
+        dispatch(invocation::apply, result);
+        return result;
+    }
+
+    /**
+     * Sends the request made by the supplied invocation asynchronously. Use this for methods that return <code>void</code>.
+     *
+     * @param invocation Calls a single method of the supplied REST client, for example <code>svc -&gt; svc.deletePerson(id)</code>
+     * @return A stage that is completed once the response is received
+     */
+    public CompletionStage<Void> run(Consumer<T> invocation) {
+        Objects.requireNonNull(invocation, "Supplied 'invocation' must not be null");
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        dispatch(invocation, result);
+        return result;
+    }
+
+    /**
+     * @return The JAX-RS interface or class that requests are sent with
+     */
+    public Class<T> getResourceClass() {
+        return clazz;
+    }
+
+    private <R> void dispatch(Consumer<T> invocation, CompletableFuture<R> result) {
+        InvocationCallback<Object> callback = new InvocationCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public void completed(Object response) {
+                result.complete((R) response);
+            }
+
+            @Override
+            public void failed(Throwable t) {
+                result.completeExceptionally(t);
+            }
+        };
+        // The callback is picked up from the request context when the request is sent, which happens before the
+        // proxy method returns. Sending is serialized, but waiting for responses is not.
+        synchronized (this) {
+            Map<String, Object> requestContext = WebClient.getConfig(proxy).getRequestContext();
+            requestContext.put(InvocationCallback.class.getName(), callback);
+            try {
+                invocation.accept(proxy);
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            } finally {
+                requestContext.remove(InvocationCallback.class.getName());
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        WebClient.client(proxy).close();
+    }
+
+    @Override
+    public String toString() {
+        return "AsyncRestClient[" + clazz.getName() + "]";
+    }
+}
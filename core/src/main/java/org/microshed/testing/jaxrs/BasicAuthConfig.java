@@ -26,10 +26,10 @@ import java.lang.annotation.Target;
 /**
  * Used to annotate a REST Client to configure Basic Authorization
  * that will be applied to all of its HTTP invocations.
- * In order for this annotation to have any effect, the field must also
+ * In order for this annotation to have any effect, the field or parameter must also
  * be annotated with {@link RESTClient}.
  */
-@Target({ ElementType.FIELD })
+@Target({ ElementType.FIELD, ElementType.PARAMETER })
 @Retention(RetentionPolicy.RUNTIME)
 public @interface BasicAuthConfig {
 
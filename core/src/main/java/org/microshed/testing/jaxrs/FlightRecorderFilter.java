@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.jaxrs;
+
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientRequestFilter;
+import javax.ws.rs.client.ClientResponseContext;
+import javax.ws.rs.client.ClientResponseFilter;
+
+import org.microshed.testing.internal.FlightEvent;
+import org.microshed.testing.internal.FlightEvents;
+
+/**
+ * Records a <code>microshed.RestClientCall</code> flight recorder event for each request, from when the
+ * request is sent until the response is received. Requests that fail without a response are not recorded.
+ */
+class FlightRecorderFilter implements ClientRequestFilter, ClientResponseFilter {
+
+    static final String EVENT_PROP = FlightRecorderFilter.class.getName() + ".event";
+
+    @Override
+    public void filter(ClientRequestContext request) {
+        FlightEvent event = FlightEvents.restClientCall(request.getMethod(), String.valueOf(request.getUri()));
+        if (event != FlightEvent.NOOP)
+            request.setProperty(EVENT_PROP, event);
+    }
+
+    @Override
+    public void filter(ClientRequestContext request, ClientResponseContext response) {
+        Object event = request.getProperty(EVENT_PROP);
+        if (event instanceof FlightEvent) {
+            request.removeProperty(EVENT_PROP);
+            ((FlightEvent) event).withStatus(response.getStatus()).close();
+        }
+    }
+
+}
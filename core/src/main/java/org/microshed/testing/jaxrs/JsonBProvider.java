@@ -18,12 +18,15 @@
  */
 package org.microshed.testing.jaxrs;
 
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.PushbackInputStream;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
-import java.util.Scanner;
+import java.nio.charset.StandardCharsets;
 
 import javax.json.bind.Jsonb;
 import javax.json.bind.JsonbBuilder;
@@ -38,6 +41,13 @@ import javax.ws.rs.ext.Provider;
 
 import org.microshed.testing.internal.InternalLogger;
 
+/**
+ * A JSON-B provider that reads and writes entities directly from and to the entity streams.
+ * <p>
+ * Request and response payloads are logged, truncated to the number of bytes set by the
+ * <code>MICROSHED_TEST_PAYLOAD_LOG_LIMIT</code> system property or environment variable (1024 by default).
+ * A value of 0 disables payload logging.
+ */
 @Provider
 @Produces({ "*/*" })
 @Consumes({ "*/*" })
@@ -46,6 +56,19 @@ public class JsonBProvider implements MessageBodyWriter<Object>, MessageBodyRead
     private static final Jsonb jsonb = JsonbBuilder.create();
     private static final InternalLogger LOG = InternalLogger.get(JsonBProvider.class);
 
+    public static final String PAYLOAD_LOG_LIMIT = "MICROSHED_TEST_PAYLOAD_LOG_LIMIT";
+
+    private static final int DEFAULT_PAYLOAD_LOG_LIMIT = 1024;
+    private final int payloadLogLimit;
+
+    public JsonBProvider() {
+        this(getPayloadLogLimit());
+    }
+
+    JsonBProvider(int payloadLogLimit) {
+        this.payloadLogLimit = payloadLogLimit;
+    }
+
     @Override
     public boolean isReadable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
         return true;
@@ -54,15 +77,23 @@ public class JsonBProvider implements MessageBodyWriter<Object>, MessageBodyRead
     @Override
     public Object readFrom(Class<Object> clazz, Type genericType, Annotation[] annotations,
                            MediaType mediaType, MultivaluedMap<String, String> httpHeaders, InputStream entityStream) throws IOException, WebApplicationException {
-        String stringResult = convertStreamToString(entityStream);
-        LOG.info("Response from server: " + stringResult);
-        return jsonb.fromJson(stringResult, genericType);
-    }
+        PushbackInputStream in = new PushbackInputStream(entityStream);
+        int first = in.read();
+        if (first == -1) {
+            if (payloadLogLimit > 0)
+                logPayload("Response from server: ");
+            return null;
+        }
+        in.unread(first);
 
-    @SuppressWarnings("resource")
-    private static String convertStreamToString(java.io.InputStream is) {
-        try (Scanner s = new Scanner(is).useDelimiter("\\A")) {
-            return s.hasNext() ? s.next() : "";
+        if (payloadLogLimit <= 0)
+            return jsonb.fromJson(in, genericType);
+
+        CapturingInputStream captured = new CapturingInputStream(in, payloadLogLimit);
+        try {
+            return jsonb.fromJson(captured, genericType);
+        } finally {
+            logPayload("Response from server: " + captured.payload.describe());
         }
     }
 
@@ -74,8 +105,114 @@ public class JsonBProvider implements MessageBodyWriter<Object>, MessageBodyRead
     @Override
     public void writeTo(Object obj, Class<?> type, Type genericType, Annotation[] annotations,
                         MediaType mediaType, MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) throws IOException, WebApplicationException {
-        String strData = jsonb.toJson(obj);
-        LOG.info("Sending data to server: " + strData);
-        jsonb.toJson(obj, entityStream);
+        if (payloadLogLimit <= 0) {
+            jsonb.toJson(obj, entityStream);
+            return;
+        }
+
+        CapturingOutputStream captured = new CapturingOutputStream(entityStream, payloadLogLimit);
+        try {
+            jsonb.toJson(obj, captured);
+        } finally {
+            logPayload("Sending data to server: " + captured.payload.describe());
+        }
+    }
+
+    void logPayload(String message) {
+        LOG.info(message);
+    }
+
+    private static int getPayloadLogLimit() {
+        String value = System.getProperty(PAYLOAD_LOG_LIMIT, System.getenv(PAYLOAD_LOG_LIMIT));
+        if (value == null || value.isEmpty())
+            return DEFAULT_PAYLOAD_LOG_LIMIT;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            LOG.warn("Ignoring invalid value for " + PAYLOAD_LOG_LIMIT + ": " + value);
+            return DEFAULT_PAYLOAD_LOG_LIMIT;
+        }
+    }
+
+    /**
+     * Keeps the first <code>limit</code> bytes of a payload for logging, and counts the rest
+     */
+    private static class Payload {
+        private final byte[] head;
+        private int headSize;
+        private long total;
+
+        Payload(int limit) {
+            head = new byte[limit];
+        }
+
+        void record(int b) {
+            if (headSize < head.length)
+                head[headSize++] = (byte) b;
+            total++;
+        }
+
+        void record(byte[] b, int off, int len) {
+            int copy = Math.min(len, head.length - headSize);
+            if (copy > 0) {
+                System.arraycopy(b, off, head, headSize, copy);
+                headSize += copy;
+            }
+            total += len;
+        }
+
+        String describe() {
+            String str = new String(head, 0, headSize, StandardCharsets.UTF_8);
+            if (total > headSize)
+                return str + "... (truncated, " + total + " bytes total)";
+            return str;
+        }
+    }
+
+    private static class CapturingInputStream extends FilterInputStream {
+        final Payload payload;
+
+        CapturingInputStream(InputStream in, int limit) {
+            super(in);
+            payload = new Payload(limit);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1)
+                payload.record(b);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0)
+                payload.record(b, off, read);
+            return read;
+        }
+    }
+
+    private static class CapturingOutputStream extends FilterOutputStream {
+        final Payload payload;
+
+        CapturingOutputStream(OutputStream out, int limit) {
+            super(out);
+            payload = new Payload(limit);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            payload.record(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            // FilterOutputStream would otherwise write one byte at a time
+            out.write(b, off, len);
+            payload.record(b, off, len);
+        }
     }
-}
\ No newline at end of file
+}
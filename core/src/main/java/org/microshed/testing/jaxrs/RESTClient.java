@@ -25,7 +25,9 @@ import java.lang.annotation.Target;
 
 /**
  * Identifies an injection point for a JAX-RS REST Client.
- * The annotated field MUST be <code>public static</code> and non-final.
+ * The annotated field MUST be non-final, and if it is static it MUST also be <code>public</code>.
+ * Constructor and test method parameters may also be annotated, in which case the client is
+ * closed once the test instance or test method that it was created for is finished.
  * Any method calls to the injected object will be translated to an equivalent
  * REST request via HTTP. For example, consider the following JAX-RS endpoint
  * running at <code>http://localhost:8080/myservice/</code>
@@ -62,8 +64,11 @@ import java.lang.annotation.Target;
  * And a call to <code>svc.sayHello()</code> would result in an HTTP GET reqest to
  * <code>http://localhost:8080/myservice/hello</code> that returns a value of
  * <code>Hello</code> as a Java String object.
+ * <p>
+ * To send requests asynchronously, declare the injection point as an {@link AsyncRestClient} of the
+ * resource class instead, for example <code>&#64;RESTClient AsyncRestClient&lt;MyService&gt; svc</code>.
  */
-@Target({ ElementType.FIELD })
+@Target({ ElementType.FIELD, ElementType.PARAMETER })
 @Retention(RetentionPolicy.RUNTIME)
 public @interface RESTClient {
 
@@ -19,6 +19,8 @@
 package org.microshed.testing.jaxrs;
 
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Base64;
 import java.util.Collections;
@@ -26,17 +28,29 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 import javax.ws.rs.ApplicationPath;
-import javax.ws.rs.core.Application;
+import javax.ws.rs.client.ClientRequestFilter;
 import javax.ws.rs.ext.MessageBodyReader;
 import javax.ws.rs.ext.MessageBodyWriter;
 
+import org.apache.cxf.Bus;
+import org.apache.cxf.BusFactory;
+import org.apache.cxf.bus.CXFBusFactory;
 import org.apache.cxf.jaxrs.client.JAXRSClientFactoryBean;
+import org.apache.cxf.jaxrs.client.WebClient;
+import org.apache.cxf.transport.http.HTTPConduit;
+import org.apache.cxf.transports.http.configuration.ConnectionType;
+import org.apache.cxf.transports.http.configuration.HTTPClientPolicy;
 import org.junit.platform.commons.support.AnnotationSupport;
-import org.junit.platform.commons.support.ReflectionSupport;
 import org.microshed.testing.ApplicationEnvironment;
+import org.microshed.testing.internal.FlightEvents;
 import org.microshed.testing.internal.InternalLogger;
+import org.microshed.testing.internal.RestClientCache;
+import org.microshed.testing.internal.RestMetrics;
+import org.microshed.testing.jwt.JwtMinter;
 
 /**
  * A builder class for creating REST Client instances based on JAX-RS interfaces
@@ -46,11 +60,30 @@ public class RestClientBuilder {
 
     private static final InternalLogger LOG = InternalLogger.get(RestClientBuilder.class);
 
+    // Properties of the HttpClient based conduit, which are read when the conduit factory of a bus is created
+    private static final String ASYNC_USE_POLICY = "org.apache.cxf.transport.http.async.usePolicy";
+    private static final String ASYNC_MAX_CONNECTIONS = "org.apache.cxf.transport.http.async.MAX_CONNECTIONS";
+    private static final String ASYNC_MAX_PER_HOST_CONNECTIONS = "org.apache.cxf.transport.http.async.MAX_PER_HOST_CONNECTIONS";
+
+    // Clients with a dedicated connection pool share a bus per pool size
+    private static final Map<Integer, Bus> pooledBuses = new ConcurrentHashMap<>();
+
+    // Selects the HttpClient based conduit of cxf-rt-transports-http-hc, if it is on the classpath
+    private static final String USE_ASYNC_CONDUIT = "use.async.http.conduit";
+
+    private static final Map<Class<?>, String> applicationPaths = new ConcurrentHashMap<>();
+
     private String appContextRoot;
     private String jaxrsPath;
     private String jwt;
     private String basicAuth;
     private List<Class<?>> providers;
+    private boolean cache;
+    private Supplier<String> jwtSupplier;
+    private Duration connectTimeout;
+    private Duration receiveTimeout;
+    private boolean keepAlive = true;
+    private int maxConnections;
     private final Map<String, String> headers = new HashMap<>();
 
     /**
@@ -84,14 +117,28 @@ public class RestClientBuilder {
      */
     public RestClientBuilder withJwt(String jwt) {
         Objects.requireNonNull(jwt, "Supplied 'jwt' must not be null");
-        if (basicAuth != null)
-            throw new IllegalArgumentException("Cannot configure JWT and Basic Auth on the same REST client");
+        if (basicAuth != null || jwtSupplier != null)
+            throw new IllegalArgumentException("Cannot configure more than one type of auth on the same REST client");
         this.jwt = jwt;
         headers.put("Authorization", "Bearer " + jwt);
         LOG.debug("Using provided JWT auth header: " + jwt);
         return this;
     }
 
+    /**
+     * @param jwtSupplier Supplies the JWT (Json Web Token) to apply as an Authorization header. The supplier
+     *            is called for every request, so it may return a different token for each thread, for example
+     *            using {@link org.microshed.testing.jwt.JwtMinter#perThread(String, String...)}
+     * @return The same builder instance
+     */
+    public RestClientBuilder withJwt(Supplier<String> jwtSupplier) {
+        Objects.requireNonNull(jwtSupplier, "Supplied 'jwtSupplier' must not be null");
+        if (basicAuth != null || jwt != null)
+            throw new IllegalArgumentException("Cannot configure more than one type of auth on the same REST client");
+        this.jwtSupplier = jwtSupplier;
+        return this;
+    }
+
     /**
      * @param user The username portion of the Basic auth header
      * @param password The password portion of the Basic auth header
@@ -100,7 +147,7 @@ public class RestClientBuilder {
     public RestClientBuilder withBasicAuth(String user, String password) {
         Objects.requireNonNull(user, "Supplied 'user' must not be null");
         Objects.requireNonNull(password, "Supplied 'password' must not be null");
-        if (jwt != null)
+        if (jwt != null || jwtSupplier != null)
             throw new IllegalArgumentException("Cannot configure JWT and Basic Auth on the same REST client");
         String unEncoded = user + ":" + password;
         this.basicAuth = Base64.getEncoder().encodeToString(unEncoded.getBytes(StandardCharsets.UTF_8));
@@ -133,7 +180,89 @@ public class RestClientBuilder {
         return this;
     }
 
+    /**
+     * @param timeout The maximum time to wait for a connection to be established. If unspecified, the
+     *            transport default is used.
+     * @return The same builder instance
+     */
+    public RestClientBuilder withConnectTimeout(Duration timeout) {
+        Objects.requireNonNull(timeout, "Supplied 'timeout' must not be null");
+        this.connectTimeout = timeout;
+        return this;
+    }
+
+    /**
+     * @param timeout The maximum time to wait for a response. Lowering this makes requests to endpoints that hang
+     *            fail fast instead of blocking the test. If unspecified, the transport default is used.
+     * @return The same builder instance
+     */
+    public RestClientBuilder withReceiveTimeout(Duration timeout) {
+        Objects.requireNonNull(timeout, "Supplied 'timeout' must not be null");
+        this.receiveTimeout = timeout;
+        return this;
+    }
+
+    /**
+     * @param keepAlive If true (the default), connections are kept open and reused for later requests.
+     *            If false, a new connection is established for every request.
+     * @return The same builder instance
+     */
+    public RestClientBuilder withKeepAlive(boolean keepAlive) {
+        this.keepAlive = keepAlive;
+        return this;
+    }
+
+    /**
+     * Sends all requests, including synchronous ones, through the HttpClient based transport of
+     * <code>cxf-rt-transports-http-hc</code>, which keeps a pool of connections per host. Without a pool,
+     * the JVM-wide keep-alive cache of <code>HttpURLConnection</code> is used, which only retains
+     * 5 idle connections per host by default.
+     *
+     * @param maxConnections The maximum number of pooled connections per host, or 0 to not use a dedicated pool
+     * @return The same builder instance
+     */
+    public RestClientBuilder withConnectionPool(int maxConnections) {
+        if (maxConnections < 0)
+            throw new IllegalArgumentException("Supplied 'maxConnections' must not be negative: " + maxConnections);
+        this.maxConnections = maxConnections;
+        return this;
+    }
+
+    /**
+     * @param cache If true, a previously built REST client for the same class, base path, headers, providers, and transport
+     *            may be returned instead of building a new one. Cached REST clients are thread safe and are shared
+     *            by all callers, so they must not be closed or reconfigured. Clients that get their JWT from a supplier
+     *            are only cached if the supplier was created with {@link JwtMinter#supplier(String, String, String...)}.
+     * @return The same builder instance
+     */
+    public RestClientBuilder withCache(boolean cache) {
+        this.cache = cache;
+        return this;
+    }
+
     public <T> T build(Class<T> clazz) {
+        String basePath = resolveBasePath(clazz);
+        // Tokens from a supplier are resolved per request, so the proxy can only be shared if equal suppliers
+        // always supply equivalent tokens
+        if (!cache || (jwtSupplier != null && !(jwtSupplier instanceof JwtMinter.TokenSupplier)))
+            return create(clazz, basePath, jwtSupplier != null, false);
+        return RestClientCache.instance().get(clazz, basePath, headers, jwtSupplier, providers, describeTransport(),
+                                              () -> create(clazz, basePath, true, false));
+    }
+
+    /**
+     * Builds a REST client that sends requests asynchronously, so that a single thread can have many
+     * requests in flight at once. Asynchronous clients are never cached.
+     *
+     * @param clazz The JAX-RS interface or class that requests are sent with
+     * @return A new asynchronous REST client, which should be closed once it is no longer used
+     */
+    public <T> AsyncRestClient<T> buildAsync(Class<T> clazz) {
+        String basePath = resolveBasePath(clazz);
+        return new AsyncRestClient<>(create(clazz, basePath, false, true), clazz);
+    }
+
+    private String resolveBasePath(Class<?> clazz) {
         // Apply default values if unspecified
         if (appContextRoot == null)
             appContextRoot = ApplicationEnvironment.Resolver.load().getApplicationURL();
@@ -142,17 +271,92 @@ public class RestClientBuilder {
         if (providers == null)
             providers = Collections.singletonList(JsonBProvider.class);
 
+        return join(appContextRoot, jaxrsPath);
+    }
+
+    private <T> T create(Class<T> clazz, String basePath, boolean threadSafe, boolean async) {
         JAXRSClientFactoryBean bean = new org.apache.cxf.jaxrs.client.JAXRSClientFactoryBean();
-        String basePath = join(appContextRoot, jaxrsPath);
         LOG.info("Building rest client for " + clazz + " with base path: " + basePath + " and providers: " + providers);
         bean.setResourceClass(clazz);
-        bean.setProviders(providers);
+        if (jwtSupplier == null && !FlightEvents.isAvailable()) {
+            bean.setProviders(providers);
+        } else {
+            List<Object> allProviders = new ArrayList<>(providers);
+            if (jwtSupplier != null)
+                allProviders.add((ClientRequestFilter) request -> request.getHeaders().putSingle("Authorization", "Bearer " + jwtSupplier.get()));
+            if (FlightEvents.isAvailable())
+                allProviders.add(new FlightRecorderFilter());
+            bean.setProviders(allProviders);
+        }
         bean.setAddress(basePath);
         bean.setHeaders(headers);
-        return bean.create(clazz);
+        bean.setThreadSafe(threadSafe);
+        if (maxConnections > 0)
+            bean.setBus(getPooledBus(maxConnections));
+        if (RestMetrics.isEnabled()) {
+            bean.getOutInterceptors().add(new RestMetricsInterceptors.Out());
+            bean.getInInterceptors().add(new RestMetricsInterceptors.In());
+        }
+        T proxy = bean.create(clazz);
+        configureConduit(WebClient.getConfig(proxy).getHttpConduit());
+        if (async) {
+            // Prefer the non-blocking transport for every request of this client when it is available
+            WebClient.getConfig(proxy).getRequestContext().put(USE_ASYNC_CONDUIT, Boolean.TRUE);
+        }
+        return proxy;
+    }
+
+    private void configureConduit(HTTPConduit conduit) {
+        HTTPClientPolicy policy = conduit.getClient();
+        if (connectTimeout != null)
+            policy.setConnectionTimeout(connectTimeout.toMillis());
+        if (receiveTimeout != null)
+            policy.setReceiveTimeout(receiveTimeout.toMillis());
+        policy.setConnection(keepAlive ? ConnectionType.KEEP_ALIVE : ConnectionType.CLOSE);
+        LOG.debug("Using transport " + conduit.getClass().getSimpleName() + " with " + describeTransport());
+    }
+
+    private String describeTransport() {
+        return "connectTimeout=" + (connectTimeout == null ? "default" : connectTimeout.toMillis() + "ms") +
+               ", receiveTimeout=" + (receiveTimeout == null ? "default" : receiveTimeout.toMillis() + "ms") +
+               ", keepAlive=" + keepAlive + ", maxConnections=" + (maxConnections > 0 ? maxConnections : "default");
+    }
+
+    private static Bus getPooledBus(int maxConnections) {
+        return pooledBuses.computeIfAbsent(maxConnections, max -> {
+            Map<String, Object> properties = new HashMap<>();
+            properties.put(ASYNC_USE_POLICY, "ALWAYS");
+            properties.put(ASYNC_MAX_PER_HOST_CONNECTIONS, String.valueOf(max));
+            properties.put(ASYNC_MAX_CONNECTIONS, String.valueOf(Math.max(max, 5000)));
+            LOG.debug("Creating bus for rest clients with a pool of " + max + " connections per host");
+            return createPrivateBus(properties);
+        });
+    }
+
+    /**
+     * Creates a bus that is only used by the clients it is explicitly set on. Creating a bus makes it the default
+     * bus of the current thread, and of the JVM if there is none yet, which would make all clients built later
+     * use the pooled transport. The previous defaults are therefore restored.
+     */
+    private static Bus createPrivateBus(Map<String, Object> properties) {
+        // BusFactory guards the default bus with its class lock, so nobody can observe the new bus as a default
+        synchronized (BusFactory.class) {
+            Bus defaultBus = BusFactory.getDefaultBus(false);
+            Bus threadBus = BusFactory.getThreadDefaultBus(false);
+            try {
+                return new CXFBusFactory().createBus(new HashMap<>(), properties);
+            } finally {
+                BusFactory.setDefaultBus(defaultBus);
+                BusFactory.setThreadDefaultBus(threadBus);
+            }
+        }
     }
 
     private static String locateApplicationPath(Class<?> clazz) {
+        return applicationPaths.computeIfAbsent(clazz, RestClientBuilder::findApplicationPath);
+    }
+
+    private static String findApplicationPath(Class<?> clazz) {
         String resourcePackage = clazz.getPackage().getName();
 
         // If the rest client directly extends Application, look for ApplicationPath on it
@@ -160,10 +364,7 @@ public class RestClientBuilder {
             return AnnotationSupport.findAnnotation(clazz, ApplicationPath.class).get().value();
 
         // First check for a javax.ws.rs.core.Application in the same package as the resource
-        List<Class<?>> appClasses = ReflectionSupport.findAllClassesInPackage(resourcePackage,
-                                                                              c -> Application.class.isAssignableFrom(c) &&
-                                                                                   AnnotationSupport.isAnnotated(c, ApplicationPath.class),
-                                                                              n -> true);
+        Map<String, String> appClasses = ApplicationPathIndex.findApplicationPaths(resourcePackage);
         if (appClasses.size() == 0) {
             LOG.debug("no classes implementing Application found in pkg: " + resourcePackage);
             // If not found, check under the 3rd package, so com.foo.bar.*
@@ -173,10 +374,7 @@ public class RestClientBuilder {
             if (pkgs.length > 3) {
                 String checkPkg = pkgs[0] + '.' + pkgs[1] + '.' + pkgs[2];
                 LOG.debug("checking in pkg: " + checkPkg);
-                appClasses = ReflectionSupport.findAllClassesInPackage(checkPkg,
-                                                                       c -> Application.class.isAssignableFrom(c) &&
-                                                                            AnnotationSupport.isAnnotated(c, ApplicationPath.class),
-                                                                       n -> true);
+                appClasses = ApplicationPathIndex.findApplicationPaths(checkPkg);
             }
         }
 
@@ -186,18 +384,16 @@ public class RestClientBuilder {
             return "";
         }
 
-        Class<?> selectedClass = appClasses.stream()
-                        .sorted((c1, c2) -> c1.getName().compareTo(c2.getName()))
-                        .findFirst()
-                        .get();
-        ApplicationPath appPath = AnnotationSupport.findAnnotation(selectedClass, ApplicationPath.class).get();
+        // Entries are sorted by class name
+        Map.Entry<String, String> selectedClass = appClasses.entrySet().iterator().next();
+        String appPath = selectedClass.getValue();
         if (appClasses.size() > 1) {
-            LOG.warn("Found multiple classes implementing 'javax.ws.rs.core.Application' on classpath: " + appClasses +
-                     ". Setting base path from the first class discovered (" + selectedClass.getCanonicalName() + ") with path: " +
-                     appPath.value());
+            LOG.warn("Found multiple classes implementing 'javax.ws.rs.core.Application' on classpath: " + appClasses.keySet() +
+                     ". Setting base path from the first class discovered (" + selectedClass.getKey() + ") with path: " +
+                     appPath);
         }
-        LOG.debug("Using base ApplicationPath of '" + appPath.value() + "'");
-        return appPath.value();
+        LOG.debug("Using base ApplicationPath of '" + appPath + "'");
+        return appPath;
     }
 
     private static String join(String firstPart, String secondPart) {
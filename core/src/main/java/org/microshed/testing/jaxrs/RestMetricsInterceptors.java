@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.jaxrs;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongConsumer;
+
+import org.apache.cxf.helpers.CastUtils;
+import org.apache.cxf.interceptor.MessageSenderInterceptor;
+import org.apache.cxf.jaxrs.model.OperationResourceInfo;
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.phase.AbstractPhaseInterceptor;
+import org.apache.cxf.phase.Phase;
+import org.microshed.testing.internal.RestMetrics;
+
+/**
+ * A pair of CXF interceptors that measure the latency and payload sizes of each call made by a REST client,
+ * and record them in {@link RestMetrics} per resource method.
+ */
+class RestMetricsInterceptors {
+
+    private static final String START_NANOS = RestMetricsInterceptors.class.getName() + ".start";
+    private static final String ENDPOINT = RestMetricsInterceptors.class.getName() + ".endpoint";
+    private static final String REQUEST_BYTES = RestMetricsInterceptors.class.getName() + ".requestBytes";
+
+    private RestMetricsInterceptors() {
+        // static utility
+    }
+
+    /**
+     * Receives the measurements of each call, see {@link RestMetrics#record(String, long, long, long)}
+     */
+    @FunctionalInterface
+    interface Recorder {
+        void record(String endpoint, long latencyNanos, long requestBytes, long responseBytes);
+    }
+
+    /**
+     * Runs once the connection is prepared, and counts the bytes of the request body as it is written
+     */
+    static class Out extends AbstractPhaseInterceptor<Message> {
+
+        Out() {
+            super(Phase.PREPARE_SEND);
+            addAfter(MessageSenderInterceptor.class.getName());
+        }
+
+        @Override
+        public void handleMessage(Message message) {
+            Exchange exchange = message.getExchange();
+            exchange.put(ENDPOINT, endpointOf(message));
+            OutputStream os = message.getContent(OutputStream.class);
+            if (os != null) {
+                CountingOutputStream counter = new CountingOutputStream(os);
+                message.setContent(OutputStream.class, counter);
+                exchange.put(REQUEST_BYTES, counter);
+            }
+            exchange.put(START_NANOS, System.nanoTime());
+        }
+
+        private static String endpointOf(Message message) {
+            OperationResourceInfo ori = message.getContent(OperationResourceInfo.class);
+            if (ori == null)
+                ori = message.getExchange().get(OperationResourceInfo.class);
+            if (ori != null)
+                return ori.getHttpMethod() + ' ' + ori.getClassResourceInfo().getServiceClass().getSimpleName() +
+                       '.' + ori.getMethodToInvoke().getName();
+            // Not invoked through a proxy, so fall back to the request URI
+            return message.get(Message.HTTP_REQUEST_METHOD) + " " + message.get(Message.ENDPOINT_ADDRESS);
+        }
+    }
+
+    /**
+     * Runs as soon as the response is received, and counts the bytes of the response body as it is read
+     */
+    static class In extends AbstractPhaseInterceptor<Message> {
+
+        private final Recorder recorder;
+
+        In() {
+            this(RestMetrics::record);
+        }
+
+        In(Recorder recorder) {
+            super(Phase.RECEIVE);
+            this.recorder = recorder;
+        }
+
+        @Override
+        public void handleMessage(Message message) {
+            Exchange exchange = message.getExchange();
+            Object start = exchange.get(START_NANOS);
+            if (!(start instanceof Long))
+                return;
+            long latency = System.nanoTime() - (Long) start;
+            String endpoint = (String) exchange.get(ENDPOINT);
+            Object counter = exchange.get(REQUEST_BYTES);
+            long requestBytes = counter instanceof CountingOutputStream ? ((CountingOutputStream) counter).count : 0;
+
+            long contentLength = contentLengthOf(message);
+            InputStream in = message.getContent(InputStream.class);
+            if (in == null || contentLength >= 0) {
+                recorder.record(endpoint, latency, requestBytes, Math.max(0, contentLength));
+            } else {
+                // The size of a chunked response is only known once it has been read
+                message.setContent(InputStream.class,
+                                   new CountingInputStream(in, responseBytes -> recorder.record(endpoint, latency, requestBytes, responseBytes)));
+            }
+        }
+
+        private static long contentLengthOf(Message message) {
+            Map<String, List<String>> headers = CastUtils.cast((Map<?, ?>) message.get(Message.PROTOCOL_HEADERS));
+            if (headers == null)
+                return -1;
+            for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                if ("Content-Length".equalsIgnoreCase(header.getKey()) && header.getValue() != null && !header.getValue().isEmpty()) {
+                    try {
+                        return Long.parseLong(header.getValue().get(0).trim());
+                    } catch (NumberFormatException e) {
+                        return -1;
+                    }
+                }
+            }
+            return -1;
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        volatile long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private final LongConsumer onDone;
+        private final AtomicBoolean done = new AtomicBoolean();
+        private long count;
+
+        CountingInputStream(InputStream in, LongConsumer onDone) {
+            super(in);
+            this.onDone = onDone;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b < 0)
+                finish();
+            else
+                count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n < 0)
+                finish();
+            else
+                count += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        @Override
+        public void close() throws IOException {
+            finish();
+            super.close();
+        }
+
+        private void finish() {
+            if (done.compareAndSet(false, true))
+                onDone.accept(count);
+        }
+    }
+
+}
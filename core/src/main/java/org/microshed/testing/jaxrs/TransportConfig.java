@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.jaxrs;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Used to annotate a REST Client to configure the HTTP transport
+ * that will be used for all of its HTTP invocations.
+ * In order for this annotation to have any effect, the field or parameter must also
+ * be annotated with {@link RESTClient}.
+ */
+@Target({ ElementType.FIELD, ElementType.PARAMETER })
+@Retention(RetentionPolicy.RUNTIME)
+public @interface TransportConfig {
+
+    /**
+     * @return The maximum time to wait for a connection to be established, in milliseconds,
+     *         or -1 to use the transport default
+     */
+    public long connectTimeoutMillis() default -1;
+
+    /**
+     * @return The maximum time to wait for a response, in milliseconds, or -1 to use the transport default
+     */
+    public long receiveTimeoutMillis() default -1;
+
+    /**
+     * @return Whether connections are kept open and reused for later requests
+     */
+    public boolean keepAlive() default true;
+
+    /**
+     * @return The maximum number of pooled connections per host, or 0 to use the default transport
+     *         without a dedicated connection pool
+     * @see RestClientBuilder#withConnectionPool(int)
+     */
+    public int maxConnections() default 0;
+}
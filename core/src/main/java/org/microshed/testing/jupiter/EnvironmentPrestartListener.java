@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.jupiter;
+
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.platform.commons.support.AnnotationSupport;
+import org.junit.platform.engine.support.descriptor.ClassSource;
+import org.junit.platform.launcher.TestExecutionListener;
+import org.junit.platform.launcher.TestIdentifier;
+import org.junit.platform.launcher.TestPlan;
+import org.microshed.testing.ApplicationEnvironment;
+import org.microshed.testing.SharedContainerConfig;
+import org.microshed.testing.internal.InternalLogger;
+import org.microshed.testing.internal.Timeline;
+
+/**
+ * A JUnit Platform listener that discovers all <code>@MicroShedTest</code> classes in the test plan
+ * before any tests run, and starts their environments in the background using
+ * {@link ApplicationEnvironment#prestart(Class)}. This allows environment startup to overlap with
+ * class loading and with tests that are already running.
+ * <p>
+ * The number of background threads can be set using the <code>MICROSHED_TEST_PRESTART_THREADS</code>
+ * system property or environment variable. A value of 0 disables this feature.
+ */
+public class EnvironmentPrestartListener implements TestExecutionListener {
+
+    private static final InternalLogger LOG = InternalLogger.get(EnvironmentPrestartListener.class);
+
+    public static final String PRESTART_THREADS = "MICROSHED_TEST_PRESTART_THREADS";
+
+    private static final Map<Class<?>, Prestart> prestarted = new ConcurrentHashMap<>();
+
+    private ExecutorService executor;
+
+    @Override
+    public void testPlanExecutionStarted(TestPlan testPlan) {
+        int threads = getThreadCount();
+        if (threads < 1)
+            return;
+
+        Set<Class<?>> testClasses = new LinkedHashSet<>();
+        for (TestIdentifier root : testPlan.getRoots()) {
+            for (TestIdentifier id : testPlan.getDescendants(root)) {
+                id.getSource()
+                                .filter(ClassSource.class::isInstance)
+                                .map(source -> loadClass(((ClassSource) source).getClassName()))
+                                .filter(c -> AnnotationSupport.isAnnotated(c, MicroShedTest.class))
+                                .ifPresent(testClasses::add);
+            }
+        }
+        if (testClasses.isEmpty())
+            return;
+
+        ApplicationEnvironment env;
+        try {
+            env = ApplicationEnvironment.Resolver.load();
+        } catch (RuntimeException e) {
+            LOG.debug("Not starting environments ahead of time because no ApplicationEnvironment could be selected", e);
+            return;
+        }
+
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "microshed-prestart-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        LOG.debug("Starting environments ahead of time for " + testClasses.size() + " test classes using " + threads + " threads");
+        for (Class<?> testClass : testClasses) {
+            Prestart p = new Prestart();
+            p.future = CompletableFuture.runAsync(() -> {
+                // Skip if the test class started running before this task was picked up
+                if (p.claimed.compareAndSet(false, true))
+                    prestart(env, testClass);
+            }, executor);
+            prestarted.put(testClass, p);
+        }
+    }
+
+    @Override
+    public void testPlanExecutionFinished(TestPlan testPlan) {
+        if (executor != null)
+            executor.shutdownNow();
+        prestarted.clear();
+        // Also written when the JVM exits, but build tools may collect results before that
+        Timeline.write();
+    }
+
+    private static void prestart(ApplicationEnvironment env, Class<?> testClass) {
+        try {
+            // Trigger static initialization of the test class and any SharedContainerConfig
+            Class.forName(testClass.getName(), true, testClass.getClassLoader());
+            if (testClass.isAnnotationPresent(SharedContainerConfig.class)) {
+                Class<?> sharedConfig = testClass.getAnnotation(SharedContainerConfig.class).value();
+                Class.forName(sharedConfig.getName(), true, sharedConfig.getClassLoader());
+            }
+            long start = System.currentTimeMillis();
+            try (Timeline.Span s = Timeline.begin("environment", "prestart " + testClass.getSimpleName())) {
+                env.prestart(testClass);
+            }
+            LOG.debug("Started environment ahead of time for " + testClass + " in " + (System.currentTimeMillis() - start) + "ms");
+        } catch (Throwable t) {
+            // Any failure will be raised again when the test class starts the environment normally
+            LOG.debug("Unable to start environment ahead of time for " + testClass, t);
+        }
+    }
+
+    /**
+     * Blocks until any environment startup that was initiated ahead of time for the specified
+     * class has completed.
+     */
+    static void awaitPrestart(Class<?> testClass) {
+        Prestart p = prestarted.remove(testClass);
+        // If the prestart was not picked up yet, there is no point waiting for it in a queue
+        if (p == null || p.claimed.compareAndSet(false, true))
+            return;
+        long start = System.currentTimeMillis();
+        p.future.join();
+        LOG.debug("Waited " + (System.currentTimeMillis() - start) + "ms for environment prestart of " + testClass);
+    }
+
+    private static int getThreadCount() {
+        String value = System.getProperty(PRESTART_THREADS, System.getenv(PRESTART_THREADS));
+        if (value == null || value.isEmpty())
+            return 2;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            LOG.warn("Ignoring invalid value for " + PRESTART_THREADS + ": " + value);
+            return 2;
+        }
+    }
+
+    private static class Prestart {
+        final AtomicBoolean claimed = new AtomicBoolean();
+        volatile CompletableFuture<Void> future;
+    }
+
+    private static Class<?> loadClass(String className) {
+        ClassLoader cl = Thread.currentThread().getContextClassLoader();
+        if (cl == null)
+            cl = EnvironmentPrestartListener.class.getClassLoader();
+        try {
+            return Class.forName(className, false, cl);
+        } catch (ClassNotFoundException | LinkageError e) {
+            return null;
+        }
+    }
+
+}
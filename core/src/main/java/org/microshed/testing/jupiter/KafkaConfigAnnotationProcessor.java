@@ -18,7 +18,7 @@
  */
 package org.microshed.testing.jupiter;
 
-import java.lang.reflect.Field;
+import java.lang.reflect.AnnotatedElement;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.nio.ByteBuffer;
@@ -28,6 +28,10 @@ import java.util.Properties;
 import java.util.UUID;
 
 import org.junit.jupiter.api.extension.ExtensionConfigurationException;
+import org.microshed.testing.internal.FlightEvents;
+import org.microshed.testing.internal.KafkaPollInterceptor;
+import org.microshed.testing.kafka.JsonbDeserializer;
+import org.microshed.testing.kafka.JsonbSerializer;
 import org.microshed.testing.kafka.KafkaConsumerClient;
 import org.microshed.testing.kafka.KafkaProducerClient;
 
@@ -35,9 +39,18 @@ class KafkaConfigAnnotationProcessor {
 
     private final Map<Class<?>, String> defaultSerailizers = new HashMap<>();
     private final Map<Class<?>, String> defaultDeserailizers = new HashMap<>();
-    private final String globalBootstrapServers = System.getProperty("org.microshed.kafka.bootstrap.servers");
+    private final String globalBootstrapServers;
+
+    /**
+     * @param discoveredBootstrapServers The bootstrap servers discovered in the environment of the current
+     *            test class, which are used if neither the annotation nor the
+     *            <code>org.microshed.kafka.bootstrap.servers</code> system property define any
+     */
+    KafkaConfigAnnotationProcessor(String discoveredBootstrapServers) {
+        String sysprop = System.getProperty("org.microshed.kafka.bootstrap.servers");
+        globalBootstrapServers = sysprop != null && !sysprop.isEmpty() ? sysprop : //
+                        discoveredBootstrapServers == null ? "" : discoveredBootstrapServers;
 
-    KafkaConfigAnnotationProcessor() {
         defaultSerailizers.put(byte[].class, "org.apache.kafka.common.serialization.ByteArraySerializer");
         defaultSerailizers.put(ByteBuffer.class, "org.apache.kafka.common.serialization.ByteBufferSerializer");
         defaultSerailizers.put(Double.class, "org.apache.kafka.common.serialization.DoubleSerializer");
@@ -59,8 +72,12 @@ class KafkaConfigAnnotationProcessor {
         defaultDeserailizers.put(UUID.class, "org.apache.kafka.common.serialization.UUIDDeserializer");
     }
 
-    Properties getProducerProperties(Field producerField) {
-        KafkaProducerClient producerConfig = producerField.getAnnotation(KafkaProducerClient.class);
+    /**
+     * @param producer The field or parameter annotated with {@link KafkaProducerClient}
+     * @param genericType The generic type of the field or parameter, used to auto-detect serializers
+     */
+    Properties getProducerProperties(AnnotatedElement producer, Type genericType) {
+        KafkaProducerClient producerConfig = producer.getAnnotation(KafkaProducerClient.class);
         Properties properties = new Properties();
         String bootstrapServers = producerConfig.bootstrapServers().isEmpty() ? globalBootstrapServers : producerConfig.bootstrapServers();
         if (bootstrapServers.isEmpty())
@@ -75,29 +92,37 @@ class KafkaConfigAnnotationProcessor {
         for (String prop : producerConfig.properties()) {
             int split = prop.indexOf("=");
             if (split < 2)
-                throw new ExtensionConfigurationException("The property '" + prop + "' for field " + producerField + " must be in the format 'key=value'");
+                throw new ExtensionConfigurationException("The property '" + prop + "' for " + producer + " must be in the format 'key=value'");
             properties.put(prop.substring(0, split), prop.substring(split + 1));
         }
 
         // Auto-detect key/value serializers if needed
-        if (producerField.getGenericType() instanceof ParameterizedType) {
+        if (genericType instanceof ParameterizedType) {
             if (!properties.containsKey("key.serializer")) {
-                Type keyType = ((ParameterizedType) producerField.getGenericType()).getActualTypeArguments()[0];
+                Type keyType = ((ParameterizedType) genericType).getActualTypeArguments()[0];
                 if (defaultSerailizers.containsKey(keyType))
                     properties.put("key.serializer", defaultSerailizers.get(keyType));
+                else if (isJsonbType(keyType))
+                    properties.put("key.serializer", JsonbSerializer.class.getName());
             }
             if (!properties.containsKey("value.serializer")) {
-                Type valueType = ((ParameterizedType) producerField.getGenericType()).getActualTypeArguments()[1];
+                Type valueType = ((ParameterizedType) genericType).getActualTypeArguments()[1];
                 if (defaultSerailizers.containsKey(valueType))
                     properties.put("value.serializer", defaultSerailizers.get(valueType));
+                else if (isJsonbType(valueType))
+                    properties.put("value.serializer", JsonbSerializer.class.getName());
             }
         }
 
         return properties;
     }
 
-    Properties getConsumerProperties(Field consumerField) {
-        KafkaConsumerClient consumerConfig = consumerField.getAnnotation(KafkaConsumerClient.class);
+    /**
+     * @param consumer The field or parameter annotated with {@link KafkaConsumerClient}
+     * @param genericType The generic type of the field or parameter, used to auto-detect deserializers
+     */
+    Properties getConsumerProperties(AnnotatedElement consumer, Type genericType) {
+        KafkaConsumerClient consumerConfig = consumer.getAnnotation(KafkaConsumerClient.class);
         Properties properties = new Properties();
         String bootstrapServers = consumerConfig.bootstrapServers().isEmpty() ? globalBootstrapServers : consumerConfig.bootstrapServers();
         if (bootstrapServers.isEmpty())
@@ -113,27 +138,56 @@ class KafkaConfigAnnotationProcessor {
         for (String prop : consumerConfig.properties()) {
             int split = prop.indexOf("=");
             if (split < 2)
-                throw new ExtensionConfigurationException("The property '" + prop + "' for field " + consumerField + " must be in the format 'key=value'");
+                throw new ExtensionConfigurationException("The property '" + prop + "' for " + consumer + " must be in the format 'key=value'");
             properties.put(prop.substring(0, split), prop.substring(split + 1));
         }
 
         // Auto-detect key/value deserializer if needed
-        if (consumerField.getGenericType() instanceof ParameterizedType) {
+        if (genericType instanceof ParameterizedType) {
             if (!properties.containsKey("key.deserializer")) {
-                Type keyType = ((ParameterizedType) consumerField.getGenericType()).getActualTypeArguments()[0];
+                Type keyType = ((ParameterizedType) genericType).getActualTypeArguments()[0];
                 if (defaultDeserailizers.containsKey(keyType))
                     properties.put("key.deserializer", defaultDeserailizers.get(keyType));
+                else if (isJsonbType(keyType))
+                    properties.put("key.deserializer", JsonbDeserializer.class.getName());
             }
             if (!properties.containsKey("value.deserializer")) {
-                Type valueType = ((ParameterizedType) consumerField.getGenericType()).getActualTypeArguments()[1];
+                Type valueType = ((ParameterizedType) genericType).getActualTypeArguments()[1];
                 if (defaultDeserailizers.containsKey(valueType))
                     properties.put("value.deserializer", defaultDeserailizers.get(valueType));
+                else if (isJsonbType(valueType))
+                    properties.put("value.deserializer", JsonbDeserializer.class.getName());
             }
+            // The JSON-B deserializer reads the type that the consumer is declared with, unless configured otherwise
+            if (JsonbDeserializer.class.getName().equals(properties.get("key.deserializer")) &&
+                !properties.containsKey(JsonbDeserializer.KEY_TYPE_CONFIG))
+                properties.put(JsonbDeserializer.KEY_TYPE_CONFIG, ((ParameterizedType) genericType).getActualTypeArguments()[0]);
+            if (JsonbDeserializer.class.getName().equals(properties.get("value.deserializer")) &&
+                !properties.containsKey(JsonbDeserializer.VALUE_TYPE_CONFIG))
+                properties.put(JsonbDeserializer.VALUE_TYPE_CONFIG, ((ParameterizedType) genericType).getActualTypeArguments()[1]);
+        }
+
+        if (FlightEvents.isAvailable()) {
+            String interceptors = properties.getProperty("interceptor.classes", "");
+            properties.put("interceptor.classes", (interceptors.isEmpty() ? "" : interceptors + ',') + KafkaPollInterceptor.class.getName());
         }
 
         return properties;
     }
 
+    /**
+     * @return Whether objects of the supplied type have no built-in [de]serializer, but can be read and written as JSON,
+     *         such as a POJO or a generic collection of POJOs
+     */
+    private static boolean isJsonbType(Type type) {
+        if (type instanceof ParameterizedType)
+            return true;
+        if (!(type instanceof Class))
+            return false;
+        Class<?> clazz = (Class<?>) type;
+        return clazz != Object.class && !clazz.isPrimitive();
+    }
+
     private static boolean isClassPropertySet(String prop) {
         return !"java.lang.Object".equals(prop);
     }
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.jupiter;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Marks a test method in a {@link MicroShedTest} class as a load test. Instead of running once, the body of
+ * the method is run repeatedly by a number of concurrent virtual users for the configured duration, against
+ * the environment that was started for the test class. Injected REST clients are shared by all users.
+ * <p>
+ * Two load models are supported:
+ * <ul>
+ * <li>Closed model (the default): each of the {@link #users()} runs the method again as soon as the previous
+ * run completed, so the load adapts to how fast the application responds.</li>
+ * <li>Open model: if a {@link #rate()} is set, runs are started at a constant rate regardless of how fast the
+ * application responds, using up to {@link #users()} concurrent users. The latency of each run is measured from
+ * the time it was scheduled to start, so that runs which were delayed because all users were busy are not
+ * under-reported (coordinated omission). No runs are started after the duration has elapsed. Runs that were due
+ * but never started are counted as failed runs, with a latency up to the end of the test.</li>
+ * </ul>
+ * When the load test completes, the throughput and latency percentiles are logged and published as report entries.
+ * The test fails if any of the configured thresholds is exceeded.
+ * <p>
+ * For example:
+ *
+ * <pre>
+ * <code>
+ * &#64;LoadTest(users = 50, duration = "60s", rate = 200, maxP99Millis = 250)
+ * public void getPeople() {
+ *     assertEquals(200, people.getAll().getStatus());
+ * }
+ * </code>
+ * </pre>
+ */
+@Target({ ElementType.METHOD, ElementType.ANNOTATION_TYPE })
+@Retention(RetentionPolicy.RUNTIME)
+@Test
+public @interface LoadTest {
+
+    /**
+     * @return The number of concurrent virtual users
+     */
+    public int users() default 10;
+
+    /**
+     * @return How long to apply load, such as <code>500ms</code>, <code>30s</code>, or <code>2m</code>
+     */
+    public String duration() default "10s";
+
+    /**
+     * @return How long to apply load before measurements start, in the same format as {@link #duration()}
+     */
+    public String warmup() default "0s";
+
+    /**
+     * @return The number of runs to start per second. If greater than 0, the open model is used.
+     */
+    public double rate() default 0;
+
+    /**
+     * @return The maximum allowed median latency in milliseconds, or a negative value for no limit
+     */
+    public long maxP50Millis() default -1;
+
+    /**
+     * @return The maximum allowed 90th percentile latency in milliseconds, or a negative value for no limit
+     */
+    public long maxP90Millis() default -1;
+
+    /**
+     * @return The maximum allowed 99th percentile latency in milliseconds, or a negative value for no limit
+     */
+    public long maxP99Millis() default -1;
+
+    /**
+     * @return The maximum allowed fraction of runs that fail, between 0 and 1. By default any failure fails the test.
+     */
+    public double maxErrorRate() default 0;
+
+    /**
+     * @return The minimum required number of completed runs per second, or 0 for no limit
+     */
+    public double minThroughput() default 0;
+
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.jupiter;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.extension.ExtensionConfigurationException;
+import org.microshed.testing.internal.CurrentTestClass;
+import org.microshed.testing.internal.Histogram;
+import org.microshed.testing.internal.InternalLogger;
+import org.opentest4j.AssertionFailedError;
+
+/**
+ * Runs the body of a {@link LoadTest} method from concurrent virtual users and checks the results against its thresholds
+ */
+class LoadTestRunner {
+
+    private static final InternalLogger LOG = InternalLogger.get(LoadTestRunner.class);
+
+    private static final Pattern DURATION = Pattern.compile("(\\d+)\\s*(ms|s|m|h)?");
+
+    private final LoadTest config;
+    private final Method method;
+    private final Object target;
+    private final Object[] args;
+    private final Class<?> testClass;
+
+    private final Histogram latencyMicros = new Histogram();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong unserved = new AtomicLong();
+    private final AtomicReference<Throwable> firstError = new AtomicReference<>();
+    private final AtomicReference<Throwable> fatalError = new AtomicReference<>();
+
+    LoadTestRunner(LoadTest config, Method method, Object target, Object[] args, Class<?> testClass) {
+        if (config.users() < 1)
+            throw new ExtensionConfigurationException("@LoadTest users must be at least 1 on " + method);
+        this.config = config;
+        this.method = method;
+        this.target = target;
+        this.args = args;
+        this.testClass = testClass;
+        method.setAccessible(true);
+    }
+
+    /**
+     * Applies the load and verifies the thresholds
+     *
+     * @return The results, which are also logged
+     * @throws AssertionFailedError If any threshold was exceeded
+     * @throws ExtensionConfigurationException If the load test method could not be invoked
+     */
+    Map<String, String> run() throws InterruptedException {
+        long warmupNanos = parseDuration(config.warmup(), "warmup");
+        long durationNanos = parseDuration(config.duration(), "duration");
+        boolean open = config.rate() > 0;
+        LOG.info("Running load test " + method.getName() + " with " + config.users() + " users for " + config.duration() +
+                 (open ? " at " + config.rate() + " runs/s" : ""));
+
+        long start = System.nanoTime();
+        long measureFrom = start + warmupNanos;
+        long end = measureFrom + durationNanos;
+        // Each run of the open model claims the next slot in the schedule, so late runs are measured from their scheduled start
+        AtomicLong nextSlot = new AtomicLong();
+        long intervalNanos = open ? (long) (TimeUnit.SECONDS.toNanos(1) / config.rate()) : 0;
+
+        List<Thread> users = new ArrayList<>(config.users());
+        for (int i = 0; i < config.users(); i++) {
+            Thread user = new Thread(() -> {
+                try {
+                    while (fatalError.get() == null && !Thread.currentThread().isInterrupted()) {
+                        long scheduled;
+                        if (open) {
+                            scheduled = start + nextSlot.getAndIncrement() * intervalNanos;
+                            if (scheduled >= end)
+                                return;
+                            long wait = scheduled - System.nanoTime();
+                            if (wait > 0)
+                                LockSupport.parkNanos(wait);
+                            if (System.nanoTime() >= end) {
+                                // Stop issuing at the end of the test, like wrk2. Runs that were due but never started
+                                // waited at least until the end, and are counted as errors.
+                                if (scheduled >= measureFrom) {
+                                    latencyMicros.record(TimeUnit.NANOSECONDS.toMicros(end - scheduled));
+                                    unserved.incrementAndGet();
+                                    errors.incrementAndGet();
+                                }
+                                continue;
+                            }
+                        } else {
+                            scheduled = System.nanoTime();
+                            if (scheduled >= end)
+                                return;
+                        }
+                        boolean failed;
+                        try (CurrentTestClass.Scope s = CurrentTestClass.enter(testClass)) {
+                            failed = runOnce();
+                        }
+                        if (scheduled >= measureFrom) {
+                            latencyMicros.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - scheduled));
+                            if (failed)
+                                errors.incrementAndGet();
+                        }
+                    }
+                } catch (Throwable t) {
+                    // Stop all users, and fail the test once they are done
+                    fatalError.compareAndSet(null, t);
+                }
+            }, "microshed-load-" + (i + 1));
+            user.setDaemon(true);
+            users.add(user);
+        }
+        users.forEach(Thread::start);
+        try {
+            for (Thread user : users)
+                user.join();
+        } finally {
+            users.forEach(Thread::interrupt);
+        }
+
+        Throwable fatal = fatalError.get();
+        if (fatal instanceof RuntimeException)
+            throw (RuntimeException) fatal;
+        if (fatal instanceof Error)
+            throw (Error) fatal;
+        if (fatal != null)
+            throw new ExtensionConfigurationException("Unable to run load test method " + method, fatal);
+
+        Map<String, String> results = report(durationNanos);
+        verify(results, durationNanos);
+        return results;
+    }
+
+    private boolean runOnce() {
+        try {
+            method.invoke(target, args);
+            return false;
+        } catch (InvocationTargetException e) {
+            firstError.compareAndSet(null, e.getCause());
+            return true;
+        } catch (IllegalAccessException | IllegalArgumentException e) {
+            throw new ExtensionConfigurationException("Unable to invoke load test method " + method, e);
+        }
+    }
+
+    private Map<String, String> report(long durationNanos) {
+        Map<String, String> results = new LinkedHashMap<>();
+        results.put("runs", String.valueOf(completedRuns()));
+        if (config.rate() > 0)
+            results.put("unserved", String.valueOf(unserved.get()));
+        results.put("errors", String.valueOf(errors.get()));
+        results.put("throughput", format(throughput(durationNanos)) + "/s");
+        results.put("p50", formatMillis(latencyMicros.getValueAtPercentile(50)));
+        results.put("p90", formatMillis(latencyMicros.getValueAtPercentile(90)));
+        results.put("p99", formatMillis(latencyMicros.getValueAtPercentile(99)));
+        results.put("p99.9", formatMillis(latencyMicros.getValueAtPercentile(99.9)));
+        results.put("max", formatMillis(latencyMicros.getMax()));
+        LOG.info("Load test " + method.getName() + " results: " + results);
+        return results;
+    }
+
+    private void verify(Map<String, String> results, long durationNanos) {
+        List<String> violations = new ArrayList<>();
+        checkLatency(violations, "p50", 50, config.maxP50Millis());
+        checkLatency(violations, "p90", 90, config.maxP90Millis());
+        checkLatency(violations, "p99", 99, config.maxP99Millis());
+        // Unserved runs of the open model count as failed runs
+        long runs = latencyMicros.getCount();
+        double errorRate = runs == 0 ? 0 : (double) errors.get() / runs;
+        if (errorRate > config.maxErrorRate())
+            violations.add(errors.get() + " of " + runs + " runs failed" + (unserved.get() > 0 ? " or were never started" : "") +
+                           ", which exceeds the maximum error rate of " + config.maxErrorRate());
+        if (config.minThroughput() > 0 && throughput(durationNanos) < config.minThroughput())
+            violations.add("throughput of " + format(throughput(durationNanos)) + "/s is below the minimum of " + config.minThroughput() + "/s");
+        if (completedRuns() == 0)
+            violations.add("no runs completed during the measured duration");
+        if (!violations.isEmpty())
+            throw new AssertionFailedError("Load test " + method.getName() + " failed: " + String.join("; ", violations) +
+                                           ". Results: " + results, firstError.get());
+    }
+
+    private void checkLatency(List<String> violations, String name, double percentile, long maxMillis) {
+        if (maxMillis < 0)
+            return;
+        long actualMicros = latencyMicros.getValueAtPercentile(percentile);
+        if (actualMicros > TimeUnit.MILLISECONDS.toMicros(maxMillis))
+            violations.add(name + " latency of " + formatMillis(actualMicros) + " exceeds " + maxMillis + "ms");
+    }
+
+    private long completedRuns() {
+        return latencyMicros.getCount() - unserved.get();
+    }
+
+    private double throughput(long durationNanos) {
+        return completedRuns() / (durationNanos / (double) TimeUnit.SECONDS.toNanos(1));
+    }
+
+    static long parseDuration(String value, String attribute) {
+        Matcher m = DURATION.matcher(value.trim().toLowerCase(Locale.ROOT));
+        if (!m.matches())
+            throw new ExtensionConfigurationException("Invalid @LoadTest " + attribute + " '" + value + "'. " +
+                                                      "Expected a number followed by ms, s, m, or h, such as '30s'");
+        long amount = Long.parseLong(m.group(1));
+        String unit = m.group(2) == null ? "s" : m.group(2);
+        switch (unit) {
+            case "ms":
+                return TimeUnit.MILLISECONDS.toNanos(amount);
+            case "m":
+                return TimeUnit.MINUTES.toNanos(amount);
+            case "h":
+                return TimeUnit.HOURS.toNanos(amount);
+            default:
+                return TimeUnit.SECONDS.toNanos(amount);
+        }
+    }
+
+    private static String formatMillis(long micros) {
+        return format(micros / 1000.0) + "ms";
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.2f", value);
+    }
+
+}
@@ -19,171 +19,518 @@
 package org.microshed.testing.jupiter;
 
 import java.lang.annotation.Annotation;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
+import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.lang.reflect.Parameter;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
 import java.net.URL;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Properties;
 
+import org.apache.cxf.jaxrs.client.Client;
+import org.apache.cxf.jaxrs.client.WebClient;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import org.junit.jupiter.api.extension.AfterAllCallback;
+import org.junit.jupiter.api.extension.AfterEachCallback;
 import org.junit.jupiter.api.extension.BeforeAllCallback;
 import org.junit.jupiter.api.extension.ExtensionConfigurationException;
 import org.junit.jupiter.api.extension.ExtensionContext;
+import org.junit.jupiter.api.extension.ExtensionContext.Namespace;
+import org.junit.jupiter.api.extension.ExtensionContext.Store;
+import org.junit.jupiter.api.extension.ExtensionContext.Store.CloseableResource;
+import org.junit.jupiter.api.extension.InvocationInterceptor;
+import org.junit.jupiter.api.extension.ParameterContext;
+import org.junit.jupiter.api.extension.ParameterResolver;
+import org.junit.jupiter.api.extension.ReflectiveInvocationContext;
+import org.junit.jupiter.api.extension.TestInstancePostProcessor;
 import org.junit.platform.commons.support.AnnotationSupport;
 import org.microshed.testing.ApplicationEnvironment;
 import org.microshed.testing.SharedContainerConfig;
+import org.microshed.testing.internal.CurrentTestClass;
+import org.microshed.testing.internal.FlightEvent;
+import org.microshed.testing.internal.FlightEvents;
 import org.microshed.testing.internal.InternalLogger;
+import org.microshed.testing.internal.RestClientCache;
+import org.microshed.testing.internal.RestMetrics;
+import org.microshed.testing.internal.Timeline;
+import org.microshed.testing.jaxrs.AsyncRestClient;
 import org.microshed.testing.jaxrs.BasicAuthConfig;
 import org.microshed.testing.jaxrs.RESTClient;
 import org.microshed.testing.jaxrs.RestClientBuilder;
-import org.microshed.testing.jwt.JwtBuilder;
+import org.microshed.testing.jaxrs.TransportConfig;
 import org.microshed.testing.jwt.JwtConfig;
+import org.microshed.testing.jwt.JwtMinter;
 import org.microshed.testing.kafka.KafkaConsumerClient;
 import org.microshed.testing.kafka.KafkaProducerClient;
+import org.microshed.testing.kafka.KafkaRecorder;
 
 /**
  * JUnit Jupiter extension that is applied whenever the <code>@MicroProfileTest</code> is used on a test class.
  * Currently this is tied to Testcontainers managing runtime build/deployment, but in a future version
  * it could be refactored to allow for a different framework managing the runtime build/deployment.
+ * <p>
+ * REST and Kafka clients may be injected into <code>public static</code> fields, into instance fields,
+ * or into constructor and method parameters. Clients are closed when the scope they were created for ends:
+ * <ul>
+ * <li>Static fields and <code>@BeforeAll</code> parameters: after all tests in the class have run</li>
+ * <li>Instance fields and constructor parameters: when the test instance is discarded, which is after each
+ * test method unless the class uses <code>@TestInstance(Lifecycle.PER_CLASS)</code></li>
+ * <li>Test method and <code>@BeforeEach</code>/<code>@AfterEach</code> parameters: after the test method</li>
+ * </ul>
  */
-public class MicroShedTestExtension implements BeforeAllCallback {
+public class MicroShedTestExtension implements BeforeAllCallback, TestInstancePostProcessor, AfterEachCallback, AfterAllCallback,
+                ParameterResolver, InvocationInterceptor {
 
     private static final InternalLogger LOG = InternalLogger.get(MicroShedTestExtension.class);
 
+    private static final Namespace NAMESPACE = Namespace.create(MicroShedTestExtension.class);
+
+    // Clients created for constructor parameters, until the test instance they belong to is known
+    private static final ThreadLocal<ClientScope> constructorClients = new ThreadLocal<>();
+
     @Override
     public void beforeAll(ExtensionContext context) throws Exception {
-        beforeAll(context.getRequiredTestClass());
+        startEnvironment(context);
+    }
+
+    @Override
+    public void afterAll(ExtensionContext context) {
+        RestMetrics.endClass(context.getRequiredTestClass());
+    }
+
+    @Override
+    public void interceptTestMethod(Invocation<Void> invocation, ReflectiveInvocationContext<Method> invocationContext,
+                                    ExtensionContext extensionContext) throws Throwable {
+        Optional<LoadTest> loadTest = AnnotationSupport.findAnnotation(invocationContext.getExecutable(), LoadTest.class);
+        if (!loadTest.isPresent()) {
+            proceed(invocation, extensionContext);
+            return;
+        }
+        // The method body is run by the load test users instead
+        invocation.skip();
+        LoadTestRunner runner = new LoadTestRunner(loadTest.get(), invocationContext.getExecutable(),
+                                                   invocationContext.getTarget().orElse(null),
+                                                   invocationContext.getArguments().toArray(),
+                                                   extensionContext.getRequiredTestClass());
+        try (Timeline.Span s = Timeline.begin("loadtest", "loadTest " + invocationContext.getExecutable().getName())) {
+            extensionContext.publishReportEntry(runner.run());
+        }
+    }
+
+    @Override
+    public <T> T interceptTestClassConstructor(Invocation<T> invocation, ReflectiveInvocationContext<Constructor<T>> invocationContext,
+                                               ExtensionContext extensionContext) throws Throwable {
+        return proceed(invocation, extensionContext);
+    }
+
+    @Override
+    public <T> T interceptTestFactoryMethod(Invocation<T> invocation, ReflectiveInvocationContext<Method> invocationContext,
+                                            ExtensionContext extensionContext) throws Throwable {
+        return proceed(invocation, extensionContext);
+    }
+
+    @Override
+    public void interceptDynamicTest(Invocation<Void> invocation, ExtensionContext extensionContext) throws Throwable {
+        proceed(invocation, extensionContext);
+    }
+
+    @Override
+    public void interceptTestTemplateMethod(Invocation<Void> invocation, ReflectiveInvocationContext<Method> invocationContext,
+                                            ExtensionContext extensionContext) throws Throwable {
+        proceed(invocation, extensionContext);
+    }
+
+    @Override
+    public void interceptBeforeAllMethod(Invocation<Void> invocation, ReflectiveInvocationContext<Method> invocationContext,
+                                         ExtensionContext extensionContext) throws Throwable {
+        proceed(invocation, extensionContext);
+    }
+
+    @Override
+    public void interceptBeforeEachMethod(Invocation<Void> invocation, ReflectiveInvocationContext<Method> invocationContext,
+                                          ExtensionContext extensionContext) throws Throwable {
+        proceed(invocation, extensionContext);
+    }
+
+    @Override
+    public void interceptAfterEachMethod(Invocation<Void> invocation, ReflectiveInvocationContext<Method> invocationContext,
+                                         ExtensionContext extensionContext) throws Throwable {
+        proceed(invocation, extensionContext);
+    }
+
+    @Override
+    public void interceptAfterAllMethod(Invocation<Void> invocation, ReflectiveInvocationContext<Method> invocationContext,
+                                        ExtensionContext extensionContext) throws Throwable {
+        proceed(invocation, extensionContext);
+    }
+
+    /**
+     * Runs user code with the test class of the supplied context as the current test class of this thread, so that
+     * REST clients built by user code resolve the environment of this class even when classes run in parallel
+     */
+    private static <T> T proceed(Invocation<T> invocation, ExtensionContext context) throws Throwable {
+        try (CurrentTestClass.Scope s = CurrentTestClass.enter(context.getRequiredTestClass())) {
+            return invocation.proceed();
+        }
     }
 
     public void beforeAll(Class<?> testClass) throws Exception {
+        beforeAll(testClass, null);
+    }
+
+    private void beforeAll(Class<?> testClass, ClientScope scope) throws Exception {
         // Explicitly trigger static initialization of any SharedContainerConfig before we do further processing
         if (testClass.isAnnotationPresent(SharedContainerConfig.class)) {
             Class.forName(testClass.getAnnotation(SharedContainerConfig.class).value().getName());
         }
 
+        // If the environment was started ahead of time for this class, wait for it to finish
+        try (Timeline.Span s = Timeline.begin("environment", "awaitPrestart " + testClass.getSimpleName())) {
+            EnvironmentPrestartListener.awaitPrestart(testClass);
+        }
+
         ApplicationEnvironment config = ApplicationEnvironment.Resolver.load();
         LOG.info("Using ApplicationEnvironment class: " + config.getClass().getCanonicalName());
-        config.preConfigure(testClass);
-        config.start();
-        postConfigure(testClass, config);
+        try (FlightEvent event = FlightEvents.environmentStart(testClass.getName(), config.getClass().getName())) {
+            try (Timeline.Span s = Timeline.begin("environment", "preConfigure " + testClass.getSimpleName())) {
+                config.preConfigure(testClass);
+            }
+            try (Timeline.Span s = Timeline.begin("environment", "start " + testClass.getSimpleName())) {
+                config.start(testClass);
+            }
+        }
+        postConfigure(testClass, config, scope);
+        // Code that runs outside of the test class, such as on threads started by a test, uses the environment of this class
+        CurrentTestClass.started(testClass);
     }
 
     public static void postConfigure(Class<?> testClass, ApplicationEnvironment env) {
-        configureRestAssured(env);
-        injectRestClients(testClass);
-        injectKafkaClients(testClass);
-        env.postConfigure(testClass);
+        postConfigure(testClass, env, null);
+    }
+
+    private static void postConfigure(Class<?> testClass, ApplicationEnvironment env, ClientScope scope) {
+        String name = testClass.getSimpleName();
+        try (Timeline.Span s = Timeline.begin("injection", "configureRestAssured " + name)) {
+            configureRestAssured(env, testClass);
+        }
+        try (Timeline.Span s = Timeline.begin("injection", "injectRestClients " + name)) {
+            injectRestClients(testClass, null, env, scope);
+        }
+        try (Timeline.Span s = Timeline.begin("injection", "injectKafkaClients " + name)) {
+            injectKafkaClients(testClass, null, env, scope);
+        }
+        try (Timeline.Span s = Timeline.begin("environment", "postConfigure " + name)) {
+            env.postConfigure(testClass);
+        }
+    }
+
+    /**
+     * Starts the environment for the test class of the supplied context, unless it was already started.
+     * With <code>@TestInstance(Lifecycle.PER_CLASS)</code> the test instance is created before
+     * any <code>BeforeAllCallback</code> runs, so this may be reached from instance post-processing first.
+     */
+    private ApplicationEnvironment startEnvironment(ExtensionContext context) {
+        ExtensionContext classContext = getClassContext(context);
+        Store store = classContext.getStore(NAMESPACE);
+        String key = "environment:" + classContext.getUniqueId();
+        ApplicationEnvironment env = store.get(key, ApplicationEnvironment.class);
+        if (env != null)
+            return env;
+
+        try {
+            beforeAll(classContext.getRequiredTestClass(), getScope(classContext));
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new ExtensionConfigurationException("Unable to start the environment for " + classContext.getRequiredTestClass(), e);
+        }
+        env = ApplicationEnvironment.Resolver.load();
+        store.put(key, env);
+        return env;
+    }
+
+    @Override
+    public void postProcessTestInstance(Object testInstance, ExtensionContext context) throws Exception {
+        ApplicationEnvironment env = startEnvironment(context);
+        ClientScope scope = constructorClients.get();
+        constructorClients.remove();
+        if (scope == null)
+            scope = new ClientScope();
+        String name = testInstance.getClass().getSimpleName() + " instance";
+        try (Timeline.Span s = Timeline.begin("injection", "injectRestClients " + name)) {
+            injectRestClients(testInstance.getClass(), testInstance, env, scope);
+        }
+        try (Timeline.Span s = Timeline.begin("injection", "injectKafkaClients " + name)) {
+            injectKafkaClients(testInstance.getClass(), testInstance, env, scope);
+        }
+        if (scope.isEmpty())
+            return;
+
+        ExtensionContext classContext = getClassContext(context);
+        if (isPerClassLifecycle(classContext)) {
+            getScope(classContext).addAll(scope);
+        } else {
+            // Held until afterEach() discards the instance, or closed along with the class as a fallback
+            classContext.getStore(NAMESPACE).put(new InstanceKey(testInstance), scope);
+        }
+    }
+
+    @Override
+    public void afterEach(ExtensionContext context) throws Exception {
+        ExtensionContext classContext = getClassContext(context);
+        if (isPerClassLifecycle(classContext))
+            return;
+        ClientScope scope = classContext.getStore(NAMESPACE)
+                        .remove(new InstanceKey(context.getRequiredTestInstance()), ClientScope.class);
+        if (scope != null)
+            scope.close();
+    }
+
+    @Override
+    public boolean supportsParameter(ParameterContext parameterContext, ExtensionContext extensionContext) {
+        return parameterContext.isAnnotated(RESTClient.class) ||
+               getMpRestClient().map(parameterContext::isAnnotated).orElse(false) ||
+               parameterContext.isAnnotated(KafkaProducerClient.class) ||
+               parameterContext.isAnnotated(KafkaConsumerClient.class);
+    }
+
+    @Override
+    public Object resolveParameter(ParameterContext parameterContext, ExtensionContext extensionContext) {
+        ApplicationEnvironment env = startEnvironment(extensionContext);
+        Parameter param = parameterContext.getParameter();
+        String description = "parameter " + param.getName() + " of " + parameterContext.getDeclaringExecutable();
+        Class<?> testClass = getClassContext(extensionContext).getRequiredTestClass();
+
+        Object client;
+        long start = Timeline.now();
+        if (param.isAnnotationPresent(KafkaProducerClient.class) || param.isAnnotationPresent(KafkaConsumerClient.class)) {
+            client = createKafkaClient(param, param.getType(), param.getParameterizedType(), description, env, testClass);
+            Timeline.record("injection", "injectKafkaClient " + param.getName(), start, Timeline.now());
+        } else {
+            client = createRestClient(param, param.getType(), param.getParameterizedType(), description, env, testClass);
+            Timeline.record("injection", "injectRestClient " + param.getName(), start, Timeline.now());
+        }
+
+        if (parameterContext.getDeclaringExecutable() instanceof Constructor &&
+            !isPerClassLifecycle(getClassContext(extensionContext))) {
+            ClientScope pending = constructorClients.get();
+            if (pending == null) {
+                pending = new ClientScope();
+                constructorClients.set(pending);
+            }
+            pending.add(client, description);
+        } else {
+            // Scoped to the test method for method parameters, or to the class for @BeforeAll parameters
+            getScope(extensionContext).add(client, description);
+        }
+        return client;
     }
 
-    private static void injectRestClients(Class<?> clazz) {
+    private static ClientScope getScope(ExtensionContext context) {
+        return context.getStore(NAMESPACE).getOrComputeIfAbsent("clients:" + context.getUniqueId(),
+                                                                k -> new ClientScope(),
+                                                                ClientScope.class);
+    }
+
+    private static ExtensionContext getClassContext(ExtensionContext context) {
+        ExtensionContext classContext = context;
+        while (classContext.getTestMethod().isPresent() && classContext.getParent().isPresent())
+            classContext = classContext.getParent().get();
+        return classContext;
+    }
+
+    private static boolean isPerClassLifecycle(ExtensionContext classContext) {
+        return classContext.getTestInstanceLifecycle()
+                        .map(lifecycle -> lifecycle == Lifecycle.PER_CLASS)
+                        .orElse(false);
+    }
+
+    /**
+     * Finds the injectable fields of the given type. Static fields are returned if <code>instance</code>
+     * is null, otherwise instance fields are returned.
+     */
+    private static List<Field> findInjectableFields(Class<?> clazz, Object instance, Class<? extends Annotation> annotation) {
+        List<Field> fields = new ArrayList<>();
+        for (Field f : AnnotationSupport.findAnnotatedFields(clazz, annotation)) {
+            if (Modifier.isStatic(f.getModifiers()) == (instance == null))
+                fields.add(f);
+        }
+        return fields;
+    }
+
+    private static void validateField(Field field, String annotation) {
+        if (Modifier.isFinal(field.getModifiers()) ||
+            (Modifier.isStatic(field.getModifiers()) && !Modifier.isPublic(field.getModifiers()))) {
+            throw new ExtensionConfigurationException("The field annotated with " + annotation + " must be " +
+                                                      "non-final, and if it is static it must also be public: " + field);
+        }
+    }
+
+    private static void inject(Field field, Object instance, Object client, ClientScope scope) {
+        try {
+            if (instance != null)
+                field.setAccessible(true);
+            field.set(instance, client);
+        } catch (Exception e) {
+            throw new ExtensionConfigurationException("Unable to inject field " + field, e);
+        }
+        if (scope != null) {
+            if (instance == null)
+                scope.addStatic(field, client);
+            else
+                scope.add(client, field.toString());
+        }
+    }
+
+    private static void injectRestClients(Class<?> clazz, Object instance, ApplicationEnvironment env, ClientScope scope) {
         List<Field> restClientFields = new ArrayList<>();
-        restClientFields.addAll(AnnotationSupport.findAnnotatedFields(clazz, RESTClient.class));
+        restClientFields.addAll(findInjectableFields(clazz, instance, RESTClient.class));
         // Also tolerate people using the MicroProfile @RestClient annotation instead
         getMpRestClient().ifPresent(mpRestClient -> {
-            restClientFields.addAll(AnnotationSupport.findAnnotatedFields(clazz, mpRestClient));
+            restClientFields.addAll(findInjectableFields(clazz, instance, mpRestClient));
         });
         if (restClientFields.size() == 0)
             return;
 
         for (Field restClientField : restClientFields) {
-            if (!Modifier.isPublic(restClientField.getModifiers()) ||
-                !Modifier.isStatic(restClientField.getModifiers()) ||
-                Modifier.isFinal(restClientField.getModifiers())) {
-                throw new ExtensionConfigurationException("REST client field must be public, static, and non-final: " + restClientField);
-            }
-            RestClientBuilder rcBuilder = new RestClientBuilder();
-            JwtConfig jwtAnno = restClientField.getDeclaredAnnotation(JwtConfig.class);
-            BasicAuthConfig basicAnno = restClientField.getDeclaredAnnotation(BasicAuthConfig.class);
-            if (jwtAnno != null && basicAnno != null)
-                throw new ExtensionConfigurationException("Can only use one of @JwtConfig or @BasicAuthConfig on REST client field: " + restClientField);
+            validateField(restClientField, "@RESTClient");
+            Object restClient = createRestClient(restClientField, restClientField.getType(), restClientField.getGenericType(),
+                                                 "field " + restClientField, env, clazz);
+            inject(restClientField, instance, restClient, scope);
+            LOG.debug("Injected rest client for " + restClientField);
+        }
+    }
 
-            if (jwtAnno != null) {
-                try {
-                    String jwt = JwtBuilder.buildJwt(jwtAnno.subject(), jwtAnno.issuer(), jwtAnno.claims());
-                    rcBuilder.withJwt(jwt);
-                } catch (Exception e) {
-                    throw new ExtensionConfigurationException("Error while building JWT for field " + restClientField + " with JwtConfig: " + jwtAnno, e);
-                }
-            }
-            if (basicAnno != null) {
-                rcBuilder.withBasicAuth(basicAnno.user(), basicAnno.password());
-            }
+    private static Object createRestClient(AnnotatedElement element, Class<?> type, Type genericType, String description,
+                                           ApplicationEnvironment env, Class<?> testClass) {
+        RestClientBuilder rcBuilder = new RestClientBuilder()
+                        .withAppContextRoot(env.getApplicationURL(testClass))
+                        .withCache(true);
+        JwtConfig jwtAnno = element.getDeclaredAnnotation(JwtConfig.class);
+        BasicAuthConfig basicAnno = element.getDeclaredAnnotation(BasicAuthConfig.class);
+        if (jwtAnno != null && basicAnno != null)
+            throw new ExtensionConfigurationException("Can only use one of @JwtConfig or @BasicAuthConfig on REST client " + description);
 
-            Object restClient = rcBuilder.build(restClientField.getType());
+        if (jwtAnno != null) {
             try {
-                restClientField.set(null, restClient);
-                LOG.debug("Injected rest client for " + restClientField);
+                // Tokens are minted per request from a supplier, so that a shared cached proxy never sends an expired token.
+                // Clients with the same JwtConfig get equal suppliers, and can therefore still share a cached proxy.
+                JwtMinter.TokenSupplier jwt = JwtMinter.getDefault().supplier(jwtAnno.subject(), jwtAnno.issuer(), jwtAnno.claims());
+                // Mint the first token right away, so that malformed claims are reported for this client
+                jwt.get();
+                rcBuilder.withJwt(jwt);
             } catch (Exception e) {
-                throw new ExtensionConfigurationException("Unable to inject field " + restClientField, e);
+                throw new ExtensionConfigurationException("Error while building JWT for " + description + " with JwtConfig: " + jwtAnno, e);
             }
         }
+        if (basicAnno != null) {
+            rcBuilder.withBasicAuth(basicAnno.user(), basicAnno.password());
+        }
+        TransportConfig transportAnno = element.getDeclaredAnnotation(TransportConfig.class);
+        if (transportAnno != null) {
+            if (transportAnno.connectTimeoutMillis() >= 0)
+                rcBuilder.withConnectTimeout(Duration.ofMillis(transportAnno.connectTimeoutMillis()));
+            if (transportAnno.receiveTimeoutMillis() >= 0)
+                rcBuilder.withReceiveTimeout(Duration.ofMillis(transportAnno.receiveTimeoutMillis()));
+            if (transportAnno.maxConnections() < 0)
+                throw new ExtensionConfigurationException("The maxConnections of @TransportConfig must not be negative on REST client " + description);
+            rcBuilder.withKeepAlive(transportAnno.keepAlive())
+                            .withConnectionPool(transportAnno.maxConnections());
+        }
+
+        if (type == AsyncRestClient.class) {
+            if (!(genericType instanceof ParameterizedType) ||
+                !(((ParameterizedType) genericType).getActualTypeArguments()[0] instanceof Class))
+                throw new ExtensionConfigurationException("The resource class of the asynchronous REST client " + description +
+                                                          " must be specified, for example AsyncRestClient<MyService>");
+            return rcBuilder.buildAsync((Class<?>) ((ParameterizedType) genericType).getActualTypeArguments()[0]);
+        }
+        return rcBuilder.build(type);
     }
 
-    private static void injectKafkaClients(Class<?> clazz) {
+    private static void injectKafkaClients(Class<?> clazz, Object instance, ApplicationEnvironment env, ClientScope scope) {
+        List<Field> kafkaFields = new ArrayList<>();
+        kafkaFields.addAll(findInjectableFields(clazz, instance, KafkaProducerClient.class));
+        kafkaFields.addAll(findInjectableFields(clazz, instance, KafkaConsumerClient.class));
+        for (Field kafkaField : kafkaFields) {
+            String annotation = kafkaField.isAnnotationPresent(KafkaProducerClient.class) ? "@KafkaProducerClient" : "@KafkaConsumerClient";
+            validateField(kafkaField, annotation);
+            Object client = createKafkaClient(kafkaField, kafkaField.getType(), kafkaField.getGenericType(), "field " + kafkaField, env, clazz);
+            inject(kafkaField, instance, client, scope);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object createKafkaClient(AnnotatedElement element, Class<?> type, Type genericType, String description,
+                                            ApplicationEnvironment env, Class<?> testClass) {
         // Verify kafka-client and testcontainers-kafka is on classpath
         Class<?> KafkaProducer = tryLoad("org.apache.kafka.clients.producer.KafkaProducer");
         Class<?> KafkaConsumer = tryLoad("org.apache.kafka.clients.consumer.KafkaConsumer");
         if (KafkaProducer == null || KafkaConsumer == null)
-            return;
+            throw new ExtensionConfigurationException("Unable to inject Kafka client for " + description +
+                                                      " because the kafka-clients library is not on the classpath");
 
-        KafkaConfigAnnotationProcessor kafkaProcessor = new KafkaConfigAnnotationProcessor();
+        KafkaConfigAnnotationProcessor kafkaProcessor = new KafkaConfigAnnotationProcessor(env.getKafkaBootstrapServers(testClass).orElse(null));
 
-        List<Field> kafkaProducerFields = AnnotationSupport.findAnnotatedFields(clazz, KafkaProducerClient.class);
-        for (Field producerField : kafkaProducerFields) {
-            if (!KafkaProducer.isAssignableFrom(producerField.getType())) {
-                throw new ExtensionConfigurationException("Fields annotated with @KafkaProducerClient must be of the type " + KafkaProducer.getName());
+        KafkaProducerClient producerConfig = element.getAnnotation(KafkaProducerClient.class);
+        if (producerConfig != null) {
+            if (!KafkaProducer.isAssignableFrom(type)) {
+                throw new ExtensionConfigurationException("Injection points annotated with @KafkaProducerClient must be of the type " +
+                                                          KafkaProducer.getName() + ": " + description);
             }
-            if (!Modifier.isPublic(producerField.getModifiers()) ||
-                !Modifier.isStatic(producerField.getModifiers()) ||
-                Modifier.isFinal(producerField.getModifiers())) {
-                throw new ExtensionConfigurationException("The KafkaProducer field annotated with @KafkaProducerClient " +
-                                                          "must be public, static, and non-final: " + producerField);
-            }
-
-            Properties properties = kafkaProcessor.getProducerProperties(producerField);
+            Properties properties = kafkaProcessor.getProducerProperties(element, genericType);
             try {
                 Object producer = KafkaProducer.getConstructor(Properties.class).newInstance(properties);
-                producerField.set(null, producer);
-                LOG.debug("Injected kafka producer for " + producerField + " with config " + producerField.getAnnotation(KafkaProducerClient.class));
+                LOG.debug("Created kafka producer for " + description + " with config " + producerConfig);
+                return producer;
             } catch (Exception e) {
-                throw new ExtensionConfigurationException("Unable to inject field " + producerField, e);
+                throw new ExtensionConfigurationException("Unable to create kafka producer for " + description, e);
             }
         }
 
-        List<Field> kafkaConsumerFields = AnnotationSupport.findAnnotatedFields(clazz, KafkaConsumerClient.class);
-        for (Field consumerField : kafkaConsumerFields) {
-            if (!KafkaConsumer.isAssignableFrom(consumerField.getType())) {
-                throw new ExtensionConfigurationException("Fields annotated with @KafkaConsumerClient must be of the type " + KafkaConsumer.getName());
-            }
-            if (!Modifier.isPublic(consumerField.getModifiers()) ||
-                !Modifier.isStatic(consumerField.getModifiers()) ||
-                Modifier.isFinal(consumerField.getModifiers())) {
-                throw new ExtensionConfigurationException("The KafkaProducer field annotated with @KafkaConsumerClient " +
-                                                          "must be public, static, and non-final: " + consumerField);
-            }
-
-            Properties properties = kafkaProcessor.getConsumerProperties(consumerField);
-            KafkaConsumerClient consumerConfig = consumerField.getAnnotation(KafkaConsumerClient.class);
-            try {
-                Object consumer = KafkaConsumer.getConstructor(Properties.class).newInstance(properties);
-                consumerField.set(null, consumer);
-                LOG.debug("Injected kafka consumer for " + consumerField + " with config " + consumerConfig);
-                if (consumerConfig.topics().length > 0) {
-                    Collection<String> topics = Arrays.asList(consumerConfig.topics());
-                    KafkaConsumer.getMethod("subscribe", Collection.class).invoke(consumer, topics);
-                    LOG.debug("Subscribed kafka consumer for " + consumerField + " to topics " + topics);
-                }
-            } catch (Exception e) {
-                throw new ExtensionConfigurationException("Unable to inject field " + consumerField, e);
+        KafkaConsumerClient consumerConfig = element.getAnnotation(KafkaConsumerClient.class);
+        boolean recorder = type == KafkaRecorder.class;
+        if (!recorder && !KafkaConsumer.isAssignableFrom(type)) {
+            throw new ExtensionConfigurationException("Injection points annotated with @KafkaConsumerClient must be of the type " +
+                                                      KafkaConsumer.getName() + " or " + KafkaRecorder.class.getName() + ": " + description);
+        }
+        if (recorder && consumerConfig.topics().length == 0)
+            throw new ExtensionConfigurationException("A KafkaRecorder must be subscribed to at least one topic using @KafkaConsumerClient(topics): " +
+                                                      description);
+        Properties properties = kafkaProcessor.getConsumerProperties(element, genericType);
+        // Records sent before the recorder is assigned its partitions must not be missed
+        if (recorder)
+            properties.putIfAbsent("auto.offset.reset", "earliest");
+        try {
+            Object consumer = KafkaConsumer.getConstructor(Properties.class).newInstance(properties);
+            LOG.debug("Created kafka consumer for " + description + " with config " + consumerConfig);
+            if (consumerConfig.topics().length > 0) {
+                Collection<String> topics = Arrays.asList(consumerConfig.topics());
+                KafkaConsumer.getMethod("subscribe", Collection.class).invoke(consumer, topics);
+                LOG.debug("Subscribed kafka consumer for " + description + " to topics " + topics);
             }
+            if (recorder)
+                return new KafkaRecorder<>((Consumer<Object, Object>) consumer);
+            return consumer;
+        } catch (Exception e) {
+            throw new ExtensionConfigurationException("Unable to create kafka consumer for " + description, e);
         }
     }
 
     @SuppressWarnings({ "unchecked", "rawtypes" })
-    private static void configureRestAssured(ApplicationEnvironment config) {
+    private static void configureRestAssured(ApplicationEnvironment config, Class<?> testClass) {
         if (!config.configureRestAssured())
             return;
 
@@ -192,7 +539,7 @@ public class MicroShedTestExtension implements BeforeAllCallback {
             return;
 
         try {
-            URL appURL = new URL(config.getApplicationURL());
+            URL appURL = new URL(config.getApplicationURL(testClass));
             String baseURI = appURL.getProtocol() + "://" + appURL.getHost();
             int port = appURL.getPort();
             String basePath = appURL.getPath();
@@ -241,4 +588,88 @@ public class MicroShedTestExtension implements BeforeAllCallback {
             return null;
         }
     }
+
+    /**
+     * A set of injected clients that are closed together when the scope they were created for ends
+     */
+    private static class ClientScope implements CloseableResource {
+
+        private final Map<Object, String> clients = new LinkedHashMap<>();
+        private final Map<Field, Object> staticFields = new LinkedHashMap<>();
+
+        synchronized void add(Object client, String description) {
+            clients.put(client, description);
+        }
+
+        synchronized void addStatic(Field field, Object client) {
+            staticFields.put(field, client);
+            add(client, field.toString());
+        }
+
+        synchronized void addAll(ClientScope other) {
+            clients.putAll(other.clients);
+        }
+
+        synchronized boolean isEmpty() {
+            return clients.isEmpty();
+        }
+
+        @Override
+        public synchronized void close() {
+            for (Map.Entry<Field, Object> f : staticFields.entrySet()) {
+                try {
+                    // Let go of static clients so they do not accumulate over the course of a long test run
+                    if (f.getKey().get(null) == f.getValue())
+                        f.getKey().set(null, null);
+                } catch (Exception e) {
+                    LOG.debug("Unable to clear field " + f.getKey(), e);
+                }
+            }
+            staticFields.clear();
+            for (Map.Entry<Object, String> client : clients.entrySet()) {
+                try {
+                    closeClient(client.getKey());
+                    LOG.debug("Closed client for " + client.getValue());
+                } catch (Exception e) {
+                    LOG.debug("Unable to close client for " + client.getValue(), e);
+                }
+            }
+            clients.clear();
+        }
+
+        private static void closeClient(Object client) throws Exception {
+            // Cached REST clients are shared with other tests
+            if (RestClientCache.instance().isCached(client))
+                return;
+            if (client instanceof AutoCloseable) {
+                ((AutoCloseable) client).close();
+                return;
+            }
+            Client restClient = WebClient.client(client);
+            if (restClient != null)
+                restClient.close();
+        }
+    }
+
+    /**
+     * Identifies the clients of a single test instance, regardless of how the test class implements equals()
+     */
+    private static class InstanceKey {
+
+        private final Object instance;
+
+        InstanceKey(Object instance) {
+            this.instance = instance;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof InstanceKey && ((InstanceKey) obj).instance == instance;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(instance);
+        }
+    }
 }
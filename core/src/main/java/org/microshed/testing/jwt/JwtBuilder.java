@@ -21,17 +21,16 @@ package org.microshed.testing.jwt;
 import java.security.Key;
 
 import org.jose4j.base64url.SimplePEMEncoder;
-import org.jose4j.jwk.RsaJsonWebKey;
-import org.jose4j.jwk.RsaJwkGenerator;
-import org.jose4j.jws.AlgorithmIdentifiers;
-import org.jose4j.jws.JsonWebSignature;
-import org.jose4j.jwt.JwtClaims;
+import org.jose4j.jwk.PublicJsonWebKey;
 import org.jose4j.jwt.MalformedClaimException;
 import org.jose4j.lang.JoseException;
 
 /**
  * Build JWT's for use with Rest clients. The public and private keys will be
- * statically initialized and reused until this class goes away.
+ * statically initialized and reused until this class goes away. Generated keys are
+ * also saved under the build directory, so that later test runs use the same keys.
+ * The signing algorithm may be set to <code>RS256</code> (the default) or <code>ES256</code>
+ * using the <code>MICROSHED_TEST_JWT_ALGORITHM</code> system property or environment variable.
  *
  * @author brutif
  */
@@ -39,22 +38,21 @@ public class JwtBuilder {
 
     public static final String MP_JWT_PUBLIC_KEY = "mp_jwt_verify_publickey";
     public static final String MP_JWT_ISSUER = "mp_jwt_verify_issuer";
+    public static final String MP_JWT_PUBLIC_KEY_ALGORITHM = "mp_jwt_verify_publickey_algorithm";
 
     private static final String BEGIN_PUBLIC_KEY = "-----BEGIN PUBLIC KEY-----";
     private static final String END_PUBLIC_KEY = "-----END PUBLIC KEY-----";
 
-    private JwtClaims claims = null;
-    private JsonWebSignature jws = null;
-    static RsaJsonWebKey rsajwk = null;
+    static volatile PublicJsonWebKey jwk = null;
+    private static final String algorithm = JwtKeys.getAlgorithm();
 
     // init the single public:private key pair that we will re-use.
-    private static void init() {
-        if (rsajwk != null) {
+    private static synchronized void init() {
+        if (jwk != null) {
             return;
         }
         try {
-            rsajwk = RsaJwkGenerator.generateJwk(2048);
-            rsajwk.setKeyId("keyid");
+            jwk = JwtKeys.load(algorithm);
         } catch (Exception e) {
             e.printStackTrace(System.out);
         }
@@ -62,56 +60,36 @@ public class JwtBuilder {
 
     public static String getPublicKey() {
         init();
-        return pemEncode(rsajwk.getPublicKey());
+        return pemEncode(jwk.getPublicKey());
     }
 
-    private static String pemEncode(Key publicKey) {
+    /**
+     * @return The JWS algorithm used to sign JWTs, either <code>RS256</code> or <code>ES256</code>
+     */
+    public static String getAlgorithm() {
+        return algorithm;
+    }
+
+    static String pemEncode(Key publicKey) {
         byte[] encoded = publicKey.getEncoded(); // X509 SPKI
         return BEGIN_PUBLIC_KEY + "\r\n" + SimplePEMEncoder.encode(encoded) + END_PUBLIC_KEY;
     }
 
-    public static String buildJwt(String subject, String issuer, String[] claims) throws JoseException, MalformedClaimException {
-        JwtBuilder builder = new JwtBuilder();
+    static PublicJsonWebKey getKey() {
         init();
-        builder.claims = new JwtClaims();
-        builder.jws = new JsonWebSignature();
-
-        builder.jws.setKeyIdHeaderValue(rsajwk.getKeyId());
-        builder.jws.setAlgorithmHeaderValue(AlgorithmIdentifiers.RSA_USING_SHA256);
-        // The JWT is signed using the private key, get the key we'll use every time.
-        builder.jws.setKey(rsajwk.getPrivateKey());
-        if (subject != null) {
-            builder.claims.setClaim("sub", subject);
-            builder.claims.setClaim("upn", subject);
-        }
-        builder.claims.setIssuer(issuer == null ? JwtConfig.DEFAULT_ISSUER : issuer);
-        builder.claims.setExpirationTimeMinutesInTheFuture(60);
-        setClaims(builder, claims);
-        if (builder.claims.getIssuedAt() == null) {
-            builder.claims.setIssuedAtToNow();
-        }
-        builder.jws.setPayload(builder.claims.toJson());
-        return builder.jws.getCompactSerialization();
+        return jwk;
     }
 
-    private static void setClaims(JwtBuilder builder, String[] claims) throws MalformedClaimException {
-        for (String claim : claims) {
-            if (!claim.contains("="))
-                throw new MalformedClaimException("Claim did not contain an equals sign (=). Each claim must be of the form 'key=value'");
-            int loc = claim.indexOf('=');
-            String claimName = claim.substring(0, loc);
-            Object claimValue = claim.substring(loc + 1);
-            claimValue = handleArrays((String) claimValue);
-            builder.claims.setClaim(claimName, claimValue);
-        }
-    }
-
-    private static Object handleArrays(String claimValue) {
-        if (!claimValue.contains(",")) {
-            return claimValue;
+    public static String buildJwt(String subject, String issuer, String[] claims) throws JoseException, MalformedClaimException {
+        try {
+            return JwtMinter.getDefault().newToken(subject, issuer, claims);
+        } catch (IllegalArgumentException e) {
+            throw new MalformedClaimException(e.getMessage());
+        } catch (IllegalStateException e) {
+            if (e.getCause() instanceof JoseException)
+                throw (JoseException) e.getCause();
+            throw e;
         }
-        String[] elements = claimValue.split(",");
-        return elements;
     }
 
 }
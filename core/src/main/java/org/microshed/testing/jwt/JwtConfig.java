@@ -28,10 +28,10 @@ import org.microshed.testing.jaxrs.RESTClient;
 /**
  * Used to annotate a REST Client to configure MicroProfile JWT settings
  * that will be applied to all of its HTTP invocations.
- * In order for this annotation to have any effect, the field must also
+ * In order for this annotation to have any effect, the field or parameter must also
  * be annotated with {@link RESTClient}.
  */
-@Target({ ElementType.FIELD })
+@Target({ ElementType.FIELD, ElementType.PARAMETER })
 @Retention(RetentionPolicy.RUNTIME)
 public @interface JwtConfig {
 
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.jwt;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+import org.jose4j.jwk.EcJwkGenerator;
+import org.jose4j.jwk.JsonWebKey;
+import org.jose4j.jwk.JsonWebKey.OutputControlLevel;
+import org.jose4j.jwk.PublicJsonWebKey;
+import org.jose4j.jwk.RsaJwkGenerator;
+import org.jose4j.jws.AlgorithmIdentifiers;
+import org.jose4j.keys.EllipticCurves;
+import org.jose4j.lang.JoseException;
+import org.microshed.testing.internal.InternalLogger;
+
+/**
+ * Loads or generates the key pair used to sign JWTs. Generated keys are saved under the build
+ * directory and reused by later test runs, so that the public key configured for the application
+ * stays the same between runs.
+ * <p>
+ * The following system properties or environment variables may be used:
+ * <ul>
+ * <li><code>MICROSHED_TEST_JWT_ALGORITHM</code>: Either <code>RS256</code> (the default) or <code>ES256</code></li>
+ * <li><code>MICROSHED_TEST_JWT_KEY_SIZE</code>: The RSA key size in bits, 2048 by default</li>
+ * <li><code>MICROSHED_TEST_JWT_KEY_DIR</code>: The directory to save generated keys in. By default
+ * <code>build/microshed-testing/</code> or <code>target/microshed-testing/</code> is used if
+ * the <code>build/</code> or <code>target/</code> directory exists. Set to <code>none</code> to always
+ * generate a new key.</li>
+ * </ul>
+ */
+final class JwtKeys {
+
+    private static final InternalLogger LOG = InternalLogger.get(JwtKeys.class);
+
+    static final String ALGORITHM_PROP = "MICROSHED_TEST_JWT_ALGORITHM";
+    static final String KEY_SIZE_PROP = "MICROSHED_TEST_JWT_KEY_SIZE";
+    static final String KEY_DIR_PROP = "MICROSHED_TEST_JWT_KEY_DIR";
+
+    static final String KEY_ID = "keyid";
+
+    private JwtKeys() {
+    }
+
+    static String getAlgorithm() {
+        String alg = getProperty(ALGORITHM_PROP, AlgorithmIdentifiers.RSA_USING_SHA256).toUpperCase();
+        if (!AlgorithmIdentifiers.RSA_USING_SHA256.equals(alg) && !AlgorithmIdentifiers.ECDSA_USING_P256_CURVE_AND_SHA256.equals(alg)) {
+            LOG.warn("Unsupported value for " + ALGORITHM_PROP + ": " + alg + ". Using " + AlgorithmIdentifiers.RSA_USING_SHA256);
+            return AlgorithmIdentifiers.RSA_USING_SHA256;
+        }
+        return alg;
+    }
+
+    static PublicJsonWebKey load(String algorithm) throws JoseException {
+        boolean isRsa = AlgorithmIdentifiers.RSA_USING_SHA256.equals(algorithm);
+        int keySize = isRsa ? getKeySize() : 256;
+        Path keyDir = getKeyDir();
+        Path keyFile = keyDir == null ? null : keyDir.resolve("jwt-" + algorithm + '-' + keySize + ".jwk");
+
+        if (keyFile != null && Files.isRegularFile(keyFile)) {
+            try {
+                String json = new String(Files.readAllBytes(keyFile), StandardCharsets.UTF_8);
+                PublicJsonWebKey jwk = (PublicJsonWebKey) JsonWebKey.Factory.newJwk(json);
+                if (jwk.getPrivateKey() != null) {
+                    LOG.debug("Reusing JWT signing key from " + keyFile);
+                    return jwk;
+                }
+            } catch (IOException | JoseException | ClassCastException e) {
+                LOG.debug("Unable to read JWT signing key from " + keyFile + ". A new key will be generated.", e);
+            }
+        }
+
+        long start = System.currentTimeMillis();
+        PublicJsonWebKey jwk = isRsa ? RsaJwkGenerator.generateJwk(keySize) : EcJwkGenerator.generateJwk(EllipticCurves.P256);
+        jwk.setKeyId(KEY_ID);
+        LOG.debug("Generated " + algorithm + " JWT signing key in " + (System.currentTimeMillis() - start) + "ms");
+        if (keyFile != null)
+            save(jwk, keyFile);
+        return jwk;
+    }
+
+    private static void save(PublicJsonWebKey jwk, Path keyFile) {
+        try {
+            Files.createDirectories(keyFile.getParent());
+            // Write to a temp file first, in case another JVM is reading or writing the same key
+            Path tmp = Files.createTempFile(keyFile.getParent(), keyFile.getFileName().toString(), ".tmp");
+            Files.write(tmp, jwk.toJson(OutputControlLevel.INCLUDE_PRIVATE).getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp, keyFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            LOG.debug("Saved JWT signing key to " + keyFile);
+        } catch (IOException e) {
+            LOG.debug("Unable to save JWT signing key to " + keyFile, e);
+        }
+    }
+
+    private static Path getKeyDir() {
+        String dir = getProperty(KEY_DIR_PROP, null);
+        if (dir != null)
+            return "none".equalsIgnoreCase(dir) ? null : Paths.get(dir);
+        if (Files.isDirectory(Paths.get("build")))
+            return Paths.get("build", "microshed-testing");
+        if (Files.isDirectory(Paths.get("target")))
+            return Paths.get("target", "microshed-testing");
+        return null;
+    }
+
+    private static int getKeySize() {
+        String value = getProperty(KEY_SIZE_PROP, "2048");
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            LOG.warn("Ignoring invalid value for " + KEY_SIZE_PROP + ": " + value);
+            return 2048;
+        }
+    }
+
+    private static String getProperty(String key, String defaultValue) {
+        String value = System.getProperty(key, System.getenv(key));
+        return value == null || value.isEmpty() ? defaultValue : value;
+    }
+
+}
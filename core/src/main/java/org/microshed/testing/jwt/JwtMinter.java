@@ -0,0 +1,311 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.jwt;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.jose4j.jwk.PublicJsonWebKey;
+import org.jose4j.jws.JsonWebSignature;
+import org.jose4j.jwt.JwtClaims;
+import org.jose4j.jwt.MalformedClaimException;
+import org.jose4j.lang.JoseException;
+import org.microshed.testing.internal.InternalLogger;
+
+/**
+ * Mints JWTs signed with the same key as {@link JwtBuilder}, for tests that need a large number of tokens,
+ * such as load or concurrency tests. Each thread reuses its own signing context, parsed claims are cached,
+ * and tokens minted with {@link #mint(String, String, String...)} are kept in a least-recently-used cache
+ * and replaced shortly before they expire.
+ * <p>
+ * The maximum number of cached tokens can be set using the <code>MICROSHED_TEST_JWT_TOKEN_CACHE_SIZE</code>
+ * system property or environment variable. A value of 0 disables token caching.
+ * <p>
+ * For example, to give each thread that uses a REST client its own subject:
+ *
+ * <pre>
+ * <code>
+ * MyService svc = new RestClientBuilder()
+ *                 .withJwt(JwtMinter.getDefault().perThread("user", "groups=users"))
+ *                 .build(MyService.class);
+ * </code>
+ * </pre>
+ */
+public class JwtMinter {
+
+    private static final InternalLogger LOG = InternalLogger.get(JwtMinter.class);
+
+    public static final String TOKEN_CACHE_SIZE_PROP = "MICROSHED_TEST_JWT_TOKEN_CACHE_SIZE";
+
+    private static final int DEFAULT_TOKEN_CACHE_SIZE = 1024;
+    private static final int MAX_CLAIM_TEMPLATES = 4096;
+    private static final int LIFETIME_MINUTES = 60;
+    private static final long REFRESH_BEFORE_EXPIRY_MS = TimeUnit.MINUTES.toMillis(5);
+
+    private static class DefaultHolder {
+        static final JwtMinter INSTANCE = new JwtMinter(JwtBuilder.getKey(), JwtBuilder.getAlgorithm());
+    }
+
+    private final PublicJsonWebKey key;
+    private final String algorithm;
+    private final ThreadLocal<JsonWebSignature> signers = ThreadLocal.withInitial(this::newSigner);
+    private final Map<List<String>, Map<String, Object>> claimTemplates = new ConcurrentHashMap<>();
+    private final Map<TokenKey, Token> tokens;
+
+    JwtMinter(PublicJsonWebKey key, String algorithm) {
+        this.key = key;
+        this.algorithm = algorithm;
+        int cacheSize = getTokenCacheSize();
+        this.tokens = Collections.synchronizedMap(new LinkedHashMap<TokenKey, Token>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<TokenKey, Token> eldest) {
+                return size() > cacheSize;
+            }
+        });
+    }
+
+    /**
+     * @return The minter that signs tokens with the key that is configured for the application
+     */
+    public static JwtMinter getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    /**
+     * Returns a token for the given subject and claims, issued by {@link JwtConfig#DEFAULT_ISSUER}.
+     * See {@link #mint(String, String, String...)}.
+     */
+    public String mint(String subject, String... claims) {
+        return mint(subject, JwtConfig.DEFAULT_ISSUER, claims);
+    }
+
+    /**
+     * Returns a token for the given subject, issuer, and claims. If a token was minted for the same
+     * values before and it does not expire within the next 5 minutes, the same token is returned.
+     *
+     * @param subject The value for the <code>sub</code> and <code>upn</code> claims
+     * @param issuer The value for the <code>iss</code> claim
+     * @param claims Claims in the same format as {@link JwtConfig#claims()}
+     * @return A signed JWT in compact serialization
+     */
+    public String mint(String subject, String issuer, String... claims) {
+        TokenKey tokenKey = new TokenKey(subject, issuer, claims);
+        long now = System.currentTimeMillis();
+        Token cached = tokens.get(tokenKey);
+        if (cached != null && cached.refreshAt > now)
+            return cached.jwt;
+
+        String jwt = newToken(subject, issuer, claims);
+        tokens.put(tokenKey, new Token(jwt, now + TimeUnit.MINUTES.toMillis(LIFETIME_MINUTES) - REFRESH_BEFORE_EXPIRY_MS));
+        return jwt;
+    }
+
+    /**
+     * Mints a new token for the given subject, issuer, and claims, without using the token cache
+     *
+     * @param subject The value for the <code>sub</code> and <code>upn</code> claims
+     * @param issuer The value for the <code>iss</code> claim
+     * @param claims Claims in the same format as {@link JwtConfig#claims()}
+     * @return A signed JWT in compact serialization
+     * @throws IllegalArgumentException If any of the claims is malformed
+     */
+    public String newToken(String subject, String issuer, String... claims) {
+        JwtClaims jwtClaims = new JwtClaims();
+        if (subject != null) {
+            jwtClaims.setClaim("sub", subject);
+            jwtClaims.setClaim("upn", subject);
+        }
+        jwtClaims.setIssuer(issuer == null ? JwtConfig.DEFAULT_ISSUER : issuer);
+        jwtClaims.setExpirationTimeMinutesInTheFuture(LIFETIME_MINUTES);
+        for (Map.Entry<String, Object> claim : getClaimTemplate(claims).entrySet())
+            jwtClaims.setClaim(claim.getKey(), claim.getValue());
+        try {
+            if (jwtClaims.getIssuedAt() == null)
+                jwtClaims.setIssuedAtToNow();
+        } catch (MalformedClaimException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+
+        JsonWebSignature jws = signers.get();
+        jws.setPayload(jwtClaims.toJson());
+        try {
+            return jws.getCompactSerialization();
+        } catch (JoseException e) {
+            throw new IllegalStateException("Unable to sign JWT for subject " + subject, e);
+        }
+    }
+
+    /**
+     * Returns a supplier that calls {@link #mint(String, String, String...)} each time it is used, so that a long-lived
+     * client never sends a token that is about to expire. Suppliers for the same minter, subject, issuer, and claims
+     * are equal, which allows REST clients that use them to be cached and shared.
+     *
+     * @param subject The value for the <code>sub</code> and <code>upn</code> claims
+     * @param issuer The value for the <code>iss</code> claim
+     * @param claims Claims in the same format as {@link JwtConfig#claims()}
+     * @return A supplier of signed JWTs in compact serialization
+     */
+    public TokenSupplier supplier(String subject, String issuer, String... claims) {
+        return new TokenSupplier(this, subject, issuer, claims);
+    }
+
+    /**
+     * @param subjectPrefix The prefix of the subject for each thread. A unique number is appended for each thread.
+     * @param claims Claims in the same format as {@link JwtConfig#claims()}
+     * @return A supplier that returns a distinct token for each thread that calls it
+     */
+    public Supplier<String> perThread(String subjectPrefix, String... claims) {
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadLocal<String> subjects = ThreadLocal.withInitial(() -> subjectPrefix + threadCount.incrementAndGet());
+        return () -> mint(subjects.get(), claims);
+    }
+
+    private JsonWebSignature newSigner() {
+        JsonWebSignature jws = new JsonWebSignature();
+        jws.setKeyIdHeaderValue(key.getKeyId());
+        jws.setAlgorithmHeaderValue(algorithm);
+        jws.setKey(key.getPrivateKey());
+        // The key is generated or loaded by JwtBuilder, which is trusted, so it is never validated.
+        // This skips checking the key size and type against the algorithm for every token.
+        jws.setDoKeyValidation(false);
+        return jws;
+    }
+
+    private Map<String, Object> getClaimTemplate(String[] claims) {
+        if (claims == null || claims.length == 0)
+            return Collections.emptyMap();
+        List<String> templateKey = Arrays.asList(claims.clone());
+        Map<String, Object> template = claimTemplates.get(templateKey);
+        if (template != null)
+            return template;
+
+        template = new LinkedHashMap<>();
+        for (String claim : claims) {
+            int loc = claim.indexOf('=');
+            if (loc < 0)
+                throw new IllegalArgumentException("Claim did not contain an equals sign (=). Each claim must be of the form 'key=value'");
+            String claimValue = claim.substring(loc + 1);
+            // For arrays, values are separated with a comma
+            template.put(claim.substring(0, loc), claimValue.contains(",") ? claimValue.split(",") : claimValue);
+        }
+        template = Collections.unmodifiableMap(template);
+        if (claimTemplates.size() >= MAX_CLAIM_TEMPLATES) {
+            LOG.debug("Clearing JWT claim template cache after reaching " + MAX_CLAIM_TEMPLATES + " entries");
+            claimTemplates.clear();
+        }
+        claimTemplates.put(templateKey, template);
+        return template;
+    }
+
+    private static int getTokenCacheSize() {
+        String value = System.getProperty(TOKEN_CACHE_SIZE_PROP, System.getenv(TOKEN_CACHE_SIZE_PROP));
+        if (value == null || value.isEmpty())
+            return DEFAULT_TOKEN_CACHE_SIZE;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            LOG.warn("Ignoring invalid value for " + TOKEN_CACHE_SIZE_PROP + ": " + value);
+            return DEFAULT_TOKEN_CACHE_SIZE;
+        }
+    }
+
+    /**
+     * Supplies tokens from {@link JwtMinter#mint(String, String, String...)}. See {@link JwtMinter#supplier(String, String, String...)}.
+     */
+    public static final class TokenSupplier implements Supplier<String> {
+        private final JwtMinter minter;
+        private final String subject;
+        private final String issuer;
+        private final String[] claims;
+        private final TokenKey key;
+
+        private TokenSupplier(JwtMinter minter, String subject, String issuer, String[] claims) {
+            this.minter = minter;
+            this.subject = subject;
+            this.issuer = issuer;
+            this.claims = claims == null ? new String[0] : claims.clone();
+            this.key = new TokenKey(subject, issuer, claims);
+        }
+
+        @Override
+        public String get() {
+            return minter.mint(subject, issuer, claims);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof TokenSupplier))
+                return false;
+            TokenSupplier other = (TokenSupplier) obj;
+            return minter == other.minter && key.equals(other.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode();
+        }
+    }
+
+    private static class TokenKey {
+        private final String subject;
+        private final String issuer;
+        private final List<String> claims;
+
+        TokenKey(String subject, String issuer, String[] claims) {
+            this.subject = subject;
+            this.issuer = issuer;
+            this.claims = claims == null ? Collections.emptyList() : Arrays.asList(claims.clone());
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof TokenKey))
+                return false;
+            TokenKey other = (TokenKey) obj;
+            return Objects.equals(subject, other.subject) &&
+                   Objects.equals(issuer, other.issuer) &&
+                   claims.equals(other.claims);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(subject, issuer, claims);
+        }
+    }
+
+    private static class Token {
+        final String jwt;
+        final long refreshAt;
+
+        Token(String jwt, long refreshAt) {
+            this.jwt = jwt;
+            this.refreshAt = refreshAt;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.kafka;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.Type;
+import java.util.Map;
+import java.util.Objects;
+
+import javax.json.bind.Jsonb;
+import javax.json.bind.JsonbBuilder;
+import javax.json.bind.JsonbException;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+
+/**
+ * A Kafka deserializer that reads JSON using JSON-B. Objects are read directly from the
+ * serialized bytes, without building an intermediate <code>String</code>.
+ * <p>
+ * This deserializer is selected automatically for a {@link KafkaConsumerClient} whose key or value type
+ * has no built-in Kafka deserializer, such as a <code>KafkaConsumer&lt;String, MyPojo&gt;</code>, in which
+ * case the type to read is taken from the generic type of the consumer. Otherwise the type must be configured
+ * with the {@link #KEY_TYPE_CONFIG} or {@link #VALUE_TYPE_CONFIG} property, for example
+ * <code>&#64;KafkaConsumerClient(valueDeserializer = JsonbDeserializer.class, properties = "microshed.jsonb.value.type=com.example.MyPojo")</code>
+ *
+ * @param <T> The type of objects to deserialize
+ */
+public class JsonbDeserializer<T> implements Deserializer<T> {
+
+    /**
+     * The type of keys to read, as a fully qualified class name or a <code>java.lang.reflect.Type</code>
+     */
+    public static final String KEY_TYPE_CONFIG = "microshed.jsonb.key.type";
+
+    /**
+     * The type of values to read, as a fully qualified class name or a <code>java.lang.reflect.Type</code>
+     */
+    public static final String VALUE_TYPE_CONFIG = "microshed.jsonb.value.type";
+
+    private static final Jsonb jsonb = JsonbBuilder.create();
+
+    private Type type;
+
+    public JsonbDeserializer() {
+    }
+
+    /**
+     * @param type The type of objects to deserialize
+     */
+    public JsonbDeserializer(Type type) {
+        Objects.requireNonNull(type, "Supplied 'type' must not be null");
+        this.type = type;
+    }
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        if (type != null)
+            return;
+        String key = isKey ? KEY_TYPE_CONFIG : VALUE_TYPE_CONFIG;
+        Object configured = configs.get(key);
+        if (configured instanceof Type) {
+            type = (Type) configured;
+        } else if (configured instanceof String && !((String) configured).isEmpty()) {
+            String className = ((String) configured).trim();
+            try {
+                type = Class.forName(className, false, classLoader());
+            } catch (ClassNotFoundException e) {
+                throw new IllegalArgumentException("Unable to load class " + className + " configured by " + key, e);
+            }
+        } else {
+            throw new IllegalArgumentException("The " + key + " property must be set to the type to deserialize with " +
+                                               JsonbDeserializer.class.getSimpleName());
+        }
+    }
+
+    private static ClassLoader classLoader() {
+        ClassLoader cl = Thread.currentThread().getContextClassLoader();
+        return cl != null ? cl : JsonbDeserializer.class.getClassLoader();
+    }
+
+    @Override
+    public T deserialize(String topic, byte[] data) {
+        if (data == null || data.length == 0)
+            return null;
+        if (type == null)
+            throw new IllegalStateException(JsonbDeserializer.class.getSimpleName() + " must be configured with the type to deserialize");
+        try {
+            return jsonb.fromJson(new ByteArrayInputStream(data), type);
+        } catch (JsonbException e) {
+            throw new SerializationException("Unable to deserialize " + type.getTypeName() + " from topic " + topic, e);
+        }
+    }
+
+}
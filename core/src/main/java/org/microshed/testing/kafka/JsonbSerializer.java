@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.kafka;
+
+import java.io.ByteArrayOutputStream;
+
+import javax.json.bind.Jsonb;
+import javax.json.bind.JsonbBuilder;
+import javax.json.bind.JsonbException;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Serializer;
+
+/**
+ * A Kafka serializer that writes objects as JSON using JSON-B. The JSON is written directly
+ * to the serialized bytes, without building an intermediate <code>String</code>.
+ * <p>
+ * This serializer is selected automatically for a {@link KafkaProducerClient} whose key or value type
+ * has no built-in Kafka serializer, such as a <code>KafkaProducer&lt;String, MyPojo&gt;</code>.
+ *
+ * @param <T> The type of objects to serialize
+ */
+public class JsonbSerializer<T> implements Serializer<T> {
+
+    private static final Jsonb jsonb = JsonbBuilder.create();
+
+    private static final int INITIAL_BUFFER_SIZE = 256;
+
+    // Serializers may be called from any thread that sends records, so reuse one buffer per thread
+    private final ThreadLocal<ByteArrayOutputStream> buffer = ThreadLocal.withInitial(() -> new ByteArrayOutputStream(INITIAL_BUFFER_SIZE));
+
+    @Override
+    public byte[] serialize(String topic, T data) {
+        if (data == null)
+            return null;
+        ByteArrayOutputStream out = buffer.get();
+        out.reset();
+        try {
+            jsonb.toJson(data, out);
+        } catch (JsonbException e) {
+            throw new SerializationException("Unable to serialize " + data.getClass().getName() + " for topic " + topic, e);
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public void close() {
+        buffer.remove();
+    }
+
+}
@@ -25,19 +25,21 @@ import java.lang.annotation.Target;
 
 /**
  * Identifies an injection point for a <code>org.apache.kafka.clients.producer.KafkaProducer</code>
- * The annotated field MUST be <code>public static</code> and non-final.
+ * The annotated field MUST be non-final, and if it is static it MUST also be <code>public</code>.
+ * Constructor and test method parameters may also be annotated, in which case the client is
+ * closed once the test instance or test method that it was created for is finished.
  *
  * The injected <code>KafkaProducer</code> will be auto-configured according the values
  * in this annotation.
  */
-@Target({ ElementType.FIELD })
+@Target({ ElementType.FIELD, ElementType.PARAMETER })
 @Retention(RetentionPolicy.RUNTIME)
 public @interface KafkaProducerClient {
 
     /**
      * @return Sets the <code>bootstrap.servers</code> property for the injected <code>KafkaProducer</code>.
      *         Otherwise, the <code>org.microshed.kafka.bootstrap.servers</code> system property is used if set.
-     *         Otherwise, any <code>org.testcontainers.containers.KafkaContainer</code> discovered in the test
+     *         Otherwise, any <code>org.testcontainers.containers.KafkaContainer</code> or embedded Kafka broker discovered in the test
      *         will be used.
      *         If none of the previous options are discovered, an error is raised.
      */
@@ -46,14 +48,14 @@ public @interface KafkaProducerClient {
     /**
      * @return Sets the <code>key.serializer</code> property for the injected <code>KafkaProducer</code>.
      *         If unset, an an attempt will be made to select an appropriate class from the built-in serializers
-     *         in the <code>org.apache.kafka.common.serialization</code> package.
+     *         in the <code>org.apache.kafka.common.serialization</code> package, or {@link JsonbSerializer} for other types.
      */
     Class<?> keySerializer() default Object.class;
 
     /**
      * @return Sets the <code>value.serializer</code> property for the injected <code>KafkaProducer</code>.
      *         If unset, an an attempt will be made to select an appropriate class from the built-in serializers
-     *         in the <code>org.apache.kafka.common.serialization</code> package.
+     *         in the <code>org.apache.kafka.common.serialization</code> package, or {@link JsonbSerializer} for other types.
      */
     Class<?> valueSerializer() default Object.class;
 
@@ -0,0 +1,367 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.kafka;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
+import org.microshed.testing.internal.InternalLogger;
+import org.opentest4j.AssertionFailedError;
+
+/**
+ * Consumes records on a background thread and keeps the most recent ones in memory, so that tests can
+ * wait for the records they expect instead of polling a consumer themselves. Records are kept in a bounded
+ * ring buffer and are indexed by topic, key, and offset.
+ * <p>
+ * A recorder can be injected by annotating a field or parameter of type <code>KafkaRecorder</code> with
+ * {@link KafkaConsumerClient}, in which case it starts recording as soon as the environment is started and
+ * reads the annotated topics from the earliest offset unless <code>auto.offset.reset</code> is set.
+ * For example:
+ *
+ * <pre>
+ * <code>
+ * &#64;KafkaConsumerClient(groupId = "update-status", topics = "statusTopic")
+ * public static KafkaRecorder&lt;String, String&gt; statusUpdates;
+ *
+ * &#64;Test
+ * public void testStatusUpdates() {
+ *   // ... send an order
+ *   statusUpdates.awaitRecords(r -&gt; r.value().contains("READY"), 1, Duration.ofSeconds(30));
+ * }
+ * </code>
+ * </pre>
+ *
+ * The number of records that are kept can be set using the <code>MICROSHED_TEST_KAFKA_RECORDER_CAPACITY</code>
+ * system property or environment variable, and defaults to 10000.
+ *
+ * @param <K> The key type of recorded records
+ * @param <V> The value type of recorded records
+ */
+public class KafkaRecorder<K, V> implements AutoCloseable {
+
+    private static final InternalLogger LOG = InternalLogger.get(KafkaRecorder.class);
+
+    public static final String CAPACITY_PROP = "MICROSHED_TEST_KAFKA_RECORDER_CAPACITY";
+
+    private static final int DEFAULT_CAPACITY = 10_000;
+
+    private static final Duration POLL_TIMEOUT = Duration.ofMillis(100);
+
+    // Stands in for records without a key in the key index
+    private static final Object NULL_KEY = new Object();
+
+    private final Consumer<K, V> consumer;
+    private final Set<String> topics;
+    private final Thread poller;
+    private final ConsumerRecord<K, V>[] ring;
+
+    // Records are numbered in the order they were received. The records in [firstSeq, nextSeq) are buffered
+    // in ring[seq % ring.length]
+    private long firstSeq;
+    private long nextSeq;
+    private final Map<String, ArrayDeque<Long>> byTopic = new HashMap<>();
+    private final Map<Object, ArrayDeque<Long>> byKey = new HashMap<>();
+    private final Map<TopicPartition, Map<Long, Long>> byOffset = new HashMap<>();
+
+    private volatile boolean closed;
+    private volatile RuntimeException failure;
+
+    /**
+     * Starts recording the records of a consumer that is already subscribed or assigned. The consumer
+     * must not be used by anything else, and is closed when the recorder is closed.
+     */
+    public KafkaRecorder(Consumer<K, V> consumer) {
+        this(consumer, getCapacity());
+    }
+
+    /**
+     * Starts recording the records of a consumer that is already subscribed or assigned. The consumer
+     * must not be used by anything else, and is closed when the recorder is closed.
+     *
+     * @param capacity The maximum number of records to keep. Once exceeded, the oldest records are discarded.
+     */
+    @SuppressWarnings("unchecked")
+    public KafkaRecorder(Consumer<K, V> consumer, int capacity) {
+        Objects.requireNonNull(consumer, "Supplied 'consumer' must not be null");
+        if (capacity < 1)
+            throw new IllegalArgumentException("Supplied 'capacity' must be positive: " + capacity);
+        this.consumer = consumer;
+        // The consumer may only be used by the polling thread once recording starts
+        Set<String> topics = new TreeSet<>(consumer.subscription());
+        for (TopicPartition tp : consumer.assignment())
+            topics.add(tp.topic());
+        this.topics = Collections.unmodifiableSet(topics);
+        this.ring = new ConsumerRecord[capacity];
+        this.poller = new Thread(this::poll, "microshed-kafka-recorder");
+        poller.setDaemon(true);
+        poller.start();
+    }
+
+    /**
+     * Waits until the recorder holds at least <code>count</code> records that match the supplied matcher.
+     * Records that were recorded before this method was called are considered as well.
+     *
+     * @param matcher Selects the records to wait for
+     * @param count The number of matching records to wait for
+     * @param timeout The maximum time to wait
+     * @return The first <code>count</code> matching records, in the order they were received
+     * @throws AssertionFailedError If fewer matching records were received within the timeout
+     */
+    public List<ConsumerRecord<K, V>> awaitRecords(Predicate<? super ConsumerRecord<K, V>> matcher, int count, Duration timeout) {
+        Objects.requireNonNull(matcher, "Supplied 'matcher' must not be null");
+        Objects.requireNonNull(timeout, "Supplied 'timeout' must not be null");
+        long deadline = System.nanoTime() + timeout.toNanos();
+        List<ConsumerRecord<K, V>> matches = new ArrayList<>();
+        if (count <= 0)
+            return matches;
+        synchronized (this) {
+            long scanned = firstSeq;
+            while (true) {
+                // Only look at records that arrived since the last check
+                for (scanned = Math.max(scanned, firstSeq); scanned < nextSeq; scanned++) {
+                    ConsumerRecord<K, V> record = get(scanned);
+                    if (matcher.test(record)) {
+                        matches.add(record);
+                        if (matches.size() == count)
+                            return matches;
+                    }
+                }
+                if (failure != null)
+                    throw new AssertionFailedError("Stopped recording records of " + topics +
+                                                   " after " + matches.size() + " of " + count + " matching records", failure);
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || closed)
+                    throw new AssertionFailedError("Expected " + count + " matching records from " + topics + " within " +
+                                                   timeout.toMillis() + "ms, but received " + matches.size());
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new AssertionFailedError("Interrupted while waiting for records from " + topics, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits until the recorder holds at least <code>count</code> records of the supplied topic
+     *
+     * @see #awaitRecords(Predicate, int, Duration)
+     */
+    public List<ConsumerRecord<K, V>> awaitRecords(String topic, int count, Duration timeout) {
+        Objects.requireNonNull(topic, "Supplied 'topic' must not be null");
+        return awaitRecords(record -> topic.equals(record.topic()), count, timeout);
+    }
+
+    /**
+     * @return All records that are currently held, in the order they were received
+     */
+    public synchronized List<ConsumerRecord<K, V>> getRecords() {
+        List<ConsumerRecord<K, V>> records = new ArrayList<>((int) (nextSeq - firstSeq));
+        for (long seq = firstSeq; seq < nextSeq; seq++)
+            records.add(get(seq));
+        return records;
+    }
+
+    /**
+     * @return All records of the supplied topic that are currently held, in the order they were received
+     */
+    public synchronized List<ConsumerRecord<K, V>> getRecords(String topic) {
+        return lookup(byTopic.get(topic));
+    }
+
+    /**
+     * @return All records with the supplied key that are currently held, in the order they were received
+     */
+    public synchronized List<ConsumerRecord<K, V>> getRecordsWithKey(K key) {
+        return lookup(byKey.get(indexKey(key)));
+    }
+
+    /**
+     * @return The record at the supplied offset, if it is currently held
+     */
+    public synchronized Optional<ConsumerRecord<K, V>> getRecord(String topic, int partition, long offset) {
+        Map<Long, Long> offsets = byOffset.get(new TopicPartition(topic, partition));
+        Long seq = offsets == null ? null : offsets.get(offset);
+        return seq == null ? Optional.empty() : Optional.of(get(seq));
+    }
+
+    /**
+     * @return The topics that are recorded
+     */
+    public Set<String> getTopics() {
+        return topics;
+    }
+
+    /**
+     * @return The number of records that are currently held
+     */
+    public synchronized int size() {
+        return (int) (nextSeq - firstSeq);
+    }
+
+    /**
+     * Discards all records that are currently held, for example to isolate the assertions of one test from another.
+     * Recording continues with the next record that is received.
+     */
+    public synchronized void clear() {
+        for (long seq = firstSeq; seq < nextSeq; seq++)
+            ring[(int) (seq % ring.length)] = null;
+        firstSeq = nextSeq;
+        byTopic.clear();
+        byKey.clear();
+        byOffset.clear();
+    }
+
+    /**
+     * Stops recording and closes the underlying consumer
+     */
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        consumer.wakeup();
+        try {
+            poller.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    private void poll() {
+        try {
+            while (!closed) {
+                ConsumerRecords<K, V> records = consumer.poll(POLL_TIMEOUT);
+                if (!records.isEmpty())
+                    add(records);
+            }
+        } catch (WakeupException e) {
+            // woken up by close()
+        } catch (RuntimeException e) {
+            if (!closed) {
+                LOG.warn("Stopped recording records of " + topics + " because of: " + e.getMessage(), e);
+                failure = e;
+            }
+        } finally {
+            try {
+                // The consumer is not thread safe, so it is closed by the thread that polls it
+                consumer.close();
+            } catch (RuntimeException e) {
+                LOG.debug("Unable to close kafka consumer", e);
+            }
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+
+    private synchronized void add(ConsumerRecords<K, V> records) {
+        for (ConsumerRecord<K, V> record : records) {
+            if (nextSeq - firstSeq == ring.length)
+                evictOldest();
+            long seq = nextSeq++;
+            ring[(int) (seq % ring.length)] = record;
+            byTopic.computeIfAbsent(record.topic(), t -> new ArrayDeque<>()).addLast(seq);
+            byKey.computeIfAbsent(indexKey(record.key()), k -> new ArrayDeque<>()).addLast(seq);
+            byOffset.computeIfAbsent(new TopicPartition(record.topic(), record.partition()), tp -> new HashMap<>())
+                            .put(record.offset(), seq);
+        }
+        notifyAll();
+    }
+
+    private void evictOldest() {
+        long seq = firstSeq++;
+        ConsumerRecord<K, V> record = get(seq);
+        ring[(int) (seq % ring.length)] = null;
+        // Records are indexed in the order they are received, so the oldest record is always at the head
+        removeHead(byTopic, record.topic());
+        removeHead(byKey, indexKey(record.key()));
+        TopicPartition tp = new TopicPartition(record.topic(), record.partition());
+        Map<Long, Long> offsets = byOffset.get(tp);
+        // A redelivery of the same offset replaces the entry, which then refers to the newer record
+        offsets.remove(record.offset(), seq);
+        if (offsets.isEmpty())
+            byOffset.remove(tp);
+    }
+
+    private static void removeHead(Map<?, ArrayDeque<Long>> index, Object key) {
+        ArrayDeque<Long> seqs = index.get(key);
+        seqs.pollFirst();
+        if (seqs.isEmpty())
+            index.remove(key);
+    }
+
+    private List<ConsumerRecord<K, V>> lookup(ArrayDeque<Long> seqs) {
+        if (seqs == null)
+            return Collections.emptyList();
+        List<ConsumerRecord<K, V>> records = new ArrayList<>(seqs.size());
+        for (Long seq : seqs)
+            records.add(get(seq));
+        return records;
+    }
+
+    private ConsumerRecord<K, V> get(long seq) {
+        return ring[(int) (seq % ring.length)];
+    }
+
+    private static Object indexKey(Object key) {
+        if (key == null)
+            return NULL_KEY;
+        // Arrays do not implement equals(), so index byte[] keys by their content
+        if (key instanceof byte[])
+            return ByteBuffer.wrap((byte[]) key);
+        return key;
+    }
+
+    private static int getCapacity() {
+        String value = System.getProperty(CAPACITY_PROP, System.getenv(CAPACITY_PROP));
+        if (value == null || value.isEmpty())
+            return DEFAULT_CAPACITY;
+        try {
+            int capacity = Integer.parseInt(value.trim());
+            if (capacity > 0)
+                return capacity;
+        } catch (NumberFormatException e) {
+            // fall through
+        }
+        LOG.warn("Ignoring invalid value for " + CAPACITY_PROP + ": " + value);
+        return DEFAULT_CAPACITY;
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.internal;
+
+import java.util.Collection;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Emits Java Flight Recorder events for MicroShed Testing phases and client calls.
+ * This is the Java 11+ version of the class, which is packaged under <code>META-INF/versions/11</code>.
+ * Events are only allocated and populated if their event type is enabled in a running recording.
+ */
+public final class FlightEvents {
+
+    private static final String CATEGORY = "MicroShed Testing";
+
+    private static final boolean AVAILABLE = probe();
+
+    private FlightEvents() {
+        // static utility
+    }
+
+    /**
+     * @return True if Java Flight Recorder events can be recorded in this JVM
+     */
+    public static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+    private static boolean probe() {
+        // The jdk.jfr module may be missing from a custom runtime image, and recording may be disabled
+        try {
+            Class<?> flightRecorder = Class.forName("jdk.jfr.FlightRecorder");
+            return (Boolean) flightRecorder.getMethod("isAvailable").invoke(null);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return false;
+        }
+    }
+
+    public static FlightEvent environmentStart(String testClass, String environment) {
+        if (!AVAILABLE)
+            return FlightEvent.NOOP;
+        EnvironmentStartEvent event = new EnvironmentStartEvent();
+        if (!event.isEnabled())
+            return FlightEvent.NOOP;
+        event.testClass = testClass;
+        event.environment = environment;
+        event.begin();
+        return event;
+    }
+
+    public static FlightEvent containerReady(String container) {
+        if (!AVAILABLE)
+            return FlightEvent.NOOP;
+        ContainerReadyEvent event = new ContainerReadyEvent();
+        if (!event.isEnabled())
+            return FlightEvent.NOOP;
+        event.container = container;
+        event.begin();
+        return event;
+    }
+
+    public static FlightEvent restClientCall(String method, String uri) {
+        if (!AVAILABLE)
+            return FlightEvent.NOOP;
+        RestClientCallEvent event = new RestClientCallEvent();
+        if (!event.isEnabled())
+            return FlightEvent.NOOP;
+        event.method = method;
+        event.uri = uri;
+        event.begin();
+        return event;
+    }
+
+    public static void kafkaPoll(Collection<String> topics, int records) {
+        if (!AVAILABLE)
+            return;
+        KafkaPollEvent event = new KafkaPollEvent();
+        if (!event.isEnabled())
+            return;
+        event.topics = String.join(",", topics);
+        event.records = records;
+        event.commit();
+    }
+
+    /**
+     * Ends and commits the event when it is closed
+     */
+    abstract static class TimedEvent extends Event implements FlightEvent {
+        @Override
+        public void close() {
+            end();
+            if (shouldCommit())
+                commit();
+        }
+    }
+
+    @Name("microshed.EnvironmentStart")
+    @Label("Environment Start")
+    @Description("Configuring and starting the environment for a test class")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class EnvironmentStartEvent extends TimedEvent {
+        @Label("Test Class")
+        String testClass;
+
+        @Label("Environment")
+        String environment;
+    }
+
+    @Name("microshed.ContainerReady")
+    @Label("Container Ready")
+    @Description("Starting a container until it is ready")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class ContainerReadyEvent extends TimedEvent {
+        @Label("Container")
+        String container;
+    }
+
+    @Name("microshed.RestClientCall")
+    @Label("REST Client Call")
+    @Description("A request made by a REST client built by MicroShed Testing")
+    @Category(CATEGORY)
+    static class RestClientCallEvent extends TimedEvent {
+        @Label("Method")
+        String method;
+
+        @Label("URI")
+        String uri;
+
+        @Label("Status")
+        int status;
+
+        @Override
+        public FlightEvent withStatus(int status) {
+            this.status = status;
+            return this;
+        }
+    }
+
+    @Name("microshed.KafkaPoll")
+    @Label("Kafka Poll")
+    @Description("Records returned by a poll of a Kafka consumer injected by MicroShed Testing")
+    @Category(CATEGORY)
+    static class KafkaPollEvent extends Event {
+        @Label("Topics")
+        String topics;
+
+        @Label("Records")
+        int records;
+    }
+
+}
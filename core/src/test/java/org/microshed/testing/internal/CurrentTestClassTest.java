@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.internal;
+
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class CurrentTestClassTest {
+
+    static class ClassA {
+    }
+
+    static class ClassB {
+    }
+
+    @AfterEach
+    public void reset() {
+        CurrentTestClass.started(null);
+    }
+
+    @Test
+    public void testScopesRestore() {
+        assertNull(CurrentTestClass.get());
+        try (CurrentTestClass.Scope a = CurrentTestClass.enter(ClassA.class)) {
+            assertSame(ClassA.class, CurrentTestClass.get());
+            try (CurrentTestClass.Scope b = CurrentTestClass.enter(ClassB.class)) {
+                assertSame(ClassB.class, CurrentTestClass.get());
+            }
+            assertSame(ClassA.class, CurrentTestClass.get());
+        }
+        assertNull(CurrentTestClass.get());
+    }
+
+    @Test
+    public void testOtherThreadsUseLastStarted() throws Exception {
+        CurrentTestClass.started(ClassA.class);
+        CurrentTestClass.started(ClassB.class);
+        try (CurrentTestClass.Scope a = CurrentTestClass.enter(ClassA.class)) {
+            assertSame(ClassA.class, CurrentTestClass.get());
+            assertSame(ClassB.class, CompletableFuture.supplyAsync(CurrentTestClass::get).get());
+        }
+        assertSame(ClassB.class, CurrentTestClass.get());
+    }
+}
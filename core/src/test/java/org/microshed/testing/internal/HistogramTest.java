@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class HistogramTest {
+
+    @Test
+    public void testEmpty() {
+        Histogram h = new Histogram();
+        assertEquals(0, h.getCount());
+        assertEquals(0, h.getMax());
+        assertEquals(0, h.getMean(), 0);
+        assertEquals(0, h.getValueAtPercentile(50));
+    }
+
+    @Test
+    public void testSmallValuesAreExact() {
+        Histogram h = new Histogram();
+        for (int i = 1; i <= 100; i++)
+            h.record(i);
+        assertEquals(100, h.getCount());
+        assertEquals(100, h.getMax());
+        assertEquals(50.5, h.getMean(), 0.0001);
+        assertEquals(1, h.getValueAtPercentile(0));
+        assertEquals(1, h.getValueAtPercentile(1));
+        assertEquals(50, h.getValueAtPercentile(50));
+        assertEquals(90, h.getValueAtPercentile(90));
+        assertEquals(99, h.getValueAtPercentile(99));
+        assertEquals(100, h.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void testLargeValuesAreWithinPrecision() {
+        Histogram h = new Histogram();
+        List<Long> values = new ArrayList<>();
+        for (long v = 100; v < 10_000_000_000L; v = v * 3 / 2 + 7) {
+            values.add(v);
+            h.record(v);
+        }
+        for (int i = 0; i < values.size(); i++) {
+            double percentile = 100.0 * (i + 1) / values.size();
+            long expected = values.get(i);
+            long actual = h.getValueAtPercentile(percentile);
+            // Buckets round up to their highest equivalent value, which is at most 1/64 above the recorded value
+            assertTrue(actual >= expected && actual <= expected + expected / 64,
+                       () -> "Value at percentile " + percentile + " was " + actual + " but expected about " + expected);
+        }
+    }
+
+    @Test
+    public void testBucketBoundaries() {
+        // The last exact value, the first values of the first log-linear buckets, and powers of two
+        for (long v : new long[] { 63, 64, 127, 128, 129, 1L << 20, (1L << 20) + 1, (1L << 40) - 1, 1L << 40 }) {
+            Histogram h = new Histogram();
+            h.record(v);
+            h.record(v + 100_000_000_000_000L);
+            long actual = h.getValueAtPercentile(50);
+            assertTrue(actual >= v && actual <= v + v / 64, () -> "Recorded " + v + " but got " + actual);
+        }
+    }
+
+    @Test
+    public void testCappedAtMax() {
+        Histogram h = new Histogram();
+        h.record(1000);
+        // 1000 shares a bucket with values up to 1007, but nothing above 1000 was recorded
+        assertEquals(1000, h.getValueAtPercentile(50));
+        assertEquals(1000, h.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void testOutOfRangeValues() {
+        Histogram h = new Histogram();
+        h.record(-5);
+        h.record(Long.MAX_VALUE);
+        assertEquals(2, h.getCount());
+        assertEquals(0, h.getValueAtPercentile(50));
+        assertEquals(Long.MAX_VALUE, h.getMax());
+        // Values beyond the tracked range share the highest bucket
+        assertEquals((1L << 41) - 1, h.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void testConcurrentRecording() throws Exception {
+        Histogram h = new Histogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++)
+                    h.record(i % 100);
+            });
+            threads[t].start();
+        }
+        for (Thread t : threads)
+            t.join();
+        assertEquals(40_000, h.getCount());
+        assertEquals(99, h.getMax());
+        assertEquals(49, h.getValueAtPercentile(50));
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.internal;
+
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+
+public class KafkaPollInterceptorTest {
+
+    @Test
+    public void testRecordsPassedThrough() {
+        Map<TopicPartition, List<ConsumerRecord<Object, Object>>> polled = new HashMap<>();
+        polled.put(new TopicPartition("orders", 0), Arrays.asList(new ConsumerRecord<>("orders", 0, 0, "k1", "v1"),
+                                                                   new ConsumerRecord<>("orders", 0, 1, "k2", "v2")));
+        polled.put(new TopicPartition("payments", 1), Collections.singletonList(new ConsumerRecord<>("payments", 1, 5, "k3", "v3")));
+        ConsumerRecords<Object, Object> records = new ConsumerRecords<>(polled);
+
+        try (KafkaPollInterceptor interceptor = new KafkaPollInterceptor()) {
+            interceptor.configure(Collections.emptyMap());
+            // The interceptor only observes polls, so the consumer must get back exactly what was polled
+            assertSame(records, interceptor.onConsume(records));
+            assertSame(ConsumerRecords.empty(), interceptor.onConsume(ConsumerRecords.empty()));
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+public class RestClientCacheTest {
+
+    private static final List<Class<?>> PROVIDERS = Collections.singletonList(String.class);
+
+    private final AtomicInteger builds = new AtomicInteger();
+
+    private Object get(RestClientCache cache, String basePath, Map<String, String> headers, List<Class<?>> providers, String transport) {
+        return cache.get(Object.class, basePath, headers, null, providers, transport, () -> {
+            builds.incrementAndGet();
+            return new Object();
+        });
+    }
+
+    private Object get(RestClientCache cache, String basePath) {
+        return get(cache, basePath, Collections.emptyMap(), PROVIDERS, "default");
+    }
+
+    @Test
+    public void testSameKeyIsReused() {
+        RestClientCache cache = new RestClientCache(4);
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Accept", "application/json");
+        headers.put("Authorization", "Bearer abc");
+        Object first = get(cache, "http://localhost:9080/app", headers, PROVIDERS, "default");
+        // Header order does not matter
+        Map<String, String> reordered = new HashMap<>();
+        reordered.put("Authorization", "Bearer abc");
+        reordered.put("Accept", "application/json");
+        assertSame(first, get(cache, "http://localhost:9080/app", reordered, PROVIDERS, "default"));
+        assertEquals(1, builds.get());
+    }
+
+    @Test
+    public void testKeyComponents() {
+        RestClientCache cache = new RestClientCache(16);
+        Object base = get(cache, "http://localhost:9080/app");
+        assertNotSame(base, get(cache, "http://localhost:9081/app"));
+        assertNotSame(base, get(cache, "http://localhost:9080/app", Collections.singletonMap("Authorization", "Bearer abc"), PROVIDERS, "default"));
+        assertNotSame(base, get(cache, "http://localhost:9080/app", Collections.emptyMap(), Arrays.asList(String.class, Integer.class), "default"));
+        assertNotSame(base, get(cache, "http://localhost:9080/app", Collections.emptyMap(), PROVIDERS, "pool=8"));
+        assertEquals(5, builds.get());
+        assertEquals(5, cache.size());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEviction() {
+        RestClientCache cache = new RestClientCache(2);
+        Object a = get(cache, "http://a");
+        Object b = get(cache, "http://b");
+        // Touch a, so that b becomes the eldest entry
+        assertSame(a, get(cache, "http://a"));
+        get(cache, "http://c");
+        assertEquals(2, cache.size());
+        assertSame(a, get(cache, "http://a"));
+        assertNotSame(b, get(cache, "http://b"));
+        assertEquals(4, builds.get());
+    }
+
+    @Test
+    public void testEvictedProxiesRemainCached() {
+        RestClientCache cache = new RestClientCache(1);
+        Object a = get(cache, "http://a");
+        get(cache, "http://b");
+        assertEquals(1, cache.size());
+        // A test may still be using the evicted proxy, so it must never be closed
+        assertTrue(cache.isCached(a));
+        assertFalse(cache.isCached(new Object()));
+    }
+
+    @Test
+    public void testDisabled() {
+        RestClientCache cache = new RestClientCache(0);
+        assertFalse(cache.isEnabled());
+        Object a = get(cache, "http://a");
+        assertNotSame(a, get(cache, "http://a"));
+        assertFalse(cache.isCached(a));
+        assertEquals(0, cache.size());
+    }
+}
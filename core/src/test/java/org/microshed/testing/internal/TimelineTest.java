@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class TimelineTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static JsonObject read(Path file) throws IOException {
+        try (Reader r = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+                        JsonReader json = Json.createReader(r)) {
+            return json.readObject();
+        }
+    }
+
+    private static List<JsonObject> events(JsonObject timeline, String phase) {
+        return timeline.getJsonArray("traceEvents")
+                        .getValuesAs(JsonObject.class)
+                        .stream()
+                        .filter(e -> phase.equals(e.getString("ph")))
+                        .collect(Collectors.toList());
+    }
+
+    @Test
+    public void testWrite() throws IOException {
+        Path file = tempDir.resolve("timeline.json");
+        Timeline.Recorder recorder = new Timeline.Recorder(file, 100);
+        long start = Timeline.now();
+        recorder.record("container", "start app", start, start + 2_500_000);
+        recorder.record("injection", "inject \"client\" C:\\path\n\tnext", start, start + 1_000);
+        recorder.write();
+
+        JsonObject timeline = read(file);
+        assertEquals("ms", timeline.getString("displayTimeUnit"));
+        List<JsonObject> phases = events(timeline, "X");
+        assertEquals(2, phases.size());
+
+        JsonObject first = phases.get(0);
+        assertEquals("start app", first.getString("name"));
+        assertEquals("container", first.getString("cat"));
+        assertEquals(2500, first.getJsonNumber("dur").longValue());
+        assertEquals(ProcessId.get(), first.getJsonNumber("pid").toString());
+        assertEquals(Thread.currentThread().getId(), first.getJsonNumber("tid").longValue());
+
+        // Quotes, backslashes, and control characters are escaped
+        assertEquals("inject \"client\" C:\\path\n\tnext", phases.get(1).getString("name"));
+        assertEquals(1, phases.get(1).getJsonNumber("dur").longValue());
+
+        List<JsonObject> metadata = events(timeline, "M");
+        assertTrue(metadata.stream().anyMatch(e -> "process_name".equals(e.getString("name"))), metadata::toString);
+        assertTrue(metadata.stream()
+                        .anyMatch(e -> "thread_name".equals(e.getString("name")) &&
+                                       Thread.currentThread().getName().equals(e.getJsonObject("args").getString("name"))),
+                   metadata::toString);
+    }
+
+    @Test
+    public void testMaxEvents() throws IOException {
+        Path file = tempDir.resolve("timeline.json");
+        Timeline.Recorder recorder = new Timeline.Recorder(file, 3);
+        long start = Timeline.now();
+        for (int i = 0; i < 5; i++)
+            recorder.record("test", "phase " + i, start, start);
+        recorder.write();
+
+        List<JsonObject> phases = events(read(file), "X");
+        assertEquals(3, phases.size());
+        assertEquals("phase 2", phases.get(2).getString("name"));
+    }
+
+    @Test
+    public void testNothingRecorded() {
+        Path file = tempDir.resolve("timeline.json");
+        new Timeline.Recorder(file, 100).write();
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    public void testDisabled() {
+        Timeline.Recorder recorder = new Timeline.Recorder(null, 100);
+        assertFalse(recorder.isEnabled());
+        recorder.record("test", "phase", 0, 1);
+        recorder.write();
+    }
+
+    @Test
+    public void testOutputFile() {
+        Path file = tempDir.resolve("custom.json");
+        assertEquals(file, Timeline.resolveOutput(file.toString()));
+    }
+
+    @Test
+    public void testOutputDir() {
+        assertEquals(tempDir.resolve("timeline-" + ProcessId.get() + ".json"), Timeline.resolveOutput(tempDir.toString()));
+    }
+
+    @Test
+    public void testOutputDisabled() {
+        assertNull(Timeline.resolveOutput("false"));
+        assertNull(Timeline.resolveOutput("FALSE"));
+    }
+
+    @Test
+    public void testDefaultOutput() {
+        // Written under the build directory, if there is one
+        Path defaultOutput = Timeline.resolveOutput(null);
+        assertEquals(defaultOutput, Timeline.resolveOutput("true"));
+        if (defaultOutput != null)
+            assertTrue(defaultOutput.endsWith("microshed-testing/timeline-" + ProcessId.get() + ".json"), defaultOutput::toString);
+    }
+}
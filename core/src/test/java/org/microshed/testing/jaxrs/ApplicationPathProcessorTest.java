@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.jaxrs;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.annotation.processing.Processor;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ApplicationPathProcessorTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testIndex() throws IOException {
+        Path src = tempDir.resolve("src");
+        write(src, "com/example/app/RestApplication.java",
+              "package com.example.app;",
+              "@javax.ws.rs.ApplicationPath(\"/api\")",
+              "public class RestApplication extends javax.ws.rs.core.Application {}");
+        write(src, "com/example/app/AdminApplication.java",
+              "package com.example.app;",
+              "@javax.ws.rs.ApplicationPath(\"admin\")",
+              "public class AdminApplication extends RestApplication {}");
+        write(src, "com/example/app/NotAnApplication.java",
+              "package com.example.app;",
+              "@javax.ws.rs.ApplicationPath(\"/bogus\")",
+              "public class NotAnApplication {}");
+
+        DiagnosticCollector<JavaFileObject> diagnostics = compile(src);
+        Path index = tempDir.resolve("classes").resolve(ApplicationPathProcessor.INDEX_LOCATION);
+        assertEquals(Arrays.asList("com.example.app.AdminApplication=admin", "com.example.app.RestApplication=/api"),
+                     Files.readAllLines(index, StandardCharsets.UTF_8));
+        assertTrue(diagnostics.getDiagnostics().stream()
+                        .anyMatch(d -> d.getKind() == Diagnostic.Kind.WARNING &&
+                                       d.getMessage(null).contains("does not extend javax.ws.rs.core.Application")),
+                   diagnostics.getDiagnostics().toString());
+    }
+
+    @Test
+    public void testNoIndexWithoutApplications() throws IOException {
+        Path src = tempDir.resolve("src");
+        write(src, "com/example/app/Resource.java",
+              "package com.example.app;",
+              "@javax.ws.rs.Path(\"/hello\")",
+              "public class Resource {}");
+
+        compile(src);
+        assertFalse(Files.exists(tempDir.resolve("classes").resolve(ApplicationPathProcessor.INDEX_LOCATION)));
+    }
+
+    @Test
+    public void testNotRegisteredImplicitly() {
+        for (Processor p : ServiceLoader.load(Processor.class, getClass().getClassLoader()))
+            assertFalse(p instanceof ApplicationPathProcessor, "ApplicationPathProcessor must only run when it is named explicitly");
+    }
+
+    private DiagnosticCollector<JavaFileObject> compile(Path src) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assertNotNull(compiler, "A JDK is required to run this test");
+        Path classes = Files.createDirectories(tempDir.resolve("classes"));
+        List<Path> sources;
+        try (Stream<Path> walk = Files.walk(src)) {
+            sources = walk.filter(p -> p.toString().endsWith(".java")).collect(Collectors.toList());
+        }
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        try (StandardJavaFileManager files = compiler.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8)) {
+            List<String> options = new ArrayList<>(Arrays.asList("-proc:only", "-d", classes.toString(),
+                                                                 "-classpath", System.getProperty("java.class.path")));
+            JavaCompiler.CompilationTask task = compiler.getTask(null, files, diagnostics, options, null,
+                                                                 files.getJavaFileObjectsFromFiles(sources.stream()
+                                                                                 .map(Path::toFile)
+                                                                                 .collect(Collectors.toList())));
+            task.setProcessors(Collections.singletonList(new ApplicationPathProcessor()));
+            assertTrue(task.call(), diagnostics.getDiagnostics().toString());
+        }
+        return diagnostics;
+    }
+
+    private static void write(Path root, String file, String... lines) throws IOException {
+        Path path = root.resolve(file);
+        Files.createDirectories(path.getParent());
+        Files.write(path, Arrays.asList(lines), StandardCharsets.UTF_8);
+    }
+}
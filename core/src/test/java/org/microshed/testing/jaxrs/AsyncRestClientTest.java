@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.jaxrs;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.DELETE;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+public class AsyncRestClientTest {
+
+    private static final int IN_FLIGHT = 8;
+
+    @Path("/items")
+    public static interface ItemService {
+        @GET
+        @Path("/{id}")
+        @Produces(MediaType.TEXT_PLAIN)
+        String getItem(@PathParam("id") String id);
+
+        @DELETE
+        @Path("/{id}")
+        void deleteItem(@PathParam("id") String id);
+    }
+
+    private HttpServer server;
+    private ExecutorService serverThreads;
+    private final List<String> deleted = new ArrayList<>();
+    private volatile CountDownLatch held = new CountDownLatch(0);
+    private AsyncRestClient<ItemService> client;
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        serverThreads = Executors.newCachedThreadPool();
+        server.setExecutor(serverThreads);
+        server.createContext("/items/", this::handle);
+        server.start();
+        client = new RestClientBuilder()
+                        .withAppContextRoot("http://localhost:" + server.getAddress().getPort())
+                        .withJaxrsPath("/")
+                        .buildAsync(ItemService.class);
+    }
+
+    @AfterEach
+    public void stopServer() {
+        client.close();
+        server.stop(0);
+        serverThreads.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String id = exchange.getRequestURI().getPath().substring("/items/".length());
+        try {
+            // Responses are held back until the expected number of requests are in flight
+            CountDownLatch latch = held;
+            latch.countDown();
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if ("DELETE".equals(exchange.getRequestMethod())) {
+            synchronized (deleted) {
+                deleted.add(id);
+            }
+            exchange.sendResponseHeaders(204, -1);
+        } else if (id.startsWith("missing")) {
+            exchange.sendResponseHeaders(404, -1);
+        } else {
+            byte[] body = ("item " + id).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", MediaType.TEXT_PLAIN);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+        exchange.close();
+    }
+
+    @Test
+    public void testCall() throws Exception {
+        assertSame(ItemService.class, client.getResourceClass());
+        assertEquals("item 1", client.call(svc -> svc.getItem("1")).toCompletableFuture().get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testRun() throws Exception {
+        client.run(svc -> svc.deleteItem("2")).toCompletableFuture().get(10, TimeUnit.SECONDS);
+        synchronized (deleted) {
+            assertEquals(1, deleted.size());
+            assertEquals("2", deleted.get(0));
+        }
+    }
+
+    @Test
+    public void testManyInFlight() throws Exception {
+        // No response is sent until all requests were received, so this only completes if the
+        // calls do not wait for their responses
+        held = new CountDownLatch(IN_FLIGHT);
+        List<CompletableFuture<String>> items = new ArrayList<>();
+        for (int i = 0; i < IN_FLIGHT; i++) {
+            String id = Integer.toString(i);
+            items.add(client.call(svc -> svc.getItem(id)).toCompletableFuture());
+        }
+        for (int i = 0; i < IN_FLIGHT; i++)
+            assertEquals("item " + i, items.get(i).get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testErrorResponse() throws Exception {
+        CompletableFuture<String> item = client.call(svc -> svc.getItem("missing")).toCompletableFuture();
+        ExecutionException e = assertThrows(ExecutionException.class, () -> item.get(10, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof WebApplicationException, () -> "Unexpected failure: " + e.getCause());
+        assertEquals(404, ((WebApplicationException) e.getCause()).getResponse().getStatus());
+    }
+
+    @Test
+    public void testInvocationFailure() {
+        IllegalStateException failure = new IllegalStateException("not sent");
+        CompletableFuture<String> item = client.<String> call(svc -> {
+            throw failure;
+        }).toCompletableFuture();
+        assertTrue(item.isCompletedExceptionally());
+        ExecutionException e = assertThrows(ExecutionException.class, item::get);
+        assertSame(failure, e.getCause());
+    }
+
+    @Test
+    public void testCallbackIsNotLeftBehind() throws Exception {
+        // A failed invocation must not leave its callback in the request context for the next call
+        client.<String> call(svc -> {
+            throw new IllegalStateException();
+        });
+        CompletableFuture<String> item = client.call(svc -> svc.getItem("3")).toCompletableFuture();
+        assertEquals("item 3", item.get(10, TimeUnit.SECONDS));
+    }
+}
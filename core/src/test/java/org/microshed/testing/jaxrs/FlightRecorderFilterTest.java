@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.jaxrs;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientResponseContext;
+
+import org.junit.jupiter.api.Test;
+import org.microshed.testing.internal.FlightEvent;
+import org.microshed.testing.internal.FlightEvents;
+
+public class FlightRecorderFilterTest {
+
+    private final FlightRecorderFilter filter = new FlightRecorderFilter();
+    private final Map<String, Object> properties = new HashMap<>();
+
+    private static class RecordingEvent implements FlightEvent {
+        int status = -1;
+        int closed;
+
+        @Override
+        public FlightEvent withStatus(int status) {
+            this.status = status;
+            return this;
+        }
+
+        @Override
+        public void close() {
+            closed++;
+        }
+    }
+
+    private ClientRequestContext request() {
+        return (ClientRequestContext) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { ClientRequestContext.class },
+                                                             (proxy, method, args) -> handleRequest(method, args));
+    }
+
+    private Object handleRequest(Method method, Object[] args) {
+        switch (method.getName()) {
+            case "getMethod":
+                return "GET";
+            case "getUri":
+                return URI.create("http://localhost:9080/items/1");
+            case "getProperty":
+                return properties.get(args[0]);
+            case "setProperty":
+                return properties.put((String) args[0], args[1]);
+            case "removeProperty":
+                return properties.remove(args[0]);
+            default:
+                throw new UnsupportedOperationException(method.getName());
+        }
+    }
+
+    private static ClientResponseContext response(int status) {
+        return (ClientResponseContext) Proxy.newProxyInstance(FlightRecorderFilterTest.class.getClassLoader(),
+                                                              new Class<?>[] { ClientResponseContext.class },
+                                                              (proxy, method, args) -> {
+                                                                  if ("getStatus".equals(method.getName()))
+                                                                      return status;
+                                                                  throw new UnsupportedOperationException(method.getName());
+                                                              });
+    }
+
+    @Test
+    public void testNoopEventNotStored() {
+        // The tests run against the Java 8 version of FlightEvents, which never records anything
+        assertFalse(FlightEvents.isAvailable());
+        ClientRequestContext request = request();
+        filter.filter(request);
+        assertTrue(properties.isEmpty(), () -> "Nothing should be put on the request context, but found " + properties);
+        filter.filter(request, response(200));
+        assertTrue(properties.isEmpty());
+    }
+
+    @Test
+    public void testEventHandedToResponse() {
+        RecordingEvent event = new RecordingEvent();
+        ClientRequestContext request = request();
+        request.setProperty(FlightRecorderFilter.EVENT_PROP, event);
+
+        filter.filter(request, response(404));
+        assertEquals(404, event.status);
+        assertEquals(1, event.closed);
+        assertFalse(properties.containsKey(FlightRecorderFilter.EVENT_PROP));
+
+        // A response filter that runs again for the same request does not commit the event twice
+        filter.filter(request, response(200));
+        assertEquals(404, event.status);
+        assertEquals(1, event.closed);
+    }
+
+    @Test
+    public void testOtherPropertyIgnored() {
+        ClientRequestContext request = request();
+        request.setProperty(FlightRecorderFilter.EVENT_PROP, "not an event");
+        filter.filter(request, response(200));
+        assertEquals("not an event", properties.get(FlightRecorderFilter.EVENT_PROP));
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.jaxrs;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.ws.rs.core.MediaType;
+
+import org.junit.jupiter.api.Test;
+
+public class JsonBProviderTest {
+
+    public static class Item {
+        public String name;
+        public int count;
+
+        public Item() {
+        }
+
+        Item(String name, int count) {
+            this.name = name;
+            this.count = count;
+        }
+    }
+
+    /**
+     * Keeps the payload log messages instead of logging them
+     */
+    private static class RecordingProvider extends JsonBProvider {
+        final List<String> messages = new ArrayList<>();
+
+        RecordingProvider(int payloadLogLimit) {
+            super(payloadLogLimit);
+        }
+
+        @Override
+        void logPayload(String message) {
+            messages.add(message);
+        }
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static Item read(JsonBProvider provider, byte[] json) throws IOException {
+        return (Item) provider.readFrom((Class) Item.class, Item.class, new Annotation[0], MediaType.APPLICATION_JSON_TYPE,
+                                        null, new ByteArrayInputStream(json));
+    }
+
+    private static byte[] write(JsonBProvider provider, Object entity) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        provider.writeTo(entity, entity.getClass(), entity.getClass(), new Annotation[0], MediaType.APPLICATION_JSON_TYPE,
+                         null, out);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        RecordingProvider provider = new RecordingProvider(1024);
+        byte[] json = write(provider, new Item("widget", 3));
+        String jsonStr = new String(json, StandardCharsets.UTF_8);
+        assertEquals("{\"count\":3,\"name\":\"widget\"}", jsonStr);
+
+        Item item = read(provider, json);
+        assertEquals("widget", item.name);
+        assertEquals(3, item.count);
+
+        // Payloads under the limit are logged in full
+        assertEquals(2, provider.messages.size());
+        assertEquals("Sending data to server: " + jsonStr, provider.messages.get(0));
+        assertEquals("Response from server: " + jsonStr, provider.messages.get(1));
+    }
+
+    @Test
+    public void testLargePayloadTruncated() throws IOException {
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < 1000; i++)
+            name.append('x');
+        RecordingProvider provider = new RecordingProvider(16);
+
+        byte[] json = write(provider, new Item(name.toString(), 1));
+        String jsonStr = new String(json, StandardCharsets.UTF_8);
+        // Only the log is truncated, not the payload itself
+        assertEquals("{\"count\":1,\"name\":\"" + name + "\"}", jsonStr);
+        assertEquals("Sending data to server: " + jsonStr.substring(0, 16) + "... (truncated, " + json.length + " bytes total)",
+                     provider.messages.get(0));
+
+        Item item = read(provider, json);
+        assertEquals(name.toString(), item.name);
+        String response = provider.messages.get(1);
+        assertTrue(response.startsWith("Response from server: " + jsonStr.substring(0, 16) + "... (truncated, "), response);
+    }
+
+    @Test
+    public void testLoggingDisabled() throws IOException {
+        RecordingProvider provider = new RecordingProvider(0);
+        byte[] json = write(provider, new Item("widget", 3));
+        Item item = read(provider, json);
+        assertEquals("widget", item.name);
+        assertEquals(3, item.count);
+        assertNull(read(provider, new byte[0]));
+        assertEquals(0, provider.messages.size(), () -> "Nothing should be logged, but got " + provider.messages);
+    }
+
+    @Test
+    public void testEmptyResponse() throws IOException {
+        RecordingProvider provider = new RecordingProvider(1024);
+        assertNull(read(provider, new byte[0]));
+        assertEquals(1, provider.messages.size());
+        assertEquals("Response from server: ", provider.messages.get(0));
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.jaxrs;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+
+import org.apache.cxf.Bus;
+import org.apache.cxf.BusFactory;
+import org.apache.cxf.jaxrs.client.WebClient;
+import org.apache.cxf.transport.http.HTTPConduit;
+import org.junit.jupiter.api.Test;
+
+public class RestClientBuilderTest {
+
+    private static final String ASYNC_USE_POLICY = "org.apache.cxf.transport.http.async.usePolicy";
+
+    @Path("/items")
+    public static interface ItemService {
+        @GET
+        String getItems();
+    }
+
+    private static RestClientBuilder builder() {
+        return new RestClientBuilder()
+                        .withAppContextRoot("http://localhost:9080")
+                        .withJaxrsPath("/api")
+                        .withCache(false);
+    }
+
+    @Test
+    public void testPooledBusIsNotTheDefault() {
+        Bus defaultBus = BusFactory.getDefaultBus(false);
+        Bus threadBus = BusFactory.getThreadDefaultBus(false);
+
+        ItemService pooled = builder().withConnectionPool(8).build(ItemService.class);
+        Bus pooledBus = WebClient.getConfig(pooled).getBus();
+        assertEquals("ALWAYS", pooledBus.getProperty(ASYNC_USE_POLICY));
+        assertSame(defaultBus, BusFactory.getDefaultBus(false));
+        assertSame(threadBus, BusFactory.getThreadDefaultBus(false));
+
+        // A client without a connection pool keeps using the default transport
+        ItemService plain = builder().build(ItemService.class);
+        Bus plainBus = WebClient.getConfig(plain).getBus();
+        assertNotSame(pooledBus, plainBus);
+        assertNull(plainBus.getProperty(ASYNC_USE_POLICY));
+        HTTPConduit conduit = WebClient.getConfig(plain).getHttpConduit();
+        assertNotNull(conduit);
+    }
+
+    @Test
+    public void testPooledBusIsShared() {
+        ItemService a = builder().withConnectionPool(4).build(ItemService.class);
+        ItemService b = builder().withConnectionPool(4).build(ItemService.class);
+        ItemService c = builder().withConnectionPool(16).build(ItemService.class);
+        assertSame(WebClient.getConfig(a).getBus(), WebClient.getConfig(b).getBus());
+        assertNotSame(WebClient.getConfig(a).getBus(), WebClient.getConfig(c).getBus());
+    }
+}
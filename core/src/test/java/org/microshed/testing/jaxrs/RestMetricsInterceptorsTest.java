@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.jaxrs;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.ExchangeImpl;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.message.MessageImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class RestMetricsInterceptorsTest {
+
+    private static class Call {
+        final String endpoint;
+        final long latencyNanos;
+        final long requestBytes;
+        final long responseBytes;
+
+        Call(String endpoint, long latencyNanos, long requestBytes, long responseBytes) {
+            this.endpoint = endpoint;
+            this.latencyNanos = latencyNanos;
+            this.requestBytes = requestBytes;
+            this.responseBytes = responseBytes;
+        }
+    }
+
+    private final List<Call> calls = new ArrayList<>();
+    private final RestMetricsInterceptors.In in = new RestMetricsInterceptors.In(this::record);
+    private Exchange exchange;
+
+    @BeforeEach
+    public void setup() {
+        exchange = new ExchangeImpl();
+    }
+
+    private void record(String endpoint, long latencyNanos, long requestBytes, long responseBytes) {
+        calls.add(new Call(endpoint, latencyNanos, requestBytes, responseBytes));
+    }
+
+    /**
+     * Sends a request with the specified body and returns the stream the body was written to
+     */
+    private ByteArrayOutputStream send(String body) throws IOException {
+        Message request = new MessageImpl();
+        request.setExchange(exchange);
+        exchange.setOutMessage(request);
+        request.put(Message.HTTP_REQUEST_METHOD, "POST");
+        request.put(Message.ENDPOINT_ADDRESS, "http://localhost:9080/items");
+        ByteArrayOutputStream sent = new ByteArrayOutputStream();
+        request.setContent(OutputStream.class, sent);
+        new RestMetricsInterceptors.Out().handleMessage(request);
+        request.getContent(OutputStream.class).write(body.getBytes());
+        return sent;
+    }
+
+    private InputStream receive(String body, Map<String, List<String>> headers) {
+        Message response = new MessageImpl();
+        response.setExchange(exchange);
+        exchange.setInMessage(response);
+        response.put(Message.PROTOCOL_HEADERS, headers);
+        response.setContent(InputStream.class, new ByteArrayInputStream(body.getBytes()));
+        in.handleMessage(response);
+        return response.getContent(InputStream.class);
+    }
+
+    @Test
+    public void testContentLength() throws IOException {
+        ByteArrayOutputStream sent = send("{\"name\":\"widget\"}");
+        assertEquals("{\"name\":\"widget\"}", sent.toString());
+
+        Map<String, List<String>> headers = new TreeMap<>();
+        headers.put("content-length", Collections.singletonList("42"));
+        receive("{\"id\":1}", headers);
+
+        // Recorded as soon as the response is received, using the length from the header
+        assertEquals(1, calls.size());
+        Call call = calls.get(0);
+        assertEquals("POST http://localhost:9080/items", call.endpoint);
+        assertEquals(17, call.requestBytes);
+        assertEquals(42, call.responseBytes);
+        assertTrue(call.latencyNanos >= 0);
+    }
+
+    @Test
+    public void testChunked() throws IOException {
+        send("");
+        InputStream body = receive("0123456789", new TreeMap<>());
+        assertEquals(0, calls.size(), "The size of a chunked response is only known once it has been read");
+
+        byte[] buf = new byte[4];
+        assertEquals('0', body.read());
+        assertEquals(4, body.read(buf));
+        assertEquals(3, body.skip(3));
+        assertEquals(2, body.read(buf));
+        assertEquals(-1, body.read(buf));
+        body.close();
+
+        assertEquals(1, calls.size());
+        assertEquals(0, calls.get(0).requestBytes);
+        assertEquals(10, calls.get(0).responseBytes);
+    }
+
+    @Test
+    public void testChunkedClosedEarly() throws IOException {
+        send("abc");
+        InputStream body = receive("0123456789", null);
+        assertEquals('0', body.read());
+        body.close();
+        body.close();
+
+        assertEquals(1, calls.size());
+        assertEquals(3, calls.get(0).requestBytes);
+        assertEquals(1, calls.get(0).responseBytes);
+    }
+
+    @Test
+    public void testNotSentByClient() {
+        // Responses to requests that the out interceptor did not see are ignored
+        receive("{}", Collections.singletonMap("Content-Length", Collections.singletonList("2")));
+        assertEquals(0, calls.size());
+    }
+}
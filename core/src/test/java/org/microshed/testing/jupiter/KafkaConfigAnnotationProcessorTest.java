@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.jupiter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serializer;
+import org.junit.jupiter.api.Test;
+import org.microshed.testing.kafka.JsonbDeserializer;
+import org.microshed.testing.kafka.JsonbSerializer;
+import org.microshed.testing.kafka.KafkaConsumerClient;
+import org.microshed.testing.kafka.KafkaProducerClient;
+
+public class KafkaConfigAnnotationProcessorTest {
+
+    public static class Order {
+        public String item;
+        public int quantity;
+    }
+
+    @KafkaProducerClient
+    KafkaProducer<String, List<Order>> producer;
+
+    @KafkaConsumerClient(groupId = "orders")
+    KafkaConsumer<String, List<Order>> consumer;
+
+    @KafkaConsumerClient(groupId = "orders", properties = JsonbDeserializer.VALUE_TYPE_CONFIG + "=java.lang.String")
+    KafkaConsumer<String, Order> consumerWithType;
+
+    @KafkaConsumerClient(groupId = "orders")
+    KafkaConsumer<Long, byte[]> builtInConsumer;
+
+    private final KafkaConfigAnnotationProcessor processor = new KafkaConfigAnnotationProcessor("localhost:9092");
+
+    private static Field field(String name) throws NoSuchFieldException {
+        return KafkaConfigAnnotationProcessorTest.class.getDeclaredField(name);
+    }
+
+    private static Map<String, Object> toMap(Properties properties) {
+        Map<String, Object> map = new HashMap<>();
+        properties.forEach((k, v) -> map.put((String) k, v));
+        return map;
+    }
+
+    @Test
+    public void testGenericValueRoundTrip() throws Exception {
+        Field producerField = field("producer");
+        Properties producerProps = processor.getProducerProperties(producerField, producerField.getGenericType());
+        assertEquals("org.apache.kafka.common.serialization.StringSerializer", producerProps.get("key.serializer"));
+        assertEquals(JsonbSerializer.class.getName(), producerProps.get("value.serializer"));
+
+        Field consumerField = field("consumer");
+        Properties consumerProps = processor.getConsumerProperties(consumerField, consumerField.getGenericType());
+        assertEquals("org.apache.kafka.common.serialization.StringDeserializer", consumerProps.get("key.deserializer"));
+        assertEquals(JsonbDeserializer.class.getName(), consumerProps.get("value.deserializer"));
+        assertFalse(consumerProps.containsKey(JsonbDeserializer.KEY_TYPE_CONFIG));
+
+        // Configure the [de]serializers the way the Kafka clients would
+        Order order = new Order();
+        order.item = "pizza";
+        order.quantity = 2;
+        Serializer<List<Order>> serializer = new JsonbSerializer<>();
+        serializer.configure(toMap(producerProps), false);
+        Deserializer<List<Order>> deserializer = new JsonbDeserializer<>();
+        deserializer.configure(toMap(consumerProps), false);
+        List<Order> read = deserializer.deserialize("orders", serializer.serialize("orders", Arrays.asList(order)));
+        assertEquals(1, read.size());
+        assertEquals("pizza", read.get(0).item);
+        assertEquals(2, read.get(0).quantity);
+    }
+
+    @Test
+    public void testConfiguredTypeIsKept() throws Exception {
+        Field consumerField = field("consumerWithType");
+        Properties consumerProps = processor.getConsumerProperties(consumerField, consumerField.getGenericType());
+        assertEquals(JsonbDeserializer.class.getName(), consumerProps.get("value.deserializer"));
+        assertEquals("java.lang.String", consumerProps.get(JsonbDeserializer.VALUE_TYPE_CONFIG));
+    }
+
+    @Test
+    public void testBuiltInDeserializers() throws Exception {
+        Field consumerField = field("builtInConsumer");
+        Properties consumerProps = processor.getConsumerProperties(consumerField, consumerField.getGenericType());
+        assertEquals("org.apache.kafka.common.serialization.LongDeserializer", consumerProps.get("key.deserializer"));
+        assertEquals("org.apache.kafka.common.serialization.ByteArrayDeserializer", consumerProps.get("value.deserializer"));
+        assertFalse(consumerProps.containsKey(JsonbDeserializer.KEY_TYPE_CONFIG));
+        assertFalse(consumerProps.containsKey(JsonbDeserializer.VALUE_TYPE_CONFIG));
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.jupiter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtensionConfigurationException;
+import org.opentest4j.AssertionFailedError;
+
+public class LoadTestRunnerTest {
+
+    // Not a static class, so that JUnit does not run its @LoadTest methods as tests
+    class Workloads {
+        final AtomicInteger runs = new AtomicInteger();
+        final AtomicInteger active = new AtomicInteger();
+        final AtomicInteger maxActive = new AtomicInteger();
+        final IllegalStateException failure = new IllegalStateException("boom");
+
+        @LoadTest(users = 2, duration = "200ms")
+        void closed() throws InterruptedException {
+            maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+            runs.incrementAndGet();
+            Thread.sleep(1);
+            active.decrementAndGet();
+        }
+
+        @LoadTest(users = 4, duration = "500ms", rate = 100)
+        void open() {
+            runs.incrementAndGet();
+        }
+
+        @LoadTest(users = 1, duration = "300ms", rate = 100, maxErrorRate = 1)
+        void overloaded() throws InterruptedException {
+            runs.incrementAndGet();
+            Thread.sleep(100);
+        }
+
+        @LoadTest(users = 1, duration = "200ms", warmup = "100ms")
+        void warmup() {
+            runs.incrementAndGet();
+        }
+
+        @LoadTest(users = 1, duration = "100ms", maxP50Millis = 5)
+        void slow() throws InterruptedException {
+            Thread.sleep(20);
+        }
+
+        @LoadTest(users = 1, duration = "100ms")
+        void failing() {
+            throw failure;
+        }
+
+        @LoadTest(users = 1, duration = "100ms", minThroughput = 1_000_000)
+        void lowThroughput() throws InterruptedException {
+            Thread.sleep(10);
+        }
+
+        @LoadTest(users = 2, duration = "100ms")
+        void parameter(String value) {
+            runs.incrementAndGet();
+        }
+
+        @LoadTest(users = 0)
+        void noUsers() {
+        }
+    }
+
+    private final Workloads workloads = new Workloads();
+
+    private LoadTestRunner runner(String name, Class<?>... params) throws NoSuchMethodException {
+        Method method = Workloads.class.getDeclaredMethod(name, params);
+        return new LoadTestRunner(method.getAnnotation(LoadTest.class), method, workloads, new Object[0], LoadTestRunnerTest.class);
+    }
+
+    @Test
+    public void testParseDuration() {
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(500), LoadTestRunner.parseDuration("500ms", "duration"));
+        assertEquals(TimeUnit.SECONDS.toNanos(30), LoadTestRunner.parseDuration("30s", "duration"));
+        assertEquals(TimeUnit.SECONDS.toNanos(15), LoadTestRunner.parseDuration("15", "duration"));
+        assertEquals(TimeUnit.MINUTES.toNanos(2), LoadTestRunner.parseDuration(" 2 M ", "duration"));
+        assertEquals(TimeUnit.HOURS.toNanos(1), LoadTestRunner.parseDuration("1h", "duration"));
+        assertEquals(0, LoadTestRunner.parseDuration("0s", "warmup"));
+        assertThrows(ExtensionConfigurationException.class, () -> LoadTestRunner.parseDuration("1.5s", "duration"));
+        assertThrows(ExtensionConfigurationException.class, () -> LoadTestRunner.parseDuration("-1s", "duration"));
+        assertThrows(ExtensionConfigurationException.class, () -> LoadTestRunner.parseDuration("10 days", "duration"));
+        assertThrows(ExtensionConfigurationException.class, () -> LoadTestRunner.parseDuration("", "duration"));
+    }
+
+    @Test
+    public void testClosedModel() throws Exception {
+        Map<String, String> results = runner("closed").run();
+        assertEquals(String.valueOf(workloads.runs.get()), results.get("runs"), results.toString());
+        assertTrue(workloads.runs.get() > 10, results.toString());
+        assertTrue(workloads.maxActive.get() <= 2, "More than 2 users were active: " + workloads.maxActive.get());
+        assertEquals("0", results.get("errors"));
+    }
+
+    @Test
+    public void testOpenModel() throws Exception {
+        Map<String, String> results = runner("open").run();
+        // 100 runs per second for 500ms
+        assertEquals(50, Long.parseLong(results.get("runs")) + Long.parseLong(results.get("unserved")), results.toString());
+        assertEquals(Long.parseLong(results.get("runs")), workloads.runs.get(), results.toString());
+    }
+
+    @Test
+    public void testOpenModelStopsAtEnd() throws Exception {
+        long start = System.nanoTime();
+        Map<String, String> results = runner("overloaded").run();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        // A single user serves about 3 of the 30 runs, and the rest must not be started after the end
+        assertTrue(elapsedMillis < 1500, "The load test ran for " + elapsedMillis + "ms");
+        long runs = Long.parseLong(results.get("runs"));
+        long unserved = Long.parseLong(results.get("unserved"));
+        assertEquals(30, runs + unserved, results.toString());
+        assertTrue(unserved > 20, results.toString());
+        assertEquals(unserved, Long.parseLong(results.get("errors")), results.toString());
+    }
+
+    @Test
+    public void testWarmupIsNotMeasured() throws Exception {
+        Map<String, String> results = runner("warmup").run();
+        assertTrue(Long.parseLong(results.get("runs")) < workloads.runs.get(), results + " of " + workloads.runs.get());
+    }
+
+    @Test
+    public void testLatencyThreshold() throws Exception {
+        AssertionFailedError e = assertThrows(AssertionFailedError.class, () -> runner("slow").run());
+        assertTrue(e.getMessage().contains("p50 latency"), e.getMessage());
+    }
+
+    @Test
+    public void testErrorRateThreshold() throws Exception {
+        AssertionFailedError e = assertThrows(AssertionFailedError.class, () -> runner("failing").run());
+        assertTrue(e.getMessage().contains("maximum error rate"), e.getMessage());
+        assertSame(workloads.failure, e.getCause());
+    }
+
+    @Test
+    public void testThroughputThreshold() throws Exception {
+        AssertionFailedError e = assertThrows(AssertionFailedError.class, () -> runner("lowThroughput").run());
+        assertTrue(e.getMessage().contains("throughput"), e.getMessage());
+    }
+
+    @Test
+    public void testInvocationFailureStopsAllUsers() throws Exception {
+        LoadTestRunner runner = runner("parameter", String.class);
+        assertThrows(ExtensionConfigurationException.class, runner::run);
+        assertEquals(0, workloads.runs.get());
+    }
+
+    @Test
+    public void testNoUsers() {
+        assertThrows(ExtensionConfigurationException.class, () -> runner("noUsers"));
+    }
+}
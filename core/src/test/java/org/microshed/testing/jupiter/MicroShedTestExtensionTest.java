@@ -0,0 +1,317 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.jupiter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.platform.engine.discovery.DiscoverySelectors.selectClass;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+
+import org.apache.cxf.jaxrs.client.WebClient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DynamicTest;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestFactory;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.extension.ExtensionConfigurationException;
+import org.junit.jupiter.api.extension.ParameterResolutionException;
+import org.junit.platform.testkit.engine.EngineExecutionResults;
+import org.junit.platform.testkit.engine.EngineTestKit;
+import org.microshed.testing.ApplicationEnvironment;
+import org.microshed.testing.internal.CurrentTestClass;
+import org.microshed.testing.jaxrs.AsyncRestClient;
+import org.microshed.testing.jaxrs.RESTClient;
+import org.microshed.testing.kafka.KafkaConsumerClient;
+import org.microshed.testing.kafka.KafkaRecorder;
+
+public class MicroShedTestExtensionTest {
+
+    // The fixture classes below are only run by the tests in this class, not on their own
+    private static final String RUN_FIXTURES = "microshed.test.fixtures";
+
+    private static final String APP_URL = "http://localhost:9080/myapp";
+
+    @Path("/items")
+    public static interface ItemService {
+        @GET
+        String getItems();
+    }
+
+    /**
+     * Selected through the ServiceLoader of the test classpath. Nothing is started, since the
+     * clients under test are only created and never used to send requests.
+     */
+    public static class FixtureEnvironment implements ApplicationEnvironment {
+
+        @Override
+        public int getPriority() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public String getApplicationURL() {
+            return APP_URL;
+        }
+
+        @Override
+        public boolean configureRestAssured() {
+            return false;
+        }
+    }
+
+    private static EngineExecutionResults run(Class<?> fixture) {
+        System.setProperty(RUN_FIXTURES, "true");
+        try {
+            return EngineTestKit.engine("junit-jupiter").selectors(selectClass(fixture)).execute();
+        } finally {
+            System.clearProperty(RUN_FIXTURES);
+        }
+    }
+
+    private static Throwable failureOf(Class<?> fixture) {
+        List<Throwable> failures = run(fixture).allEvents().executions().failed().stream()
+                        .map(e -> e.getTerminationInfo().getExecutionResult().getThrowable().get())
+                        .collect(Collectors.toList());
+        assertEquals(1, failures.size(), () -> "Expected a single failure, but got: " + failures);
+        return failures.get(0);
+    }
+
+    private static void assertClient(Object client) {
+        assertNotNull(client);
+        assertTrue(WebClient.client(client).getBaseURI().toString().startsWith(APP_URL),
+                   () -> "Unexpected base URI: " + WebClient.client(client).getBaseURI());
+    }
+
+    @MicroShedTest
+    @EnabledIfSystemProperty(named = RUN_FIXTURES, matches = "true")
+    public static class PerMethodFixture {
+
+        static final List<PerMethodFixture> instances = new ArrayList<>();
+
+        @RESTClient
+        public static ItemService staticClient;
+
+        static ItemService staticClientDuringTests;
+
+        @RESTClient
+        ItemService fieldClient;
+
+        final ItemService constructorClient;
+
+        ItemService beforeEachClient;
+
+        PerMethodFixture(@RESTClient ItemService constructorClient) {
+            this.constructorClient = constructorClient;
+        }
+
+        @BeforeEach
+        void setup(@RESTClient ItemService client) {
+            beforeEachClient = client;
+        }
+
+        @Test
+        void testFirst(@RESTClient ItemService parameterClient, @RESTClient AsyncRestClient<ItemService> asyncClient) {
+            instances.add(this);
+            staticClientDuringTests = staticClient;
+            assertClient(staticClient);
+            assertClient(fieldClient);
+            assertClient(constructorClient);
+            assertClient(beforeEachClient);
+            assertClient(parameterClient);
+            assertNotNull(asyncClient);
+            assertSame(ItemService.class, asyncClient.getResourceClass());
+        }
+
+        @Test
+        void testSecond() {
+            instances.add(this);
+            assertClient(fieldClient);
+            assertClient(constructorClient);
+        }
+    }
+
+    @Test
+    public void testInjectionPerMethod() {
+        PerMethodFixture.instances.clear();
+        run(PerMethodFixture.class).testEvents().assertStatistics(stats -> stats.started(2).succeeded(2));
+        assertEquals(2, PerMethodFixture.instances.size());
+        // Each test instance gets its own clients injected
+        assertNotSame(PerMethodFixture.instances.get(0), PerMethodFixture.instances.get(1));
+        // Static clients are let go of once the class finishes
+        assertNotNull(PerMethodFixture.staticClientDuringTests);
+        assertNull(PerMethodFixture.staticClient);
+    }
+
+    @MicroShedTest
+    @EnabledIfSystemProperty(named = RUN_FIXTURES, matches = "true")
+    @TestInstance(Lifecycle.PER_CLASS)
+    public static class PerClassFixture {
+
+        static final List<PerClassFixture> instances = new ArrayList<>();
+
+        @RESTClient
+        ItemService fieldClient;
+
+        final ItemService constructorClient;
+
+        PerClassFixture(@RESTClient ItemService constructorClient) {
+            this.constructorClient = constructorClient;
+        }
+
+        @Test
+        void testFirst() {
+            instances.add(this);
+            assertClient(fieldClient);
+            assertClient(constructorClient);
+        }
+
+        @Test
+        void testSecond() {
+            instances.add(this);
+            assertClient(fieldClient);
+            assertClient(constructorClient);
+        }
+    }
+
+    @Test
+    public void testInjectionPerClass() {
+        PerClassFixture.instances.clear();
+        run(PerClassFixture.class).testEvents().assertStatistics(stats -> stats.started(2).succeeded(2));
+        assertEquals(2, PerClassFixture.instances.size());
+        assertSame(PerClassFixture.instances.get(0), PerClassFixture.instances.get(1));
+    }
+
+    @MicroShedTest
+    @EnabledIfSystemProperty(named = RUN_FIXTURES, matches = "true")
+    public static class FinalFieldFixture {
+
+        @RESTClient
+        final ItemService client = null;
+
+        @Test
+        void test() {
+        }
+    }
+
+    @Test
+    public void testFinalFieldIsRejected() {
+        Throwable failure = failureOf(FinalFieldFixture.class);
+        assertSame(ExtensionConfigurationException.class, failure.getClass());
+        assertTrue(failure.getMessage().contains("must be non-final"), failure.getMessage());
+    }
+
+    @MicroShedTest
+    @EnabledIfSystemProperty(named = RUN_FIXTURES, matches = "true")
+    public static class RawAsyncClientFixture {
+
+        @SuppressWarnings("rawtypes")
+        @Test
+        void test(@RESTClient AsyncRestClient client) {
+        }
+    }
+
+    @Test
+    public void testAsyncClientRequiresResourceClass() {
+        Throwable failure = failureOf(RawAsyncClientFixture.class);
+        assertSame(ParameterResolutionException.class, failure.getClass());
+        failure = failure.getCause();
+        assertSame(ExtensionConfigurationException.class, failure.getClass());
+        assertTrue(failure.getMessage().contains("AsyncRestClient<MyService>"), failure.getMessage());
+    }
+
+    @MicroShedTest
+    @EnabledIfSystemProperty(named = RUN_FIXTURES, matches = "true")
+    public static class RecorderWithoutTopicsFixture {
+
+        @KafkaConsumerClient(groupId = "recorder")
+        KafkaRecorder<String, String> recorder;
+
+        @Test
+        void test() {
+        }
+    }
+
+    @Test
+    public void testRecorderRequiresTopics() {
+        Throwable failure = failureOf(RecorderWithoutTopicsFixture.class);
+        assertSame(ExtensionConfigurationException.class, failure.getClass());
+        assertTrue(failure.getMessage().contains("at least one topic"), failure.getMessage());
+    }
+
+    @MicroShedTest
+    @EnabledIfSystemProperty(named = RUN_FIXTURES, matches = "true")
+    @TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+    public static class CurrentClassFixture {
+
+        static final List<Class<?>> seen = new ArrayList<>();
+
+        CurrentClassFixture() {
+            seen.add(CurrentTestClass.get());
+        }
+
+        @TestFactory
+        @Order(1)
+        Stream<DynamicTest> testFactory() {
+            seen.add(CurrentTestClass.get());
+            // From now on, only code that runs within this test class resolves to it
+            CurrentTestClass.started(Object.class);
+            return Stream.of(DynamicTest.dynamicTest("dynamic", () -> seen.add(CurrentTestClass.get())));
+        }
+
+        @Test
+        @Order(2)
+        void testAfterFactory() {
+            seen.add(CurrentTestClass.get());
+        }
+    }
+
+    @Test
+    public void testCurrentTestClass() {
+        CurrentClassFixture.seen.clear();
+        try {
+            run(CurrentClassFixture.class).testEvents().assertStatistics(stats -> stats.failed(0).succeeded(2));
+            // Constructor, factory, dynamic test, constructor, test method
+            assertEquals(5, CurrentClassFixture.seen.size(), CurrentClassFixture.seen.toString());
+            for (Class<?> seen : CurrentClassFixture.seen)
+                assertSame(CurrentClassFixture.class, seen);
+        } finally {
+            CurrentTestClass.started(null);
+        }
+    }
+}
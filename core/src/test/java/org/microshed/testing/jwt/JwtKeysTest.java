@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.jwt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.X509EncodedKeySpec;
+
+import org.jose4j.base64url.SimplePEMEncoder;
+import org.jose4j.jwk.PublicJsonWebKey;
+import org.jose4j.jws.AlgorithmIdentifiers;
+import org.jose4j.jwt.JwtClaims;
+import org.jose4j.jwt.consumer.JwtConsumerBuilder;
+import org.jose4j.jwx.JsonWebStructure;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class JwtKeysTest {
+
+    @TempDir
+    Path keyDir;
+
+    @AfterEach
+    public void cleanup() {
+        System.clearProperty(JwtKeys.KEY_DIR_PROP);
+        System.clearProperty(JwtKeys.KEY_SIZE_PROP);
+    }
+
+    @Test
+    public void testKeyReused() throws Exception {
+        System.setProperty(JwtKeys.KEY_DIR_PROP, keyDir.toString());
+        PublicJsonWebKey first = JwtKeys.load(AlgorithmIdentifiers.RSA_USING_SHA256);
+        assertTrue(Files.isRegularFile(keyDir.resolve("jwt-RS256-2048.jwk")));
+
+        // A later test run loads the saved key instead of generating a new one
+        PublicJsonWebKey second = JwtKeys.load(AlgorithmIdentifiers.RSA_USING_SHA256);
+        assertEquals(first.getPublicKey(), second.getPublicKey());
+        assertEquals(first.getPrivateKey(), second.getPrivateKey());
+        assertEquals(JwtKeys.KEY_ID, second.getKeyId());
+    }
+
+    @Test
+    public void testCorruptKeyReplaced() throws Exception {
+        System.setProperty(JwtKeys.KEY_DIR_PROP, keyDir.toString());
+        Path keyFile = keyDir.resolve("jwt-ES256-256.jwk");
+        Files.write(keyFile, "not a key".getBytes());
+        PublicJsonWebKey jwk = JwtKeys.load(AlgorithmIdentifiers.ECDSA_USING_P256_CURVE_AND_SHA256);
+        assertNotNull(jwk.getPrivateKey());
+        assertEquals(jwk.getPublicKey(), JwtKeys.load(AlgorithmIdentifiers.ECDSA_USING_P256_CURVE_AND_SHA256).getPublicKey());
+    }
+
+    @Test
+    public void testKeyNotSaved() throws Exception {
+        System.setProperty(JwtKeys.KEY_DIR_PROP, "none");
+        PublicJsonWebKey first = JwtKeys.load(AlgorithmIdentifiers.ECDSA_USING_P256_CURVE_AND_SHA256);
+        PublicJsonWebKey second = JwtKeys.load(AlgorithmIdentifiers.ECDSA_USING_P256_CURVE_AND_SHA256);
+        assertNotEquals(first.getPublicKey(), second.getPublicKey());
+    }
+
+    @Test
+    public void testKeySize() throws Exception {
+        System.setProperty(JwtKeys.KEY_DIR_PROP, keyDir.toString());
+        System.setProperty(JwtKeys.KEY_SIZE_PROP, "3072");
+        PublicJsonWebKey jwk = JwtKeys.load(AlgorithmIdentifiers.RSA_USING_SHA256);
+        assertEquals(3072, ((RSAPublicKey) jwk.getPublicKey()).getModulus().bitLength());
+        // Keys of different sizes are saved separately
+        assertTrue(Files.isRegularFile(keyDir.resolve("jwt-RS256-3072.jwk")));
+    }
+
+    @Test
+    public void testEs256() throws Exception {
+        System.setProperty(JwtKeys.KEY_DIR_PROP, "none");
+        PublicJsonWebKey jwk = JwtKeys.load(AlgorithmIdentifiers.ECDSA_USING_P256_CURVE_AND_SHA256);
+        assertEquals(256, ((ECPublicKey) jwk.getPublicKey()).getParams().getCurve().getField().getFieldSize());
+
+        String jwt = new JwtMinter(jwk, AlgorithmIdentifiers.ECDSA_USING_P256_CURVE_AND_SHA256)
+                        .newToken("alice", "issuer", "groups=users");
+        assertEquals(AlgorithmIdentifiers.ECDSA_USING_P256_CURVE_AND_SHA256,
+                     JsonWebStructure.fromCompactSerialization(jwt).getAlgorithmHeaderValue());
+
+        // Verify the token the same way the application does, using the PEM encoded public key it is configured with
+        JwtClaims claims = new JwtConsumerBuilder()
+                        .setVerificationKey(pemDecode(JwtBuilder.pemEncode(jwk.getPublicKey())))
+                        .setExpectedIssuer("issuer")
+                        .setSkipDefaultAudienceValidation()
+                        .build()
+                        .processToClaims(jwt);
+        assertEquals("alice", claims.getSubject());
+        assertEquals("users", claims.getStringClaimValue("groups"));
+    }
+
+    private static PublicKey pemDecode(String pem) throws Exception {
+        String base64 = pem.replace("-----BEGIN PUBLIC KEY-----", "")
+                        .replace("-----END PUBLIC KEY-----", "")
+                        .replaceAll("\\s", "");
+        return KeyFactory.getInstance("EC").generatePublic(new X509EncodedKeySpec(SimplePEMEncoder.decode(base64)));
+    }
+}
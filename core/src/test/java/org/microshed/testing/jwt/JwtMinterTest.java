@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.jwt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+public class JwtMinterTest {
+
+    @Test
+    public void testMintReusesTokens() {
+        JwtMinter minter = JwtMinter.getDefault();
+        String jwt = minter.mint("alice", "issuer", "groups=users");
+        assertEquals(jwt, minter.mint("alice", "issuer", "groups=users"));
+        assertNotEquals(jwt, minter.mint("bob", "issuer", "groups=users"));
+        assertNotEquals(jwt, minter.mint("alice", "issuer", "groups=admins"));
+    }
+
+    @Test
+    public void testSupplierEquality() {
+        JwtMinter minter = JwtMinter.getDefault();
+        JwtMinter.TokenSupplier a = minter.supplier("alice", "issuer", "groups=users");
+        JwtMinter.TokenSupplier b = minter.supplier("alice", "issuer", "groups=users");
+        assertEquals(a, b);
+        assertEquals(a.hashCode(), b.hashCode());
+        assertNotEquals(a, minter.supplier("alice", "issuer", "groups=admins"));
+        assertNotEquals(a, minter.supplier("alice", "other", "groups=users"));
+        assertEquals(minter.mint("alice", "issuer", "groups=users"), a.get());
+    }
+
+    @Test
+    public void testMalformedClaim() {
+        JwtMinter.TokenSupplier jwt = JwtMinter.getDefault().supplier("alice", "issuer", "groups");
+        assertThrows(IllegalArgumentException.class, jwt::get);
+    }
+}
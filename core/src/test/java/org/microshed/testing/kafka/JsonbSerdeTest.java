@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.kafka;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.junit.jupiter.api.Test;
+
+public class JsonbSerdeTest {
+
+    public static class Order {
+        public String item;
+        public int quantity;
+
+        public Order() {
+        }
+
+        Order(String item, int quantity) {
+            this.item = item;
+            this.quantity = quantity;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Order && Objects.equals(item, ((Order) obj).item) && quantity == ((Order) obj).quantity;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(item, quantity);
+        }
+
+        @Override
+        public String toString() {
+            return quantity + "x" + item;
+        }
+    }
+
+    // Declared only for their generic types
+    List<Order> orderList;
+    Map<String, List<Order>> ordersByTable;
+
+    private static Type typeOf(String field) throws NoSuchFieldException {
+        return JsonbSerdeTest.class.getDeclaredField(field).getGenericType();
+    }
+
+    private static <T> T roundTrip(T value, JsonbDeserializer<T> deserializer) {
+        try (JsonbSerializer<T> serializer = new JsonbSerializer<>()) {
+            return deserializer.deserialize("orders", serializer.serialize("orders", value));
+        }
+    }
+
+    @Test
+    public void testPojo() {
+        Order order = new Order("pizza", 2);
+        assertEquals(order, roundTrip(order, new JsonbDeserializer<>(Order.class)));
+    }
+
+    @Test
+    public void testGenericList() throws Exception {
+        List<Order> orders = Arrays.asList(new Order("pizza", 2), new Order("salad", 1));
+        JsonbDeserializer<List<Order>> deserializer = new JsonbDeserializer<>();
+        deserializer.configure(Collections.singletonMap(JsonbDeserializer.VALUE_TYPE_CONFIG, typeOf("orderList")), false);
+        List<Order> read = roundTrip(orders, deserializer);
+        assertEquals(orders, read);
+        // The elements must be read as the declared type, rather than as maps
+        assertEquals(Order.class, read.get(0).getClass());
+    }
+
+    @Test
+    public void testNestedGenericKey() throws Exception {
+        Map<String, List<Order>> orders = new LinkedHashMap<>();
+        orders.put("table1", Arrays.asList(new Order("pizza", 2)));
+        orders.put("table2", Collections.emptyList());
+        JsonbDeserializer<Map<String, List<Order>>> deserializer = new JsonbDeserializer<>();
+        deserializer.configure(Collections.singletonMap(JsonbDeserializer.KEY_TYPE_CONFIG, typeOf("ordersByTable")), true);
+        Map<String, List<Order>> read = roundTrip(orders, deserializer);
+        assertEquals(orders, read);
+        assertEquals(Order.class, read.get("table1").get(0).getClass());
+    }
+
+    @Test
+    public void testConfiguredClassName() {
+        JsonbDeserializer<Order> deserializer = new JsonbDeserializer<>();
+        deserializer.configure(Collections.singletonMap(JsonbDeserializer.VALUE_TYPE_CONFIG, " " + Order.class.getName() + " "), false);
+        Order order = new Order("soup", 3);
+        assertEquals(order, roundTrip(order, deserializer));
+    }
+
+    @Test
+    public void testExplicitTypeIgnoresConfiguration() {
+        JsonbDeserializer<Order> deserializer = new JsonbDeserializer<>(Order.class);
+        deserializer.configure(Collections.singletonMap(JsonbDeserializer.VALUE_TYPE_CONFIG, String.class.getName()), false);
+        Order order = new Order("soup", 3);
+        assertEquals(order, roundTrip(order, deserializer));
+    }
+
+    @Test
+    public void testMissingType() {
+        JsonbDeserializer<Order> deserializer = new JsonbDeserializer<>();
+        assertThrows(IllegalArgumentException.class, () -> deserializer.configure(new HashMap<>(), false));
+        // The value type does not configure keys
+        assertThrows(IllegalArgumentException.class,
+                     () -> deserializer.configure(Collections.singletonMap(JsonbDeserializer.VALUE_TYPE_CONFIG, Order.class.getName()), true));
+        assertThrows(IllegalArgumentException.class,
+                     () -> deserializer.configure(Collections.singletonMap(JsonbDeserializer.VALUE_TYPE_CONFIG, "com.example.Missing"), false));
+        assertThrows(IllegalStateException.class, () -> deserializer.deserialize("orders", new byte[] { '{', '}' }));
+    }
+
+    @Test
+    public void testNulls() {
+        try (JsonbSerializer<Order> serializer = new JsonbSerializer<>()) {
+            assertNull(serializer.serialize("orders", null));
+        }
+        JsonbDeserializer<Order> deserializer = new JsonbDeserializer<>(Order.class);
+        assertNull(deserializer.deserialize("orders", null));
+        assertNull(deserializer.deserialize("orders", new byte[0]));
+    }
+
+    @Test
+    public void testMalformed() {
+        JsonbDeserializer<Order> deserializer = new JsonbDeserializer<>(Order.class);
+        assertThrows(SerializationException.class, () -> deserializer.deserialize("orders", new byte[] { '{', '"' }));
+    }
+
+    @Test
+    public void testSerializerReusesBuffer() {
+        try (JsonbSerializer<Order> serializer = new JsonbSerializer<>()) {
+            byte[] first = serializer.serialize("orders", new Order("a much longer item name", 10));
+            byte[] second = serializer.serialize("orders", new Order("tea", 1));
+            // Each record gets its own bytes, and nothing of an earlier record is left over
+            assertEquals(new Order("a much longer item name", 10), new JsonbDeserializer<>(Order.class).deserialize("orders", first));
+            assertEquals(new Order("tea", 1), new JsonbDeserializer<>(Order.class).deserialize("orders", second));
+        }
+    }
+}
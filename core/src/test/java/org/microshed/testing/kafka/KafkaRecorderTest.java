@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.kafka;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.opentest4j.AssertionFailedError;
+
+public class KafkaRecorderTest {
+
+    private static final String TOPIC = "orders";
+    private static final TopicPartition TP = new TopicPartition(TOPIC, 0);
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    private final MockConsumer<String, String> consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+    private KafkaRecorder<String, String> recorder;
+
+    private KafkaRecorder<String, String> record(int capacity) {
+        consumer.assign(Collections.singletonList(TP));
+        consumer.updateBeginningOffsets(Collections.singletonMap(TP, 0L));
+        recorder = new KafkaRecorder<>(consumer, capacity);
+        return recorder;
+    }
+
+    @AfterEach
+    public void close() {
+        if (recorder != null)
+            recorder.close();
+    }
+
+    private void send(long offset, String key, String value) {
+        consumer.schedulePollTask(() -> consumer.addRecord(new ConsumerRecord<>(TOPIC, 0, offset, key, value)));
+    }
+
+    private void await(String value) {
+        recorder.awaitRecords(r -> value.equals(r.value()), 1, TIMEOUT);
+    }
+
+    private static List<String> values(List<ConsumerRecord<String, String>> records) {
+        return records.stream().map(ConsumerRecord::value).collect(Collectors.toList());
+    }
+
+    @Test
+    public void testIndexes() {
+        record(10);
+        send(0, "a", "v0");
+        send(1, "b", "v1");
+        send(2, "a", "v2");
+        send(3, null, "v3");
+        await("v3");
+        assertEquals(Arrays.asList("v0", "v1", "v2", "v3"), values(recorder.getRecords()));
+        assertEquals(Arrays.asList("v0", "v1", "v2", "v3"), values(recorder.getRecords(TOPIC)));
+        assertEquals(Arrays.asList("v0", "v2"), values(recorder.getRecordsWithKey("a")));
+        assertEquals(Arrays.asList("v3"), values(recorder.getRecordsWithKey(null)));
+        assertEquals("v1", recorder.getRecord(TOPIC, 0, 1).get().value());
+        assertFalse(recorder.getRecord(TOPIC, 0, 4).isPresent());
+        assertFalse(recorder.getRecord("other", 0, 1).isPresent());
+        assertTrue(recorder.getRecords("other").isEmpty());
+    }
+
+    @Test
+    public void testRingEviction() {
+        record(3);
+        for (int i = 0; i < 5; i++)
+            send(i, i % 2 == 0 ? "even" : "odd", "v" + i);
+        await("v4");
+        assertEquals(3, recorder.size());
+        assertEquals(Arrays.asList("v2", "v3", "v4"), values(recorder.getRecords()));
+        assertEquals(Arrays.asList("v2", "v4"), values(recorder.getRecordsWithKey("even")));
+        assertEquals(Arrays.asList("v3"), values(recorder.getRecordsWithKey("odd")));
+        assertFalse(recorder.getRecord(TOPIC, 0, 1).isPresent());
+        assertEquals("v2", recorder.getRecord(TOPIC, 0, 2).get().value());
+    }
+
+    @Test
+    public void testRedeliveryAfterEviction() {
+        record(2);
+        send(0, "a", "first");
+        send(1, "b", "second");
+        await("second");
+        // Offset 0 is delivered again, which evicts its first delivery from the ring
+        consumer.schedulePollTask(() -> {
+            consumer.seek(TP, 0);
+            consumer.addRecord(new ConsumerRecord<>(TOPIC, 0, 0, "a", "again"));
+        });
+        await("again");
+        assertEquals(Arrays.asList("second", "again"), values(recorder.getRecords()));
+        assertEquals("again", recorder.getRecord(TOPIC, 0, 0).get().value());
+        assertEquals(Arrays.asList("again"), values(recorder.getRecordsWithKey("a")));
+    }
+
+    @Test
+    public void testClear() {
+        record(10);
+        send(0, "a", "v0");
+        await("v0");
+        recorder.clear();
+        assertEquals(0, recorder.size());
+        assertFalse(recorder.getRecord(TOPIC, 0, 0).isPresent());
+        send(1, "a", "v1");
+        await("v1");
+        assertEquals(Arrays.asList("v1"), values(recorder.getRecordsWithKey("a")));
+    }
+
+    @Test
+    public void testAwaitTimeout() {
+        record(10);
+        send(0, "a", "v0");
+        assertThrows(AssertionFailedError.class, () -> recorder.awaitRecords(TOPIC, 2, Duration.ofMillis(200)));
+    }
+}
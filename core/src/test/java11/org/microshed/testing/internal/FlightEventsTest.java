@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class FlightEventsTest {
+
+    @TempDir
+    Path tempDir;
+
+    private List<RecordedEvent> record(Runnable action, String... eventTypes) throws IOException {
+        Path file = tempDir.resolve("recording.jfr");
+        try (Recording recording = new Recording()) {
+            for (String eventType : eventTypes)
+                recording.enable(eventType);
+            recording.start();
+            action.run();
+            recording.stop();
+            recording.dump(file);
+        }
+        return RecordingFile.readAllEvents(file)
+                        .stream()
+                        .filter(e -> Arrays.asList(eventTypes).contains(e.getEventType().getName()))
+                        .collect(Collectors.toList());
+    }
+
+    @Test
+    public void testAvailable() {
+        assertTrue(FlightEvents.isAvailable());
+    }
+
+    @Test
+    public void testDisabledEventNotAllocated() {
+        // No recording has the event types enabled
+        assertSame(FlightEvent.NOOP, FlightEvents.restClientCall("GET", "http://localhost:9080/"));
+        assertSame(FlightEvent.NOOP, FlightEvents.environmentStart("MyTest", "MyEnvironment"));
+        assertSame(FlightEvent.NOOP, FlightEvents.containerReady("app"));
+    }
+
+    @Test
+    public void testRestClientCall() throws IOException {
+        List<RecordedEvent> events = record(() -> {
+            try (FlightEvent event = FlightEvents.restClientCall("GET", "http://localhost:9080/items/1")) {
+                event.withStatus(404);
+            }
+        }, "microshed.RestClientCall");
+
+        assertEquals(1, events.size());
+        RecordedEvent event = events.get(0);
+        assertEquals("GET", event.getString("method"));
+        assertEquals("http://localhost:9080/items/1", event.getString("uri"));
+        assertEquals(404, event.getInt("status"));
+    }
+
+    @Test
+    public void testEnvironmentStartAndContainerReady() throws IOException {
+        List<RecordedEvent> events = record(() -> {
+            try (FlightEvent env = FlightEvents.environmentStart("MyTest", "MyEnvironment")) {
+                try (FlightEvent container = FlightEvents.containerReady("app")) {
+                    // started
+                }
+            }
+        }, "microshed.EnvironmentStart", "microshed.ContainerReady");
+
+        assertEquals(2, events.size());
+        RecordedEvent container = events.stream().filter(e -> e.getEventType().getName().equals("microshed.ContainerReady")).findFirst().get();
+        RecordedEvent env = events.stream().filter(e -> e.getEventType().getName().equals("microshed.EnvironmentStart")).findFirst().get();
+        assertEquals("app", container.getString("container"));
+        assertEquals("MyTest", env.getString("testClass"));
+        assertEquals("MyEnvironment", env.getString("environment"));
+        assertFalse(env.getStartTime().isAfter(container.getStartTime()));
+        assertFalse(env.getEndTime().isBefore(container.getEndTime()));
+    }
+
+    @Test
+    public void testKafkaPoll() throws IOException {
+        List<RecordedEvent> events = record(() -> FlightEvents.kafkaPoll(Arrays.asList("orders", "payments"), 3),
+                                            "microshed.KafkaPoll");
+
+        assertEquals(1, events.size());
+        assertEquals("orders,payments", events.get(0).getString("topics"));
+        assertEquals(3, events.get(0).getInt("records"));
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.kafka.embedded;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Stream;
+
+import org.apache.kafka.clients.admin.Admin;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.common.Uuid;
+import org.apache.kafka.common.utils.Time;
+import org.microshed.testing.internal.InternalLogger;
+
+import kafka.server.KafkaConfig;
+import kafka.server.KafkaRaftServer;
+import scala.Option;
+
+/**
+ * A single-node Kafka broker running in KRaft mode, where the same node acts as broker and controller,
+ * so that no ZooKeeper is needed.
+ */
+class EmbeddedKafkaBroker {
+
+    private static final InternalLogger LOG = InternalLogger.get(EmbeddedKafkaBroker.class);
+
+    private static final int NODE_ID = 1;
+
+    private final int port;
+    private final int containerPort;
+    private final int controllerPort;
+    private final Map<String, String> brokerProperties;
+
+    private Path logDir;
+    private KafkaRaftServer server;
+
+    /**
+     * @param port The port of the listener for clients on the local host
+     * @param containerPort The port of the listener for clients in containers, which connect through the
+     *            <code>host.testcontainers.internal</code> host
+     * @param controllerPort The port of the listener for the KRaft controller
+     * @param brokerProperties Broker configuration that overrides the defaults
+     */
+    EmbeddedKafkaBroker(int port, int containerPort, int controllerPort, Map<String, String> brokerProperties) {
+        this.port = port;
+        this.containerPort = containerPort;
+        this.controllerPort = controllerPort;
+        this.brokerProperties = brokerProperties;
+    }
+
+    synchronized void start(Duration timeout) throws IOException, InterruptedException, TimeoutException {
+        logDir = Files.createTempDirectory("microshed-kafka-");
+        format(logDir);
+
+        Properties props = new Properties();
+        props.put("process.roles", "broker,controller");
+        props.put("node.id", String.valueOf(NODE_ID));
+        props.put("controller.quorum.voters", NODE_ID + "@localhost:" + controllerPort);
+        props.put("controller.listener.names", "CONTROLLER");
+        props.put("inter.broker.listener.name", "PLAINTEXT");
+        props.put("listeners", "PLAINTEXT://localhost:" + port + ",CONTAINER://localhost:" + containerPort +
+                               ",CONTROLLER://localhost:" + controllerPort);
+        props.put("advertised.listeners", "PLAINTEXT://localhost:" + port + ",CONTAINER://host.testcontainers.internal:" + containerPort);
+        props.put("listener.security.protocol.map", "PLAINTEXT:PLAINTEXT,CONTAINER:PLAINTEXT,CONTROLLER:PLAINTEXT");
+        props.put("log.dirs", logDir.toString());
+        // A single node can not replicate anything, and the defaults for internal topics assume a cluster
+        props.put("num.partitions", "1");
+        props.put("offsets.topic.replication.factor", "1");
+        props.put("offsets.topic.num.partitions", "1");
+        props.put("transaction.state.log.replication.factor", "1");
+        props.put("transaction.state.log.min.isr", "1");
+        props.put("transaction.state.log.num.partitions", "1");
+        props.put("group.initial.rebalance.delay.ms", "0");
+        props.put("auto.create.topics.enable", "true");
+        props.putAll(brokerProperties);
+
+        server = new KafkaRaftServer(KafkaConfig.fromProps(props, false), Time.SYSTEM, Option.empty());
+        server.startup();
+        awaitReady(timeout);
+    }
+
+    /**
+     * Writes the <code>meta.properties</code> that <code>kafka-storage.sh format</code> would write
+     */
+    private static void format(Path dir) throws IOException {
+        Properties meta = new Properties();
+        meta.put("version", "1");
+        meta.put("cluster.id", Uuid.randomUuid().toString());
+        meta.put("node.id", String.valueOf(NODE_ID));
+        try (OutputStream out = Files.newOutputStream(dir.resolve("meta.properties"))) {
+            meta.store(out, null);
+        }
+    }
+
+    private void awaitReady(Duration timeout) throws InterruptedException, TimeoutException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        Properties adminProps = new Properties();
+        adminProps.put(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, "localhost:" + port);
+        try (Admin admin = Admin.create(adminProps)) {
+            while (true) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0)
+                    throw new TimeoutException("Embedded Kafka broker on port " + port + " did not become ready within " + timeout.toMillis() + "ms");
+                try {
+                    if (!admin.describeCluster().nodes().get(remaining, TimeUnit.NANOSECONDS).isEmpty())
+                        return;
+                } catch (ExecutionException e) {
+                    LOG.debug("Embedded Kafka broker is not ready yet: " + e.getCause());
+                }
+                Thread.sleep(50);
+            }
+        }
+    }
+
+    synchronized void stop() {
+        if (server != null) {
+            try {
+                server.shutdown();
+                server.awaitShutdown();
+            } catch (RuntimeException e) {
+                LOG.debug("Error while stopping embedded Kafka broker", e);
+            }
+            server = null;
+        }
+        if (logDir != null) {
+            try (Stream<Path> files = Files.walk(logDir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            } catch (IOException e) {
+                LOG.debug("Unable to delete " + logDir, e);
+            }
+            logDir = null;
+        }
+    }
+}
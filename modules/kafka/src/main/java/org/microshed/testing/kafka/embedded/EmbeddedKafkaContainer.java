@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.kafka.embedded;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+import org.microshed.testing.ApplicationEnvironment;
+import org.microshed.testing.internal.InternalLogger;
+import org.microshed.testing.internal.Timeline;
+import org.microshed.testing.testcontainers.config.HollowTestcontainersConfiguration;
+import org.microshed.testing.testcontainers.internal.PortAllocator;
+import org.testcontainers.Testcontainers;
+import org.testcontainers.containers.ContainerLaunchException;
+import org.testcontainers.containers.GenericContainer;
+
+/**
+ * A single-node Kafka broker that runs inside the test JVM instead of in a Docker container. It can be used
+ * in place of a <code>KafkaContainer</code>, and starts in about a second on machines without Docker.
+ * For example:
+ *
+ * <pre>
+ * <code>
+ * &#64;Container
+ * public static EmbeddedKafkaContainer kafka = new EmbeddedKafkaContainer();
+ * </code>
+ * </pre>
+ *
+ * Injected Kafka clients and supported runtimes are configured with the bootstrap servers of the broker
+ * in the same way as for a <code>KafkaContainer</code>. In hollow mode the broker listens on port 9093 if
+ * it is free, which is the port a <code>KafkaContainer</code> is exposed on in hollow mode.
+ * <p>
+ * No Docker container is created, so methods of <code>GenericContainer</code> that configure or inspect the
+ * container itself have no effect.
+ */
+public class EmbeddedKafkaContainer extends GenericContainer<EmbeddedKafkaContainer> {
+
+    private static final InternalLogger LOG = InternalLogger.get(EmbeddedKafkaContainer.class);
+
+    private static final int HOLLOW_PORT = 9093;
+
+    private static final Duration STARTUP_TIMEOUT = Duration.ofSeconds(60);
+
+    private final Map<String, String> brokerProperties = new LinkedHashMap<>();
+    private int port = -1;
+    private int containerPort = -1;
+    private boolean containerPortExposed;
+    private EmbeddedKafkaBroker broker;
+
+    public EmbeddedKafkaContainer() {
+        // No image is ever used, supply a dummy image so that nothing is pulled
+        super(CompletableFuture.completedFuture("alpine:3.5"));
+    }
+
+    /**
+     * @param port The port that clients on the local host connect to. If unset, a free port is chosen.
+     * @return the same instance
+     */
+    public synchronized EmbeddedKafkaContainer withPort(int port) {
+        if (broker != null)
+            throw new IllegalStateException("The port can not be changed once the broker is started");
+        this.port = port;
+        return this;
+    }
+
+    /**
+     * @param key A Kafka broker configuration property, such as <code>auto.create.topics.enable</code>
+     * @param value The value of the property, which overrides the default of the embedded broker
+     * @return the same instance
+     */
+    public synchronized EmbeddedKafkaContainer withBrokerProperty(String key, String value) {
+        Objects.requireNonNull(key, "Supplied 'key' must not be null");
+        Objects.requireNonNull(value, "Supplied 'value' must not be null");
+        brokerProperties.put(key, value);
+        return this;
+    }
+
+    /**
+     * @return The bootstrap servers for clients on the local host, such as injected Kafka clients or
+     *         an application running in hollow mode
+     */
+    public synchronized String getBootstrapServers() {
+        return "localhost:" + getPort();
+    }
+
+    /**
+     * @return The bootstrap servers for clients that run in a Docker container, such as an
+     *         <code>ApplicationContainer</code>. The first call exposes the broker to containers.
+     */
+    public synchronized String getContainerBootstrapServers() {
+        allocatePorts();
+        if (!containerPortExposed) {
+            Testcontainers.exposeHostPorts(containerPort);
+            containerPortExposed = true;
+        }
+        return "host.testcontainers.internal:" + containerPort;
+    }
+
+    private int getPort() {
+        allocatePorts();
+        return port;
+    }
+
+    private void allocatePorts() {
+        if (port == -1) {
+            boolean hollow = ApplicationEnvironment.Resolver.isSelected(HollowTestcontainersConfiguration.class);
+            port = hollow && PortAllocator.probe(Collections.singleton(HOLLOW_PORT)).get(HOLLOW_PORT) ? HOLLOW_PORT : findFreePort();
+        }
+        if (containerPort == -1)
+            containerPort = findFreePort();
+    }
+
+    @Override
+    public synchronized void start() {
+        if (broker != null)
+            return;
+        allocatePorts();
+        long start = System.currentTimeMillis();
+        EmbeddedKafkaBroker newBroker = new EmbeddedKafkaBroker(port, containerPort, findFreePort(), new LinkedHashMap<>(brokerProperties));
+        try (Timeline.Span s = Timeline.begin("container", "start embedded kafka")) {
+            newBroker.start(STARTUP_TIMEOUT);
+        } catch (Exception e) {
+            newBroker.stop();
+            if (e instanceof InterruptedException)
+                Thread.currentThread().interrupt();
+            throw new ContainerLaunchException("Unable to start embedded Kafka broker on port " + port, e);
+        }
+        broker = newBroker;
+        // No Ryuk container cleans up after the JVM, so stop the broker and delete its data on exit
+        Runtime.getRuntime().addShutdownHook(new Thread(newBroker::stop, "microshed-kafka-stop"));
+        LOG.info("Started embedded Kafka broker at " + getBootstrapServers() + " in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (broker == null)
+            return;
+        broker.stop();
+        broker = null;
+    }
+
+    @Override
+    public synchronized boolean isRunning() {
+        return broker != null;
+    }
+
+    @Override
+    public String getDockerImageName() {
+        return "EmbeddedKafka";
+    }
+
+    @Override
+    public String getHost() {
+        return "localhost";
+    }
+
+    @Override
+    public String getContainerIpAddress() {
+        return getHost();
+    }
+
+    private static int findFreePort() {
+        try (ServerSocket ss = new ServerSocket(0)) {
+            return ss.getLocalPort();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to find a free port for the embedded Kafka broker", e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "EmbeddedKafkaContainer[" + (port == -1 ? "not started" : "localhost:" + port) + "]";
+    }
+}
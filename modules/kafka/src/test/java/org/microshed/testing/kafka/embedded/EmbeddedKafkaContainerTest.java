@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.kafka.embedded;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.microshed.testing.testcontainers.internal.KafkaBrokers;
+import org.testcontainers.containers.GenericContainer;
+
+public class EmbeddedKafkaContainerTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    private static final EmbeddedKafkaContainer kafka = new EmbeddedKafkaContainer()
+                    .withBrokerProperty("num.partitions", "3");
+
+    @BeforeAll
+    public static void startKafka() {
+        kafka.start();
+    }
+
+    @AfterAll
+    public static void stopKafka() {
+        kafka.stop();
+    }
+
+    private static KafkaProducer<String, String> producer() {
+        Properties props = new Properties();
+        props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, kafka.getBootstrapServers());
+        props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
+        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
+        return new KafkaProducer<>(props);
+    }
+
+    private static KafkaConsumer<String, String> consumer(String group) {
+        Properties props = new Properties();
+        props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, kafka.getBootstrapServers());
+        props.put(ConsumerConfig.GROUP_ID_CONFIG, group);
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName());
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName());
+        return new KafkaConsumer<>(props);
+    }
+
+    @Test
+    public void testProduceAndConsume() throws Exception {
+        try (KafkaProducer<String, String> producer = producer();
+                        KafkaConsumer<String, String> consumer = consumer("testProduceAndConsume")) {
+            producer.send(new ProducerRecord<>("embedded-roundtrip", "key", "hello")).get(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+            consumer.subscribe(Collections.singletonList("embedded-roundtrip"));
+            long deadline = System.nanoTime() + TIMEOUT.toNanos();
+            while (System.nanoTime() < deadline) {
+                for (ConsumerRecord<String, String> record : consumer.poll(Duration.ofMillis(100))) {
+                    assertEquals("key", record.key());
+                    assertEquals("hello", record.value());
+                    return;
+                }
+            }
+            throw new AssertionError("No record was received from the embedded broker within " + TIMEOUT);
+        }
+    }
+
+    @Test
+    public void testBrokerProperty() {
+        try (KafkaProducer<String, String> producer = producer()) {
+            // Topics are created on first use with the configured number of partitions
+            assertEquals(3, producer.partitionsFor("embedded-partitions").size());
+        }
+    }
+
+    @Test
+    public void testLifecycle() {
+        assertTrue(kafka.isRunning());
+        String bootstrapServers = kafka.getBootstrapServers();
+        assertTrue(bootstrapServers.startsWith("localhost:"), bootstrapServers);
+        assertEquals("localhost", kafka.getHost());
+        assertTrue(kafka.toString().contains(bootstrapServers), kafka.toString());
+        // Starting again leaves the running broker as it is
+        kafka.start();
+        assertEquals(bootstrapServers, kafka.getBootstrapServers());
+        assertThrows(IllegalStateException.class, () -> kafka.withPort(9093));
+    }
+
+    @Test
+    public void testStop() throws Exception {
+        EmbeddedKafkaContainer other = new EmbeddedKafkaContainer();
+        other.start();
+        int port = Integer.parseInt(other.getBootstrapServers().substring("localhost:".length()));
+        try (Socket s = new Socket("localhost", port)) {
+            assertTrue(s.isConnected());
+        } finally {
+            other.stop();
+        }
+        assertFalse(other.isRunning());
+        assertThrows(IOException.class, () -> new Socket("localhost", port).close());
+        // Stopping again has no effect
+        other.stop();
+    }
+
+    @Test
+    public void testDiscovery() throws Exception {
+        GenericContainer<?> app = new GenericContainer<>("alpine:3.5");
+        Set<GenericContainer<?>> brokers = KafkaBrokers.find(Arrays.asList(app, kafka));
+        assertEquals(Collections.singleton(kafka), brokers);
+        assertTrue(KafkaBrokers.isEmbedded(kafka));
+        assertFalse(KafkaBrokers.isEmbedded(app));
+        assertEquals(kafka.getBootstrapServers(), KafkaBrokers.getBootstrapServers(kafka));
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.testcontainers.containers.liberty;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the <code>messages.log</code> of a running Liberty server for the message that is logged
+ * once a configuration update has been processed.
+ */
+class ConfigUpdateWatcher {
+
+    static final String MESSAGES_LOG_PROP = "MICROSHED_TEST_LIBERTY_MESSAGES_LOG";
+
+    // CWWKG0017I: The server configuration was successfully updated
+    // CWWKG0018I: The server configuration was not updated. No functional changes were detected.
+    private static final String[] CONFIG_PROCESSED = { "CWWKG0017I", "CWWKG0018I" };
+
+    // Upper bound on how long to wait between checks, in case file system events are delayed or unsupported
+    private static final long MAX_POLL_MS = 50;
+
+    private final Path messagesLog;
+    private final long startOffset;
+
+    private ConfigUpdateWatcher(Path messagesLog, long startOffset) {
+        this.messagesLog = messagesLog;
+        this.startOffset = startOffset;
+    }
+
+    /**
+     * Must be called before the configuration is updated, so that only messages logged afterwards are considered.
+     *
+     * @param configFile The configuration file that is about to be updated
+     * @return A watcher for the messages.log of the server, or null if no messages.log could be located
+     */
+    static ConfigUpdateWatcher beforeUpdate(Path configFile) {
+        Path messagesLog = locateMessagesLog(configFile);
+        if (messagesLog == null) {
+            LibertyAdapter.LOG.debug("Unable to locate messages.log for config file " + configFile);
+            return null;
+        }
+        try {
+            return new ConfigUpdateWatcher(messagesLog, Files.size(messagesLog));
+        } catch (IOException e) {
+            LibertyAdapter.LOG.debug("Unable to read " + messagesLog, e);
+            return null;
+        }
+    }
+
+    private static Path locateMessagesLog(Path configFile) {
+        String explicitLog = System.getProperty(MESSAGES_LOG_PROP, System.getenv(MESSAGES_LOG_PROP));
+        if (explicitLog != null)
+            return Paths.get(explicitLog);
+
+        // The config file is normally located at <serverDir>/configDropins/defaults/<file>
+        Path serverDir = configFile.toAbsolutePath().getParent();
+        for (int i = 0; i < 2 && serverDir != null; i++)
+            serverDir = serverDir.getParent();
+        if (serverDir == null)
+            return null;
+
+        String logDir = System.getProperty("LOG_DIR", System.getenv("LOG_DIR"));
+        String outputDir = System.getProperty("WLP_OUTPUT_DIR", System.getenv("WLP_OUTPUT_DIR"));
+        Path candidate;
+        if (logDir != null)
+            candidate = Paths.get(logDir, "messages.log");
+        else if (outputDir != null)
+            candidate = Paths.get(outputDir).resolve(serverDir.getFileName()).resolve("logs").resolve("messages.log");
+        else
+            candidate = serverDir.resolve("logs").resolve("messages.log");
+        return Files.isRegularFile(candidate) ? candidate : null;
+    }
+
+    /**
+     * Blocks until the server logs that a configuration update was processed, or the timeout elapses.
+     *
+     * @return True if the configuration update was processed, false if the timeout elapsed first
+     */
+    boolean awaitUpdate(long timeoutMs) throws IOException, InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        long offset = startOffset;
+        String carry = "";
+        try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            messagesLog.getParent().register(watcher, ENTRY_CREATE, ENTRY_MODIFY);
+            while (true) {
+                long size = Files.size(messagesLog);
+                if (size < offset) {
+                    // The log was rolled over
+                    offset = 0;
+                    carry = "";
+                }
+                if (size > offset) {
+                    String newContent = carry + read(offset, size);
+                    offset = size;
+                    for (String msg : CONFIG_PROCESSED)
+                        if (newContent.contains(msg))
+                            return true;
+                    // Keep the end of the content in case a message ID is split across two reads
+                    carry = newContent.substring(Math.max(0, newContent.length() - CONFIG_PROCESSED[0].length()));
+                }
+
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0)
+                    return false;
+                WatchKey key = watcher.poll(Math.min(remaining, MAX_POLL_MS), TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    key.pollEvents();
+                    key.reset();
+                }
+            }
+        }
+    }
+
+    private String read(long from, long to) throws IOException {
+        try (FileChannel channel = FileChannel.open(messagesLog, StandardOpenOption.READ)) {
+            ByteBuffer buf = ByteBuffer.allocate((int) Math.min(to - from, Integer.MAX_VALUE));
+            while (buf.hasRemaining() && channel.read(buf, from + buf.position()) > 0) {
+                // keep reading
+            }
+            buf.flip();
+            // Message IDs are ASCII, so a single byte charset is sufficient and never fails to decode
+            return StandardCharsets.ISO_8859_1.decode(buf).toString();
+        }
+    }
+
+}
@@ -19,15 +19,23 @@
 package org.testcontainers.containers.liberty;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 import org.junit.jupiter.api.extension.ExtensionConfigurationException;
 import org.microshed.testing.ApplicationEnvironment;
@@ -35,6 +43,7 @@ import org.microshed.testing.internal.InternalLogger;
 import org.microshed.testing.testcontainers.ApplicationContainer;
 import org.microshed.testing.testcontainers.config.HollowTestcontainersConfiguration;
 import org.microshed.testing.testcontainers.config.TestcontainersConfiguration;
+import org.microshed.testing.testcontainers.internal.KafkaBrokers;
 import org.microshed.testing.testcontainers.spi.ServerAdapter;
 import org.testcontainers.containers.GenericContainer;
 import org.testcontainers.images.builder.ImageFromDockerfile;
@@ -44,7 +53,12 @@ public class LibertyAdapter implements ServerAdapter {
     static final InternalLogger LOG = InternalLogger.get(LibertyAdapter.class);
 
     private static String BASE_DOCKER_IMAGE = "openliberty/open-liberty:full-java8-openj9-ubi";
-    private static final String CONFIG_FILE_PROP = "MICROSHED_TEST_LIBERTY_CONFIG_FILE";
+    static final String CONFIG_FILE_PROP = "MICROSHED_TEST_LIBERTY_CONFIG_FILE";
+    private static final String LAYERED_IMAGE_PROP = "MICROSHED_TEST_LIBERTY_LAYERED_IMAGE";
+    static final String CONFIG_UPDATE_TIMEOUT_PROP = "MICROSHED_TEST_LIBERTY_CONFIG_TIMEOUT";
+    private static final long DEFAULT_CONFIG_UPDATE_TIMEOUT_MS = 10_000;
+    private static final String WEB_INF_LIB = "WEB-INF/lib/";
+    private static final int KAFKA_PORT = 9093;
 
     public static String getBaseDockerImage() {
         return BASE_DOCKER_IMAGE;
@@ -92,25 +106,58 @@ public class LibertyAdapter implements ServerAdapter {
             properties.put("mp.jwt.verify.publickey", properties.remove("mp_jwt_verify_publickey"));
         if (properties.containsKey("mp_jwt_verify_issuer"))
             properties.put("mp.jwt.verify.issuer", properties.remove("mp_jwt_verify_issuer"));
+        if (properties.containsKey("mp_jwt_verify_publickey_algorithm"))
+            properties.put("mp.jwt.verify.publickey.algorithm", properties.remove("mp_jwt_verify_publickey_algorithm"));
 
         List<String> lines = new ArrayList<>(properties.size() + 2);
         lines.add("<server>");
         //  <variable name="foo" value="bar"/>
         properties.forEach((k, v) -> lines.add("  <variable name=\"" + k + "\" value=\"" + v + "\"/>"));
         lines.add("</server>");
+        byte[] content = (String.join(System.lineSeparator(), lines) + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
         try {
-            Files.write(configFile, lines, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
-            Thread.sleep(500); // wait for configuration updates
+            if (Files.isRegularFile(configFile) && Arrays.equals(content, Files.readAllBytes(configFile))) {
+                LOG.debug("Configuration in " + configFile + " is already up to date");
+                return;
+            }
+
+            ConfigUpdateWatcher watcher = ConfigUpdateWatcher.beforeUpdate(configFile);
+            Files.write(configFile, content, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+            if (watcher == null) {
+                Thread.sleep(500); // wait for configuration updates
+                return;
+            }
+            long start = System.currentTimeMillis();
+            long timeout = getConfigUpdateTimeout();
+            if (watcher.awaitUpdate(timeout))
+                LOG.debug("Configuration update was applied in " + (System.currentTimeMillis() - start) + "ms");
+            else
+                LOG.warn("Liberty did not report that the configuration in " + configFile + " was applied within " + timeout + "ms");
         } catch (Exception e) {
             throw new RuntimeException("Unable to write configuration to " + configFile, e);
         }
     }
 
+    private static long getConfigUpdateTimeout() {
+        String value = System.getProperty(CONFIG_UPDATE_TIMEOUT_PROP, System.getenv(CONFIG_UPDATE_TIMEOUT_PROP));
+        if (value == null || value.isEmpty())
+            return DEFAULT_CONFIG_UPDATE_TIMEOUT_MS;
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            LOG.warn("Ignoring invalid value for " + CONFIG_UPDATE_TIMEOUT_PROP + ": " + value);
+            return DEFAULT_CONFIG_UPDATE_TIMEOUT_MS;
+        }
+    }
+
     @Override
     public ImageFromDockerfile getDefaultImage(File appFile) {
         final String appName = appFile.getName();
         final File configDir = new File("src/main/liberty/config");
         final boolean configDirExists = configDir.exists() && configDir.canRead();
+        if (isLayeredImage() && appFile.isFile() && appName.toLowerCase().endsWith(".war"))
+            return getLayeredImage(appFile, configDir, configDirExists);
+
         // Compose a docker image equivalent to doing:
         // FROM openliberty/open-liberty:full-java8-openj9-ubi
         // COPY src/main/liberty/config /config/
@@ -137,33 +184,120 @@ public class LibertyAdapter implements ServerAdapter {
         return image;
     }
 
+    /**
+     * Compose a docker image where each layer changes less often than the layer above it, so that
+     * a code-only change only rebuilds the thin top layer. The war is expanded into dropins:
+     * FROM openliberty/open-liberty:full-java8-openj9-ubi
+     * COPY src/main/liberty/config /config/
+     * RUN configure.sh
+     * COPY <app>/WEB-INF/lib /config/dropins/<app>/WEB-INF/lib
+     * COPY <app> (minus WEB-INF/lib) /config/dropins/<app>
+     */
+    private ImageFromDockerfile getLayeredImage(File appFile, File configDir, boolean configDirExists) {
+        final String appName = appFile.getName();
+        final String appDir = "/config/dropins/" + appName;
+        final Path libs;
+        final Path classes;
+        try {
+            Path explodedRoot = Files.createTempDirectory("microshed-liberty-");
+            libs = Files.createDirectories(explodedRoot.resolve("lib"));
+            classes = Files.createDirectories(explodedRoot.resolve("classes"));
+            explodeWar(appFile, libs, classes);
+            deleteOnExit(explodedRoot);
+        } catch (IOException e) {
+            throw new ExtensionConfigurationException("Unable to expand application " + appFile + " into image layers", e);
+        }
+        final boolean hasLibs = libs.toFile().list().length > 0;
+
+        ImageFromDockerfile image = new ImageFromDockerfile()
+                        .withDockerfileFromBuilder(builder -> {
+                            builder.from(getBaseDockerImage());
+                            if (configDirExists) {
+                                builder.copy("/config", "/config");
+                            }
+                            // The app is not present yet, so this layer stays cached until the config changes
+                            builder.run("configure.sh");
+                            if (hasLibs) {
+                                builder.copy("/app/lib", appDir + "/WEB-INF/lib");
+                            }
+                            builder.copy("/app/classes", appDir);
+                            builder.build();
+                        })
+                        .withFileFromPath("/app/classes", classes);
+        if (hasLibs)
+            image.withFileFromPath("/app/lib", libs);
+        if (configDirExists)
+            image.withFileFromFile("/config", configDir);
+        LOG.debug("Using layered image for " + appName + " with libs=" + hasLibs);
+        return image;
+    }
+
+    private static void explodeWar(File appFile, Path libs, Path classes) throws IOException {
+        try (ZipFile war = new ZipFile(appFile)) {
+            Enumeration<? extends ZipEntry> entries = war.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (entry.isDirectory())
+                    continue;
+                String name = entry.getName();
+                Path target = name.startsWith(WEB_INF_LIB) ? //
+                                libs.resolve(name.substring(WEB_INF_LIB.length())) : //
+                                classes.resolve(name);
+                if (!target.normalize().startsWith(libs) && !target.normalize().startsWith(classes))
+                    throw new IOException("Entry " + name + " is outside of the target directory");
+                Files.createDirectories(target.getParent());
+                try (InputStream in = war.getInputStream(entry)) {
+                    Files.copy(in, target);
+                }
+            }
+        }
+    }
+
+    private static void deleteOnExit(Path root) throws IOException {
+        // Files are deleted in reverse order of registration, so register parents first
+        try (Stream<Path> walk = Files.walk(root)) {
+            walk.forEach(p -> p.toFile().deleteOnExit());
+        }
+    }
+
+    private static boolean isLayeredImage() {
+        return Boolean.parseBoolean(System.getProperty(LAYERED_IMAGE_PROP, System.getenv(LAYERED_IMAGE_PROP)));
+    }
+
     @Override
     public void configure(Set<GenericContainer<?>> containers) {
         configureKafka(containers);
     }
 
     private void configureKafka(Set<GenericContainer<?>> containers) {
-        Class<?> KafkaContainer = tryLoad("org.testcontainers.containers.KafkaContainer");
-        if (KafkaContainer == null)
-            return;
-        Set<GenericContainer<?>> kafkaContainers = containers.stream()
-                        .filter(c -> KafkaContainer.isAssignableFrom(c.getClass()))
-                        .collect(Collectors.toSet());
+        Set<GenericContainer<?>> kafkaContainers = KafkaBrokers.find(containers);
         if (kafkaContainers.size() != 1)
             return;
 
         // At this point we have found exactly 1 kafka container
         GenericContainer<?> kafka = kafkaContainers.iterator().next();
+        boolean embedded = KafkaBrokers.isEmbedded(kafka);
 
         // Configure app container with bootstrap server
         String bootstrapProperty = "MP_MESSAGING_CONNECTOR_LIBERTY_KAFKA_BOOTSTRAP_SERVERS";
         String bootstrapServer = null;
-        if (ApplicationEnvironment.Resolver.isSelected(TestcontainersConfiguration.class)) {
+        if (embedded) {
+            // An embedded broker runs in the test JVM, so it is reached through the host rather than a Docker network
+            try {
+                bootstrapServer = ApplicationEnvironment.Resolver.isSelected(HollowTestcontainersConfiguration.class) ? //
+                                KafkaBrokers.getBootstrapServers(kafka) : //
+                                KafkaBrokers.getContainerBootstrapServers(kafka);
+            } catch (ReflectiveOperationException e) {
+                LOG.warn("Unable to configure kafka bootstrap server for embedded broker", e);
+                return;
+            }
+        } else if (ApplicationEnvironment.Resolver.isSelected(TestcontainersConfiguration.class)) {
             if (kafka.getNetworkAliases().size() == 0)
                 throw new ExtensionConfigurationException("Unable to configure kafka bootstrap server because no network alias is defined");
             bootstrapServer = kafka.getNetworkAliases().get(kafka.getNetworkAliases().size() - 1) + ":9092";
         } else if (ApplicationEnvironment.Resolver.isSelected(HollowTestcontainersConfiguration.class)) {
-            bootstrapServer = "localhost:9093";
+            // The broker is exposed on a fixed host port, which may have been remapped if 9093 was already taken
+            bootstrapServer = "localhost:" + HollowTestcontainersConfiguration.getHostPort(kafka, KAFKA_PORT);
         } else {
             return;
         }
@@ -171,18 +305,10 @@ public class LibertyAdapter implements ServerAdapter {
         LOG.info("Auto-configuring ApplicationContainer instances with " + bootstrapProperty + "=" + finalBootstrapServers);
         containers.stream()
                         .filter(c -> ApplicationContainer.class.isAssignableFrom(c.getClass()))
-                        .filter(c -> c.getNetwork().equals(kafka.getNetwork()))
+                        .filter(c -> embedded || Objects.equals(c.getNetwork(), kafka.getNetwork()))
                         .filter(c -> !c.getEnvMap().containsKey(bootstrapProperty))
                         .filter(c -> !c.getEnvMap().containsKey(bootstrapProperty.toLowerCase()))
                         .forEach(c -> c.withEnv(bootstrapProperty, finalBootstrapServers));
     }
 
-    private static Class<?> tryLoad(String clazz) {
-        try {
-            return Class.forName(clazz, false, LibertyAdapter.class.getClassLoader());
-        } catch (ClassNotFoundException | LinkageError e) {
-            return null;
-        }
-    }
-
 }
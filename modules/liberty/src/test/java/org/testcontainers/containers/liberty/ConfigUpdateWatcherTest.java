@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.testcontainers.containers.liberty;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ConfigUpdateWatcherTest {
+
+    private static final String UPDATED = "[10/18/26 12:00:00:000 UTC] 00000031 com.ibm.ws.config.xml.internal.ConfigRefresher A CWWKG0017I: " +
+                                          "The server configuration was successfully updated in 0.052 seconds.\n";
+    private static final String OTHER = "[10/18/26 12:00:00:000 UTC] 00000001 com.ibm.ws.kernel.launch.internal.FrameworkManager A CWWKE0002I: " +
+                                        "The kernel started after 0.921 seconds\n";
+
+    @TempDir
+    Path usrDir;
+
+    private Path configFile;
+    private Path messagesLog;
+    private final List<Thread> writers = new ArrayList<>();
+
+    @BeforeEach
+    public void setup() throws IOException {
+        Path serverDir = usrDir.resolve("servers").resolve("defaultServer");
+        configFile = serverDir.resolve("configDropins").resolve("defaults").resolve("system-test-vars.xml");
+        Files.createDirectories(configFile.getParent());
+        messagesLog = serverDir.resolve("logs").resolve("messages.log");
+        Files.createDirectories(messagesLog.getParent());
+        Files.write(messagesLog, OTHER.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    @AfterEach
+    public void cleanup() throws InterruptedException {
+        for (Thread t : writers)
+            t.join();
+        System.clearProperty(ConfigUpdateWatcher.MESSAGES_LOG_PROP);
+        System.clearProperty("LOG_DIR");
+        System.clearProperty("WLP_OUTPUT_DIR");
+    }
+
+    private static void append(Path log, String content) {
+        try {
+            Files.write(log, content.getBytes(StandardCharsets.ISO_8859_1), StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Appends each part to the log from another thread, with a pause before each part
+     */
+    private void appendLater(Path log, String... parts) {
+        Thread t = new Thread(() -> {
+            for (String part : parts) {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                append(log, part);
+            }
+        });
+        writers.add(t);
+        t.start();
+    }
+
+    @Test
+    public void testUpdateLogged() throws Exception {
+        ConfigUpdateWatcher watcher = ConfigUpdateWatcher.beforeUpdate(configFile);
+        assertNotNull(watcher);
+        appendLater(messagesLog, OTHER, UPDATED);
+        assertTrue(watcher.awaitUpdate(10_000));
+    }
+
+    @Test
+    public void testNoChangesLogged() throws Exception {
+        ConfigUpdateWatcher watcher = ConfigUpdateWatcher.beforeUpdate(configFile);
+        appendLater(messagesLog, "[10/18/26 12:00:00:000 UTC] 00000031 com.ibm.ws.config.xml.internal.ConfigRefresher A CWWKG0018I: " +
+                                 "The server configuration was not updated. No functional changes were detected.\n");
+        assertTrue(watcher.awaitUpdate(10_000));
+    }
+
+    @Test
+    public void testEarlierUpdateIgnored() throws Exception {
+        // Only messages that are logged after the watcher was created count
+        append(messagesLog, UPDATED);
+        ConfigUpdateWatcher watcher = ConfigUpdateWatcher.beforeUpdate(configFile);
+        appendLater(messagesLog, OTHER);
+        long start = System.currentTimeMillis();
+        assertFalse(watcher.awaitUpdate(500));
+        assertTrue(System.currentTimeMillis() - start >= 500);
+    }
+
+    @Test
+    public void testMessageSplitAcrossReads() throws Exception {
+        ConfigUpdateWatcher watcher = ConfigUpdateWatcher.beforeUpdate(configFile);
+        int split = UPDATED.indexOf("CWWKG0017I") + 5;
+        appendLater(messagesLog, UPDATED.substring(0, split), UPDATED.substring(split));
+        assertTrue(watcher.awaitUpdate(10_000));
+    }
+
+    @Test
+    public void testRollover() throws Exception {
+        StringBuilder history = new StringBuilder();
+        for (int i = 0; i < 20; i++)
+            history.append(OTHER);
+        append(messagesLog, history.toString());
+        ConfigUpdateWatcher watcher = ConfigUpdateWatcher.beforeUpdate(configFile);
+        Thread t = new Thread(() -> {
+            try {
+                Thread.sleep(200);
+                // The new log is shorter than the offset the watcher started at
+                Files.write(messagesLog, UPDATED.getBytes(StandardCharsets.ISO_8859_1), StandardOpenOption.TRUNCATE_EXISTING);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        writers.add(t);
+        t.start();
+        assertTrue(watcher.awaitUpdate(10_000));
+    }
+
+    @Test
+    public void testNoMessagesLog() throws IOException {
+        Files.delete(messagesLog);
+        assertNull(ConfigUpdateWatcher.beforeUpdate(configFile));
+    }
+
+    @Test
+    public void testExplicitMessagesLog() throws Exception {
+        Path log = Files.createTempFile(usrDir, "explicit", ".log");
+        System.setProperty(ConfigUpdateWatcher.MESSAGES_LOG_PROP, log.toString());
+        ConfigUpdateWatcher watcher = ConfigUpdateWatcher.beforeUpdate(configFile);
+        appendLater(log, UPDATED);
+        assertTrue(watcher.awaitUpdate(10_000));
+    }
+
+    @Test
+    public void testLogDir() throws Exception {
+        Path logDir = Files.createDirectories(usrDir.resolve("customLogs"));
+        Path log = Files.createFile(logDir.resolve("messages.log"));
+        System.setProperty("LOG_DIR", logDir.toString());
+        ConfigUpdateWatcher watcher = ConfigUpdateWatcher.beforeUpdate(configFile);
+        // Messages in the default location are not looked at
+        appendLater(messagesLog, UPDATED);
+        assertFalse(watcher.awaitUpdate(500));
+        appendLater(log, UPDATED);
+        assertTrue(watcher.awaitUpdate(10_000));
+    }
+
+    @Test
+    public void testOutputDir() throws Exception {
+        Path outputDir = usrDir.resolve("output");
+        Path log = Files.createDirectories(outputDir.resolve("defaultServer").resolve("logs")).resolve("messages.log");
+        Files.createFile(log);
+        System.setProperty("WLP_OUTPUT_DIR", outputDir.toString());
+        ConfigUpdateWatcher watcher = ConfigUpdateWatcher.beforeUpdate(configFile);
+        appendLater(log, UPDATED);
+        assertTrue(watcher.awaitUpdate(10_000));
+    }
+}
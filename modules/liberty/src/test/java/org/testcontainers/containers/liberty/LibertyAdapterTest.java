@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.testcontainers.containers.liberty;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class LibertyAdapterTest {
+
+    private static final FileTime EPOCH = FileTime.fromMillis(0);
+
+    @TempDir
+    Path tempDir;
+
+    private Path configFile;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        configFile = tempDir.resolve("system-test-vars.xml");
+        Path messagesLog = Files.createFile(tempDir.resolve("messages.log"));
+        System.setProperty(LibertyAdapter.CONFIG_FILE_PROP, configFile.toString());
+        System.setProperty(ConfigUpdateWatcher.MESSAGES_LOG_PROP, messagesLog.toString());
+        // Nothing is running to apply the configuration, so do not wait long for it
+        System.setProperty(LibertyAdapter.CONFIG_UPDATE_TIMEOUT_PROP, "100");
+    }
+
+    @AfterEach
+    public void cleanup() {
+        System.clearProperty(LibertyAdapter.CONFIG_FILE_PROP);
+        System.clearProperty(ConfigUpdateWatcher.MESSAGES_LOG_PROP);
+        System.clearProperty(LibertyAdapter.CONFIG_UPDATE_TIMEOUT_PROP);
+    }
+
+    private static Map<String, String> config(String value) {
+        Map<String, String> config = new HashMap<>();
+        config.put("foo", value);
+        config.put("mp_jwt_verify_issuer", "test");
+        return config;
+    }
+
+    @Test
+    public void testConfigWritten() throws IOException {
+        new LibertyAdapter().setConfigProperties(config("bar"));
+        String content = new String(Files.readAllBytes(configFile), StandardCharsets.UTF_8);
+        assertTrue(content.contains("<variable name=\"foo\" value=\"bar\"/>"), content);
+        assertTrue(content.contains("<variable name=\"mp.jwt.verify.issuer\" value=\"test\"/>"), content);
+    }
+
+    @Test
+    public void testUnchangedConfigNotRewritten() throws IOException {
+        LibertyAdapter adapter = new LibertyAdapter();
+        adapter.setConfigProperties(config("bar"));
+        Files.setLastModifiedTime(configFile, EPOCH);
+
+        // Rewriting identical content would still make Liberty scan and reprocess its configuration
+        long start = System.currentTimeMillis();
+        adapter.setConfigProperties(config("bar"));
+        assertEquals(EPOCH, Files.getLastModifiedTime(configFile));
+        assertTrue(System.currentTimeMillis() - start < 100, "Should not have waited for a configuration update");
+
+        adapter.setConfigProperties(config("baz"));
+        assertNotEquals(EPOCH, Files.getLastModifiedTime(configFile));
+        assertTrue(new String(Files.readAllBytes(configFile), StandardCharsets.UTF_8).contains("value=\"baz\""));
+    }
+}
@@ -21,6 +21,7 @@ package org.microshed.testing.quarkus;
 import java.lang.annotation.Annotation;
 import java.util.List;
 import java.util.Properties;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.junit.jupiter.api.extension.ExtensionConfigurationException;
@@ -32,6 +33,7 @@ import org.microshed.testing.jwt.JwtBuilder;
 import org.microshed.testing.jwt.JwtConfig;
 import org.microshed.testing.testcontainers.config.TestcontainersConfiguration;
 import org.microshed.testing.testcontainers.internal.ContainerGroup;
+import org.microshed.testing.testcontainers.internal.KafkaBrokers;
 import org.testcontainers.containers.GenericContainer;
 
 public class QuarkusConfiguration extends TestcontainersConfiguration {
@@ -91,9 +93,15 @@ public class QuarkusConfiguration extends TestcontainersConfiguration {
         }
     }
 
+    @Override
+    public String getApplicationURL(Class<?> testClass) {
+        // Quarkus runs the application itself, so the URL does not depend on the containers of the test class
+        return getApplicationURL();
+    }
+
     @Override
     public void preConfigure(Class<?> testClass) {
-        containers = discoveredContainers.computeIfAbsent(testClass, clazz -> new ContainerGroup(clazz));
+        ContainerGroup containers = getContainers(testClass);
 
         // Verify that @MicroShedTest comes before @QuarkusTest
         if (containers.allContainers.size() > 0) {
@@ -114,13 +122,19 @@ public class QuarkusConfiguration extends TestcontainersConfiguration {
         super.preConfigure(testClass);
     }
 
+    @Override
+    public void prestart(Class<?> testClass) {
+        // The Quarkus application URL is only known once Quarkus has started the test class
+    }
+
     @Override
     public void postConfigure(Class<?> testClass) {
         // TODO: JWT auto configuration
 //      autoConfigureJwt();
-        autoConfigureDatabases();
-        autoConfigureKafka();
-        autoConfigureMongoDB();
+        ContainerGroup containers = getContainers(testClass);
+        autoConfigureDatabases(containers);
+        autoConfigureKafka(containers);
+        autoConfigureMongoDB(containers);
     }
 
     private void autoConfigureJwt() {
@@ -136,11 +150,13 @@ public class QuarkusConfiguration extends TestcontainersConfiguration {
 
         System.setProperty("mp.jwt.verify.publickey", JwtBuilder.getPublicKey());
         System.setProperty("mp.jwt.verify.issuer", JwtConfig.DEFAULT_ISSUER);
+        if (!"RS256".equals(JwtBuilder.getAlgorithm()))
+            System.setProperty("mp.jwt.verify.publickey.algorithm", JwtBuilder.getAlgorithm());
         System.setProperty("quarkus.smallrye-jwt.enabled", "true");
         LOG.debug("Configuring mp.jwt.verify.publickey=" + JwtBuilder.getPublicKey());
     }
 
-    private void autoConfigureDatabases() {
+    private void autoConfigureDatabases(ContainerGroup containers) {
         if (System.getProperty("quarkus.datasource.url") != null ||
             System.getProperty("quarkus.datasource.username") != null ||
             System.getProperty("quarkus.datasource.password") != null)
@@ -169,19 +185,16 @@ public class QuarkusConfiguration extends TestcontainersConfiguration {
         }
     }
 
-    private void autoConfigureKafka() {
+    private void autoConfigureKafka(ContainerGroup containers) {
         final String KAFKA_PROP = "kafka.bootstrap.servers";
         //kafka.bootstrap.servers
         if (System.getProperty(KAFKA_PROP) != null)
             return; // Do not override explicit configuration
         try {
-            Class<?> KafkaContainerClass = Class.forName("org.testcontainers.containers.KafkaContainer");
-            List<GenericContainer<?>> kafkaContainers = containers.allContainers.stream()
-                            .filter(c -> KafkaContainerClass.isAssignableFrom(c.getClass()))
-                            .collect(Collectors.toList());
+            Set<GenericContainer<?>> kafkaContainers = KafkaBrokers.find(containers.allContainers);
             if (kafkaContainers.size() == 1) {
-                GenericContainer<?> kafka = kafkaContainers.get(0);
-                String bootstrapServers = (String) KafkaContainerClass.getMethod("getBootstrapServers").invoke(kafka);
+                GenericContainer<?> kafka = kafkaContainers.iterator().next();
+                String bootstrapServers = KafkaBrokers.getBootstrapServers(kafka);
                 System.setProperty(KAFKA_PROP, bootstrapServers);
                 LOG.info("Set " + KAFKA_PROP + "=" + bootstrapServers);
             } else if (kafkaContainers.size() > 1) {
@@ -189,14 +202,12 @@ public class QuarkusConfiguration extends TestcontainersConfiguration {
             } else {
                 LOG.debug("No KafkaContainer instances found in configuration");
             }
-        } catch (ClassNotFoundException | LinkageError ignore) {
-            // Testcontainers Kafka not on the classpath
         } catch (Exception e) {
             LOG.debug("Unable to configure Quarkus with Kafka container", e);
         }
     }
 
-    private void autoConfigureMongoDB() {
+    private void autoConfigureMongoDB(ContainerGroup containers) {
         if (System.getProperty("quarkus.mongodb.connection-string") != null ||
             System.getProperty("quarkus.mongodb.hosts") != null)
             return; // Do not override explicit configuration
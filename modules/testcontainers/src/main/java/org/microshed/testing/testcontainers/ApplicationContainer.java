@@ -19,7 +19,6 @@
 package org.microshed.testing.testcontainers;
 
 import java.io.File;
-import java.io.IOException;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -32,8 +31,6 @@ import java.nio.file.Paths;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -42,17 +39,20 @@ import java.util.ServiceLoader;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Future;
-import java.util.stream.Collectors;
+import java.util.regex.Pattern;
 
 import org.junit.jupiter.api.extension.ExtensionConfigurationException;
 import org.junit.platform.commons.support.AnnotationSupport;
 import org.microshed.testing.ApplicationEnvironment;
 import org.microshed.testing.ManuallyStartedConfiguration;
 import org.microshed.testing.internal.InternalLogger;
+import org.microshed.testing.internal.Timeline;
 import org.microshed.testing.jaxrs.RESTClient;
 import org.microshed.testing.testcontainers.config.HollowTestcontainersConfiguration;
 import org.microshed.testing.testcontainers.config.TestcontainersConfiguration;
+import org.microshed.testing.testcontainers.internal.AppFileLocator;
 import org.microshed.testing.testcontainers.internal.HollowContainerInspection;
+import org.microshed.testing.testcontainers.internal.ImageCache;
 import org.microshed.testing.testcontainers.internal.ImageFromDockerfile;
 import org.microshed.testing.testcontainers.spi.ServerAdapter;
 import org.testcontainers.DockerClientFactory;
@@ -89,10 +89,15 @@ public class ApplicationContainer extends GenericContainer<ApplicationContainer>
     private boolean waitStrategySet;
     private boolean readinessPathSet;
     private Integer primaryPort;
+    private final LogBuffer logBuffer = new LogBuffer();
 
     // variables for late-bound containers
     private String lateBind_ipAddress;
     private boolean lateBind_started;
+    // Resolving the host and mapped port requires a round trip to Docker, so remember it while the container runs
+    private volatile String startedBaseURL;
+    // Start of the current lifecycle phase, for the timeline
+    private volatile long phaseStartedAt;
 
     private static final Path dockerfile_root = Paths.get(".", "Dockerfile");
     private static final Path dockerfile_src_main = Paths.get(".", "src", "main", "docker", "Dockerfile");
@@ -118,12 +123,15 @@ public class ApplicationContainer extends GenericContainer<ApplicationContainer>
             return image;
         } else {
             // Dockerfile is not present, use a ServerAdapter to build the image
-            return resolveAdatper().orElseThrow(() -> {
+            org.testcontainers.images.builder.ImageFromDockerfile image = resolveAdatper().orElseThrow(() -> {
                 return new ExtensionConfigurationException("Unable to resolve Docker image for application because:" +
                                                            "\n - unable to locate Dockerfile in " + dockerfile_root.toAbsolutePath() +
                                                            "\n - unable to locate Dockerfile in " + dockerfile_src_main.toAbsolutePath() +
                                                            "\n - did not find any ServerAdapter to provide a default Dockerfile");
             }).getDefaultImage(findAppFile());
+            // Images built by a ServerAdapter have a self-contained build context, so they can
+            // be tagged by content and reused across JVMs when the app has not changed
+            return ImageCache.isEnabled() ? ImageCache.cached(image) : image;
         }
     }
 
@@ -133,35 +141,20 @@ public class ApplicationContainer extends GenericContainer<ApplicationContainer>
     }
 
     private static File findAppFile() {
-        // Find a .war or .ear file in the build/ or target/ directories
-        Set<File> matches = new HashSet<>();
-        matches.addAll(findAppFiles("build"));
-        matches.addAll(findAppFiles("target"));
+        // Find a .war or .ear file (or an exploded archive) in the build/ or target/ directories
+        Set<File> matches = AppFileLocator.findAppFiles();
         if (matches.size() == 0)
-            throw new IllegalStateException("No .war or .ear files found in build/ or target/ output folders.");
+            throw new IllegalStateException("No .war or .ear files found in build/ or target/ output folders. " +
+                                            "Set the " + AppFileLocator.APP_FILE_PROP + " system property or environment variable to the application file.");
         if (matches.size() > 1)
             throw new IllegalStateException("Found multiple application files in build/ or target output folders: " + matches +
-                                            " Expecting exactly 1 application file to be found.");
+                                            " Expecting exactly 1 application file to be found. Set the " + AppFileLocator.APP_FILE_PROP +
+                                            " system property or environment variable to choose one.");
         File appFile = matches.iterator().next();
         LOG.info("Found application file at: " + appFile.getAbsolutePath());
         return appFile;
     }
 
-    private static Set<File> findAppFiles(String path) {
-        File dir = new File(path);
-        if (dir.exists() && dir.isDirectory()) {
-            try {
-                return Files.walk(dir.toPath())
-                                .filter(Files::isRegularFile)
-                                .filter(p -> p.toString().toLowerCase().endsWith(".war"))
-                                .map(p -> p.toFile())
-                                .collect(Collectors.toSet());
-            } catch (IOException ignore) {
-            }
-        }
-        return Collections.emptySet();
-    }
-
     private static Optional<ServerAdapter> resolveAdatper() {
         List<ServerAdapter> adapters = new ArrayList<>(1);
         for (ServerAdapter adapter : ServiceLoader.load(ServerAdapter.class)) {
@@ -228,10 +221,11 @@ public class ApplicationContainer extends GenericContainer<ApplicationContainer>
     private void commonInit() {
         serverAdapter = resolveAdatper().orElseGet(() -> new DefaultServerAdapter());
         LOG.info("Using ServerAdapter: " + serverAdapter.getClass().getCanonicalName());
+        withLogConsumer(logBuffer);
         if (LOG.LOG_ENABLED) {
             withLogConsumer(new Slf4jLogConsumer(LOG.log));
         } else {
-            withLogConsumer(new SystemOutLogConsumer("[ApplicationContainer]"));
+            withLogConsumer(new FileLogConsumer("application").withConsolePrefix("[ApplicationContainer]"));
         }
         if (isHollow) {
             setContainerIpAddress(ManuallyStartedConfiguration.getHostname());
@@ -286,8 +280,15 @@ public class ApplicationContainer extends GenericContainer<ApplicationContainer>
         setExposedPorts(exposedPorts);
     }
 
+    @Override
+    protected void containerIsCreated(String containerId) {
+        super.containerIsCreated(containerId);
+        phaseStartedAt = recordPhase("create", phaseStartedAt);
+    }
+
     @Override
     protected void containerIsStarting(InspectContainerResponse containerInfo) {
+        phaseStartedAt = recordPhase("start", phaseStartedAt);
         List<Integer> exposedPorts = getExposedPorts();
         if (exposedPorts.size() == 0) {
             LOG.info(toStringSimple() + " has no exposed ports.");
@@ -297,20 +298,44 @@ public class ApplicationContainer extends GenericContainer<ApplicationContainer>
         }
     }
 
+    @Override
+    protected void containerIsStarted(InspectContainerResponse containerInfo) {
+        super.containerIsStarted(containerInfo);
+        recordPhase("readiness", phaseStartedAt);
+        startedBaseURL = "http://" + getContainerIpAddress() + ':' + getFirstMappedPort();
+    }
+
+    private long recordPhase(String phase, long startedAt) {
+        long now = Timeline.now();
+        if (Timeline.isEnabled())
+            Timeline.record("container", phase + " " + toStringSimple(), startedAt, now);
+        return now;
+    }
+
+    @Override
+    protected void containerIsStopping(InspectContainerResponse containerInfo) {
+        startedBaseURL = null;
+        super.containerIsStopping(containerInfo);
+    }
+
     @Override
     protected void doStart() {
         if (isHollow) {
             if (isRunning())
                 return;
 
+            long start = Timeline.now();
             Map<String, String> env = getEnvMap();
             if (env.size() > 0)
                 getServerAdapter().setConfigProperties(env);
             configure();
+            start = recordPhase("setConfigProperties", start);
             waitUntilContainerStarted();
+            recordPhase("readiness", start);
             lateBind_started = true;
             return;
         }
+        phaseStartedAt = Timeline.now();
         super.doStart();
     }
 
@@ -605,6 +630,9 @@ public class ApplicationContainer extends GenericContainer<ApplicationContainer>
      *         {@code http://<container-ip-address>:<mapped-port>}
      */
     public String getBaseURL() {
+        String baseURL = startedBaseURL;
+        if (baseURL != null)
+            return baseURL;
         if (!isHollow && !isRunning())
             throw new IllegalStateException("Container must be running to determine hostname and port");
         return "http://" + getContainerIpAddress() + ':' + getFirstMappedPort();
@@ -633,6 +661,32 @@ public class ApplicationContainer extends GenericContainer<ApplicationContainer>
         return serverAdapter;
     }
 
+    /**
+     * @return The recent output of this container
+     */
+    public LogBuffer getLogBuffer() {
+        return logBuffer;
+    }
+
+    /**
+     * Waits until a line of output matching the supplied pattern was logged by the application.
+     * In hollow mode the application is not started by MicroShed Testing, so no output is received.
+     *
+     * @see LogBuffer#waitForLog(Pattern, Duration)
+     */
+    public String waitForLog(Pattern pattern, Duration timeout) {
+        return logBuffer.waitForLog(pattern, timeout);
+    }
+
+    /**
+     * Asserts that a line of output logged by the application so far matches the supplied pattern.
+     *
+     * @see LogBuffer#assertLogContains(Pattern)
+     */
+    public String assertLogContains(Pattern pattern) {
+        return logBuffer.assertLogContains(pattern);
+    }
+
     /**
      * Normalize a series of one or more path parts into a path
      *
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.testcontainers;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares that the annotated <code>@Container</code> field must not be started until
+ * the named containers are started and ready. For example:
+ *
+ * <pre>
+ * <code>
+ * &#64;Container
+ * public static GenericContainer&lt;?&gt; db = // ...
+ *
+ * &#64;Container
+ * &#64;DependsOn("db")
+ * public static GenericContainer&lt;?&gt; cache = // ...
+ * </code>
+ * </pre>
+ *
+ * Containers without a dependency relationship are started in parallel. Dependencies
+ * declared using <code>GenericContainer.dependsOn()</code>, and network aliases of other
+ * containers referenced by {@link ApplicationContainer} environment variables, are
+ * detected automatically and do not need to be declared with this annotation.
+ */
+@Target({ ElementType.FIELD })
+@Retention(RetentionPolicy.RUNTIME)
+public @interface DependsOn {
+
+    /**
+     * @return The names of other <code>@Container</code> fields in the same test class
+     *         or <code>SharedContainerConfiguration</code> that must be started first
+     */
+    String[] value();
+
+}
@@ -0,0 +1,347 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.testcontainers;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+import org.microshed.testing.internal.InternalLogger;
+import org.microshed.testing.testcontainers.internal.LogWriter;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.containers.output.OutputFrame;
+
+/**
+ * Can be supplied to {@link ApplicationContainer#withLogConsumer(Consumer)}, or any other
+ * {@link GenericContainer} to write all container output to a log file, for example:
+ *
+ * <pre>
+ * <code>
+ * &#64;Container
+ * public static KafkaContainer kafka = new KafkaContainer()
+ *                 .withLogConsumer(new FileLogConsumer("kafka"));
+ * </code>
+ * </pre>
+ *
+ * Output is handed to a background thread that writes it in batches, so that a container that logs a lot
+ * does not slow down the test or the output of other containers. Log files are written to
+ * <code>build/microshed-testing/logs/</code>, or <code>target/microshed-testing/logs/</code> for Maven projects,
+ * with the process id in their name so that test JVMs running in parallel do not overwrite each other's files,
+ * and are rotated once they exceed 10 MB. The following system properties or environment variables set the defaults
+ * for all instances:
+ * <ul>
+ * <li><code>MICROSHED_TEST_LOG_DIR</code>: The directory to write log files to</li>
+ * <li><code>MICROSHED_TEST_LOG_LEVEL</code>: The minimum level of output that is written, <code>TRACE</code> by default</li>
+ * <li><code>MICROSHED_TEST_LOG_CONSOLE</code>: The minimum level of output that is also written to <code>System.out</code>,
+ * <code>WARN</code> by default. Use <code>OFF</code> to write nothing to the console.</li>
+ * <li><code>MICROSHED_TEST_LOG_RATE_LIMIT</code>: The maximum number of lines per second that are written per container,
+ * or 0 for no limit, which is the default</li>
+ * <li><code>MICROSHED_TEST_LOG_MAX_FILE_SIZE</code>: The size in MB at which log files are rotated</li>
+ * </ul>
+ * The level of a line is detected from common markers such as <code>[WARNING ]</code> or <code>ERROR</code> near the start
+ * of the line. Lines without a marker, such as stack traces, have the level of the line before them.
+ */
+public class FileLogConsumer implements Consumer<OutputFrame>, AutoCloseable {
+
+    public static enum Level {
+        TRACE, DEBUG, INFO, WARN, ERROR, OFF
+    }
+
+    public static final String DIR_PROP = "MICROSHED_TEST_LOG_DIR";
+    public static final String LEVEL_PROP = "MICROSHED_TEST_LOG_LEVEL";
+    public static final String CONSOLE_PROP = "MICROSHED_TEST_LOG_CONSOLE";
+    public static final String RATE_LIMIT_PROP = "MICROSHED_TEST_LOG_RATE_LIMIT";
+    public static final String MAX_FILE_SIZE_PROP = "MICROSHED_TEST_LOG_MAX_FILE_SIZE";
+
+    private static final InternalLogger LOG = InternalLogger.get(FileLogConsumer.class);
+
+    private static final int DEFAULT_MAX_FILE_SIZE_MB = 10;
+    private static final int DEFAULT_MAX_FILES = 3;
+
+    // Level markers are expected near the start of a line, after a timestamp and maybe a thread or logger name
+    private static final int LEVEL_SCAN_LIMIT = 160;
+    private static final byte[][] LEVEL_MARKERS = markers("ERROR", "SEVERE", "FATAL", "WARN", "INFO", "AUDIT", "DEBUG", "FINE", "TRACE");
+    private static final Level[] MARKER_LEVELS = { Level.ERROR, Level.ERROR, Level.ERROR, Level.WARN, Level.INFO, Level.INFO,
+                                                   Level.DEBUG, Level.DEBUG, Level.TRACE };
+
+    private final String name;
+    private Path dir = defaultDirectory();
+    private Level level = levelProperty(LEVEL_PROP, Level.TRACE);
+    private Level consoleLevel = levelProperty(CONSOLE_PROP, Level.WARN);
+    private String consolePrefix;
+    private int rateLimit = intProperty(RATE_LIMIT_PROP, 0);
+    private long maxFileSize = Math.max(1, intProperty(MAX_FILE_SIZE_PROP, DEFAULT_MAX_FILE_SIZE_MB)) * 1024L * 1024L;
+    private int maxFiles = DEFAULT_MAX_FILES;
+
+    private LogWriter.Sink sink;
+    private Level lastLevel = Level.INFO;
+    private double tokens;
+    private long lastRefill;
+    private long dropped;
+
+    /**
+     * @param name The name of the log file, without extension. The name is also used to prefix output
+     *            that is written to the console.
+     */
+    public FileLogConsumer(String name) {
+        Objects.requireNonNull(name, "Supplied 'name' must not be null");
+        this.name = name;
+        this.consolePrefix = "[" + name + "] ";
+    }
+
+    /**
+     * @param dir The directory to write the log file to
+     * @return the same instance
+     */
+    public synchronized FileLogConsumer withDirectory(Path dir) {
+        Objects.requireNonNull(dir, "Supplied 'dir' must not be null");
+        checkNotStarted();
+        this.dir = dir;
+        return this;
+    }
+
+    /**
+     * @param level The minimum level of output that is written to the log file
+     * @return the same instance
+     */
+    public synchronized FileLogConsumer withLevel(Level level) {
+        Objects.requireNonNull(level, "Supplied 'level' must not be null");
+        this.level = level;
+        return this;
+    }
+
+    /**
+     * @param level The minimum level of output that is also written to <code>System.out</code>,
+     *            or {@link Level#OFF} to write nothing to the console
+     * @return the same instance
+     */
+    public synchronized FileLogConsumer withConsoleTee(Level level) {
+        Objects.requireNonNull(level, "Supplied 'level' must not be null");
+        this.consoleLevel = level;
+        return this;
+    }
+
+    /**
+     * @param prefix The prefix of each line that is written to the console. Defaults to the name of the log file in brackets.
+     * @return the same instance
+     */
+    public synchronized FileLogConsumer withConsolePrefix(String prefix) {
+        Objects.requireNonNull(prefix, "Supplied 'prefix' must not be null");
+        checkNotStarted();
+        this.consolePrefix = prefix.isEmpty() || prefix.endsWith(" ") ? prefix : prefix + " ";
+        return this;
+    }
+
+    /**
+     * @param linesPerSecond The maximum number of lines per second that are written, or 0 for no limit.
+     *            Lines above the limit are discarded, and the number of discarded lines is written in their place.
+     * @return the same instance
+     */
+    public synchronized FileLogConsumer withRateLimit(int linesPerSecond) {
+        if (linesPerSecond < 0)
+            throw new IllegalArgumentException("The rate limit must not be negative, but was " + linesPerSecond);
+        this.rateLimit = linesPerSecond;
+        return this;
+    }
+
+    /**
+     * @param maxFileSize The size in bytes at which the log file is rotated
+     * @param maxFiles The number of rotated files to keep, such as <code>app-1234.1.log</code>
+     * @return the same instance
+     */
+    public synchronized FileLogConsumer withRotation(long maxFileSize, int maxFiles) {
+        if (maxFileSize <= 0 || maxFiles < 0)
+            throw new IllegalArgumentException("Invalid rotation of " + maxFiles + " files of " + maxFileSize + " bytes");
+        checkNotStarted();
+        this.maxFileSize = maxFileSize;
+        this.maxFiles = maxFiles;
+        return this;
+    }
+
+    /**
+     * @return The log file that output is written to
+     */
+    public synchronized Path getFile() {
+        return getSink().getFile();
+    }
+
+    /**
+     * Waits until all output received so far is written to the log file
+     *
+     * @return false if the timeout elapsed before all output was written
+     */
+    public boolean flush(Duration timeout) {
+        Objects.requireNonNull(timeout, "Supplied 'timeout' must not be null");
+        return LogWriter.flush(timeout);
+    }
+
+    @Override
+    public synchronized void accept(OutputFrame frame) {
+        byte[] bytes = frame.getBytes();
+        if (bytes == null || bytes.length == 0)
+            return;
+
+        Level frameLevel = detectLevel(bytes);
+        if (frameLevel == null)
+            frameLevel = lastLevel;
+        else
+            lastLevel = frameLevel;
+        boolean write = frameLevel.compareTo(level) >= 0 && level != Level.OFF;
+        boolean tee = frameLevel.compareTo(consoleLevel) >= 0 && consoleLevel != Level.OFF;
+        if (!write && !tee)
+            return;
+
+        if (rateLimit > 0 && !acquire(countLines(bytes)))
+            return;
+
+        // The frame owns its bytes, so they are handed over without copying
+        getSink().submit(bytes, write, tee);
+    }
+
+    private boolean acquire(int lines) {
+        long now = System.nanoTime();
+        if (lastRefill == 0)
+            tokens = rateLimit;
+        else
+            tokens = Math.min(rateLimit, tokens + (now - lastRefill) * rateLimit / 1_000_000_000d);
+        lastRefill = now;
+        if (tokens < lines) {
+            dropped += lines;
+            return false;
+        }
+        tokens -= lines;
+        if (dropped > 0) {
+            String notice = "... " + dropped + " lines were discarded by the rate limit of " + rateLimit + " lines per second\n";
+            getSink().submit(notice.getBytes(StandardCharsets.UTF_8), true, false);
+            dropped = 0;
+        }
+        return true;
+    }
+
+    private LogWriter.Sink getSink() {
+        if (sink == null)
+            sink = LogWriter.newSink(dir, name, maxFileSize, maxFiles, consolePrefix);
+        return sink;
+    }
+
+    private void checkNotStarted() {
+        if (sink != null)
+            throw new IllegalStateException("The log file can not be changed once output was written to it");
+    }
+
+    @Override
+    public synchronized void close() {
+        if (sink != null)
+            sink.close();
+    }
+
+    static Level detectLevel(byte[] bytes) {
+        int limit = Math.min(bytes.length, LEVEL_SCAN_LIMIT);
+        for (int i = 0; i < limit; i++) {
+            byte b = bytes[i];
+            if (b == '\n')
+                return null;
+            if (b < 'A' || b > 'Z' || (i > 0 && isLetter(bytes[i - 1])))
+                continue;
+            for (int m = 0; m < LEVEL_MARKERS.length; m++) {
+                if (startsWith(bytes, i, LEVEL_MARKERS[m]))
+                    return MARKER_LEVELS[m];
+            }
+        }
+        return null;
+    }
+
+    private static boolean startsWith(byte[] bytes, int offset, byte[] marker) {
+        if (offset + marker.length > bytes.length)
+            return false;
+        for (int i = 0; i < marker.length; i++) {
+            if (bytes[offset + i] != marker[i])
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean isLetter(byte b) {
+        return (b >= 'A' && b <= 'Z') || (b >= 'a' && b <= 'z');
+    }
+
+    private static int countLines(byte[] bytes) {
+        int lines = 0;
+        for (byte b : bytes) {
+            if (b == '\n')
+                lines++;
+        }
+        return Math.max(lines, 1);
+    }
+
+    private static byte[][] markers(String... markers) {
+        byte[][] result = new byte[markers.length][];
+        for (int i = 0; i < markers.length; i++)
+            result[i] = markers[i].getBytes(StandardCharsets.US_ASCII);
+        return result;
+    }
+
+    private static Path defaultDirectory() {
+        String dir = System.getProperty(DIR_PROP, System.getenv(DIR_PROP));
+        if (dir != null && !dir.isEmpty())
+            return Paths.get(dir);
+        boolean maven = Files.isDirectory(Paths.get("target")) && !Files.isDirectory(Paths.get("build"));
+        return Paths.get(maven ? "target" : "build", "microshed-testing", "logs");
+    }
+
+    private static Level levelProperty(String key, Level defaultValue) {
+        String value = System.getProperty(key, System.getenv(key));
+        if (value == null || value.isEmpty())
+            return defaultValue;
+        String normalized = value.trim().toUpperCase(Locale.ROOT);
+        if ("WARNING".equals(normalized))
+            return Level.WARN;
+        try {
+            return Level.valueOf(normalized);
+        } catch (IllegalArgumentException e) {
+            LOG.warn("Ignoring invalid value for " + key + ": " + value);
+            return defaultValue;
+        }
+    }
+
+    private static int intProperty(String key, int defaultValue) {
+        String value = System.getProperty(key, System.getenv(key));
+        if (value == null || value.isEmpty())
+            return defaultValue;
+        try {
+            int result = Integer.parseInt(value.trim());
+            if (result >= 0)
+                return result;
+        } catch (NumberFormatException e) {
+            // fall through
+        }
+        LOG.warn("Ignoring invalid value for " + key + ": " + value);
+        return defaultValue;
+    }
+
+    @Override
+    public String toString() {
+        return "FileLogConsumer[" + name + "]";
+    }
+}
@@ -0,0 +1,403 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.testcontainers;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+import org.microshed.testing.internal.InternalLogger;
+import org.opentest4j.AssertionFailedError;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.containers.output.OutputFrame;
+
+/**
+ * Keeps the most recent output of a container in memory, so that tests can check the behavior of an application
+ * through its logs. Every {@link ApplicationContainer} and every other container that is started by MicroShed Testing
+ * has a log buffer, which can be obtained with {@link #of(GenericContainer)}. For example:
+ *
+ * <pre>
+ * <code>
+ * LogBuffer.of(app).waitForLog(Pattern.compile("Order \\d+ was shipped"), Duration.ofSeconds(30));
+ * </code>
+ * </pre>
+ *
+ * Output is stored in fixed-size chunks, and the oldest chunks are discarded once the buffer exceeds its capacity,
+ * which is 4 MB unless set with the <code>MICROSHED_TEST_LOG_BUFFER_SIZE</code> system property or environment variable (in KB).
+ * Lines are indexed as they arrive, so waiting for a log line only scans lines that were not scanned before, and wakes up as soon as
+ * new output arrives instead of polling.
+ */
+public class LogBuffer implements Consumer<OutputFrame> {
+
+    public static final String BUFFER_SIZE_PROP = "MICROSHED_TEST_LOG_BUFFER_SIZE";
+
+    private static final InternalLogger LOG = InternalLogger.get(LogBuffer.class);
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int DEFAULT_BUFFER_SIZE_KB = 4 * 1024;
+    private static final int SCAN_BATCH = 256;
+
+
+    private final int maxChunks;
+    // Retained chunks, where the first chunk has the absolute index firstChunk
+    private final ArrayDeque<byte[]> chunks = new ArrayDeque<>();
+    private long firstChunk;
+    private int chunkOffset = CHUNK_SIZE;
+
+    // Ring of the absolute byte offset and the length of each retained line, from firstLine (inclusive) to nextLine (exclusive)
+    private long[] lineStarts = new long[1024];
+    private int[] lineLengths = new int[1024];
+    private long firstLine;
+    private long nextLine;
+
+    // Output of the current line that did not end yet
+    private byte[] partial = new byte[256];
+    private int partialLength;
+
+    public LogBuffer() {
+        this(bufferSizeProperty());
+    }
+
+    /**
+     * @param capacity The number of bytes of output to keep. At least one chunk of 64 KB is always kept.
+     */
+    public LogBuffer(long capacity) {
+        this.maxChunks = (int) Math.max(1, Math.min(Integer.MAX_VALUE, capacity / CHUNK_SIZE));
+    }
+
+    /**
+     * Returns the log buffer of the supplied container. If the container has none, a new buffer is registered as a log
+     * consumer of the container, which only receives output if the container is started afterwards.
+     * The buffer is only referenced by the container, so it does not outlive it.
+     *
+     * @param container A container that was started by MicroShed Testing, or any other container
+     * @return The log buffer of the container
+     */
+    public static LogBuffer of(GenericContainer<?> container) {
+        Objects.requireNonNull(container, "Supplied 'container' must not be null");
+        synchronized (container) {
+            for (Consumer<OutputFrame> consumer : container.getLogConsumers())
+                if (consumer instanceof LogBuffer)
+                    return (LogBuffer) consumer;
+            LogBuffer buffer = new LogBuffer();
+            container.withLogConsumer(buffer);
+            return buffer;
+        }
+    }
+
+    @Override
+    public synchronized void accept(OutputFrame frame) {
+        byte[] bytes = frame.getBytes();
+        if (bytes == null || bytes.length == 0) {
+            // The output ended, so the last line is complete
+            if (frame.getType() == OutputFrame.OutputType.END && partialLength > 0) {
+                addLine(partial, 0, partialLength);
+                partialLength = 0;
+                notifyAll();
+            }
+            return;
+        }
+        long before = nextLine;
+        int lineStart = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] != '\n')
+                continue;
+            int end = i > lineStart && bytes[i - 1] == '\r' ? i - 1 : i;
+            if (partialLength > 0) {
+                appendPartial(bytes, lineStart, end - lineStart);
+                addLine(partial, 0, partialLength);
+                partialLength = 0;
+            } else {
+                addLine(bytes, lineStart, end - lineStart);
+            }
+            lineStart = i + 1;
+        }
+        if (lineStart < bytes.length)
+            appendPartial(bytes, lineStart, bytes.length - lineStart);
+        if (nextLine != before)
+            notifyAll();
+    }
+
+    private void appendPartial(byte[] bytes, int offset, int length) {
+        // Lines longer than a chunk are truncated, so don't hold on to more than that
+        length = Math.min(length, CHUNK_SIZE - partialLength);
+        if (length <= 0)
+            return;
+        if (partialLength + length > partial.length)
+            partial = Arrays.copyOf(partial, Math.min(CHUNK_SIZE, Math.max(partial.length * 2, partialLength + length)));
+        System.arraycopy(bytes, offset, partial, partialLength, length);
+        partialLength += length;
+    }
+
+    private void addLine(byte[] bytes, int offset, int length) {
+        length = Math.min(length, CHUNK_SIZE);
+        // Count the line break, so that the index never holds more lines than the chunks hold bytes
+        int reserved = Math.max(length, 1);
+        // Lines never span chunks, so that each line can be decoded from a single array
+        if (chunkOffset + reserved > CHUNK_SIZE || chunks.isEmpty()) {
+            chunks.addLast(new byte[CHUNK_SIZE]);
+            chunkOffset = 0;
+            if (chunks.size() > maxChunks) {
+                chunks.removeFirst();
+                firstChunk++;
+                long retainedStart = firstChunk * CHUNK_SIZE;
+                while (firstLine < nextLine && lineStarts[index(firstLine)] < retainedStart)
+                    firstLine++;
+            }
+        }
+        System.arraycopy(bytes, offset, chunks.peekLast(), chunkOffset, length);
+        if (nextLine - firstLine == lineStarts.length)
+            growIndex();
+        int i = index(nextLine);
+        lineStarts[i] = (firstChunk + chunks.size() - 1) * CHUNK_SIZE + chunkOffset;
+        lineLengths[i] = length;
+        nextLine++;
+        chunkOffset += reserved;
+    }
+
+    private void growIndex() {
+        int size = lineStarts.length;
+        long[] newStarts = new long[size * 2];
+        int[] newLengths = new int[size * 2];
+        for (long line = firstLine; line < nextLine; line++) {
+            newStarts[(int) (line & (size * 2 - 1))] = lineStarts[index(line)];
+            newLengths[(int) (line & (size * 2 - 1))] = lineLengths[index(line)];
+        }
+        lineStarts = newStarts;
+        lineLengths = newLengths;
+    }
+
+    private int index(long line) {
+        return (int) (line & (lineStarts.length - 1));
+    }
+
+    /**
+     * @return A position that can be passed to {@link #waitForLog(Pattern, Duration, long)} in order to only
+     *         look at output that arrives after this call
+     */
+    public synchronized long mark() {
+        return nextLine;
+    }
+
+    /**
+     * Waits until a line of output matching the supplied pattern was received. Output that was received before this call is checked as well.
+     *
+     * @param pattern The pattern to find in a line of output, using {@link java.util.regex.Matcher#find()}
+     * @param timeout The maximum time to wait
+     * @return The first matching line
+     * @throws AssertionFailedError if no line matched before the timeout elapsed
+     */
+    public String waitForLog(Pattern pattern, Duration timeout) {
+        return waitForLog(pattern, timeout, 0);
+    }
+
+    /**
+     * Waits until a line of output matching the supplied pattern was received after the supplied position.
+     *
+     * @param pattern The pattern to find in a line of output, using {@link java.util.regex.Matcher#find()}
+     * @param timeout The maximum time to wait
+     * @param since A position obtained from {@link #mark()}
+     * @return The first matching line after the position
+     * @throws AssertionFailedError if no line matched before the timeout elapsed
+     */
+    public String waitForLog(Pattern pattern, Duration timeout, long since) {
+        Objects.requireNonNull(pattern, "Supplied 'pattern' must not be null");
+        Objects.requireNonNull(timeout, "Supplied 'timeout' must not be null");
+        long deadline = System.nanoTime() + timeout.toNanos();
+        Scan scan = new Scan(since);
+        while (true) {
+            String match = scan.find(pattern);
+            if (match != null)
+                return match;
+            if (!scan.awaitOutput(deadline))
+                throw new AssertionFailedError("No line of output matching '" + pattern + "' was received within " + timeout.toMillis() +
+                                               "ms. Scanned " + scan.scanned + " lines.");
+        }
+    }
+
+    /**
+     * Asserts that a line of output received so far matches the supplied pattern
+     *
+     * @param pattern The pattern to find in a line of output, using {@link java.util.regex.Matcher#find()}
+     * @return The first matching line
+     * @throws AssertionFailedError if no line matched
+     */
+    public String assertLogContains(Pattern pattern) {
+        Objects.requireNonNull(pattern, "Supplied 'pattern' must not be null");
+        Scan scan = new Scan(0);
+        String match = scan.find(pattern);
+        if (match == null)
+            throw new AssertionFailedError("No line of output matches '" + pattern + "'. Scanned " + scan.scanned + " lines.");
+        return match;
+    }
+
+    /**
+     * Asserts that a line of output received so far contains the supplied text
+     *
+     * @param text The text to find in a line of output
+     * @return The first matching line
+     * @throws AssertionFailedError if no line matched
+     */
+    public String assertLogContains(String text) {
+        Objects.requireNonNull(text, "Supplied 'text' must not be null");
+        return assertLogContains(Pattern.compile(Pattern.quote(text)));
+    }
+
+    /**
+     * @return All lines of output that are retained, oldest first
+     */
+    public List<String> getLines() {
+        List<String> lines = new ArrayList<>();
+        Scan scan = new Scan(0);
+        while (scan.collect())
+            for (int i = 0; i < scan.count; i++)
+                lines.add(scan.decode(i));
+        return lines;
+    }
+
+    /**
+     * Discards all output received so far
+     */
+    public synchronized void clear() {
+        firstLine = nextLine;
+    }
+
+    /**
+     * An incremental scan of the lines of the buffer. The lines to scan are collected while holding the lock of the buffer,
+     * but decoded and matched without it, so that slow patterns don't block the container output.
+     */
+    private class Scan {
+
+        private final byte[][] arrays = new byte[SCAN_BATCH][];
+        private final int[] offsets = new int[SCAN_BATCH];
+        private final int[] lengths = new int[SCAN_BATCH];
+        private int count;
+        private long position;
+        private long scanned;
+
+        Scan(long since) {
+            this.position = since;
+        }
+
+        /**
+         * @return The first matching line of the lines that were not scanned yet, or null if none matched
+         */
+        String find(Pattern pattern) {
+            while (collect()) {
+                for (int i = 0; i < count; i++) {
+                    String line = decode(i);
+                    if (pattern.matcher(line).find())
+                        return line;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Collects the next batch of lines
+         *
+         * @return false if there are no more lines to scan
+         */
+        boolean collect() {
+            synchronized (LogBuffer.this) {
+                if (position < firstLine) {
+                    if (position > 0)
+                        LOG.debug("Output was discarded before it could be scanned, increase " + BUFFER_SIZE_PROP + " to keep more output");
+                    position = firstLine;
+                }
+                count = (int) Math.min(SCAN_BATCH, nextLine - position);
+                if (count <= 0)
+                    return false;
+                Iterator<byte[]> it = null;
+                long chunkIndex = -1;
+                byte[] chunk = null;
+                for (int i = 0; i < count; i++) {
+                    int line = index(position + i);
+                    long chunkOfLine = lineStarts[line] / CHUNK_SIZE;
+                    if (chunkOfLine != chunkIndex) {
+                        if (it == null) {
+                            it = chunks.iterator();
+                            chunkIndex = firstChunk - 1;
+                        }
+                        while (chunkIndex < chunkOfLine) {
+                            chunk = it.next();
+                            chunkIndex++;
+                        }
+                    }
+                    arrays[i] = chunk;
+                    offsets[i] = (int) (lineStarts[line] % CHUNK_SIZE);
+                    lengths[i] = lineLengths[line];
+                }
+                position += count;
+                scanned += count;
+                return true;
+            }
+        }
+
+        String decode(int i) {
+            String line = new String(arrays[i], offsets[i], lengths[i], StandardCharsets.UTF_8);
+            arrays[i] = null;
+            return line;
+        }
+
+        /**
+         * @return false if the deadline passed before new output arrived
+         */
+        boolean awaitOutput(long deadline) {
+            synchronized (LogBuffer.this) {
+                while (nextLine <= position) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0)
+                        return false;
+                    try {
+                        LogBuffer.this.wait(Math.max(1, remaining / 1_000_000));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new AssertionFailedError("Interrupted while waiting for output", e);
+                    }
+                }
+                return true;
+            }
+        }
+    }
+
+    private static long bufferSizeProperty() {
+        String value = System.getProperty(BUFFER_SIZE_PROP, System.getenv(BUFFER_SIZE_PROP));
+        if (value != null && !value.isEmpty()) {
+            try {
+                return Long.parseLong(value.trim()) * 1024;
+            } catch (NumberFormatException e) {
+                LOG.warn("Ignoring invalid value for " + BUFFER_SIZE_PROP + ": " + value);
+            }
+        }
+        return DEFAULT_BUFFER_SIZE_KB * 1024L;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "LogBuffer[" + (nextLine - firstLine) + " lines]";
+    }
+}
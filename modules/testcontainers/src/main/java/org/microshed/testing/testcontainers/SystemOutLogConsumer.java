@@ -27,6 +27,7 @@ import org.testcontainers.containers.output.OutputFrame;
  * Can be supplied to {@link ApplicationContainer#withLogConsumer(Consumer)}, or any other
  * {@link GenericContainer} to pipe all container output to System.out
  *
+ * @see FileLogConsumer FileLogConsumer, which writes output asynchronously and is better suited for containers that log a lot
  * @author aguibert
  */
 public class SystemOutLogConsumer implements Consumer<OutputFrame> {
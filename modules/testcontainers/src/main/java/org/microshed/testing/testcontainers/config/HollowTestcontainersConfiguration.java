@@ -18,29 +18,38 @@
  */
 package org.microshed.testing.testcontainers.config;
 
-import java.io.IOException;
 import java.lang.reflect.Method;
-import java.net.DatagramSocket;
 import java.net.MalformedURLException;
-import java.net.ServerSocket;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.WeakHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.junit.jupiter.api.extension.ExtensionConfigurationException;
 import org.microshed.testing.ApplicationEnvironment;
 import org.microshed.testing.ManuallyStartedConfiguration;
 import org.microshed.testing.internal.InternalLogger;
 import org.microshed.testing.testcontainers.ApplicationContainer;
+import org.microshed.testing.testcontainers.internal.ContainerGroup;
+import org.microshed.testing.testcontainers.internal.PortAllocator;
 import org.testcontainers.containers.GenericContainer;
 
 public class HollowTestcontainersConfiguration extends TestcontainersConfiguration {
 
     private static final InternalLogger LOG = InternalLogger.get(HollowTestcontainersConfiguration.class);
 
+    private static final Map<GenericContainer<?>, Map<Integer, Integer>> fixedPorts = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private static final Pattern PORT_NUMBER = Pattern.compile("\\s*(\\d{1,5})\\s*");
+
     public static boolean available() {
         String host = resolveProperty(ManuallyStartedConfiguration.MICROSHED_HOSTNAME);
         String httpPort = resolveProperty(ManuallyStartedConfiguration.MICROSHED_HTTP_PORT);
@@ -63,6 +72,12 @@ public class HollowTestcontainersConfiguration extends TestcontainersConfigurati
         return ApplicationEnvironment.DEFAULT_PRIORITY - 20;
     }
 
+    @Override
+    public void prestart(Class<?> testClass) {
+        // All test classes share the one running application, and starting the application container of a class
+        // applies its configuration to that application, so this must wait until the class itself runs
+    }
+
     @Override
     void configureContainerNetworks(Set<GenericContainer<?>> containers, Class<?> clazz) {
         // Heuristic optimization: If only 2 containers are present (1 ApplicationContainer
@@ -80,42 +95,85 @@ public class HollowTestcontainersConfiguration extends TestcontainersConfigurati
     }
 
     @Override
-    public void preConfigure(Class<?> testClass) {
-        super.preConfigure(testClass);
-
-        // Translate any Docker network hosts that may have been configured in environment variables
-        Set<String> networkAliases = containers.allContainers.stream()
-                        .filter(c -> !(c instanceof ApplicationContainer))
-                        .flatMap(c -> c.getNetworkAliases().stream())
-                        .collect(Collectors.toSet());
-        sanitizeEnvVar(containers.app, networkAliases);
-
-        // Expose any external resources (such as DBs) on fixed exposed ports
+    void preConfigure(ContainerGroup containers) {
+        // Expose any external resources (such as DBs) on fixed exposed ports, remapping them if a port is already taken.
+        // This is done first, so that ServerAdapters can wire the application up with the allocated ports.
+        Map<GenericContainer<?>, Map<Integer, Integer>> portMappings = new HashMap<>();
         try {
             Method addFixedPort = GenericContainer.class.getDeclaredMethod("addFixedExposedPort", int.class, int.class);
             addFixedPort.setAccessible(true);
-            Map<Integer, String> fixedExposedPorts = new HashMap<>();
             for (GenericContainer<?> c : containers.allContainers) {
-                for (Integer p : c.getExposedPorts()) {
-                    if (fixedExposedPorts.containsKey(p) && !(c instanceof ApplicationContainer)) {
-                        throw new ExtensionConfigurationException("Cannot expose port " + p + " for " + c.getDockerImageName() +
-                                                                  " because another container (" + fixedExposedPorts.get(p) +
-                                                                  ") is already using it.");
-                    }
-                    if (c.isShouldBeReused() && !isPortAvailable(p)) {
-                        // Do not expose the fixed exposed port if a reusable container is already
-                        // running on this port
-                        LOG.debug("Not exposing fixed port " + p + " for container " + c.getDockerImageName());
-                        continue;
-                    }
-                    LOG.info("Exposing fixed port " + p + " for container " + c.getDockerImageName());
-                    fixedExposedPorts.put(p, c.getDockerImageName());
-                    addFixedPort.invoke(c, p, p);
+                Map<Integer, Integer> mapping = allocateFixedPorts(c);
+                portMappings.put(c, mapping);
+                for (Map.Entry<Integer, Integer> port : mapping.entrySet()) {
+                    LOG.info("Exposing fixed port " + port.getValue() + " --> " + port.getKey() + " for container " + c.getDockerImageName());
+                    addFixedPort.invoke(c, port.getValue(), port.getKey());
                 }
             }
         } catch (Exception e) {
             e.printStackTrace();
         }
+
+        super.preConfigure(containers);
+
+        // Translate any Docker network hosts that may have been configured in environment variables
+        Map<String, GenericContainer<?>> networkAliases = new HashMap<>();
+        for (GenericContainer<?> c : containers.allContainers) {
+            if (c instanceof ApplicationContainer)
+                continue;
+            for (String alias : c.getNetworkAliases())
+                networkAliases.put(alias, c);
+        }
+        if (containers.app != null)
+            sanitizeEnvVar(containers.app, networkAliases);
+    }
+
+    /**
+     * @param c A container of the test environment, other than the application
+     * @param containerPort A port exposed by the container
+     * @return The port on the local host that the container port can be reached on when running in hollow mode
+     * @throws ExtensionConfigurationException If the container port is not exposed on the local host
+     */
+    public static int getHostPort(GenericContainer<?> c, int containerPort) {
+        Map<Integer, Integer> mapping = fixedPorts.getOrDefault(c, Collections.emptyMap());
+        Integer hostPort = mapping.get(containerPort);
+        if (hostPort != null)
+            return hostPort;
+        // A reusable container that was already running keeps the port it was started with
+        if (c.isShouldBeReused() && c.getExposedPorts().contains(containerPort))
+            return containerPort;
+        throw new ExtensionConfigurationException("Port " + containerPort + " of container " + c.getDockerImageName() +
+                                                  " is not exposed on the local host, so it cannot be reached by an application running in hollow mode. " +
+                                                  "Add it to the exposed ports of the container.");
+    }
+
+    /**
+     * @return A map of container port to the fixed host port that it should be exposed on
+     */
+    private static Map<Integer, Integer> allocateFixedPorts(GenericContainer<?> c) {
+        // Containers shared across test classes keep the ports they were given the first time
+        Map<Integer, Integer> existing = fixedPorts.get(c);
+        if (existing != null)
+            return existing;
+
+        Map<Integer, Integer> mapping = new LinkedHashMap<>();
+        List<Integer> toReserve = new ArrayList<>();
+        Map<Integer, Boolean> available = c.isShouldBeReused() ? PortAllocator.probe(c.getExposedPorts()) : Collections.emptyMap();
+        for (Integer p : c.getExposedPorts()) {
+            if (c instanceof ApplicationContainer) {
+                // The application is already running on its own ports
+                mapping.put(p, p);
+            } else if (c.isShouldBeReused() && !available.get(p)) {
+                // Do not expose the fixed exposed port if a reusable container is already
+                // running on this port
+                LOG.debug("Not exposing fixed port " + p + " for container " + c.getDockerImageName());
+            } else {
+                toReserve.add(p);
+            }
+        }
+        mapping.putAll(PortAllocator.instance().reserve(toReserve));
+        fixedPorts.put(c, mapping);
+        return mapping;
     }
 
     /**
@@ -123,9 +181,17 @@ public class HollowTestcontainersConfiguration extends TestcontainersConfigurati
      * FOO_HOSTNAME=http://foo:8080
      * to accomodate for the fixed exposed port such as:
      * FOO_HOSTNAME=http://localhost:8080
+     * If the port was remapped to a different host port, the port is translated as well. Ports that are
+     * configured separately, such as FOO_PORT=8080 next to FOO_HOSTNAME=foo, are translated as well.
      */
-    private void sanitizeEnvVar(ApplicationContainer mpApp, Set<String> networkAliases) {
-        mpApp.getEnvMap().forEach((k, v) -> {
+    private void sanitizeEnvVar(ApplicationContainer mpApp, Map<String, GenericContainer<?>> networkAliases) {
+        // The prefixes of variables such as FOO_PORT that hold a port of a container, by alias
+        Map<String, String> portVarPrefixes = new HashMap<>();
+        for (String alias : networkAliases.keySet())
+            portVarPrefixes.put(toEnvVarName(alias), alias);
+
+        Map<String, String> env = new LinkedHashMap<>(mpApp.getEnvMap());
+        env.forEach((k, v) -> {
             URL url = null;
             try {
                 url = new URL(v);
@@ -136,40 +202,42 @@ public class HollowTestcontainersConfiguration extends TestcontainersConfigurati
                     return;
                 }
             }
-            for (String networkAlias : networkAliases) {
-                if (url.getHost().equals(networkAlias)) {
-                    String newValue = v.replaceFirst(networkAlias, "localhost");
-                    LOG.info("Translating env var key=" + k + " from " + v + " to " + newValue);
-                    mpApp.withEnv(k, newValue);
-                }
+            GenericContainer<?> c = networkAliases.get(url.getHost());
+            if (c == null)
+                return;
+            int sep = k.lastIndexOf('_');
+            if (sep > 0)
+                portVarPrefixes.put(k.substring(0, sep).toUpperCase(), url.getHost());
+            String newValue = v.replaceFirst(Pattern.quote(url.getHost()), "localhost");
+            if (url.getPort() != -1) {
+                int hostPort = getHostPort(c, url.getPort());
+                if (hostPort != url.getPort())
+                    newValue = newValue.replaceFirst("localhost:" + url.getPort(), "localhost:" + hostPort);
             }
+            LOG.info("Translating env var key=" + k + " from " + v + " to " + newValue);
+            mpApp.withEnv(k, newValue);
         });
-    }
-
-    private static boolean isPortAvailable(int port) {
-        ServerSocket ss = null;
-        DatagramSocket ds = null;
-        try {
-            ss = new ServerSocket(port);
-            ss.setReuseAddress(true);
-            ds = new DatagramSocket(port);
-            ds.setReuseAddress(true);
-            return true;
-        } catch (IOException e) {
-        } finally {
-            if (ds != null) {
-                ds.close();
-            }
 
-            if (ss != null) {
-                try {
-                    ss.close();
-                } catch (IOException e) {
-                    /* should not be thrown */
-                }
-            }
-        }
+        env.forEach((k, v) -> {
+            if (!k.toUpperCase().endsWith("_PORT"))
+                return;
+            String alias = portVarPrefixes.get(k.substring(0, k.length() - "_PORT".length()).toUpperCase());
+            if (alias == null)
+                return;
+            Matcher port = PORT_NUMBER.matcher(v);
+            if (!port.matches())
+                throw new ExtensionConfigurationException("Unable to translate env var " + k + "=" + v + " for hollow mode, " +
+                                                          "because it does not hold a port number of the container with network alias " + alias);
+            int containerPort = Integer.parseInt(port.group(1));
+            int hostPort = getHostPort(networkAliases.get(alias), containerPort);
+            if (hostPort == containerPort)
+                return;
+            LOG.info("Translating env var key=" + k + " from " + v + " to " + hostPort);
+            mpApp.withEnv(k, String.valueOf(hostPort));
+        });
+    }
 
-        return false;
+    private static String toEnvVarName(String name) {
+        return name.toUpperCase().replaceAll("[^A-Z0-9]", "_");
     }
 }
@@ -19,31 +19,34 @@
 package org.microshed.testing.testcontainers.config;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.junit.jupiter.api.extension.ExtensionConfigurationException;
 import org.junit.platform.commons.support.AnnotationSupport;
 import org.microshed.testing.ApplicationEnvironment;
 import org.microshed.testing.SharedContainerConfiguration;
+import org.microshed.testing.internal.CurrentTestClass;
 import org.microshed.testing.internal.InternalLogger;
+import org.microshed.testing.internal.Timeline;
 import org.microshed.testing.jwt.JwtBuilder;
 import org.microshed.testing.jwt.JwtConfig;
 import org.microshed.testing.testcontainers.ApplicationContainer;
+import org.microshed.testing.testcontainers.LogBuffer;
 import org.microshed.testing.testcontainers.internal.ContainerGroup;
+import org.microshed.testing.testcontainers.internal.KafkaBrokers;
+import org.microshed.testing.testcontainers.internal.StartupScheduler;
 import org.testcontainers.containers.GenericContainer;
 import org.testcontainers.containers.Network;
-import org.testcontainers.lifecycle.Startables;
 
 public class TestcontainersConfiguration implements ApplicationEnvironment {
 
     private static final InternalLogger LOG = InternalLogger.get(TestcontainersConfiguration.class);
 
-    protected final Map<Class<?>, ContainerGroup> discoveredContainers = new HashMap<>();
-    protected ContainerGroup containers;
+    protected final Map<Class<?>, ContainerGroup> discoveredContainers = new ConcurrentHashMap<>();
 
     @Override
     public int getPriority() {
@@ -67,33 +70,86 @@ public class TestcontainersConfiguration implements ApplicationEnvironment {
         }
     }
 
+    /**
+     * @param testClass The test class to get the containers for
+     * @return The containers discovered for the test class
+     */
+    protected ContainerGroup getContainers(Class<?> testClass) {
+        return discoveredContainers.computeIfAbsent(testClass, clazz -> new ContainerGroup(clazz));
+    }
+
+    /**
+     * @return The containers for the test class whose code is running on this thread. If no test code is running
+     *         on this thread, the containers of the test class that started most recently.
+     */
+    protected ContainerGroup getContainers() {
+        Class<?> testClass = CurrentTestClass.get();
+        if (testClass != null)
+            return getContainers(testClass);
+        if (discoveredContainers.size() == 1)
+            return discoveredContainers.values().iterator().next();
+        throw new IllegalStateException("Unable to determine the test class to use the environment of, because " +
+                                        "no test class has started yet for " + getClass().getSimpleName());
+    }
+
     @Override
     public void preConfigure(Class<?> testClass) {
-        containers = discoveredContainers.computeIfAbsent(testClass, clazz -> new ContainerGroup(clazz));
+        preConfigure(getContainers(testClass));
+    }
+
+    void preConfigure(ContainerGroup containers) {
+        // Keep the recent output of every container, which must be set up before the containers start
+        containers.allContainers.forEach(LogBuffer::of);
 
         // Put all containers in the same network if no networks are explicitly defined
         if (containers.hasSharedConfig()) {
             configureContainerNetworks(containers.sharedContainers, containers.sharedConfigClass);
         }
-        configureContainerNetworks(containers.unsharedContainers, testClass);
+        configureContainerNetworks(containers.unsharedContainers, containers.testClass);
 
         // Give ServerAdapters a chance to do some auto-wiring between containers
         ApplicationContainer app = containers.app;
         if (app != null) {
-            app.getServerAdapter().configure(containers.allContainers);
-            if (isJwtNeeded() &&
+            try (Timeline.Span s = Timeline.begin("environment", "ServerAdapter.configure " + containers.testClass.getSimpleName())) {
+                app.getServerAdapter().configure(containers.allContainers);
+            }
+            if (isJwtNeeded(containers) &&
                 !app.isRunning() &&
                 !app.getEnvMap().containsKey(JwtBuilder.MP_JWT_PUBLIC_KEY) &&
                 !app.getEnvMap().containsKey(JwtBuilder.MP_JWT_ISSUER)) {
                 app.withEnv(JwtBuilder.MP_JWT_PUBLIC_KEY, JwtBuilder.getPublicKey());
                 app.withEnv(JwtBuilder.MP_JWT_ISSUER, JwtConfig.DEFAULT_ISSUER);
+                if (!"RS256".equals(JwtBuilder.getAlgorithm()))
+                    app.withEnv(JwtBuilder.MP_JWT_PUBLIC_KEY_ALGORITHM, JwtBuilder.getAlgorithm());
                 LOG.debug("Using default generated JWT settings for " + app);
             }
         }
     }
 
+    @Override
+    public void prestart(Class<?> testClass) {
+        ContainerGroup group = getContainers(testClass);
+        if (group.allContainers.isEmpty())
+            return;
+        preConfigure(group);
+        start(group);
+    }
+
     @Override
     public void start() {
+        start(getContainers());
+    }
+
+    @Override
+    public void start(Class<?> testClass) {
+        start(getContainers(testClass));
+    }
+
+    void start(ContainerGroup containers) {
+        containers.startOnce(() -> doStart(containers));
+    }
+
+    private void doStart(ContainerGroup containers) {
         List<GenericContainer<?>> containersToStart = new ArrayList<>();
 
         long start = System.currentTimeMillis();
@@ -101,7 +157,12 @@ public class TestcontainersConfiguration implements ApplicationEnvironment {
         if (containers.hasSharedConfig()) {
             try {
                 SharedContainerConfiguration config = containers.sharedConfigClass.newInstance();
-                config.startContainers();
+                // A manual start procedure may be invoked by a prestart and a test class at the same time
+                synchronized (containers.sharedConfigClass) {
+                    try (Timeline.Span s = Timeline.begin("container", "startContainers " + containers.sharedConfigClass.getSimpleName())) {
+                        config.startContainers();
+                    }
+                }
                 LOG.debug("Shared contianer config for " + containers.sharedConfigClass + " implemented a manual start procedure.");
             } catch (InstantiationException | IllegalAccessException e) {
                 throw new ExtensionConfigurationException("Unable to instantiate " + containers.sharedConfigClass, e);
@@ -115,31 +176,24 @@ public class TestcontainersConfiguration implements ApplicationEnvironment {
         containersToStart.removeIf(c -> c.isRunning());
 
         if (containersToStart.size() > 0) {
+            // Do not log image names here, since resolving them would build or pull images serially
             LOG.info("Starting " + containersToStart.size() + " container(s) in parallel for " + containers.testClass);
-            for (GenericContainer<?> c : containersToStart)
-                LOG.info("  " + c.getDockerImageName());
-            Startables.deepStart(containersToStart).join();
+            new StartupScheduler(containers).start(containersToStart);
         }
         LOG.info("All containers started in " + (System.currentTimeMillis() - start) + "ms");
 
-        configureKafka();
+        configureKafka(containers);
     }
 
-    void configureKafka() {
-        // If a KafkaContainer is defined, store the bootstrap location
-        Class<?> KafkaContainer = tryLoad("org.testcontainers.containers.KafkaContainer");
-        if (KafkaContainer == null)
-            return;
-
-        Set<GenericContainer<?>> kafkaContainers = containers.allContainers.stream()
-                        .filter(c -> KafkaContainer.isAssignableFrom(c.getClass()))
-                        .collect(Collectors.toSet());
+    void configureKafka(ContainerGroup containers) {
+        // If a KafkaContainer or embedded Kafka broker is defined, store the bootstrap location
+        Set<GenericContainer<?>> kafkaContainers = KafkaBrokers.find(containers.allContainers);
 
         if (kafkaContainers.size() == 1) {
             try {
                 GenericContainer<?> kafka = kafkaContainers.iterator().next();
-                String bootstrapServers = (String) KafkaContainer.getMethod("getBootstrapServers").invoke(kafka);
-                System.setProperty("org.microshed.kafka.bootstrap.servers", bootstrapServers);
+                String bootstrapServers = KafkaBrokers.getBootstrapServers(kafka);
+                containers.setKafkaBootstrapServers(bootstrapServers);
                 LOG.debug("Discovered KafkaContainer with bootstrap.servers=" + bootstrapServers);
             } catch (Exception e) {
                 LOG.warn("Unable to set kafka boostrap server", e);
@@ -151,8 +205,27 @@ public class TestcontainersConfiguration implements ApplicationEnvironment {
         }
     }
 
+    @Override
+    public Optional<String> getKafkaBootstrapServers() {
+        return getContainers().getKafkaBootstrapServers();
+    }
+
+    @Override
+    public Optional<String> getKafkaBootstrapServers(Class<?> testClass) {
+        return getContainers(testClass).getKafkaBootstrapServers();
+    }
+
     @Override
     public String getApplicationURL() {
+        return getApplicationURL(getContainers());
+    }
+
+    @Override
+    public String getApplicationURL(Class<?> testClass) {
+        return getApplicationURL(getContainers(testClass));
+    }
+
+    private String getApplicationURL(ContainerGroup containers) {
         ApplicationContainer mpApp = containers.app;
         if (mpApp == null) {
             String sharedConfigMsg = containers.hasSharedConfig() ? " or " + containers.sharedConfigClass : "";
@@ -167,18 +240,10 @@ public class TestcontainersConfiguration implements ApplicationEnvironment {
      *         A) Any SharedContainerConfiguration is used
      *         B) Test class contains REST clients with @JwtConfig
      */
-    private boolean isJwtNeeded() {
+    private boolean isJwtNeeded(ContainerGroup containers) {
         if (containers.hasSharedConfig())
             return true;
         return AnnotationSupport.findAnnotatedFields(containers.testClass, JwtConfig.class).size() > 0;
     }
 
-    private static Class<?> tryLoad(String clazz) {
-        try {
-            return Class.forName(clazz, false, TestcontainersConfiguration.class.getClassLoader());
-        } catch (ClassNotFoundException | LinkageError e) {
-            return null;
-        }
-    }
-
 }
@@ -0,0 +1,273 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.testcontainers.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.FileVisitOption;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.extension.ExtensionConfigurationException;
+import org.microshed.testing.internal.InternalLogger;
+
+/**
+ * Locates the application archive (<code>.war</code> or <code>.ear</code>) to deploy when no Dockerfile
+ * is present. Exploded archives, i.e. directories named like <code>myservice.war</code>, are supported as well.
+ * <p>
+ * The application file can be set explicitly using the <code>MICROSHED_TEST_APP_FILE</code> system property
+ * or environment variable. Otherwise, the conventional output locations <code>build/libs/</code> and
+ * <code>target/</code> are checked first, and only if they contain no application a shallow search of the
+ * <code>build/</code> and <code>target/</code> directories is performed. The result is cached under the
+ * build directory along with the modification times of the directories that were searched, so that later
+ * JVMs can skip the search entirely as long as none of those directories changed.
+ */
+public class AppFileLocator {
+
+    private static final InternalLogger LOG = InternalLogger.get(AppFileLocator.class);
+
+    public static final String APP_FILE_PROP = "MICROSHED_TEST_APP_FILE";
+
+    private static final String CACHE_FILE = "app-file.properties";
+
+    // Application archives are never nested deeply in build output, so don't search further than this
+    private static final int MAX_SEARCH_DEPTH = 4;
+
+    // Directories that hold large numbers of files but never contain the application archive
+    private static final Set<String> SKIPPED_DIRS = new HashSet<>(Arrays.asList("classes", "test-classes", "resources",
+                                                                                "generated", "generated-sources",
+                                                                                "generated-test-sources", "tmp", "kotlin",
+                                                                                "reports", "test-results", "surefire-reports",
+                                                                                "failsafe-reports", "maven-status", "jacoco",
+                                                                                "node_modules", "microshed-testing"));
+
+    private final Path baseDir;
+    private final String explicitAppFile;
+
+    AppFileLocator(Path baseDir, String explicitAppFile) {
+        this.baseDir = baseDir.toAbsolutePath();
+        this.explicitAppFile = explicitAppFile == null || explicitAppFile.isEmpty() ? null : explicitAppFile;
+    }
+
+    /**
+     * @return All application files that were found for the current project. Normally this is exactly one file.
+     */
+    public static Set<File> findAppFiles() {
+        return new AppFileLocator(Paths.get(""), System.getProperty(APP_FILE_PROP, System.getenv(APP_FILE_PROP))).find();
+    }
+
+    Set<File> find() {
+        if (explicitAppFile != null) {
+            Path appFile = baseDir.resolve(explicitAppFile);
+            if (!Files.exists(appFile))
+                throw new ExtensionConfigurationException("The application file set by " + APP_FILE_PROP + " does not exist: " + appFile);
+            return Collections.singleton(appFile.toFile());
+        }
+
+        Path cacheFile = getCacheFile();
+        Set<Path> cached = readCache(cacheFile);
+        if (cached != null) {
+            LOG.debug("Using cached application file location from " + cacheFile);
+            return toFiles(cached);
+        }
+
+        long start = System.currentTimeMillis();
+        Map<Path, Long> searchedDirs = new LinkedHashMap<>();
+        // Always track the conventional locations, so that the cache is invalidated when any of them appears
+        for (Path dir : Arrays.asList(baseDir.resolve("build"), baseDir.resolve("build").resolve("libs"), baseDir.resolve("target")))
+            searchedDirs.put(dir, lastModified(dir));
+        Set<Path> archives = new TreeSet<>();
+        Set<Path> exploded = new TreeSet<>();
+        scan(baseDir.resolve("build").resolve("libs"), archives, exploded);
+        scan(baseDir.resolve("target"), archives, exploded);
+        if (archives.isEmpty() && exploded.isEmpty()) {
+            search(baseDir.resolve("build"), archives, exploded, searchedDirs);
+            search(baseDir.resolve("target"), archives, exploded, searchedDirs);
+        }
+        // An exploded directory next to an archive is normally the staging directory of the archive itself
+        Set<Path> found = archives.isEmpty() ? exploded : archives;
+        LOG.debug("Searched " + searchedDirs.size() + " directories for application files in " + (System.currentTimeMillis() - start) + "ms");
+
+        if (cacheFile != null && !found.isEmpty())
+            writeCache(cacheFile, searchedDirs, found);
+        return toFiles(found);
+    }
+
+    private static void scan(Path dir, Set<Path> archives, Set<Path> exploded) {
+        if (!Files.isDirectory(dir))
+            return;
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir, AppFileLocator::isAppFileName)) {
+            for (Path entry : entries) {
+                if (Files.isRegularFile(entry))
+                    archives.add(entry);
+                else if (Files.isDirectory(entry))
+                    exploded.add(entry);
+            }
+        } catch (IOException e) {
+            LOG.debug("Unable to list " + dir, e);
+        }
+    }
+
+    private static void search(Path root, Set<Path> archives, Set<Path> exploded, Map<Path, Long> searchedDirs) {
+        if (!Files.isDirectory(root))
+            return;
+        try {
+            Files.walkFileTree(root, EnumSet.noneOf(FileVisitOption.class), MAX_SEARCH_DEPTH, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    if (dir.equals(root)) {
+                        searchedDirs.put(dir, attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS));
+                        return FileVisitResult.CONTINUE;
+                    }
+                    String name = dir.getFileName().toString();
+                    if (isAppFileName(dir)) {
+                        exploded.add(dir);
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    if (name.startsWith(".") || SKIPPED_DIRS.contains(name))
+                        return FileVisitResult.SKIP_SUBTREE;
+                    searchedDirs.put(dir, attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS));
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    // Directories at the maximum depth are visited as files
+                    if (isAppFileName(file)) {
+                        if (attrs.isRegularFile())
+                            archives.add(file);
+                        else if (attrs.isDirectory())
+                            exploded.add(file);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            LOG.debug("Unable to search " + root + " for application files", e);
+        }
+    }
+
+    private static boolean isAppFileName(Path path) {
+        String name = path.getFileName().toString().toLowerCase();
+        return name.endsWith(".war") || name.endsWith(".ear");
+    }
+
+    private Path getCacheFile() {
+        for (String outputDir : Arrays.asList("build", "target")) {
+            Path dir = baseDir.resolve(outputDir);
+            if (Files.isDirectory(dir)) {
+                try {
+                    // Create the directory before the search, so that creating it does not invalidate the cache
+                    return Files.createDirectories(dir.resolve("microshed-testing")).resolve(CACHE_FILE);
+                } catch (IOException e) {
+                    LOG.debug("Unable to create cache directory in " + dir, e);
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static Set<Path> readCache(Path cacheFile) {
+        if (cacheFile == null || !Files.isRegularFile(cacheFile))
+            return null;
+        Properties cache = new Properties();
+        try (InputStream in = Files.newInputStream(cacheFile)) {
+            cache.load(in);
+            for (int i = 0; cache.containsKey("dir." + i); i++) {
+                Path dir = Paths.get(cache.getProperty("dir." + i));
+                if (lastModified(dir) != Long.parseLong(cache.getProperty("mtime." + i))) {
+                    LOG.debug("Cached application file location is out of date because " + dir + " changed");
+                    return null;
+                }
+            }
+            Set<Path> found = new TreeSet<>();
+            for (int i = 0; cache.containsKey("app." + i); i++) {
+                Path app = Paths.get(cache.getProperty("app." + i));
+                if (!Files.exists(app))
+                    return null;
+                found.add(app);
+            }
+            return found.isEmpty() ? null : found;
+        } catch (IOException | RuntimeException e) {
+            LOG.debug("Unable to read cached application file location from " + cacheFile, e);
+            return null;
+        }
+    }
+
+    private static void writeCache(Path cacheFile, Map<Path, Long> searchedDirs, Set<Path> found) {
+        Properties cache = new Properties();
+        int i = 0;
+        for (Map.Entry<Path, Long> dir : searchedDirs.entrySet()) {
+            cache.setProperty("dir." + i, dir.getKey().toString());
+            cache.setProperty("mtime." + i++, String.valueOf(dir.getValue()));
+        }
+        i = 0;
+        for (Path app : found)
+            cache.setProperty("app." + i++, app.toString());
+        try {
+            // Write to a temp file first, in case another JVM is reading or writing the same cache
+            Path tmp = Files.createTempFile(cacheFile.getParent(), CACHE_FILE, ".tmp");
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                cache.store(out, "Application files found by MicroShed Testing");
+            }
+            Files.move(tmp, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOG.debug("Unable to cache application file location in " + cacheFile, e);
+        }
+    }
+
+    private static long lastModified(Path dir) {
+        try {
+            return Files.isDirectory(dir) ? Files.getLastModifiedTime(dir).to(TimeUnit.NANOSECONDS) : -1;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private static Set<File> toFiles(Set<Path> paths) {
+        return paths.stream().map(Path::toFile).collect(Collectors.toCollection(LinkedHashSet::new));
+    }
+
+}
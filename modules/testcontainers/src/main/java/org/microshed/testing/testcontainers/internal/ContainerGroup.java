@@ -6,7 +6,11 @@ package org.microshed.testing.testcontainers.internal;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -16,6 +20,7 @@ import org.microshed.testing.SharedContainerConfig;
 import org.microshed.testing.SharedContainerConfiguration;
 import org.microshed.testing.internal.InternalLogger;
 import org.microshed.testing.testcontainers.ApplicationContainer;
+import org.microshed.testing.testcontainers.DependsOn;
 import org.testcontainers.containers.GenericContainer;
 import org.testcontainers.junit.jupiter.Container;
 
@@ -29,15 +34,25 @@ public class ContainerGroup {
     public final Set<GenericContainer<?>> sharedContainers;
     public final Set<GenericContainer<?>> allContainers;
     public final ApplicationContainer app;
+    /**
+     * Dependencies between containers declared with {@link DependsOn}
+     */
+    public final Map<GenericContainer<?>, Set<GenericContainer<?>>> declaredDependencies;
+
+    private volatile boolean started;
+    private volatile String kafkaBootstrapServers;
 
     public ContainerGroup(Class<?> testClass) {
         this.testClass = testClass;
         sharedConfigClass = testClass.isAnnotationPresent(SharedContainerConfig.class) ? //
                         testClass.getAnnotation(SharedContainerConfig.class).value() : null;
-        unsharedContainers = Collections.unmodifiableSet(discoverContainers(testClass));
-        sharedContainers = hasSharedConfig() ? //
-                        Collections.unmodifiableSet(discoverContainers(sharedConfigClass)) : //
-                        Collections.emptySet();
+        Map<Field, GenericContainer<?>> unsharedFields = discoverContainers(testClass);
+        Map<Field, GenericContainer<?>> sharedFields = hasSharedConfig() ? //
+                        discoverContainers(sharedConfigClass) : //
+                        Collections.emptyMap();
+        unsharedContainers = Collections.unmodifiableSet(new HashSet<>(unsharedFields.values()));
+        sharedContainers = Collections.unmodifiableSet(new HashSet<>(sharedFields.values()));
+        declaredDependencies = Collections.unmodifiableMap(resolveDeclaredDependencies(unsharedFields, sharedFields));
         Set<GenericContainer<?>> all = new HashSet<>(unsharedContainers);
         all.addAll(sharedContainers);
         allContainers = Collections.unmodifiableSet(all);
@@ -65,8 +80,32 @@ public class ContainerGroup {
         return sharedConfigClass != null;
     }
 
-    private Set<GenericContainer<?>> discoverContainers(Class<?> clazz) {
-        Set<GenericContainer<?>> discoveredContainers = new HashSet<>();
+    /**
+     * Runs the supplied start procedure for this group once. If another thread is already starting
+     * this group, waits for it to finish instead. If the start procedure fails, the next caller will
+     * attempt it again.
+     */
+    public void startOnce(Runnable startProcedure) {
+        if (started)
+            return;
+        synchronized (this) {
+            if (started)
+                return;
+            startProcedure.run();
+            started = true;
+        }
+    }
+
+    public Optional<String> getKafkaBootstrapServers() {
+        return Optional.ofNullable(kafkaBootstrapServers);
+    }
+
+    public void setKafkaBootstrapServers(String kafkaBootstrapServers) {
+        this.kafkaBootstrapServers = kafkaBootstrapServers;
+    }
+
+    private Map<Field, GenericContainer<?>> discoverContainers(Class<?> clazz) {
+        Map<Field, GenericContainer<?>> discoveredContainers = new LinkedHashMap<>();
         for (Field containerField : AnnotationSupport.findAnnotatedFields(clazz, Container.class)) {
             if (!Modifier.isPublic(containerField.getModifiers()))
                 throw new ExtensionConfigurationException("@Container annotated fields must be public visibility");
@@ -77,7 +116,7 @@ public class ContainerGroup {
                 throw new ExtensionConfigurationException("@Container annotated fields must be a subclass of " + GenericContainer.class);
             try {
                 GenericContainer<?> startableContainer = (GenericContainer<?>) containerField.get(null);
-                discoveredContainers.add(startableContainer);
+                discoveredContainers.put(containerField, startableContainer);
             } catch (IllegalArgumentException | IllegalAccessException e) {
                 LOG.warn("Unable to access field " + containerField, e);
             }
@@ -85,4 +124,42 @@ public class ContainerGroup {
         return discoveredContainers;
     }
 
+    private Map<GenericContainer<?>, Set<GenericContainer<?>>> resolveDeclaredDependencies(Map<Field, GenericContainer<?>> unsharedFields,
+                                                                                         Map<Field, GenericContainer<?>> sharedFields) {
+        Map<GenericContainer<?>, Set<GenericContainer<?>>> dependencies = new HashMap<>();
+        Map<Field, GenericContainer<?>> allFields = new LinkedHashMap<>(sharedFields);
+        allFields.putAll(unsharedFields);
+        for (Map.Entry<Field, GenericContainer<?>> entry : allFields.entrySet()) {
+            DependsOn dependsOn = entry.getKey().getAnnotation(DependsOn.class);
+            if (dependsOn == null)
+                continue;
+            Set<GenericContainer<?>> deps = new HashSet<>();
+            for (String name : dependsOn.value()) {
+                // Prefer a field declared on the same class, then fall back to the other class
+                Map<Field, GenericContainer<?>> primary = sharedFields.containsKey(entry.getKey()) ? sharedFields : unsharedFields;
+                Map<Field, GenericContainer<?>> secondary = primary == sharedFields ? unsharedFields : sharedFields;
+                GenericContainer<?> dep = findByName(primary, name);
+                if (dep == null)
+                    dep = findByName(secondary, name);
+                if (dep == null)
+                    throw new ExtensionConfigurationException("The @DependsOn annotation on " + entry.getKey() + " references a @Container field '" +
+                                                              name + "' that was not found on " + testClass +
+                                                              (hasSharedConfig() ? " or " + sharedConfigClass : ""));
+                if (dep == entry.getValue())
+                    throw new ExtensionConfigurationException("The @Container field " + entry.getKey() + " cannot depend on itself");
+                deps.add(dep);
+            }
+            dependencies.put(entry.getValue(), deps);
+        }
+        return dependencies;
+    }
+
+    private static GenericContainer<?> findByName(Map<Field, GenericContainer<?>> fields, String name) {
+        return fields.entrySet().stream()
+                        .filter(e -> e.getKey().getName().equals(name))
+                        .map(Map.Entry::getValue)
+                        .findFirst()
+                        .orElse(null);
+    }
+
 }
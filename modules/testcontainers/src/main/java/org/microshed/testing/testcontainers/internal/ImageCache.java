@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.testcontainers.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.microshed.testing.internal.InternalLogger;
+import org.testcontainers.DockerClientFactory;
+import org.testcontainers.images.builder.ImageFromDockerfile;
+import org.testcontainers.images.builder.Transferable;
+import org.testcontainers.utility.LazyFuture;
+import org.testcontainers.utility.MountableFile;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.exception.NotFoundException;
+import com.github.dockerjava.api.model.Image;
+
+/**
+ * Tags images built by a ServerAdapter with a digest of their build context so that
+ * unchanged applications can reuse a previously built local image instead of
+ * performing a full <code>docker build</code> in every JVM.
+ */
+public class ImageCache {
+
+    private static final InternalLogger LOG = InternalLogger.get(ImageCache.class);
+
+    /**
+     * The name of the system property or environment variable that can be set to <code>false</code>
+     * in order to disable the image cache
+     */
+    public static final String CACHE_ENABLED_PROP = "MICROSHED_TEST_IMAGE_CACHE";
+
+    /**
+     * The name of the system property or environment variable that defines how many cached
+     * images to retain per project. Defaults to 3.
+     */
+    public static final String CACHE_SIZE_PROP = "MICROSHED_TEST_IMAGE_CACHE_SIZE";
+
+    private static final String REPOSITORY_PREFIX = "testcontainers/mpapp-cache-";
+
+    private ImageCache() {
+        // static utility
+    }
+
+    public static boolean isEnabled() {
+        return !"false".equalsIgnoreCase(resolveProperty(CACHE_ENABLED_PROP, "true"));
+    }
+
+    /**
+     * @param image An image whose build context is fully described by its transferables
+     * @return A future that resolves to a digest-tagged image name. The image is only built
+     *         if no local image with the same digest already exists.
+     */
+    public static Future<String> cached(ImageFromDockerfile image) {
+        String repository = REPOSITORY_PREFIX + projectId();
+        String tag = repository + ':' + digest(image);
+        return new CachedImage(repository, tag, image);
+    }
+
+    /**
+     * Computes a digest of the image build context, which includes the Dockerfile,
+     * any files or directories added to the context, and any build args.
+     */
+    static String digest(ImageFromDockerfile image) {
+        MessageDigest md = newDigest();
+        // Sort entries so the digest is independent of the order files were added in
+        Map<String, Transferable> transferables = new TreeMap<>(image.getTransferables());
+        for (Map.Entry<String, Transferable> entry : transferables.entrySet()) {
+            update(md, entry.getKey());
+            Transferable t = entry.getValue();
+            if (t instanceof MountableFile) {
+                hashPath(md, Paths.get(((MountableFile) t).getResolvedPath()));
+            } else {
+                update(md, String.valueOf(t.getDescription()));
+                md.update(t.getBytes());
+            }
+        }
+        new TreeMap<>(image.getBuildArgs()).forEach((k, v) -> update(md, k + '=' + v));
+        image.getDockerFilePath().ifPresent(p -> update(md, p));
+        return toHex(md.digest()).substring(0, 32);
+    }
+
+    private static void hashPath(MessageDigest md, Path root) {
+        if (!Files.exists(root))
+            return;
+        try (Stream<Path> walk = Files.walk(root)) {
+            List<Path> files = walk.filter(Files::isRegularFile)
+                            .sorted()
+                            .collect(Collectors.toList());
+            byte[] buf = new byte[8192];
+            for (Path file : files) {
+                update(md, root.relativize(file).toString().replace('\\', '/'));
+                try (InputStream in = Files.newInputStream(file)) {
+                    int read;
+                    while ((read = in.read(buf)) != -1)
+                        md.update(buf, 0, read);
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to compute image digest for " + root, e);
+        }
+    }
+
+    private static String projectId() {
+        MessageDigest md = newDigest();
+        update(md, Paths.get(".").toAbsolutePath().normalize().toString());
+        return toHex(md.digest()).substring(0, 12);
+    }
+
+    private static void update(MessageDigest md, String s) {
+        md.update(s.getBytes(StandardCharsets.UTF_8));
+        md.update((byte) 0);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes)
+            sb.append(String.format("%02x", b));
+        return sb.toString();
+    }
+
+    private static String resolveProperty(String key, String defaultValue) {
+        String value = System.getProperty(key, System.getenv(key));
+        return value == null || value.isEmpty() ? defaultValue : value;
+    }
+
+    private static class CachedImage extends LazyFuture<String> {
+
+        private final String repository;
+        private final String tag;
+        private final ImageFromDockerfile source;
+
+        CachedImage(String repository, String tag, ImageFromDockerfile source) {
+            this.repository = repository;
+            this.tag = tag;
+            this.source = source;
+        }
+
+        @Override
+        protected String resolve() {
+            DockerClient client = DockerClientFactory.instance().client();
+            try {
+                client.inspectImageCmd(tag).exec();
+                LOG.info("Reusing cached application image " + tag);
+                return tag;
+            } catch (NotFoundException notCached) {
+                LOG.debug("No cached image found for " + tag);
+            }
+
+            // Copy the build context into an image with the digest tag that is not removed on JVM exit
+            ImageFromDockerfile image = new ImageFromDockerfile(tag, false);
+            source.getTransferables().forEach(image::withFileFromTransferable);
+            image.withBuildArgs(source.getBuildArgs());
+            source.getDockerFilePath().ifPresent(image::withDockerfilePath);
+            long start = System.currentTimeMillis();
+            String built = image.get();
+            LOG.info("Built application image " + built + " in " + (System.currentTimeMillis() - start) + "ms");
+
+            removeStaleImages(client);
+            return built;
+        }
+
+        private void removeStaleImages(DockerClient client) {
+            int retain = Integer.parseInt(resolveProperty(CACHE_SIZE_PROP, "3"));
+            try {
+                List<Image> stale = client.listImagesCmd()
+                                .withImageNameFilter(repository)
+                                .exec()
+                                .stream()
+                                .filter(img -> img.getRepoTags() == null || !Stream.of(img.getRepoTags()).anyMatch(tag::equals))
+                                .sorted((i1, i2) -> Long.compare(i2.getCreated(), i1.getCreated()))
+                                .skip(Math.max(0, retain - 1))
+                                .collect(Collectors.toList());
+                for (Image img : stale) {
+                    LOG.debug("Removing stale cached image " + img.getId());
+                    try {
+                        client.removeImageCmd(img.getId()).exec();
+                    } catch (Exception e) {
+                        // Image may still be in use by another JVM
+                        LOG.debug("Unable to remove stale cached image " + img.getId() + ": " + e.getMessage());
+                    }
+                }
+            } catch (Exception e) {
+                LOG.debug("Unable to clean up stale cached images for " + repository, e);
+            }
+        }
+    }
+
+}
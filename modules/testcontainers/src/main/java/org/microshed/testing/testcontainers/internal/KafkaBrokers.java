@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.testcontainers.internal;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.testcontainers.containers.GenericContainer;
+
+/**
+ * Discovers Kafka brokers among the containers of a test environment. A broker is either a
+ * <code>KafkaContainer</code> from the Testcontainers Kafka module, or an <code>EmbeddedKafkaContainer</code>
+ * from the <code>microshed-testing-kafka</code> module, which runs in the test JVM. Both are accessed reflectively,
+ * since neither module is required.
+ */
+public final class KafkaBrokers {
+
+    private static final String KAFKA_CONTAINER = "org.testcontainers.containers.KafkaContainer";
+    private static final String EMBEDDED_KAFKA_CONTAINER = "org.microshed.testing.kafka.embedded.EmbeddedKafkaContainer";
+
+    private KafkaBrokers() {
+        // static utility
+    }
+
+    /**
+     * @return The containers that are Kafka brokers
+     */
+    public static Set<GenericContainer<?>> find(Collection<GenericContainer<?>> containers) {
+        Class<?> KafkaContainer = tryLoad(KAFKA_CONTAINER);
+        Class<?> EmbeddedKafkaContainer = tryLoad(EMBEDDED_KAFKA_CONTAINER);
+        return containers.stream()
+                        .filter(c -> (KafkaContainer != null && KafkaContainer.isAssignableFrom(c.getClass())) ||
+                                     (EmbeddedKafkaContainer != null && EmbeddedKafkaContainer.isAssignableFrom(c.getClass())))
+                        .collect(Collectors.toSet());
+    }
+
+    /**
+     * @return True if the broker runs in the test JVM rather than in a Docker container
+     */
+    public static boolean isEmbedded(GenericContainer<?> broker) {
+        Class<?> EmbeddedKafkaContainer = tryLoad(EMBEDDED_KAFKA_CONTAINER);
+        return EmbeddedKafkaContainer != null && EmbeddedKafkaContainer.isAssignableFrom(broker.getClass());
+    }
+
+    /**
+     * @return The bootstrap servers for clients that run on the local host
+     */
+    public static String getBootstrapServers(GenericContainer<?> broker) throws ReflectiveOperationException {
+        return (String) broker.getClass().getMethod("getBootstrapServers").invoke(broker);
+    }
+
+    /**
+     * @return The bootstrap servers of an embedded broker for clients that run in a Docker container
+     */
+    public static String getContainerBootstrapServers(GenericContainer<?> broker) throws ReflectiveOperationException {
+        return (String) broker.getClass().getMethod("getContainerBootstrapServers").invoke(broker);
+    }
+
+    private static Class<?> tryLoad(String clazz) {
+        try {
+            return Class.forName(clazz, false, KafkaBrokers.class.getClassLoader());
+        } catch (ClassNotFoundException | LinkageError e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.testcontainers.internal;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import org.microshed.testing.internal.InternalLogger;
+import org.microshed.testing.internal.ProcessId;
+
+/**
+ * Writes container output to log files on a single background thread, so that the threads that receive
+ * container output never block on file or console I/O. Output of all containers is handed over through
+ * one lock-free queue, and each time the writer wakes up it drains the whole queue, so that output that
+ * arrives in bursts is written with one write per file and one write to <code>System.out</code>.
+ */
+public class LogWriter {
+
+    private static final InternalLogger LOG = InternalLogger.get(LogWriter.class);
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+    private static final Duration SHUTDOWN_FLUSH_TIMEOUT = Duration.ofSeconds(5);
+
+    private static final ConcurrentLinkedQueue<Entry> queue = new ConcurrentLinkedQueue<>();
+    private static final AtomicBoolean parked = new AtomicBoolean();
+    private static final Set<Path> files = ConcurrentHashMap.newKeySet();
+    private static volatile Thread thread;
+
+    private LogWriter() {
+        // static utility
+    }
+
+    /**
+     * @param dir The directory to create the log file in
+     * @param name The name of the log file, without extension. The process id is appended to it, so that test JVMs
+     *            running in parallel do not overwrite each other's files. If the name is already used by another sink
+     *            in this JVM a number is appended as well.
+     * @param maxFileSize The size in bytes at which the log file is rotated
+     * @param maxFiles The number of rotated files to keep
+     * @param consolePrefix The prefix of output that is copied to the console
+     */
+    public static Sink newSink(Path dir, String name, long maxFileSize, int maxFiles, String consolePrefix) {
+        Objects.requireNonNull(dir, "Supplied 'dir' must not be null");
+        Objects.requireNonNull(name, "Supplied 'name' must not be null");
+        String safeName = name.replaceAll("[^A-Za-z0-9._-]", "_") + '-' + ProcessId.get();
+        Path file = dir.resolve(safeName + ".log").toAbsolutePath();
+        for (int i = 2; !files.add(file); i++)
+            file = dir.resolve(safeName + '-' + i + ".log").toAbsolutePath();
+        return new Sink(file, maxFileSize, maxFiles, consolePrefix);
+    }
+
+    private static void submit(Entry entry) {
+        queue.offer(entry);
+        Thread writer = thread;
+        if (writer == null)
+            writer = start();
+        if (parked.get() && parked.compareAndSet(true, false))
+            LockSupport.unpark(writer);
+    }
+
+    private static synchronized Thread start() {
+        if (thread == null) {
+            Thread writer = new Thread(LogWriter::run, "microshed-log-writer");
+            writer.setDaemon(true);
+            writer.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> flush(SHUTDOWN_FLUSH_TIMEOUT), "microshed-log-flush"));
+            thread = writer;
+        }
+        return thread;
+    }
+
+    /**
+     * Waits until all output that was submitted before this call is written
+     *
+     * @return false if the timeout elapsed before the output was written
+     */
+    public static boolean flush(Duration timeout) {
+        if (thread == null)
+            return true;
+        CountDownLatch written = new CountDownLatch(1);
+        submit(new Entry(null, null, false, false, written::countDown));
+        try {
+            return written.await(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static void run() {
+        ByteArrayOutputStream console = new ByteArrayOutputStream(8192);
+        List<Sink> dirty = new ArrayList<>();
+        while (true) {
+            Entry entry;
+            while ((entry = queue.poll()) != null) {
+                if (entry.action != null) {
+                    // Everything that was submitted before the action must be visible once it runs
+                    flush(dirty, console);
+                    entry.action.run();
+                    continue;
+                }
+                Sink sink = entry.sink;
+                if (entry.write && sink.write(entry.bytes) && !sink.dirty) {
+                    sink.dirty = true;
+                    dirty.add(sink);
+                }
+                if (entry.tee) {
+                    console.write(sink.consolePrefix, 0, sink.consolePrefix.length);
+                    console.write(entry.bytes, 0, entry.bytes.length);
+                }
+            }
+            flush(dirty, console);
+            parked.set(true);
+            if (queue.isEmpty())
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            parked.set(false);
+        }
+    }
+
+    private static void flush(List<Sink> dirty, ByteArrayOutputStream console) {
+        for (Sink sink : dirty) {
+            sink.flush();
+            sink.dirty = false;
+        }
+        dirty.clear();
+        if (console.size() > 0) {
+            // A single write per batch, so that the System.out lock is taken once instead of once per frame
+            try {
+                console.writeTo(System.out);
+            } catch (IOException e) {
+                // PrintStream does not throw
+            }
+            System.out.flush();
+            console.reset();
+        }
+    }
+
+    private static class Entry {
+        final Sink sink;
+        final byte[] bytes;
+        final boolean write;
+        final boolean tee;
+        final Runnable action;
+
+        Entry(Sink sink, byte[] bytes, boolean write, boolean tee, Runnable action) {
+            this.sink = sink;
+            this.bytes = bytes;
+            this.write = write;
+            this.tee = tee;
+            this.action = action;
+        }
+    }
+
+    /**
+     * A rotated log file. Output is submitted from any thread, but the file is only accessed by the writer thread.
+     */
+    public static class Sink {
+
+        private final Path file;
+        private final long maxFileSize;
+        private final int maxFiles;
+        private final byte[] consolePrefix;
+
+        private OutputStream out;
+        private long size;
+        private boolean failed;
+        private boolean closed;
+        private boolean dirty;
+
+        private Sink(Path file, long maxFileSize, int maxFiles, String consolePrefix) {
+            this.file = file;
+            this.maxFileSize = maxFileSize;
+            this.maxFiles = maxFiles;
+            this.consolePrefix = consolePrefix == null ? new byte[0] : consolePrefix.getBytes(StandardCharsets.UTF_8);
+        }
+
+        /**
+         * @return The current log file. Older output is in the rotated files next to it, such as <code>app-1234.1.log</code>.
+         */
+        public Path getFile() {
+            return file;
+        }
+
+        /**
+         * Writes the supplied bytes asynchronously. The array must not be modified afterwards.
+         *
+         * @param write Whether the bytes are written to the log file
+         * @param tee Whether the bytes are written to <code>System.out</code>
+         */
+        public void submit(byte[] bytes, boolean write, boolean tee) {
+            LogWriter.submit(new Entry(this, bytes, write, tee, null));
+        }
+
+        /**
+         * Closes the log file once all output that was submitted before is written
+         */
+        public void close() {
+            LogWriter.submit(new Entry(null, null, false, false, this::doClose));
+        }
+
+        private boolean write(byte[] bytes) {
+            if (failed || closed)
+                return false;
+            try {
+                if (out == null)
+                    open();
+                else if (size > 0 && size + bytes.length > maxFileSize)
+                    rotate();
+                out.write(bytes);
+                size += bytes.length;
+                return true;
+            } catch (IOException e) {
+                failed = true;
+                LOG.warn("Unable to write container output to " + file + ", further output is discarded: " + e);
+                return false;
+            }
+        }
+
+        private void open() throws IOException {
+            Files.createDirectories(file.getParent());
+            // Rotated files of an earlier run would be mixed up with the output of this run
+            for (int i = 1; i <= maxFiles; i++)
+                Files.deleteIfExists(rotated(i));
+            out = new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024);
+            size = 0;
+            LOG.info("Writing container output to " + file);
+        }
+
+        private void rotate() throws IOException {
+            out.close();
+            if (maxFiles > 0) {
+                for (int i = maxFiles - 1; i > 0; i--) {
+                    if (Files.exists(rotated(i)))
+                        Files.move(rotated(i), rotated(i + 1), StandardCopyOption.REPLACE_EXISTING);
+                }
+                Files.move(file, rotated(1), StandardCopyOption.REPLACE_EXISTING);
+            }
+            out = new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024);
+            size = 0;
+        }
+
+        private Path rotated(int i) {
+            String name = file.getFileName().toString();
+            return file.resolveSibling(name.substring(0, name.length() - ".log".length()) + '.' + i + ".log");
+        }
+
+        private void flush() {
+            if (out == null || failed)
+                return;
+            try {
+                out.flush();
+            } catch (IOException e) {
+                failed = true;
+                LOG.warn("Unable to write container output to " + file + ", further output is discarded: " + e);
+            }
+        }
+
+        private void doClose() {
+            closed = true;
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    LOG.debug("Unable to close " + file, e);
+                }
+                out = null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "LogWriter.Sink[" + file + "]";
+        }
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.testcontainers.internal;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.net.DatagramSocket;
+import java.net.ServerSocket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import org.microshed.testing.internal.InternalLogger;
+
+/**
+ * Allocates fixed host ports for containers in hollow mode. Ports are probed concurrently, and
+ * reservations are recorded in a file-locked registry that is shared by all JVMs on the host, so that
+ * parallel test JVMs do not race for the same ports. If a requested port is unavailable or already
+ * reserved, a different free port is allocated instead.
+ * <p>
+ * The registry file can be set using the <code>MICROSHED_TEST_PORT_REGISTRY</code> system property or
+ * environment variable. Reservations are released when the JVM exits.
+ */
+public class PortAllocator {
+
+    private static final InternalLogger LOG = InternalLogger.get(PortAllocator.class);
+
+    public static final String REGISTRY_PROP = "MICROSHED_TEST_PORT_REGISTRY";
+
+    // On Java 8 the liveness of other processes cannot be checked, so reservations expire instead
+    private static final long RESERVATION_TTL_MS = TimeUnit.HOURS.toMillis(6);
+
+    private static volatile PortAllocator instance;
+
+    private final Path registry;
+    private final String owner;
+    private final Predicate<String> isOwnerAlive;
+    private final Set<Integer> reservedByMe = new HashSet<>();
+
+    PortAllocator(Path registry, String owner, Predicate<String> isOwnerAlive) {
+        this.registry = registry;
+        this.owner = owner;
+        this.isOwnerAlive = isOwnerAlive;
+    }
+
+    public static PortAllocator instance() {
+        if (instance == null) {
+            synchronized (PortAllocator.class) {
+                if (instance == null) {
+                    String registryFile = System.getProperty(REGISTRY_PROP, System.getenv(REGISTRY_PROP));
+                    Path registry = registryFile != null ? Paths.get(registryFile) : //
+                                    Paths.get(System.getProperty("java.io.tmpdir"), "microshed-testing", "port-reservations");
+                    PortAllocator allocator = new PortAllocator(registry, currentPid(), PortAllocator::isProcessAlive);
+                    Runtime.getRuntime().addShutdownHook(new Thread(allocator::releaseAll, "microshed-port-release"));
+                    instance = allocator;
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Reserves host ports for the requested ports. Each requested port is granted as-is if it is free
+     * and not already reserved, otherwise a different free port is reserved in its place.
+     *
+     * @return A map of each requested port to the host port that was reserved for it
+     */
+    public synchronized Map<Integer, Integer> reserve(Collection<Integer> requestedPorts) {
+        Map<Integer, Integer> allocated = new LinkedHashMap<>();
+        if (requestedPorts.isEmpty())
+            return allocated;
+        try {
+            Files.createDirectories(registry.toAbsolutePath().getParent());
+            try (FileChannel channel = FileChannel.open(registry, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                            FileLock lock = channel.lock()) {
+                Map<Integer, Reservation> reservations = read(channel);
+                // Ports reserved by this JVM are taken as well, since they belong to containers that may not be started yet
+                Set<Integer> reserved = new HashSet<>(reservations.keySet());
+
+                Map<Integer, Boolean> available = probe(requestedPorts);
+                Set<Integer> granted = new HashSet<>();
+                for (Integer port : requestedPorts) {
+                    int hostPort = port;
+                    if (reserved.contains(port) || !available.get(port) || granted.contains(port)) {
+                        hostPort = findFreePort(reserved, granted);
+                        LOG.info("Port " + port + " is already in use or reserved. Using port " + hostPort + " instead.");
+                    }
+                    granted.add(hostPort);
+                    allocated.put(port, hostPort);
+                    reservations.put(hostPort, new Reservation(owner, System.currentTimeMillis()));
+                }
+                write(channel, reservations);
+                reservedByMe.addAll(granted);
+            }
+        } catch (IOException e) {
+            LOG.warn("Unable to use port reservation registry " + registry + ". Ports will not be reserved across JVMs.", e);
+            Map<Integer, Boolean> available = probe(requestedPorts);
+            for (Integer port : requestedPorts)
+                allocated.put(port, available.get(port) ? port : findFreePort(new HashSet<>(), new HashSet<>(allocated.values())));
+        }
+        return allocated;
+    }
+
+    /**
+     * Removes all reservations made by this JVM from the registry
+     */
+    public synchronized void releaseAll() {
+        if (reservedByMe.isEmpty())
+            return;
+        try (FileChannel channel = FileChannel.open(registry, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                        FileLock lock = channel.lock()) {
+            Map<Integer, Reservation> reservations = read(channel);
+            reservations.values().removeIf(r -> owner.equals(r.owner));
+            write(channel, reservations);
+            reservedByMe.clear();
+        } catch (IOException e) {
+            LOG.debug("Unable to release port reservations in " + registry, e);
+        }
+    }
+
+    /**
+     * Checks all ports concurrently
+     *
+     * @return A map of each port to whether it is currently free
+     */
+    public static Map<Integer, Boolean> probe(Collection<Integer> ports) {
+        Map<Integer, CompletableFuture<Boolean>> probes = new LinkedHashMap<>();
+        for (Integer port : ports)
+            probes.put(port, CompletableFuture.supplyAsync(() -> isPortAvailable(port)));
+        Map<Integer, Boolean> results = new LinkedHashMap<>();
+        probes.forEach((port, probe) -> results.put(port, probe.join()));
+        return results;
+    }
+
+    private static boolean isPortAvailable(int port) {
+        try (ServerSocket ss = new ServerSocket(port); DatagramSocket ds = new DatagramSocket(port)) {
+            ss.setReuseAddress(true);
+            ds.setReuseAddress(true);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static int findFreePort(Set<Integer> reserved, Set<Integer> granted) {
+        for (int attempt = 0; attempt < 20; attempt++) {
+            int port;
+            try (ServerSocket ss = new ServerSocket(0)) {
+                port = ss.getLocalPort();
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to find a free port", e);
+            }
+            if (!reserved.contains(port) && !granted.contains(port) && isPortAvailable(port))
+                return port;
+        }
+        throw new IllegalStateException("Unable to find a free port that is not already reserved");
+    }
+
+    private Map<Integer, Reservation> read(FileChannel channel) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate((int) channel.size());
+        channel.read(buf, 0);
+        buf.flip();
+        Map<Integer, Reservation> reservations = new LinkedHashMap<>();
+        long now = System.currentTimeMillis();
+        for (String line : StandardCharsets.UTF_8.decode(buf).toString().split("\n")) {
+            String[] parts = line.trim().split(" ");
+            if (parts.length != 3)
+                continue;
+            try {
+                Reservation r = new Reservation(parts[1], Long.parseLong(parts[2]));
+                // Drop reservations of JVMs that exited without releasing them
+                if (owner.equals(r.owner) || (isOwnerAlive.test(r.owner) && now - r.timestamp < RESERVATION_TTL_MS))
+                    reservations.put(Integer.parseInt(parts[0]), r);
+            } catch (NumberFormatException e) {
+                // ignore malformed entries
+            }
+        }
+        return reservations;
+    }
+
+    private static void write(FileChannel channel, Map<Integer, Reservation> reservations) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        reservations.forEach((port, r) -> sb.append(port).append(' ').append(r.owner).append(' ').append(r.timestamp).append('\n'));
+        channel.truncate(0);
+        channel.write(ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8)), 0);
+    }
+
+    private static String currentPid() {
+        // The runtime name is of the form pid@hostname
+        String name = ManagementFactory.getRuntimeMXBean().getName();
+        int at = name.indexOf('@');
+        return at > 0 ? name.substring(0, at) : name;
+    }
+
+    private static boolean isProcessAlive(String pid) {
+        try {
+            // Use ProcessHandle.of(pid).isPresent() when running on Java 9+
+            Class<?> ProcessHandle = Class.forName("java.lang.ProcessHandle");
+            Method of = ProcessHandle.getMethod("of", long.class);
+            return ((Optional<?>) of.invoke(null, Long.parseLong(pid))).isPresent();
+        } catch (Exception e) {
+            return true;
+        }
+    }
+
+    List<Integer> reservedPorts() throws IOException {
+        try (FileChannel channel = FileChannel.open(registry, StandardOpenOption.READ)) {
+            return new ArrayList<>(read(channel).keySet());
+        }
+    }
+
+    private static class Reservation {
+        final String owner;
+        final long timestamp;
+
+        Reservation(String owner, long timestamp) {
+            this.owner = owner;
+            this.timestamp = timestamp;
+        }
+    }
+}
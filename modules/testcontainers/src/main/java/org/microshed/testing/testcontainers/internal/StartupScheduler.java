@@ -0,0 +1,293 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.testcontainers.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.extension.ExtensionConfigurationException;
+import org.microshed.testing.internal.FlightEvent;
+import org.microshed.testing.internal.FlightEvents;
+import org.microshed.testing.internal.InternalLogger;
+import org.microshed.testing.internal.Timeline;
+import org.microshed.testing.testcontainers.ApplicationContainer;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.lifecycle.Startable;
+
+/**
+ * Starts a set of containers as a dependency graph. Each container is started as soon as all of
+ * its dependencies are ready, and all container images are resolved (built or pulled) up front
+ * so that image resolution overlaps with the startup of dependencies.
+ * <p>
+ * Dependencies are taken from:
+ * <ul>
+ * <li><code>GenericContainer.dependsOn()</code></li>
+ * <li>The {@link org.microshed.testing.testcontainers.DependsOn} annotation</li>
+ * <li>Network aliases of other containers referenced by {@link ApplicationContainer} env vars</li>
+ * </ul>
+ */
+public class StartupScheduler {
+
+    private static final InternalLogger LOG = InternalLogger.get(StartupScheduler.class);
+
+    // The authority after the '//' of a URL with any scheme prefix, such as jdbc:postgresql://db:5432/x
+    private static final Pattern URL_AUTHORITY = Pattern.compile("//([^/?#;\\s]+)");
+    // A host without a scheme, optionally followed by a port, such as db or db:5432
+    private static final Pattern BARE_HOST = Pattern.compile("([A-Za-z0-9][A-Za-z0-9._-]*)(?::\\d+)?");
+
+    private final ContainerGroup group;
+    private final Map<Startable, Node> nodes = new LinkedHashMap<>();
+
+    public StartupScheduler(ContainerGroup group) {
+        this.group = group;
+    }
+
+    /**
+     * Starts the supplied containers and any of their dependencies, blocking until all
+     * containers are started or any container fails to start.
+     */
+    public void start(Collection<? extends Startable> containersToStart) {
+        for (Startable s : containersToStart)
+            addNode(s, new LinkedHashSet<>());
+
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "microshed-startup-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        long start = System.currentTimeMillis();
+        try {
+            List<CompletableFuture<Void>> all = new ArrayList<>();
+            for (Node n : nodes.values())
+                all.add(schedule(n, executor, start));
+            CompletableFuture.allOf(all.toArray(new CompletableFuture[0])).join();
+        } finally {
+            executor.shutdownNow();
+        }
+        report(System.currentTimeMillis() - start);
+    }
+
+    private Node addNode(Startable s, Set<Startable> visiting) {
+        Node existing = nodes.get(s);
+        if (existing != null)
+            return existing;
+        if (!visiting.add(s))
+            throw new ExtensionConfigurationException("Found a cycle in the container dependencies of " + group.testClass + ": " +
+                                                      describe(visiting));
+        Node node = new Node(s);
+        for (Startable dep : dependenciesOf(s))
+            node.dependencies.add(addNode(dep, visiting));
+        visiting.remove(s);
+        nodes.put(s, node);
+        return node;
+    }
+
+    private Set<Startable> dependenciesOf(Startable s) {
+        Set<Startable> deps = new LinkedHashSet<>(s.getDependencies());
+        deps.addAll(group.declaredDependencies.getOrDefault(s, Collections.emptySet()));
+        if (s instanceof ApplicationContainer)
+            deps.addAll(referencedContainers((ApplicationContainer) s));
+        deps.remove(s);
+        return deps;
+    }
+
+    /**
+     * @return The containers whose network aliases are referenced as a host in the env vars of the app
+     */
+    Set<GenericContainer<?>> referencedContainers(ApplicationContainer app) {
+        Set<String> hosts = new HashSet<>();
+        for (String value : app.getEnvMap().values())
+            hosts.addAll(referencedHosts(value));
+        Set<GenericContainer<?>> referenced = new LinkedHashSet<>();
+        for (GenericContainer<?> c : group.allContainers) {
+            if (c != app && c.getNetworkAliases().stream().anyMatch(hosts::contains))
+                referenced.add(c);
+        }
+        return referenced;
+    }
+
+    /**
+     * @return The hosts that the supplied env var value may refer to, such as <code>db</code> for
+     *         <code>jdbc:mysql://db/test</code>, or <code>kafka1</code> and <code>kafka2</code> for <code>kafka1:9092,kafka2:9092</code>
+     */
+    static Set<String> referencedHosts(String value) {
+        Set<String> hosts = new HashSet<>();
+        Matcher url = URL_AUTHORITY.matcher(value);
+        boolean isUrl = false;
+        while (url.find()) {
+            isUrl = true;
+            // Skip any user info, and allow a list of hosts such as mongodb://m1:27017,m2:27017/db
+            String authority = url.group(1);
+            addHosts(authority.substring(authority.lastIndexOf('@') + 1), hosts);
+        }
+        if (!isUrl)
+            addHosts(value, hosts);
+        return hosts;
+    }
+
+    private static void addHosts(String hostList, Set<String> hosts) {
+        for (String part : hostList.split(",")) {
+            Matcher bare = BARE_HOST.matcher(part.trim());
+            if (bare.matches())
+                hosts.add(bare.group(1));
+        }
+    }
+
+    private CompletableFuture<Void> schedule(Node node, ExecutorService executor, long t0) {
+        if (node.ready != null)
+            return node.ready;
+        // Resolve the image right away, regardless of whether dependencies are ready yet
+        CompletableFuture<Void> image = CompletableFuture.runAsync(() -> node.resolveImage(t0), executor);
+        List<CompletableFuture<Void>> prereqs = new ArrayList<>();
+        prereqs.add(image);
+        for (Node dep : node.dependencies)
+            prereqs.add(schedule(dep, executor, t0));
+        node.ready = CompletableFuture.allOf(prereqs.toArray(new CompletableFuture[0]))
+                        .thenRunAsync(() -> node.start(t0), executor);
+        return node.ready;
+    }
+
+    private void report(long totalMs) {
+        if (nodes.isEmpty())
+            return;
+        Node last = nodes.values().stream()
+                        .max(Comparator.comparingLong(n -> n.endedAt))
+                        .get();
+        // Walk backwards from the last node to finish, following whichever prerequisite gated it
+        List<Node> criticalPath = new ArrayList<>();
+        for (Node n = last; n != null; n = n.gatingDependency())
+            criticalPath.add(0, n);
+
+        LOG.info("Container startup critical path (" + totalMs + "ms total):");
+        for (Node n : criticalPath)
+            LOG.info("  " + n);
+        if (nodes.size() > criticalPath.size()) {
+            LOG.info("Other containers:");
+            for (Node n : nodes.values())
+                if (!criticalPath.contains(n))
+                    LOG.info("  " + n);
+        }
+    }
+
+    private static String describe(Collection<Startable> startables) {
+        List<String> names = new ArrayList<>();
+        for (Startable s : startables) {
+            // Avoid getDockerImageName() here, since it would trigger an image build or pull
+            if (s instanceof GenericContainer && !((GenericContainer<?>) s).getNetworkAliases().isEmpty())
+                names.add(s.getClass().getSimpleName() + ((GenericContainer<?>) s).getNetworkAliases());
+            else
+                names.add(s.getClass().getSimpleName());
+        }
+        return String.join(" -> ", names);
+    }
+
+    private static String nameOf(Startable s) {
+        if (s instanceof ApplicationContainer)
+            return ((ApplicationContainer) s).toStringSimple();
+        if (s instanceof GenericContainer)
+            return ((GenericContainer<?>) s).getDockerImageName();
+        return s.toString();
+    }
+
+    private static class Node {
+        final Startable startable;
+        final Set<Node> dependencies = new LinkedHashSet<>();
+        CompletableFuture<Void> ready;
+
+        // All timestamps are relative to the start of the scheduler
+        volatile long imageStartedAt, imageEndedAt, startedAt, endedAt;
+        volatile boolean alreadyRunning;
+
+        Node(Startable startable) {
+            this.startable = startable;
+        }
+
+        void resolveImage(long t0) {
+            imageStartedAt = System.currentTimeMillis() - t0;
+            long start = Timeline.now();
+            if (startable instanceof GenericContainer) {
+                GenericContainer<?> c = (GenericContainer<?>) startable;
+                alreadyRunning = c.isRunning();
+                if (!alreadyRunning)
+                    c.getDockerImageName(); // triggers build or pull
+            }
+            imageEndedAt = System.currentTimeMillis() - t0;
+            if (!alreadyRunning)
+                Timeline.record("image", "resolve image " + nameOf(startable), start, Timeline.now());
+        }
+
+        void start(long t0) {
+            startedAt = System.currentTimeMillis() - t0;
+            long start = Timeline.now();
+            if (!alreadyRunning) {
+                // The same container may be started by an environment prestart and a test class at the same time
+                synchronized (startable) {
+                    if (startable instanceof GenericContainer && ((GenericContainer<?>) startable).isRunning()) {
+                        alreadyRunning = true;
+                    } else {
+                        try (FlightEvent event = FlightEvents.containerReady(nameOf(startable))) {
+                            startable.start();
+                        }
+                    }
+                }
+            }
+            endedAt = System.currentTimeMillis() - t0;
+            if (!alreadyRunning)
+                Timeline.record("container", "start " + nameOf(startable), start, Timeline.now());
+        }
+
+        /**
+         * @return The dependency that became ready last, if it finished after this node's image was resolved
+         */
+        Node gatingDependency() {
+            Node gate = null;
+            for (Node dep : dependencies)
+                if (dep.endedAt >= imageEndedAt && (gate == null || dep.endedAt > gate.endedAt))
+                    gate = dep;
+            return gate;
+        }
+
+        @Override
+        public String toString() {
+            String name = nameOf(startable);
+            if (alreadyRunning)
+                return name + " [already running]";
+            return name + " [image=" + (imageEndedAt - imageStartedAt) + "ms" +
+                   ", waitForDependencies=" + Math.max(0, startedAt - imageEndedAt) + "ms" +
+                   ", start=" + (endedAt - startedAt) + "ms" +
+                   ", readyAt=" + endedAt + "ms]";
+        }
+    }
+
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.testcontainers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.microshed.testing.internal.ProcessId;
+import org.microshed.testing.testcontainers.FileLogConsumer.Level;
+import org.testcontainers.containers.output.OutputFrame;
+import org.testcontainers.containers.output.OutputFrame.OutputType;
+
+public class FileLogConsumerTest {
+
+    private static final String PID = ProcessId.get();
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testDetectLevel() {
+        assertEquals(Level.INFO, FileLogConsumer.detectLevel(bytes("[10/1/20 12:00:00:000 UTC] 0000001 com.ibm.ws.kernel [INFO   ] started\n")));
+        assertEquals(Level.WARN, FileLogConsumer.detectLevel(bytes("[10/1/20 12:00:00:000 UTC] 0000001 com.ibm.ws.kernel [WARNING ] careful\n")));
+        assertEquals(Level.ERROR, FileLogConsumer.detectLevel(bytes("2020-10-01 12:00:00,000 ERROR [main] failed\n")));
+        assertEquals(Level.DEBUG, FileLogConsumer.detectLevel(bytes("12:00:00.000 [main] DEBUG org.example - details\n")));
+        assertNull(FileLogConsumer.detectLevel(bytes("\tat org.example.App.main(App.java:10)\n")));
+        // Markers must start a word
+        assertNull(FileLogConsumer.detectLevel(bytes("NOINFO here\n")));
+        // Only the first line is considered
+        assertNull(FileLogConsumer.detectLevel(bytes("first line\nERROR second line\n")));
+    }
+
+    @Test
+    public void testWritesFile() throws Exception {
+        FileLogConsumer consumer = new FileLogConsumer("write").withDirectory(tempDir).withConsoleTee(Level.OFF);
+        consumer.accept(frame("line 1\n"));
+        consumer.accept(frame("line 2\n"));
+        assertTrue(consumer.flush(Duration.ofSeconds(10)));
+        assertEquals(tempDir.resolve("write-" + PID + ".log").toAbsolutePath(), consumer.getFile());
+        assertEquals("line 1\nline 2\n", read(consumer.getFile()));
+        consumer.close();
+    }
+
+    @Test
+    public void testLevelFilter() throws Exception {
+        FileLogConsumer consumer = new FileLogConsumer("level").withDirectory(tempDir)
+                        .withLevel(Level.WARN)
+                        .withConsoleTee(Level.OFF);
+        consumer.accept(frame("[INFO   ] hello\n"));
+        consumer.accept(frame("[WARNING ] careful\n"));
+        consumer.accept(frame("\tat org.example.App.main(App.java:10)\n"));
+        consumer.accept(frame("[INFO   ] bye\n"));
+        assertTrue(consumer.flush(Duration.ofSeconds(10)));
+        assertEquals("[WARNING ] careful\n\tat org.example.App.main(App.java:10)\n", read(consumer.getFile()));
+        consumer.close();
+    }
+
+    @Test
+    public void testRateLimit() throws Exception {
+        FileLogConsumer consumer = new FileLogConsumer("rate").withDirectory(tempDir)
+                        .withConsoleTee(Level.OFF)
+                        .withRateLimit(2);
+        for (int i = 0; i < 10; i++)
+            consumer.accept(frame("line " + i + "\n"));
+        assertTrue(consumer.flush(Duration.ofSeconds(10)));
+        assertEquals("line 0\nline 1\n", read(consumer.getFile()));
+        consumer.close();
+    }
+
+    @Test
+    public void testRotation() throws Exception {
+        FileLogConsumer consumer = new FileLogConsumer("rotate").withDirectory(tempDir)
+                        .withConsoleTee(Level.OFF)
+                        .withRotation(10, 2);
+        for (int i = 0; i < 5; i++)
+            consumer.accept(frame("line " + i + "\n"));
+        assertTrue(consumer.flush(Duration.ofSeconds(10)));
+        assertEquals("line 4\n", read(consumer.getFile()));
+        assertEquals("line 3\n", read(tempDir.resolve("rotate-" + PID + ".1.log")));
+        assertEquals("line 2\n", read(tempDir.resolve("rotate-" + PID + ".2.log")));
+        assertTrue(Files.notExists(tempDir.resolve("rotate-" + PID + ".3.log")));
+        consumer.close();
+    }
+
+    @Test
+    public void testUniqueFileNames() {
+        FileLogConsumer first = new FileLogConsumer("same").withDirectory(tempDir);
+        FileLogConsumer second = new FileLogConsumer("same").withDirectory(tempDir);
+        assertEquals(tempDir.resolve("same-" + PID + ".log").toAbsolutePath(), first.getFile());
+        assertEquals(tempDir.resolve("same-" + PID + "-2.log").toAbsolutePath(), second.getFile());
+    }
+
+    private static OutputFrame frame(String line) {
+        return new OutputFrame(OutputType.STDOUT, bytes(line));
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String read(Path file) throws Exception {
+        List<String> lines = Files.readAllLines(file);
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines)
+            sb.append(line).append('\n');
+        return sb.toString();
+    }
+}
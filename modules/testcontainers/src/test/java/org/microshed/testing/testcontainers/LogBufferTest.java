@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.testcontainers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+import org.opentest4j.AssertionFailedError;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.containers.output.OutputFrame;
+import org.testcontainers.containers.output.OutputFrame.OutputType;
+
+public class LogBufferTest {
+
+    @Test
+    public void testLinesAcrossFrames() {
+        LogBuffer buffer = new LogBuffer();
+        buffer.accept(frame("hello wor"));
+        buffer.accept(frame("ld\r\nsecond\n\nthird"));
+        assertEquals(Arrays.asList("hello world", "second", ""), buffer.getLines());
+        buffer.accept(new OutputFrame(OutputType.END, null));
+        assertEquals(Arrays.asList("hello world", "second", "", "third"), buffer.getLines());
+    }
+
+    @Test
+    public void testAssertLogContains() {
+        LogBuffer buffer = new LogBuffer();
+        buffer.accept(frame("[AUDIT   ] CWWKF0011I: The defaultServer server is ready to run a smarter planet.\n"));
+        assertEquals("[AUDIT   ] CWWKF0011I: The defaultServer server is ready to run a smarter planet.",
+                     buffer.assertLogContains(Pattern.compile("CWWKF0011I")));
+        buffer.assertLogContains("smarter planet");
+        assertThrows(AssertionFailedError.class, () -> buffer.assertLogContains("CWWKZ0001I"));
+    }
+
+    @Test
+    public void testWaitForLogWakesOnArrival() {
+        LogBuffer buffer = new LogBuffer();
+        buffer.accept(frame("Order 1 was shipped\n"));
+        long mark = buffer.mark();
+        CompletableFuture.runAsync(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            buffer.accept(frame("Order 2 was shipped\n"));
+        });
+        assertEquals("Order 2 was shipped", buffer.waitForLog(Pattern.compile("Order \\d+ was shipped"), Duration.ofSeconds(30), mark));
+    }
+
+    @Test
+    public void testBufferOfContainer() {
+        GenericContainer<?> container = new GenericContainer<>("alpine:3.5");
+        LogBuffer buffer = LogBuffer.of(container);
+        assertSame(buffer, LogBuffer.of(container));
+        assertTrue(container.getLogConsumers().contains(buffer));
+
+        ApplicationContainer app = ApplicationContainerTest.dummyApp();
+        assertSame(app.getLogBuffer(), LogBuffer.of(app));
+    }
+
+    @Test
+    public void testWaitForLogTimeout() {
+        LogBuffer buffer = new LogBuffer();
+        buffer.accept(frame("nothing to see\n"));
+        assertThrows(AssertionFailedError.class, () -> buffer.waitForLog(Pattern.compile("never"), Duration.ofMillis(50)));
+    }
+
+    @Test
+    public void testBounded() {
+        // Keeps a single chunk
+        LogBuffer buffer = new LogBuffer(1);
+        StringBuilder output = new StringBuilder();
+        for (int i = 0; i < 20000; i++)
+            output.append("line ").append(i).append('\n');
+        buffer.accept(frame(output.toString()));
+        List<String> lines = buffer.getLines();
+        assertTrue(lines.size() < 20000, "Expected old lines to be discarded, but kept " + lines.size());
+        assertEquals("line 19999", lines.get(lines.size() - 1));
+        assertThrows(AssertionFailedError.class, () -> buffer.assertLogContains(Pattern.compile("^line 0$")));
+    }
+
+    @Test
+    public void testClear() {
+        LogBuffer buffer = new LogBuffer();
+        buffer.accept(frame("before\n"));
+        buffer.clear();
+        buffer.accept(frame("after\n"));
+        assertEquals(Arrays.asList("after"), buffer.getLines());
+    }
+
+    private static OutputFrame frame(String s) {
+        return new OutputFrame(OutputType.STDOUT, s.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.testcontainers.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Paths;
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+import org.microshed.testing.jupiter.MicroShedTest;
+import org.microshed.testing.testcontainers.ApplicationContainer;
+import org.testcontainers.containers.wait.strategy.WaitStrategy;
+import org.testcontainers.containers.wait.strategy.WaitStrategyTarget;
+import org.testcontainers.junit.jupiter.Container;
+
+/**
+ * Each test class applies its own configuration to the running application, which must not be
+ * replaced by the configuration of another class while its tests run
+ *
+ * @see HollowClassConfigBTest
+ */
+@MicroShedTest
+public class HollowClassConfigATest {
+
+    // This container never actually gets started, since we are running in hollow mode
+    @Container
+    public static ApplicationContainer app = new ApplicationContainer(Paths.get("src", "test", "resources", "Dockerfile"))
+                    .withEnv("TEST_CLASS", "A")
+                    .waitingFor(new WaitStrategy() {
+                        @Override
+                        public WaitStrategy withStartupTimeout(Duration startupTimeout) {
+                            return this;
+                        }
+
+                        @Override
+                        public void waitUntilReady(WaitStrategyTarget waitStrategyTarget) {
+                        }
+                    });
+
+    @Test
+    public void testOwnConfigApplied() {
+        assertEquals("A", TestServerAdapter.getConfigProperties().get("TEST_CLASS"), TestServerAdapter.getConfigProperties().toString());
+    }
+
+}
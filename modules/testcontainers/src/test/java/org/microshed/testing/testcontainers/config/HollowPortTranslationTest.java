@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.testcontainers.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtensionConfigurationException;
+import org.microshed.testing.testcontainers.ApplicationContainer;
+import org.microshed.testing.testcontainers.ApplicationContainerTest;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+
+public class HollowPortTranslationTest {
+
+    // Keep a port busy, so that the database port has to be remapped to a different host port
+    private static final ServerSocket BUSY = open();
+    private static final int DB_PORT = BUSY.getLocalPort();
+
+    public static class RemappedClass {
+        @Container
+        public static ApplicationContainer app = ApplicationContainerTest.dummyApp()
+                        .withEnv("DB_HOSTNAME", "db")
+                        .withEnv("DB_PORT", String.valueOf(DB_PORT))
+                        .withEnv("DB_URL", "db:" + DB_PORT)
+                        .withEnv("DB2_PORT", String.valueOf(DB_PORT))
+                        .withEnv("OTHER_PORT", String.valueOf(DB_PORT));
+
+        @Container
+        public static GenericContainer<?> db = new GenericContainer<>("alpine:3.5")
+                        .withExposedPorts(DB_PORT)
+                        .withNetworkAliases("db", "db2");
+    }
+
+    public static class NotAPortClass {
+        @Container
+        public static ApplicationContainer app = ApplicationContainerTest.dummyApp()
+                        .withEnv("CACHE_HOST", "cache")
+                        .withEnv("CACHE_PORT", "six-three-seven-nine");
+
+        @Container
+        public static GenericContainer<?> cache = new GenericContainer<>("alpine:3.5")
+                        .withExposedPorts(6379)
+                        .withNetworkAliases("cache");
+    }
+
+    public static class UnexposedPortClass {
+        @Container
+        public static ApplicationContainer app = ApplicationContainerTest.dummyApp()
+                        .withEnv("QUEUE_URL", "http://queue:5673/events");
+
+        @Container
+        public static GenericContainer<?> queue = new GenericContainer<>("alpine:3.5")
+                        .withExposedPorts(5672)
+                        .withNetworkAliases("queue");
+    }
+
+    @AfterAll
+    public static void release() throws IOException {
+        BUSY.close();
+    }
+
+    @Test
+    public void testRemappedPortVars() {
+        new HollowTestcontainersConfiguration().preConfigure(RemappedClass.class);
+
+        int hostPort = HollowTestcontainersConfiguration.getHostPort(RemappedClass.db, DB_PORT);
+        assertNotEquals(DB_PORT, hostPort);
+        Map<String, String> env = RemappedClass.app.getEnvMap();
+        assertEquals("localhost", env.get("DB_HOSTNAME"), env.toString());
+        assertEquals(String.valueOf(hostPort), env.get("DB_PORT"), env.toString());
+        assertEquals("localhost:" + hostPort, env.get("DB_URL"), env.toString());
+        // Named after a network alias of the container
+        assertEquals(String.valueOf(hostPort), env.get("DB2_PORT"), env.toString());
+        // Not related to any container
+        assertEquals(String.valueOf(DB_PORT), env.get("OTHER_PORT"), env.toString());
+    }
+
+    @Test
+    public void testPortVarNotANumber() {
+        assertThrows(ExtensionConfigurationException.class,
+                     () -> new HollowTestcontainersConfiguration().preConfigure(NotAPortClass.class));
+    }
+
+    @Test
+    public void testUnexposedPort() {
+        assertThrows(ExtensionConfigurationException.class,
+                     () -> new HollowTestcontainersConfiguration().preConfigure(UnexposedPortClass.class));
+    }
+
+    private static ServerSocket open() {
+        try {
+            return new ServerSocket(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
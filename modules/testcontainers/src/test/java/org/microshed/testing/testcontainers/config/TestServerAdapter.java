@@ -18,12 +18,23 @@
  */
 package org.microshed.testing.testcontainers.config;
 
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
 
 import org.microshed.testing.testcontainers.spi.ServerAdapter;
 
 public class TestServerAdapter implements ServerAdapter {
 
+    private static volatile Map<String, String> configProperties = Collections.emptyMap();
+
+    /**
+     * @return The config properties that were most recently applied to the running application in hollow mode
+     */
+    public static Map<String, String> getConfigProperties() {
+        return configProperties;
+    }
+
     @Override
     public int getDefaultHttpPort() {
         return 9080;
@@ -36,7 +47,7 @@ public class TestServerAdapter implements ServerAdapter {
 
     @Override
     public void setConfigProperties(Map<String, String> properties) {
-        // no-op
+        configProperties = Collections.unmodifiableMap(new HashMap<>(properties));
     }
 
 }
@@ -19,9 +19,11 @@
 package org.microshed.testing.testcontainers.config;
 
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtensionConfigurationException;
+import org.microshed.testing.internal.CurrentTestClass;
 import org.microshed.testing.testcontainers.ApplicationContainer;
 import org.microshed.testing.testcontainers.ApplicationContainerTest;
 import org.testcontainers.junit.jupiter.Container;
@@ -36,6 +38,33 @@ public class TestcontainersConfigurationTest {
         public static ApplicationContainer app2 = ApplicationContainerTest.dummyApp();
     }
 
+    public static class AppAClass {
+        @Container
+        public static ApplicationContainer app = ApplicationContainerTest.dummyApp().withAppContextRoot("/a");
+    }
+
+    public static class AppBClass {
+        @Container
+        public static ApplicationContainer app = ApplicationContainerTest.dummyApp().withAppContextRoot("/b");
+    }
+
+    @Test
+    public void testApplicationURLPerTestClass() {
+        TestcontainersConfiguration config = new TestcontainersConfiguration();
+        assertTrue(config.getApplicationURL(AppAClass.class).endsWith("/a"), config.getApplicationURL(AppAClass.class));
+        assertTrue(config.getApplicationURL(AppBClass.class).endsWith("/b"), config.getApplicationURL(AppBClass.class));
+        // The test class whose code runs on this thread decides, not the class that was configured last
+        try (CurrentTestClass.Scope s = CurrentTestClass.enter(AppAClass.class)) {
+            assertTrue(config.getApplicationURL().endsWith("/a"), config.getApplicationURL());
+        }
+        // Without running test code, such as on a thread started by a test, the class that started most recently decides
+        CurrentTestClass.started(AppBClass.class);
+        assertTrue(config.getApplicationURL().endsWith("/b"), config.getApplicationURL());
+        try (CurrentTestClass.Scope s = CurrentTestClass.enter(AppAClass.class)) {
+            assertTrue(config.getApplicationURL().endsWith("/a"), config.getApplicationURL());
+        }
+    }
+
     @Test
     public void testTwoApps() {
         assertThrows(ExtensionConfigurationException.class, () -> {
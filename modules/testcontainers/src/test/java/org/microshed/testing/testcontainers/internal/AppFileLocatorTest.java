@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.testcontainers.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtensionConfigurationException;
+import org.junit.jupiter.api.io.TempDir;
+
+public class AppFileLocatorTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testGradleLibs() throws Exception {
+        Path war = touch(tempDir.resolve("build/libs/myservice.war"));
+        touch(tempDir.resolve("build/classes/java/main/Foo.class"));
+        assertEquals(Collections.singleton(war.toFile()), locate());
+    }
+
+    @Test
+    public void testMavenTargetPrefersArchive() throws Exception {
+        Path ear = touch(tempDir.resolve("target/myservice.ear"));
+        // Maven stages the exploded archive next to the archive itself
+        Files.createDirectories(tempDir.resolve("target/myservice.war/WEB-INF"));
+        assertEquals(Collections.singleton(ear.toFile()), locate());
+    }
+
+    @Test
+    public void testExplodedArchive() throws Exception {
+        Path exploded = Files.createDirectories(tempDir.resolve("target/myservice.war"));
+        touch(exploded.resolve("WEB-INF/web.xml"));
+        assertEquals(Collections.singleton(exploded.toFile()), locate());
+    }
+
+    @Test
+    public void testSearchOutsideConventionalLocations() throws Exception {
+        Path war = touch(tempDir.resolve("build/wlp/usr/myservice.war"));
+        touch(tempDir.resolve("build/classes/ignored.war"));
+        assertEquals(Collections.singleton(war.toFile()), locate());
+    }
+
+    @Test
+    public void testCacheInvalidatedWhenDirectoryChanges() throws Exception {
+        Path libs = Files.createDirectories(tempDir.resolve("build/libs"));
+        Path war1 = touch(libs.resolve("one.war"));
+        assertEquals(Collections.singleton(war1.toFile()), locate());
+        assertTrue(Files.isRegularFile(tempDir.resolve("build/microshed-testing/app-file.properties")));
+        assertEquals(Collections.singleton(war1.toFile()), locate());
+
+        FileTime before = Files.getLastModifiedTime(libs);
+        Path war2 = touch(libs.resolve("two.war"));
+        // Make sure the change is visible on file systems with a coarse timestamp resolution
+        Files.setLastModifiedTime(libs, FileTime.fromMillis(before.toMillis() + 2000));
+        Set<File> expected = new HashSet<>();
+        expected.add(war1.toFile());
+        expected.add(war2.toFile());
+        assertEquals(expected, locate());
+    }
+
+    @Test
+    public void testExplicitAppFile() throws Exception {
+        touch(tempDir.resolve("build/libs/one.war"));
+        Path war = touch(tempDir.resolve("dist/two.war"));
+        assertEquals(Collections.singleton(war.toFile()), new AppFileLocator(tempDir, "dist/two.war").find());
+        assertThrows(ExtensionConfigurationException.class, () -> new AppFileLocator(tempDir, "dist/missing.war").find());
+    }
+
+    @Test
+    public void testNoAppFile() throws Exception {
+        touch(tempDir.resolve("build/classes/java/main/Foo.class"));
+        assertTrue(locate().isEmpty());
+    }
+
+    private Set<File> locate() {
+        return new HashSet<>(new AppFileLocator(tempDir, null).find());
+    }
+
+    private static Path touch(Path file) throws Exception {
+        Files.createDirectories(file.getParent());
+        return Files.write(file, new byte[] { 1 });
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.testcontainers.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+public class ContainerGroupTest {
+
+    public static class NoContainers {
+    }
+
+    @Test
+    public void testStartOnceConcurrently() throws Exception {
+        ContainerGroup group = new ContainerGroup(NoContainers.class);
+        AtomicInteger starts = new AtomicInteger();
+        CountDownLatch ready = new CountDownLatch(1);
+        List<CompletableFuture<Void>> callers = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            callers.add(CompletableFuture.runAsync(() -> {
+                try {
+                    ready.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                group.startOnce(starts::incrementAndGet);
+            }));
+        }
+        ready.countDown();
+        CompletableFuture.allOf(callers.toArray(new CompletableFuture[0])).join();
+        assertEquals(1, starts.get());
+    }
+
+    @Test
+    public void testStartRetriedAfterFailure() {
+        ContainerGroup group = new ContainerGroup(NoContainers.class);
+        assertThrows(IllegalStateException.class, () -> group.startOnce(() -> {
+            throw new IllegalStateException("boom");
+        }));
+        AtomicInteger starts = new AtomicInteger();
+        group.startOnce(starts::incrementAndGet);
+        group.startOnce(starts::incrementAndGet);
+        assertEquals(1, starts.get());
+    }
+
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.testcontainers.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.testcontainers.images.builder.ImageFromDockerfile;
+
+public class ImageCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testDigestStable() throws Exception {
+        File app = Files.write(tempDir.resolve("app.war"), new byte[] { 1, 2, 3 }).toFile();
+        assertEquals(ImageCache.digest(image(app, "FROM base")),
+                     ImageCache.digest(image(app, "FROM base")));
+    }
+
+    @Test
+    public void testDigestChangesWithAppFile() throws Exception {
+        Path appPath = tempDir.resolve("app.war");
+        File app = Files.write(appPath, new byte[] { 1, 2, 3 }).toFile();
+        String before = ImageCache.digest(image(app, "FROM base"));
+        Files.write(appPath, new byte[] { 1, 2, 4 });
+        assertNotEquals(before, ImageCache.digest(image(app, "FROM base")));
+    }
+
+    @Test
+    public void testDigestChangesWithDockerfile() throws Exception {
+        File app = Files.write(tempDir.resolve("app.war"), new byte[] { 1, 2, 3 }).toFile();
+        assertNotEquals(ImageCache.digest(image(app, "FROM base:1")),
+                        ImageCache.digest(image(app, "FROM base:2")));
+    }
+
+    @Test
+    public void testDigestIncludesConfigDir() throws Exception {
+        File app = Files.write(tempDir.resolve("app.war"), new byte[] { 1, 2, 3 }).toFile();
+        Path configDir = Files.createDirectories(tempDir.resolve("config"));
+        Files.write(configDir.resolve("server.xml"), "<server/>".getBytes());
+        String before = ImageCache.digest(image(app, "FROM base").withFileFromFile("/config", configDir.toFile()));
+        Files.write(configDir.resolve("server.xml"), "<server description=\"changed\"/>".getBytes());
+        assertNotEquals(before, ImageCache.digest(image(app, "FROM base").withFileFromFile("/config", configDir.toFile())));
+    }
+
+    private static ImageFromDockerfile image(File app, String dockerfile) {
+        return new ImageFromDockerfile()
+                        .withFileFromString("Dockerfile", dockerfile)
+                        .withFileFromFile("/config/dropins/app.war", app);
+    }
+
+}
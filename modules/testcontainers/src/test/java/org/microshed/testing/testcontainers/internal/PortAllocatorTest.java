@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.microshed.testing.testcontainers.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+public class PortAllocatorTest {
+
+    private static int freePort() throws Exception {
+        try (ServerSocket ss = new ServerSocket(0)) {
+            return ss.getLocalPort();
+        }
+    }
+
+    @Test
+    public void testFreePortGranted() throws Exception {
+        Path registry = Files.createTempDirectory("ports").resolve("registry");
+        int port = freePort();
+        PortAllocator allocator = new PortAllocator(registry, "a", owner -> true);
+        assertEquals(Collections.singletonMap(port, port), allocator.reserve(Collections.singleton(port)));
+        assertEquals(Collections.singletonList(port), allocator.reservedPorts());
+    }
+
+    @Test
+    public void testReservedPortRemapped() throws Exception {
+        Path registry = Files.createTempDirectory("ports").resolve("registry");
+        int port = freePort();
+        new PortAllocator(registry, "a", owner -> true).reserve(Collections.singleton(port));
+        Map<Integer, Integer> mapping = new PortAllocator(registry, "b", owner -> true).reserve(Collections.singleton(port));
+        assertNotEquals(port, mapping.get(port));
+    }
+
+    @Test
+    public void testStaleReservationIgnored() throws Exception {
+        Path registry = Files.createTempDirectory("ports").resolve("registry");
+        int port = freePort();
+        new PortAllocator(registry, "a", owner -> true).reserve(Collections.singleton(port));
+        Map<Integer, Integer> mapping = new PortAllocator(registry, "b", owner -> !"a".equals(owner)).reserve(Collections.singleton(port));
+        assertEquals(port, mapping.get(port));
+    }
+
+    @Test
+    public void testPortInUseRemapped() throws Exception {
+        Path registry = Files.createTempDirectory("ports").resolve("registry");
+        try (ServerSocket ss = new ServerSocket(0)) {
+            int port = ss.getLocalPort();
+            assertFalse(PortAllocator.probe(Collections.singleton(port)).get(port));
+            Map<Integer, Integer> mapping = new PortAllocator(registry, "a", owner -> true).reserve(Collections.singleton(port));
+            assertNotEquals(port, mapping.get(port));
+        }
+    }
+
+    @Test
+    public void testReleaseAll() throws Exception {
+        Path registry = Files.createTempDirectory("ports").resolve("registry");
+        PortAllocator allocator = new PortAllocator(registry, "a", owner -> true);
+        allocator.reserve(Collections.singleton(freePort()));
+        allocator.releaseAll();
+        assertTrue(allocator.reservedPorts().isEmpty());
+    }
+
+}
@@ -19,6 +19,7 @@
 package org.example.app;
 
 import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
 
 import org.eclipse.microprofile.reactive.messaging.Incoming;
 import org.eclipse.microprofile.reactive.messaging.Outgoing;
@@ -26,12 +27,16 @@ import org.eclipse.microprofile.reactive.messaging.Outgoing;
 @ApplicationScoped
 public class KitchenResource {
 
+  @Inject
+  OrderStatusResource orderStatus;
+
   @Incoming("orderQueue")
   @Outgoing("inProgressQueue")
   public KitchenOrder startIncomingOrders(KitchenOrder order) {
     System.out.println("Order " + order.orderId + " received with a status of NEW");
     order.status = KitchenOrder.Status.IN_PROGRESS;
     System.out.println("Order " + order.orderId + " is IN PROGRESS");
+    orderStatus.update(order);
     return order;
   }
 
@@ -40,6 +45,7 @@ public class KitchenResource {
   public KitchenOrder notifyCompletedOrders(KitchenOrder order) {
     order.status = KitchenOrder.Status.READY;
     System.out.println("Order " + order.orderId + " is READY");
+    orderStatus.update(order);
     return order;
   }
 
@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.example.app;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.ws.rs.GET;
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+
+@Path("/orders")
+@ApplicationScoped
+@Produces(MediaType.APPLICATION_JSON)
+public class OrderStatusResource {
+
+  private final Map<String, KitchenOrder> orders = new ConcurrentHashMap<>();
+
+  public void update(KitchenOrder order) {
+    // Keep a copy, since the order moves on to the next stage of the kitchen
+    orders.put(order.orderId, new KitchenOrder(order.orderId, order.tableId, order.type, order.item, order.status));
+  }
+
+  @GET
+  @Path("/{orderId}")
+  public KitchenOrder getOrder(@PathParam("orderId") String orderId) {
+    KitchenOrder order = orders.get(orderId);
+    if (order == null)
+      throw new NotFoundException("Order " + orderId + " was not received yet");
+    return order;
+  }
+
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.example.app;
+
+import org.microshed.testing.SharedContainerConfiguration;
+import org.microshed.testing.kafka.embedded.EmbeddedKafkaContainer;
+import org.microshed.testing.testcontainers.ApplicationContainer;
+import org.testcontainers.junit.jupiter.Container;
+
+public class EmbeddedKafkaConfig implements SharedContainerConfiguration {
+
+    // Runs in the test JVM, and the application container is pointed at it automatically
+    @Container
+    public static EmbeddedKafkaContainer kafka = new EmbeddedKafkaContainer();
+
+    @Container
+    public static ApplicationContainer app = new ApplicationContainer()
+                    .withReadinessPath("/health/ready")
+                    .dependsOn(kafka);
+
+}
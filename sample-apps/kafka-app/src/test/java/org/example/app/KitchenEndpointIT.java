@@ -28,8 +28,6 @@ import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
 import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.ProducerRecord;
-import org.example.app.KitchenOrder.JsonbSerializer;
-import org.example.app.KitchenOrder.KitchenOrderDeserializer;
 import org.junit.jupiter.api.Test;
 import org.microshed.testing.SharedContainerConfig;
 import org.microshed.testing.jupiter.MicroShedTest;
@@ -40,11 +38,10 @@ import org.microshed.testing.kafka.KafkaProducerClient;
 @SharedContainerConfig(AppContainerConfig.class)
 public class KitchenEndpointIT {
 
-  @KafkaProducerClient(valueSerializer = JsonbSerializer.class)
+  @KafkaProducerClient
   public static KafkaProducer<String, KitchenOrder> producer;
 
-  @KafkaConsumerClient(valueDeserializer = KitchenOrderDeserializer.class, 
-      groupId = "update-status", topics = "statusTopic", 
+  @KafkaConsumerClient(groupId = "update-status", topics = "statusTopic",
       properties = ConsumerConfig.AUTO_OFFSET_RESET_CONFIG + "=earliest")
   public static KafkaConsumer<String, KitchenOrder> consumer;
 
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2020 IBM Corporation and others
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.example.app;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.jupiter.api.Test;
+import org.microshed.testing.SharedContainerConfig;
+import org.microshed.testing.jaxrs.AsyncRestClient;
+import org.microshed.testing.jaxrs.RESTClient;
+import org.microshed.testing.jupiter.MicroShedTest;
+import org.microshed.testing.kafka.KafkaProducerClient;
+
+@MicroShedTest
+@SharedContainerConfig(EmbeddedKafkaConfig.class)
+public class OrderStatusIT {
+
+  private static final int ORDERS = 20;
+
+  @KafkaProducerClient
+  public static KafkaProducer<String, KitchenOrder> producer;
+
+  @RESTClient
+  public static AsyncRestClient<OrderStatusResource> orderStatus;
+
+  @Test
+  public void testOrdersBecomeReady() {
+    for (int i = 0; i < ORDERS; i++) {
+      KitchenOrder order = new KitchenOrder("async-" + i, "2", KitchenOrder.Type.FOOD, "burger", KitchenOrder.Status.NEW);
+      producer.send(new ProducerRecord<String, KitchenOrder>("foodTopic", order));
+    }
+    producer.flush();
+
+    // Check the status of all orders at once, rather than one request after the other.
+    // Orders that were not received yet fail with a 404, so keep checking until all of them are ready.
+    await().atMost(Duration.ofSeconds(30))
+        .ignoreExceptions()
+        .untilAsserted(() -> {
+          List<CompletableFuture<KitchenOrder>> statuses = new ArrayList<>();
+          for (int i = 0; i < ORDERS; i++) {
+            String orderId = "async-" + i;
+            statuses.add(orderStatus.call(svc -> svc.getOrder(orderId)).toCompletableFuture());
+          }
+          for (int i = 0; i < ORDERS; i++) {
+            KitchenOrder order = statuses.get(i).get(10, TimeUnit.SECONDS);
+            assertEquals("async-" + i, order.orderId);
+            assertEquals(KitchenOrder.Status.READY, order.status);
+          }
+        });
+  }
+
+}